@@ -0,0 +1,114 @@
+package ch.sbb.maven.plugins.iib.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.sbb.maven.plugins.iib.fixtures.BarGenerator;
+import ch.sbb.maven.plugins.iib.utils.ApplyBarOverride;
+import ch.sbb.maven.plugins.iib.utils.BarImage;
+import ch.sbb.maven.plugins.iib.utils.BarOverrideResult;
+import ch.sbb.maven.plugins.iib.utils.ConfigurableProperties;
+import ch.sbb.maven.plugins.iib.utils.NativeBarOverride;
+import ch.sbb.maven.plugins.iib.utils.ReadBar;
+
+import com.ibm.broker.config.proxy.LogEntry;
+
+/**
+ * Reading the overridable properties of a bar file and applying the overrides of an environment, for bar files of
+ * increasing size. Every property of the bar is overridden.
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class BarBenchmark {
+
+    @Param({ "1", "5" })
+    public int applications;
+
+    @Param({ "2" })
+    public int libraries;
+
+    @Param({ "10", "50" })
+    public int flows;
+
+    @Param({ "5" })
+    public int nodeProperties;
+
+    @Param({ "20000" })
+    public int flowSize;
+
+    private File directory;
+    private File barFile;
+    private File propertiesFile;
+    private File targetBarFile;
+    private BarImage barImage;
+
+
+    @Setup
+    public void createBar() throws IOException
+    {
+        directory = BenchmarkFixtures.createTempDirectory("bar-benchmark");
+        barFile = new File(directory, "benchmark.bar");
+        BarGenerator generator = new BarGenerator().setApplications(applications).setLibraries(libraries).setFlows(flows)
+                .setNodeProperties(nodeProperties).setFlowSize(flowSize);
+        generator.generate(barFile);
+        propertiesFile = new File(directory, "ENVIRONMENT1.properties");
+        generator.writeOverrides(propertiesFile);
+        targetBarFile = new File(directory, "benchmark-ENVIRONMENT1.bar");
+        barImage = BarImage.load(barFile);
+    }
+
+
+    @TearDown
+    public void deleteBar() throws IOException
+    {
+        FileUtils.deleteDirectory(directory);
+    }
+
+
+    @Benchmark
+    public ConfigurableProperties readBar() throws IOException
+    {
+        return ReadBar.getOverridableProperties(barFile.getAbsolutePath());
+    }
+
+
+    @Benchmark
+    public List<LogEntry> applyBarOverride() throws IOException
+    {
+        Enumeration<LogEntry> entries = ApplyBarOverride.applyBarOverride(barImage, propertiesFile.getAbsolutePath(), targetBarFile.getAbsolutePath());
+        return entries == null ? null : Collections.list(entries);
+    }
+
+
+    @Benchmark
+    public BarOverrideResult applyBarOverrideNative() throws IOException
+    {
+        return NativeBarOverride.applyBarOverride(barFile, propertiesFile.getAbsolutePath(), targetBarFile.getAbsolutePath());
+    }
+
+}
@@ -0,0 +1,101 @@
+package ch.sbb.maven.plugins.iib.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+
+import ch.sbb.maven.plugins.iib.utils.ConfigurableProperties;
+
+/**
+ * Creates the properties files and projects the benchmarks run against; the bar files and workspaces are written by the
+ * plugin's test fixtures ({@link ch.sbb.maven.plugins.iib.fixtures.BarGenerator} and
+ * {@link ch.sbb.maven.plugins.iib.fixtures.WorkspaceGenerator}). The content is generated from a fixed seed, so that
+ * every run measures the same files.
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+public final class BenchmarkFixtures {
+
+    private BenchmarkFixtures()
+    {
+    }
+
+
+    /**
+     * @return a new, empty temporary directory
+     */
+    public static File createTempDirectory(String prefix) throws IOException
+    {
+        File directory = File.createTempFile(prefix, "");
+        directory.delete();
+        directory.mkdirs();
+        return directory;
+    }
+
+
+    /**
+     * writes a properties file that overrides every given property
+     */
+    public static void createOverrides(File propertiesFile, List<String> propertyNames) throws IOException
+    {
+        ConfigurableProperties properties = new ConfigurableProperties();
+        int i = 0;
+        for (String name : propertyNames)
+        {
+            properties.put(name, "value" + i++);
+        }
+        properties.save(propertiesFile);
+    }
+
+
+    /**
+     * writes a project directory with the given number of files (message flows, ESQL and Java sources)
+     */
+    public static void createProject(File projectDirectory, int files, int fileSize) throws IOException
+    {
+        Random random = new Random(42);
+        writeProjectFile(projectDirectory, projectDirectory.getName(), "com.ibm.etools.msgbroker.tooling.applicationNature", new ArrayList<String>());
+        String[] extensions = { ".msgflow", ".esql", ".java" };
+        for (int i = 0; i < files; i++)
+        {
+            File file = new File(projectDirectory, "folder" + (i % 10) + "/File" + i + extensions[i % extensions.length]);
+            FileUtils.writeByteArrayToFile(file, createContent(fileSize, random));
+        }
+    }
+
+
+    /**
+     * @return text-like content, which compresses about as well as message flows and sources do
+     */
+    private static byte[] createContent(int size, Random random)
+    {
+        String[] words = { "<nodes", "xmi:type=", "ComIbmMQInput.msgnode", "SET", "OutputRoot", "InputRoot.XMLNSC", "DECLARE", "CHARACTER",
+                "public", "void", "return", "\n", "  " };
+        StringBuilder content = new StringBuilder(size + 32);
+        while (content.length() < size)
+        {
+            content.append(words[random.nextInt(words.length)]).append(' ').append(random.nextInt(1000)).append(' ');
+        }
+        content.setLength(size);
+        return content.toString().getBytes();
+    }
+
+
+    private static void writeProjectFile(File projectDirectory, String name, String nature, List<String> references) throws IOException
+    {
+        StringBuilder projects = new StringBuilder();
+        for (String reference : references)
+        {
+            projects.append("\t\t<project>").append(reference).append("</project>\n");
+        }
+        FileUtils.writeStringToFile(new File(projectDirectory, ".project"), "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<projectDescription>\n\t<name>"
+                + name + "</name>\n\t<comment></comment>\n\t<projects>\n" + projects + "\t</projects>\n\t<buildSpec>\n\t</buildSpec>\n\t<natures>\n\t\t<nature>"
+                + nature + "</nature>\n\t</natures>\n</projectDescription>\n", "UTF-8");
+    }
+
+}
@@ -0,0 +1,87 @@
+package ch.sbb.maven.plugins.iib.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.sbb.maven.plugins.iib.utils.ConfigurableProperties;
+
+/**
+ * Loading and saving the properties files of the environments.
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ConfigurablePropertiesBenchmark {
+
+    @Param({ "100", "1000", "10000" })
+    public int properties;
+
+    private File directory;
+    private File propertiesFile;
+    private File savedFile;
+    private ConfigurableProperties loaded;
+
+
+    @Setup
+    public void createProperties() throws IOException
+    {
+        directory = BenchmarkFixtures.createTempDirectory("properties-benchmark");
+        List<String> names = new ArrayList<String>();
+        for (int i = 0; i < properties; i++)
+        {
+            names.add("application" + (i / 100) + ".flows.Flow" + (i % 100) + "#MQ Input.queueName");
+        }
+        propertiesFile = new File(directory, "ENVIRONMENT1.properties");
+        BenchmarkFixtures.createOverrides(propertiesFile, names);
+        savedFile = new File(directory, "saved.properties");
+        loaded = new ConfigurableProperties();
+        loaded.load(propertiesFile);
+    }
+
+
+    @TearDown
+    public void deleteProperties() throws IOException
+    {
+        FileUtils.deleteDirectory(directory);
+    }
+
+
+    @Benchmark
+    public ConfigurableProperties load() throws IOException
+    {
+        ConfigurableProperties configurableProperties = new ConfigurableProperties();
+        configurableProperties.load(propertiesFile);
+        return configurableProperties;
+    }
+
+
+    @Benchmark
+    public void save() throws IOException
+    {
+        loaded.save(savedFile);
+    }
+
+}
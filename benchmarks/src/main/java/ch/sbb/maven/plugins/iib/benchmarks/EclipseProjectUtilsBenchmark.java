@@ -0,0 +1,91 @@
+package ch.sbb.maven.plugins.iib.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.MojoFailureException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ch.sbb.maven.plugins.iib.fixtures.WorkspaceGenerator;
+import ch.sbb.maven.plugins.iib.utils.EclipseProjectUtils;
+
+/**
+ * Reading the .project files of a workspace: once they are cached, and when every file changed since it was last read.
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class EclipseProjectUtilsBenchmark {
+
+    @Param({ "10", "100" })
+    public int applications;
+
+    @Param({ "10", "50" })
+    public int libraries;
+
+    private File workspace;
+    private List<String> projects;
+    private long lastModified;
+
+
+    @Setup
+    public void createWorkspace() throws IOException
+    {
+        workspace = BenchmarkFixtures.createTempDirectory("workspace-benchmark");
+        projects = new WorkspaceGenerator().setApplications(applications).setLibraries(libraries).setFlows(1).generate(workspace);
+        lastModified = new File(workspace, projects.get(0) + "/.project").lastModified();
+    }
+
+
+    @TearDown
+    public void deleteWorkspace() throws IOException
+    {
+        FileUtils.deleteDirectory(workspace);
+    }
+
+
+    @Benchmark
+    public void readCachedProjects(Blackhole blackhole) throws MojoFailureException
+    {
+        for (String project : projects)
+        {
+            blackhole.consume(EclipseProjectUtils.getDependentProjectNames(new File(workspace, project)));
+        }
+    }
+
+
+    @Benchmark
+    public void readChangedProjects(Blackhole blackhole) throws MojoFailureException
+    {
+        // / a new modification time makes every .project file be parsed again
+        lastModified += 1000;
+        for (String project : projects)
+        {
+            File projectDirectory = new File(workspace, project);
+            new File(projectDirectory, ".project").setLastModified(lastModified);
+            blackhole.consume(EclipseProjectUtils.getDependentProjectNames(projectDirectory));
+        }
+    }
+
+}
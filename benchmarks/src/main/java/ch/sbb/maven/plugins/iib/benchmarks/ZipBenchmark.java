@@ -0,0 +1,132 @@
+package ch.sbb.maven.plugins.iib.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.MavenProject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.sbb.maven.plugins.iib.mojos.PackageZipMojo;
+import ch.sbb.maven.plugins.iib.utils.ZipUtils;
+
+/**
+ * Zipping a project (package-zip) and removing files from an archive ({@link ZipUtils#removeFiles(File, String)}).
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ZipBenchmark {
+
+    @Param({ "100", "1000" })
+    public int files;
+
+    @Param({ "10000" })
+    public int fileSize;
+
+    private File directory;
+    private File projectDirectory;
+    private File zipFile;
+    private File workZipFile;
+    private BenchmarkPackageZipMojo mojo;
+
+
+    /**
+     * package-zip with its parameters set as Maven would, and logging switched off: it logs every file
+     */
+    static class BenchmarkPackageZipMojo extends PackageZipMojo {
+        BenchmarkPackageZipMojo(MavenProject project, File zipFile)
+        {
+            this.project = project;
+            this.zipFilePath = zipFile.getAbsolutePath();
+            setLog(new SystemStreamLog() {
+                @Override
+                public boolean isInfoEnabled()
+                {
+                    return false;
+                }
+
+                @Override
+                public void info(CharSequence content)
+                {
+                }
+            });
+        }
+    }
+
+
+    @Setup
+    public void createProject() throws IOException, MojoFailureException, MojoExecutionException
+    {
+        directory = BenchmarkFixtures.createTempDirectory("zip-benchmark");
+        projectDirectory = new File(directory, "BenchmarkApplication");
+        BenchmarkFixtures.createProject(projectDirectory, files, fileSize);
+
+        MavenProject project = new MavenProject();
+        project.setGroupId("ch.sbb.benchmarks");
+        project.setArtifactId(projectDirectory.getName());
+        project.setVersion("1.0");
+        project.setFile(new File(projectDirectory, "pom.xml"));
+        project.getBuild().setDirectory(new File(projectDirectory, "target").getAbsolutePath());
+        mojo = new BenchmarkPackageZipMojo(project, new File(projectDirectory, "target/BenchmarkApplication-1.0.zip"));
+
+        // / the archive files are removed from is a copy of the one package-zip writes
+        mojo.execute();
+        zipFile = new File(directory, "BenchmarkApplication-1.0.zip");
+        FileUtils.copyFile(new File(projectDirectory, "target/BenchmarkApplication-1.0.zip"), zipFile);
+        workZipFile = new File(directory, "work.zip");
+    }
+
+
+    @Setup(Level.Invocation)
+    public void copyZip() throws IOException
+    {
+        FileUtils.copyFile(zipFile, workZipFile);
+    }
+
+
+    @TearDown
+    public void deleteProject() throws IOException
+    {
+        FileUtils.deleteDirectory(directory);
+    }
+
+
+    @Benchmark
+    public void packageZip() throws MojoFailureException, MojoExecutionException
+    {
+        mojo.execute();
+    }
+
+
+    @Benchmark
+    public File removeFiles() throws IOException
+    {
+        // / about a third of the files
+        ZipUtils.removeFiles(workZipFile, "**/*.esql");
+        return workZipFile;
+    }
+
+}
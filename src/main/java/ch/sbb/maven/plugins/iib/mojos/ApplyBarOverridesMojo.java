@@ -12,13 +12,21 @@ import static org.twdata.maven.mojoexecutor.MojoExecutor.plugin;
 import static org.twdata.maven.mojoexecutor.MojoExecutor.version;
 
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
-import java.util.Enumeration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.io.FilenameUtils;
 import org.apache.maven.execution.MavenSession;
@@ -36,14 +44,16 @@ import org.codehaus.plexus.util.FileUtils;
 import org.codehaus.plexus.util.xml.Xpp3Dom;
 import org.twdata.maven.mojoexecutor.MojoExecutor.ExecutionEnvironment;
 
+import ch.sbb.maven.plugins.iib.utils.BuildTimings;
 import ch.sbb.maven.plugins.iib.utils.ApplyBarOverride;
+import ch.sbb.maven.plugins.iib.utils.BarImage;
+import ch.sbb.maven.plugins.iib.utils.BarOverrideResult;
 import ch.sbb.maven.plugins.iib.utils.ConfigurableProperties;
 import ch.sbb.maven.plugins.iib.utils.ConfigurationValidator;
+import ch.sbb.maven.plugins.iib.utils.NativeBarOverride;
 import ch.sbb.maven.plugins.iib.utils.ReadBar;
 import ch.sbb.maven.plugins.iib.utils.SkipUtil;
 
-import com.ibm.broker.config.proxy.LogEntry;
-
 /**
  * Validates override .properties files and (optionally) applies them to the default .bar file.
  */
@@ -63,6 +73,24 @@ public class ApplyBarOverridesMojo extends AbstractMojo {
     @Parameter(property = "applyBarOverrideTraceFile", defaultValue = "${project.build.directory}/applybaroverridetrace.txt", required = true)
     protected File applyBarOverrideTraceFile;
 
+    /**
+     * The number of properties files (environments) the overrides are applied to concurrently. With the 'ibm' engine,
+     * the bar file is read from disk once, but every environment is still a full parse of it and every thread holds a
+     * complete copy in memory, so that the heap needed grows with the bar file size times this number. Defaults to 1
+     * for the 'ibm' engine and to 2 for the 'native' engine, which copies the entries it does not rewrite without
+     * holding them in memory.
+     */
+    @Parameter(property = "applyBarOverrideThreads", defaultValue = "0", required = false)
+    protected int applyBarOverrideThreads;
+
+    /**
+     * The engine applying the overrides: 'ibm' uses the IBM BarFile API (like mqsiapplybaroverride), 'native'
+     * rewrites only the deployment descriptors (META-INF/broker.xml) containing overridden properties and copies all
+     * other entries of the bar unchanged, which is much faster for large bar files.
+     */
+    @Parameter(property = "barOverrideEngine", defaultValue = "ibm", required = false)
+    protected String barOverrideEngine;
+
     /**
      * The name of the BAR (compressed file format) archive file where the result is stored.
      * 
@@ -102,8 +130,21 @@ public class ApplyBarOverridesMojo extends AbstractMojo {
     @Component
     protected BuildPluginManager buildPluginManager;
 
+    private BarImage barImage;
+
 
     public void execute() throws MojoFailureException {
+        BuildTimings.Span span = BuildTimings.get(project, getLog()).start("apply-bar-overrides");
+        try
+        {
+            applyBarOverrides(span);
+        } finally
+        {
+            span.stop();
+        }
+    }
+
+    private void applyBarOverrides(BuildTimings.Span span) throws MojoFailureException {
         if (new SkipUtil().isSkip(this.getClass())) {
             return;
         }
@@ -115,7 +156,20 @@ public class ApplyBarOverridesMojo extends AbstractMojo {
         // / gets the overridable properties from readbar
         ConfigurableProperties overridableProperties;
         try {
-            overridableProperties = getOverridableProperties();
+            // / with the 'ibm' engine, the bar is read from disk once and shared by readbar and the applybaroverride of
+            // / every environment; the 'native' engine reads the entries it needs from the file
+            BuildTimings.Span step = span.step("read-bar");
+            try
+            {
+                if (applyBarOverrides && !isNativeEngine())
+                {
+                    barImage = BarImage.load(barName);
+                }
+                overridableProperties = getOverridableProperties();
+            } finally
+            {
+                step.stop();
+            }
         } catch (IOException e) {
             throw new MojoFailureException("Error extracting configurable properties from bar file: " + barName.getAbsolutePath(), e);
         }
@@ -235,43 +289,119 @@ public class ApplyBarOverridesMojo extends AbstractMojo {
 
     private void executeApplyBarOverrides() throws MojoFailureException {
 
-
-        for (File propFile : getTargetPropertiesFiles())
+        final boolean nativeEngine = isNativeEngine();
+        List<File> propFiles = getTargetPropertiesFiles();
+        if (propFiles.isEmpty())
         {
-            // / if ENVIRONMENT1.properties in the src\main\resources\ directory is a prop file,
-            // / then ENVIRONMENT1.properties gets written to /target/iib-overrides/ENVIRONMENT1.properties
-            // / the resulting target bar file name should be
-
-
-            // / then the targetBarFilename should be target\iib\xyz.bar
-            // / then the targetBarFile gets populated with the combination of the output bar and the propFile
-            String baseFilename = project.getArtifactId() + "-" + project.getVersion() + "-" + FilenameUtils.getBaseName(propFile.getName()); // / HDR-6.0-ENVIRONMENT1
-            String barFileName = baseFilename + ".bar"; // / HDR-6.0-ENVIRONMENT1.bar
-            String brokerFileName = FilenameUtils.getBaseName(propFile.getName()) + ".broker"; // ENVIRONMENT1.properties
-            String serverFileName = FilenameUtils.getBaseName(propFile.getName()) + ".config"; // ENVIRONMENT1.config
-
-
-            String targetBarFilename = (new File(propFile.getParent(), barFileName)).getAbsolutePath(); // ...target/iib-overrides/HDR-6.0-ENVIRONMENT1.bar
-            String targetBrokerFilename = (new File(propFile.getParent(), brokerFileName)).getAbsolutePath(); // ...target/iib-overrides/ENVIRONMENT1.broker
-            String targetConfigFilename = (new File(propFile.getParent(), serverFileName)).getAbsolutePath(); // ...target/iib-overrides/ENVIRONMENT1.config
-
-            checkTargetBrokerFilePresent(targetBarFilename, targetBrokerFilename);
-
-            checkTargetConfigFilePresent(targetConfigFilename);
+            return;
+        }
 
+        int threads = applyBarOverrideThreads > 0 ? applyBarOverrideThreads : nativeEngine ? 2 : 1;
+        threads = Math.min(threads, propFiles.size());
+        getLog().info("applybaroverrides being executed against " + barName + " for " + propFiles.size() + " properties files using " + threads + " thread(s)");
 
-            try {
-                getLog().info("applybaroverrides being executed against " + barName + " with properties " + propFile);
-                Enumeration<LogEntry> logEntries = ApplyBarOverride.applyBarOverride(barName.getAbsolutePath(), propFile.getAbsolutePath(), targetBarFilename);
-                getLog().info("applybaroverrides successfully created " + targetBarFilename);
+        final BuildTimings.Span span = BuildTimings.current();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Map<File, Future<BarOverrideResult>> results = new LinkedHashMap<File, Future<BarOverrideResult>>();
+        try
+        {
+            for (File propFile : propFiles)
+            {
+                // / if ENVIRONMENT1.properties in the src\main\resources\ directory is a prop file,
+                // / then ENVIRONMENT1.properties gets written to /target/iib-overrides/ENVIRONMENT1.properties
+                // / the resulting target bar file name should be
+
+
+                // / then the targetBarFilename should be target\iib\xyz.bar
+                // / then the targetBarFile gets populated with the combination of the output bar and the propFile
+                String baseFilename = project.getArtifactId() + "-" + project.getVersion() + "-" + FilenameUtils.getBaseName(propFile.getName()); // / HDR-6.0-ENVIRONMENT1
+                String barFileName = baseFilename + ".bar"; // / HDR-6.0-ENVIRONMENT1.bar
+                String brokerFileName = FilenameUtils.getBaseName(propFile.getName()) + ".broker"; // ENVIRONMENT1.properties
+                String serverFileName = FilenameUtils.getBaseName(propFile.getName()) + ".config"; // ENVIRONMENT1.config
+
+
+                final String targetBarFilename = (new File(propFile.getParent(), barFileName)).getAbsolutePath(); // ...target/iib-overrides/HDR-6.0-ENVIRONMENT1.bar
+                String targetBrokerFilename = (new File(propFile.getParent(), brokerFileName)).getAbsolutePath(); // ...target/iib-overrides/ENVIRONMENT1.broker
+                String targetConfigFilename = (new File(propFile.getParent(), serverFileName)).getAbsolutePath(); // ...target/iib-overrides/ENVIRONMENT1.config
+
+                checkTargetBrokerFilePresent(targetBarFilename, targetBrokerFilename);
+
+                checkTargetConfigFilePresent(targetConfigFilename);
+
+                final String propFilename = propFile.getAbsolutePath();
+                results.put(propFile, executor.submit(new Callable<BarOverrideResult>() {
+
+                    public BarOverrideResult call() throws IOException
+                    {
+                        BuildTimings.Span step = span.step("override " + FilenameUtils.getBaseName(propFilename));
+                        try
+                        {
+                            if (nativeEngine)
+                            {
+                                return NativeBarOverride.applyBarOverride(barName, propFilename, targetBarFilename);
+                            }
+                            return BarOverrideResult.fromLogEntries(ApplyBarOverride.applyBarOverride(barImage, propFilename, targetBarFilename));
+                        } finally
+                        {
+                            step.stop();
+                        }
+                    }
+                }));
+            }
 
-                writeTraceFile(logEntries, propFile);
+            // / wait for all environments, so that every failure gets reported and not just the first one
+            List<String> failures = new ArrayList<String>();
+            for (Map.Entry<File, Future<BarOverrideResult>> result : results.entrySet())
+            {
+                File propFile = result.getKey();
+                BarOverrideResult overrideResult;
+                try
+                {
+                    overrideResult = result.getValue().get();
+                } catch (ExecutionException e)
+                {
+                    getLog().error("Error applying properties file " + propFile.getAbsolutePath(), e.getCause());
+                    failures.add(propFile.getName() + ": " + e.getCause());
+                    continue;
+                } catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new MojoFailureException("interrupted while applying properties file " + propFile.getAbsolutePath(), e);
+                }
 
+                if (!overrideResult.isSuccess())
+                {
+                    String message = "applybaroverrides could not apply all properties of " + propFile.getAbsolutePath()
+                            + "; see " + getTraceFileParameter(propFile);
+                    if (failOnInvalidProperties)
+                    {
+                        getLog().error(message);
+                        failures.add(propFile.getName() + ": unknown properties");
+                    }
+                    else
+                    {
+                        getLog().warn(message);
+                    }
+                }
+                else
+                {
+                    getLog().info("applybaroverrides successfully applied " + propFile.getAbsolutePath());
+                }
+                writeTraceFile(overrideResult.getMessages(), propFile);
+            }
 
-            } catch (IOException e) {
-                // TODO handle exception
-                throw new MojoFailureException("Error applying properties file " + propFile.getAbsolutePath(), e);
+            if (!failures.isEmpty())
+            {
+                String message = "applybaroverrides failed for " + failures.size() + " of " + propFiles.size() + " properties files:";
+                for (String failure : failures)
+                {
+                    message += "\n  " + failure;
+                }
+                throw new MojoFailureException(message);
             }
+        } finally
+        {
+            executor.shutdownNow();
         }
     }
 
@@ -303,16 +433,10 @@ public class ApplyBarOverridesMojo extends AbstractMojo {
      * @param logEntries
      * @param propFile
      */
-    private void writeTraceFile(Enumeration<LogEntry> logEntries, File propFile)
+    private void writeTraceFile(List<String> logEntries, File propFile)
     {
         String traceFilePath = getTraceFileParameter(propFile);
-        if (logEntries == null)
-        {
-            getLog().info("logEntries are null; no entries to write to " + traceFilePath);
-            new File(traceFilePath).delete();
-            return;
-        }
-        if (!logEntries.hasMoreElements())
+        if (logEntries.isEmpty())
         {
             getLog().info("no logEntries to write to " + traceFilePath);
             new File(traceFilePath).delete();
@@ -324,10 +448,10 @@ public class ApplyBarOverridesMojo extends AbstractMojo {
 
             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(traceFilePath)));
 
-            while (logEntries.hasMoreElements())
+            for (String logEntry : logEntries)
             {
-                LogEntry logEntry = logEntries.nextElement();
-                writer.write(logEntry.toString());
+                writer.write(logEntry);
+                writer.newLine();
             }
             writer.flush();
             writer.close();
@@ -418,7 +542,17 @@ public class ApplyBarOverridesMojo extends AbstractMojo {
      */
     protected ConfigurableProperties getOverridableProperties() throws IOException {
 
-        return ReadBar.getOverridableProperties(barName.getAbsolutePath());
+        if (barImage == null)
+        {
+            return ReadBar.getOverridableProperties(barName.getAbsolutePath());
+        }
+        return ReadBar.getOverridableProperties(new ByteArrayInputStream(barImage.getBytes()));
+    }
+
+
+    private boolean isNativeEngine() throws MojoFailureException
+    {
+        return ConfigurationValidator.validateBarOverrideEngine(barOverrideEngine, getLog()).equals("native");
     }
 
     /**
@@ -10,6 +10,7 @@ import org.apache.maven.plugins.annotations.Parameter;
 import org.codehaus.plexus.util.FileUtils;
 
 import ch.sbb.maven.plugins.iib.utils.SkipUtil;
+import ch.sbb.maven.plugins.iib.utils.WorkspaceIndex;
 
 /**
  * Cleans up the ${iib.workspace} directory. Build errors will appear in the IIB Toolkit if .msgflow files are left under the ${iib.workspace} - the path determines the Namespace of the flow and that
@@ -41,6 +42,7 @@ public class CleanBarBuildWorkspaceMojo extends AbstractMojo {
             if (workspace.exists()) {
                 try {
                     FileUtils.deleteDirectory(workspace);
+                    WorkspaceIndex.invalidate(workspace);
                 } catch (IOException e) {
                     // TODO Auto-generated catch block
                     e.printStackTrace();
@@ -30,6 +30,7 @@ import org.apache.maven.project.MavenProject;
 import org.codehaus.plexus.util.xml.Xpp3Dom;
 import org.twdata.maven.mojoexecutor.MojoExecutor.ExecutionEnvironment;
 
+import ch.sbb.maven.plugins.iib.utils.BuildTimings;
 import ch.sbb.maven.plugins.iib.utils.ConfigurationValidator;
 
 
@@ -62,6 +63,17 @@ public class DeployBarMojo extends AbstractMojo {
 
 
     public void execute() throws MojoFailureException {
+        BuildTimings.Span span = BuildTimings.get(project, getLog()).start("deploy-bar");
+        try
+        {
+            deployBar();
+        } finally
+        {
+            span.stop();
+        }
+    }
+
+    private void deployBar() throws MojoFailureException {
 
         ConfigurationValidator.validateDeployBarMojo(project, getLog());
         ArtifactRepository repo = project.getDistributionManagementArtifactRepository();
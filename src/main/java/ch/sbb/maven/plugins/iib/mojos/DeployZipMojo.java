@@ -30,6 +30,7 @@ import org.codehaus.plexus.util.xml.Xpp3Dom;
 import org.twdata.maven.mojoexecutor.MojoExecutor.Element;
 import org.twdata.maven.mojoexecutor.MojoExecutor.ExecutionEnvironment;
 
+import ch.sbb.maven.plugins.iib.utils.BuildTimings;
 import ch.sbb.maven.plugins.iib.utils.ConfigurationValidator;
 
 /**
@@ -68,6 +69,18 @@ public class DeployZipMojo extends AbstractMojo {
 
 
     public void execute() throws MojoFailureException, MojoExecutionException
+    {
+        BuildTimings.Span span = BuildTimings.get(project, getLog()).start("deploy-zip");
+        try
+        {
+            deployZip();
+        } finally
+        {
+            span.stop();
+        }
+    }
+
+    private void deployZip() throws MojoFailureException, MojoExecutionException
     {
         try
         {
@@ -1,6 +1,7 @@
 package ch.sbb.maven.plugins.iib.mojos;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.List;
 
 import org.apache.maven.plugin.AbstractMojo;
@@ -12,6 +13,7 @@ import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.project.MavenProject;
 import org.codehaus.plexus.util.FileUtils;
 
+import ch.sbb.maven.plugins.iib.utils.BuildTimings;
 import ch.sbb.maven.plugins.iib.utils.ConfigurationValidator;
 import ch.sbb.maven.plugins.iib.utils.DirectoriesUtil;
 import ch.sbb.maven.plugins.iib.utils.SkipUtil;
@@ -48,6 +50,17 @@ public class InitializeBarBuildWorkspaceMojo extends AbstractMojo {
 
 
     public void execute() throws MojoExecutionException, MojoFailureException {
+        BuildTimings.Span span = BuildTimings.get(project, getLog()).start("initialize-bar-build-workspace");
+        try
+        {
+            initializeBarBuildWorkspace();
+        } finally
+        {
+            span.stop();
+        }
+    }
+
+    private void initializeBarBuildWorkspace() throws MojoExecutionException, MojoFailureException {
         if (new SkipUtil().isSkip(this.getClass())) {
             return;
         }
@@ -57,6 +70,15 @@ public class InitializeBarBuildWorkspaceMojo extends AbstractMojo {
         // / verify that the workspace directory exists
         workspace.mkdirs();
 
+        // / a killed build may have left the pom.xml files of the workspace projects renamed
+        try
+        {
+            DirectoriesUtil.recoverPomFiles(workspace, getLog());
+        } catch (IOException e)
+        {
+            throw new MojoFailureException("unable to restore the pom.xml files hidden by a previous build: " + e);
+        }
+
         performInitialDeletes();
 
 
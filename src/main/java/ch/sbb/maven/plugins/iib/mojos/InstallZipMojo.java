@@ -28,6 +28,8 @@ import org.codehaus.plexus.util.xml.Xpp3Dom;
 import org.twdata.maven.mojoexecutor.MojoExecutor.Element;
 import org.twdata.maven.mojoexecutor.MojoExecutor.ExecutionEnvironment;
 
+import ch.sbb.maven.plugins.iib.utils.BuildTimings;
+
 /**
  * Installs a zipped-up, IIB9 project into the user's local maven repository.
  * 
@@ -61,6 +63,18 @@ public class InstallZipMojo extends AbstractMojo {
 
 
     public void execute() throws MojoFailureException, MojoExecutionException
+    {
+        BuildTimings.Span span = BuildTimings.get(project, getLog()).start("install-zip");
+        try
+        {
+            installZip();
+        } finally
+        {
+            span.stop();
+        }
+    }
+
+    private void installZip() throws MojoFailureException, MojoExecutionException
     {
 
 
@@ -19,6 +19,7 @@ import org.apache.maven.plugins.annotations.Parameter;
 import ch.sbb.maven.plugins.iib.utils.ConfigurationValidator;
 import ch.sbb.maven.plugins.iib.utils.EclipseProjectUtils;
 import ch.sbb.maven.plugins.iib.utils.PomXmlUtils;
+import ch.sbb.maven.plugins.iib.utils.WorkspaceIndex;
 
 /**
  * This Mojo looks into the directory from which maven is run and attempts to "mavenize" the
@@ -122,6 +123,7 @@ public class MavenizeMojo extends AbstractMojo {
 
         createAndWriteParentPom();
 
+        WorkspaceIndex.invalidate(workspace);
     }
 
     /**
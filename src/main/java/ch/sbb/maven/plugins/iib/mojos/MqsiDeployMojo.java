@@ -3,11 +3,21 @@ package ch.sbb.maven.plugins.iib.mojos;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
@@ -16,6 +26,9 @@ import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
 
+import ch.sbb.maven.plugins.iib.utils.BuildTimings;
+import ch.sbb.maven.plugins.iib.utils.DigestUtil;
+import ch.sbb.maven.plugins.iib.utils.DirectoriesUtil;
 import ch.sbb.maven.plugins.iib.utils.MqsiCommand;
 import ch.sbb.maven.plugins.iib.utils.MqsiCommandLauncher;
 import ch.sbb.maven.plugins.iib.utils.SkipUtil;
@@ -53,6 +66,53 @@ public class MqsiDeployMojo extends AbstractMojo {
     @Parameter(property = "mqsiPrefixCommands", required = false)
     protected String mqsiPrefixCommands;
 
+    /**
+     * whether mqsiprofile is run only once per build. If true, the environment produced by the mqsiprofile
+     * ('pathToMqsiProfileScript' or 'mqsiPrefixCommands') is captured on first use and the mqsi commands are
+     * launched directly with it, across all mojos and modules of the build. The captured environment is also
+     * cached under ${user.home}/.iib-maven-plugin until the mqsiprofile script changes; what it appended or prepended
+     * to PATH-like variables is applied to their values in each following build.
+     */
+    @Parameter(property = "reuseMqsiEnvironment", required = false, defaultValue = "true")
+    protected boolean reuseMqsiEnvironment;
+
+    /**
+     * the maximum number of environments deployed at the same time. Environments deploying to the same broker
+     * (integration node) are always deployed one after the other.
+     */
+    @Parameter(property = "maxParallelDeployments", required = false, defaultValue = "1")
+    protected int maxParallelDeployments;
+
+    /**
+     * the file recording the SHA-256 of the bar file last deployed to each environment, along with the broker,
+     * integration server and deployment options it was deployed with (see 'skipUnchangedDeployments'). It lives in the
+     * build directory, next to 'deployment.results', so that a 'mvn clean' deploys everything again.
+     */
+    @Parameter(property = "deploymentStateFile", required = false, defaultValue = "${project.build.directory}/iib-deployments.properties")
+    protected File deploymentStateFile;
+
+    /**
+     * whether to skip the environments whose bar file and target are unchanged since their last successful deployment,
+     * as recorded in 'deploymentStateFile'. Only enable it if the integration servers are changed by this plugin alone:
+     * an environment changed by other means is not deployed again.
+     */
+    @Parameter(property = "skipUnchangedDeployments", required = false, defaultValue = "false")
+    protected boolean skipUnchangedDeployments;
+
+    /**
+     * whether to stop mqsideploy as soon as it reports an error (a BIP message with severity E or S, limited to
+     * 'fatalBipCodes' if set) instead of waiting for it to finish. The build fails with the reported error.
+     */
+    @Parameter(property = "failFastOnBipErrors", required = false, defaultValue = "false")
+    protected boolean failFastOnBipErrors;
+
+    /**
+     * a comma-separated list of the BIP codes that stop mqsideploy with 'failFastOnBipErrors', e.g.
+     * 'BIP2087E,BIP0874'. If empty, every error and severe BIP message does.
+     */
+    @Parameter(property = "fatalBipCodes", required = false)
+    protected String fatalBipCodes;
+
     @Parameter(property = "mqsiDeployReplacementCommand", required = false, defaultValue = "")
     protected String mqsiDeployReplacementCommand;
 
@@ -102,6 +162,17 @@ public class MqsiDeployMojo extends AbstractMojo {
 
 
     public void execute() throws MojoFailureException, MojoExecutionException {
+        BuildTimings.Span span = BuildTimings.get(project, getLog()).start("mqsideploy");
+        try
+        {
+            deployBars(span);
+        } finally
+        {
+            span.stop();
+        }
+    }
+
+    private void deployBars(BuildTimings.Span span) throws MojoFailureException, MojoExecutionException {
 
         if (new SkipUtil().isSkip(this.getClass())) {
             return;
@@ -120,95 +191,277 @@ public class MqsiDeployMojo extends AbstractMojo {
         File overridesDir = new File(buildDirectory, "iib-overrides");
         File resultsFile = new File(overridesDir, "deployment.results");
         Properties resultsProperties = new Properties();
+        Properties deploymentState = loadDeploymentState();
 
+        // / deployments to the same broker (integration node) are never run at the same time
+        List<Deployment> deployments = new ArrayList<Deployment>();
+        Map<String, List<Deployment>> deploymentsByBroker = new LinkedHashMap<String, List<Deployment>>();
         for (String environment : environments)
         {
+            Deployment deployment = createDeployment(environment, overridesDir);
+            deployments.add(deployment);
+            List<Deployment> brokerDeployments = deploymentsByBroker.get(deployment.brokerKey);
+            if (brokerDeployments == null)
+            {
+                brokerDeployments = new ArrayList<Deployment>();
+                deploymentsByBroker.put(deployment.brokerKey, brokerDeployments);
+            }
+            brokerDeployments.add(deployment);
+        }
 
+        int threads = Math.max(1, Math.min(maxParallelDeployments, deploymentsByBroker.size()));
+        if (threads > 1)
+        {
+            getLog().info("Deploying " + environments.size() + " environments to " + deploymentsByBroker.size() + " brokers, " + threads + " at a time");
+        }
 
-            String barFilename = project.getArtifactId() + "-" + project.getVersion() + "-" + environment + ".bar";
-            File barFile = new File(overridesDir, barFilename);
-            String barFilePath = barFile.getAbsolutePath();
-            String brokerFileName = environment + ".broker";
-            File brokerFile = new File(overridesDir, brokerFileName);
-            String brokerFilePath = brokerFile.getAbsolutePath();
-            String traceFileName = project.getArtifactId() + "-" + project.getVersion() + "-" + environment + "-deploy-trace.txt";
-            String traceFilePath = new File(overridesDir, traceFileName).getAbsolutePath();
-
-            String deployConfigFileName = environment + ".deploy-config";
-            File deployConfigFile = new File(overridesDir, deployConfigFileName);
-            Properties deployConfigProperties = new Properties();
-            if (deployConfigFile.exists())
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<String> failures = Collections.synchronizedList(new ArrayList<String>());
+        try
+        {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            if (threads == 1)
+            {
+                // / one after the other, in the order of the environments
+                futures.add(executor.submit(new BrokerDeployments(deployments, resultsProperties, deploymentState, failures, span)));
+            }
+            else
             {
-                try {
-                    deployConfigProperties.load(new FileInputStream(deployConfigFile));
-                } catch (Exception e) {
-                    throw new MojoFailureException("unable to load property file at :" + deployConfigFile + ";" + e);
+                for (List<Deployment> brokerDeployments : deploymentsByBroker.values())
+                {
+                    futures.add(executor.submit(new BrokerDeployments(brokerDeployments, resultsProperties, deploymentState, failures, span)));
                 }
             }
-
-
-            List<String> params = new ArrayList<String>();
-            addBrokerSpecParams(brokerFile, brokerFilePath, deployConfigProperties, params);
-            String integrationServerName = getProperty("integrationServerName", deployConfigProperties);
-            addParamFor(integrationServerName, "-e", params);
-            addParamFor(barFilePath, "-a", params);
-
-            addParamFor(getProperty("deployedObjects", deployConfigProperties), "-d", params);
-            String completeDeployment = getProperty("completeDeployment", deployConfigProperties);
-            if (completeDeployment != null && completeDeployment.equalsIgnoreCase("true"))
+            for (Future<?> future : futures)
             {
-                params.add("-m");
+                try
+                {
+                    future.get();
+                } catch (ExecutionException e)
+                {
+                    failures.add(e.getCause().toString());
+                } catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new MojoFailureException("interrupted while waiting for the deployments to finish");
+                }
             }
+        } finally
+        {
+            executor.shutdownNow();
+            getLog().info("Storing deployment summary results to " + resultsFile.getAbsolutePath());
+            storeProperties(resultsProperties, resultsFile,
+                    "The key value represents the environmentId while the value represents the file location of the successfully deployed bar file");
+            if (deploymentStateFile != null)
+            {
+                deploymentStateFile.getParentFile().mkdirs();
+                storeProperties(deploymentState, deploymentStateFile,
+                        "The SHA-256 and target of the bar file last deployed to each environment of " + project.getArtifactId());
+            }
+        }
 
-            String timeoutSecs = getProperty("timeoutSecs", deployConfigProperties);
-            if (timeoutSecs != null)
+        if (!failures.isEmpty())
+        {
+            if (failures.size() == 1)
             {
-                addParamFor(timeoutSecs, "-s", params);
-                addParamFor(timeoutSecs, "-w", params);
+                throw new MojoFailureException(failures.get(0));
             }
-            addParamFor(traceFilePath, "-v", params);
+            String message = failures.size() + " deployments failed:";
+            for (String failure : failures)
+            {
+                message += "\n  " + failure;
+            }
+            throw new MojoFailureException(message);
+        }
+
+    }
 
+
+    /**
+     * @return the mqsideploy parameters of the given environment, along with the broker it deploys to
+     */
+    private Deployment createDeployment(String environment, File overridesDir) throws MojoFailureException
+    {
+        String barFilename = project.getArtifactId() + "-" + project.getVersion() + "-" + environment + ".bar";
+        File barFile = new File(overridesDir, barFilename);
+        String barFilePath = barFile.getAbsolutePath();
+        String brokerFileName = environment + ".broker";
+        File brokerFile = new File(overridesDir, brokerFileName);
+        String brokerFilePath = brokerFile.getAbsolutePath();
+        String traceFileName = project.getArtifactId() + "-" + project.getVersion() + "-" + environment + "-deploy-trace.txt";
+        String traceFilePath = new File(overridesDir, traceFileName).getAbsolutePath();
+
+        String deployConfigFileName = environment + ".deploy-config";
+        File deployConfigFile = new File(overridesDir, deployConfigFileName);
+        Properties deployConfigProperties = new Properties();
+        if (deployConfigFile.exists())
+        {
             try {
+                deployConfigProperties.load(new FileInputStream(deployConfigFile));
+            } catch (Exception e) {
+                throw new MojoFailureException("unable to load property file at :" + deployConfigFile + ";" + e);
+            }
+        }
 
-                new MqsiCommandLauncher().execute(
-                        getLog(),
-                        pathToMqsiProfileScript,
-                        mqsiPrefixCommands,
-                        MqsiCommand.mqsideploy,
-                        params.toArray(new String[params.size()]),
-                        mqsiDeployReplacementCommand
-                        );
-                resultsProperties.setProperty(environment, barFilePath);
-
-            } catch (Exception e)
-            {
 
-                throw new MojoFailureException(e.toString());
+        List<String> params = new ArrayList<String>();
+        addBrokerSpecParams(brokerFile, brokerFilePath, deployConfigProperties, params);
+        String integrationServerName = getProperty("integrationServerName", deployConfigProperties);
+        addParamFor(integrationServerName, "-e", params);
+        addParamFor(barFilePath, "-a", params);
+
+        String deployedObjects = getProperty("deployedObjects", deployConfigProperties);
+        addParamFor(deployedObjects, "-d", params);
+        String completeDeployment = getProperty("completeDeployment", deployConfigProperties);
+        if (completeDeployment != null && completeDeployment.equalsIgnoreCase("true"))
+        {
+            params.add("-m");
+        }
+
+        String timeoutSecs = getProperty("timeoutSecs", deployConfigProperties);
+        if (timeoutSecs != null)
+        {
+            addParamFor(timeoutSecs, "-s", params);
+            addParamFor(timeoutSecs, "-w", params);
+        }
+        addParamFor(traceFilePath, "-v", params);
+
+        Deployment deployment = new Deployment();
+        deployment.environment = environment;
+        deployment.barFilePath = barFilePath;
+        deployment.brokerKey = getBrokerKey(brokerFile, deployConfigProperties);
+        deployment.target = deployment.brokerKey + "|" + integrationServerName + "|" + deployedObjects + "|" + completeDeployment;
+        deployment.params = params;
+        return deployment;
+    }
+
+
+    private void deploy(Deployment deployment) throws MojoFailureException
+    {
+        try {
+
+            MqsiCommandLauncher launcher = new MqsiCommandLauncher(reuseMqsiEnvironment);
+            launcher.setFailFast(failFastOnBipErrors);
+            launcher.setFatalBipCodes(Arrays.asList(DirectoriesUtil.getFilesAndRegexes(fatalBipCodes)));
+            launcher.execute(
+                    getLog(),
+                    pathToMqsiProfileScript,
+                    mqsiPrefixCommands,
+                    MqsiCommand.mqsideploy,
+                    deployment.params.toArray(new String[deployment.params.size()]),
+                    mqsiDeployReplacementCommand
+                    );
+
+        } catch (Exception e)
+        {
+
+            throw new MojoFailureException(e.toString());
+        }
+    }
+
+
+    /**
+     * @return the recorded deployments, empty if there are none
+     */
+    private Properties loadDeploymentState()
+    {
+        Properties deploymentState = new Properties();
+        if (deploymentStateFile == null || !deploymentStateFile.exists())
+        {
+            return deploymentState;
+        }
+        try
+        {
+            FileInputStream fis = new FileInputStream(deploymentStateFile);
+            try
+            {
+                deploymentState.load(fis);
             } finally
             {
+                fis.close();
+            }
+        } catch (IOException e)
+        {
+            getLog().warn("unable to read the deployment state " + deploymentStateFile.getAbsolutePath() + "; all environments are deployed: " + e);
+            deploymentState.clear();
+        }
+        return deploymentState;
+    }
 
-                try
-                {
-                    FileOutputStream fos = new FileOutputStream(resultsFile);
-                    getLog().info("Storing deployment summary results to " + resultsFile.getAbsolutePath());
-                    String comments = "The key value represents the environmentId while the value represents the file location of the successfully deployed bar file";
-                    resultsProperties.store(fos, comments);
-                    fos.flush();
-                    fos.close();
-
-                } catch (Exception ignore)
-                {
 
-                }
+    /**
+     * @return true if unchanged deployments are skipped and the bar file was already deployed to the environment's target,
+     *         as recorded in the deployment state
+     */
+    private boolean isDeployed(Deployment deployment, Properties deploymentState)
+    {
+        if (!skipUnchangedDeployments)
+        {
+            return false;
+        }
+        return deployment.sha256.equals(deploymentState.getProperty(deployment.environment + ".sha256"))
+                && deployment.target.equals(deploymentState.getProperty(deployment.environment + ".target"));
+    }
 
 
+    /**
+     * writes the properties in one go, through a temporary file, so that readers never see a partially written file
+     */
+    private void storeProperties(Properties properties, File file, String comments)
+    {
+        File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        try
+        {
+            FileOutputStream fos = new FileOutputStream(tempFile);
+            try
+            {
+                properties.store(fos, comments);
+                fos.flush();
+            } finally
+            {
+                fos.close();
+            }
+            if (file.exists() && !file.delete() || !tempFile.renameTo(file))
+            {
+                getLog().warn("unable to store " + file.getAbsolutePath());
             }
 
+        } catch (Exception e)
+        {
+            getLog().warn("unable to store " + file.getAbsolutePath() + ": " + e);
+        } finally
+        {
+            tempFile.delete();
         }
+    }
 
 
+    /**
+     * @return a key identifying the broker (integration node) an environment deploys to
+     */
+    private String getBrokerKey(File brokerFile, Properties deployConfigProperties)
+    {
+        String brokerName = getProperty("brokerName", deployConfigProperties);
+        if (brokerName != null)
+        {
+            return "brokerName:" + brokerName.trim();
+        }
+        if (brokerFile.exists())
+        {
+            try
+            {
+                // / environments can use different .broker files for the same broker, so compare their content
+                return "broker:" + FileUtils.readFileToString(brokerFile).replaceAll("\\s+", " ").trim();
+            } catch (IOException e)
+            {
+                return "brokerFile:" + brokerFile.getAbsolutePath();
+            }
+        }
+        return "qMgr:" + getProperty("ipAddress", deployConfigProperties) + ":" + getProperty("port", deployConfigProperties) + ":"
+                + getProperty("qMgr", deployConfigProperties);
     }
 
+
     private void addBrokerSpecParams(File brokerFile, String brokerFilePath, Properties deployConfigProperties, List<String> params) {
         String brokerName = getProperty("brokerName", deployConfigProperties);
 
@@ -223,7 +476,7 @@ public class MqsiDeployMojo extends AbstractMojo {
         else
         {
             String ipAddress = getProperty("ipAddress", deployConfigProperties);
-            String port = getProperty("ipAddress", deployConfigProperties);
+            String port = getProperty("port", deployConfigProperties);
             String qMgr = getProperty("qMgr", deployConfigProperties);
             addParamFor(ipAddress, "-i", params);
             addParamFor(port, "-p", params);
@@ -298,4 +551,86 @@ public class MqsiDeployMojo extends AbstractMojo {
     }
 
 
+
+    private static class Deployment
+    {
+        String environment;
+        String barFilePath;
+        String brokerKey;
+        // / the broker, integration server and options the bar is deployed with
+        String target;
+        String sha256;
+        List<String> params;
+    }
+
+
+    /**
+     * deploys the environments of one broker (or all environments when deploying serially), one after the other
+     */
+    private class BrokerDeployments implements Runnable
+    {
+        private final List<Deployment> deployments;
+        private final Properties resultsProperties;
+        private final Properties deploymentState;
+        private final List<String> failures;
+        private final BuildTimings.Span span;
+
+        BrokerDeployments(List<Deployment> deployments, Properties resultsProperties, Properties deploymentState, List<String> failures,
+                BuildTimings.Span span)
+        {
+            this.deployments = deployments;
+            this.resultsProperties = resultsProperties;
+            this.deploymentState = deploymentState;
+            this.failures = failures;
+            this.span = span;
+        }
+
+        public void run()
+        {
+            for (Deployment deployment : deployments)
+            {
+                // / as with a serial deployment, nothing new is started once a deployment failed
+                if (!failures.isEmpty())
+                {
+                    getLog().warn("Skipping the deployment of " + deployment.environment + " after a failed deployment");
+                    continue;
+                }
+                BuildTimings.Span step = span.step("deploy " + deployment.environment);
+                try
+                {
+                    deployment.sha256 = DigestUtil.digest(new File(deployment.barFilePath), DigestUtil.SHA256);
+                    if (isDeployed(deployment, deploymentState))
+                    {
+                        getLog().info("Skipping the deployment of " + deployment.environment + ": the identical bar file (SHA-256 " + deployment.sha256
+                                + ") is already deployed; use -DskipUnchangedDeployments=false to deploy it anyway");
+                    }
+                    else
+                    {
+                        // / a failed deployment may leave the integration server in any state
+                        deploymentState.remove(deployment.environment + ".sha256");
+                        deploy(deployment);
+                        // / Properties is synchronized
+                        deploymentState.setProperty(deployment.environment + ".bar", new File(deployment.barFilePath).getName());
+                        deploymentState.setProperty(deployment.environment + ".target", deployment.target);
+                        deploymentState.setProperty(deployment.environment + ".sha256", deployment.sha256);
+                    }
+                    // / skipped environments are listed as well: their bar file is what is deployed
+                    resultsProperties.setProperty(deployment.environment, deployment.barFilePath);
+                } catch (IOException e)
+                {
+                    String message = "unable to compute the SHA-256 of " + deployment.barFilePath + ": " + e;
+                    getLog().error("Deployment of " + deployment.environment + " failed: " + message);
+                    failures.add(message);
+                } catch (MojoFailureException e)
+                {
+                    getLog().error("Deployment of " + deployment.environment + " failed: " + e.getMessage());
+                    failures.add(e.getMessage());
+                } finally
+                {
+                    step.stop();
+                }
+            }
+        }
+    }
+
 }
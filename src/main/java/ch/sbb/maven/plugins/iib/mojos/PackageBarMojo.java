@@ -6,6 +6,7 @@ import static ch.sbb.maven.plugins.iib.utils.ConfigurationValidator.validatePath
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 
@@ -21,11 +22,16 @@ import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
 import org.codehaus.plexus.util.FileUtils;
 
+import ch.sbb.maven.plugins.iib.utils.BuildTimings;
+import ch.sbb.maven.plugins.iib.utils.BarBuildManifest;
+import ch.sbb.maven.plugins.iib.utils.CompileOnlyRegistry;
 import ch.sbb.maven.plugins.iib.utils.DependenciesManager;
 import ch.sbb.maven.plugins.iib.utils.DirectoriesUtil;
+import ch.sbb.maven.plugins.iib.utils.ForkedPackageBar;
 import ch.sbb.maven.plugins.iib.utils.MqsiCommand;
 import ch.sbb.maven.plugins.iib.utils.MqsiCommandLauncher;
 import ch.sbb.maven.plugins.iib.utils.SkipUtil;
+import ch.sbb.maven.plugins.iib.utils.WorkspaceIndex;
 
 import com.ibm.broker.config.appdev.CommandProcessorPublicWrapper;
 
@@ -60,6 +66,78 @@ public class PackageBarMojo extends AbstractMojo {
     @Parameter(property = "mqsiPrefixCommands", required = false)
     protected String mqsiPrefixCommands;
 
+    /**
+     * whether mqsiprofile is run only once per build. If true, the environment produced by the mqsiprofile
+     * ('pathToMqsiProfileScript' or 'mqsiPrefixCommands') is captured on first use and the mqsi commands are
+     * launched directly with it, across all mojos and modules of the build. The captured environment is also
+     * cached under ${user.home}/.iib-maven-plugin until the mqsiprofile script changes; what it appended or prepended
+     * to PATH-like variables is applied to their values in each following build.
+     */
+    @Parameter(property = "reuseMqsiEnvironment", required = false, defaultValue = "true")
+    protected boolean reuseMqsiEnvironment;
+
+    /**
+     * the file the complete output of mqsicreatebar is written to. If set, the output is logged at debug level only,
+     * which keeps the console (and the build) fast with large workspaces or '-trace'. The last lines of the output are
+     * part of the failure message either way.
+     */
+    @Parameter(property = "mqsiCreateBarOutputFile", required = false)
+    protected File mqsiCreateBarOutputFile;
+
+    /**
+     * whether to stop mqsicreatebar as soon as it reports an error (a BIP message with severity E or S, limited to
+     * 'fatalBipCodes' if set) instead of waiting for it to finish. The build fails with the reported error.
+     */
+    @Parameter(property = "failFastOnBipErrors", required = false, defaultValue = "false")
+    protected boolean failFastOnBipErrors;
+
+    /**
+     * a comma-separated list of the BIP codes that stop mqsicreatebar with 'failFastOnBipErrors', e.g.
+     * 'BIP2087E,BIP0874'. If empty, every error and severe BIP message does.
+     */
+    @Parameter(property = "fatalBipCodes", required = false)
+    protected String fatalBipCodes;
+
+    /**
+     * whether mqsipackagebar runs in a JVM of its own rather than in the one of Maven. The JVM is started on first use,
+     * shared by the modules of the build and stopped at its end, so that packaging has a heap of its own and its classes
+     * are loaded and compiled once.
+     */
+    @Parameter(property = "forkPackageBar", required = false, defaultValue = "false")
+    protected boolean forkPackageBar;
+
+    /**
+     * the arguments of the JVM mqsipackagebar runs in with 'forkPackageBar', separated by spaces
+     */
+    @Parameter(property = "packageBarJvmArgs", required = false, defaultValue = ForkedPackageBar.DEFAULT_JVM_ARGS)
+    protected String packageBarJvmArgs;
+
+    /**
+     * the number of bar files the JVM of 'forkPackageBar' packages at the same time, for the modules built in parallel;
+     * the number of available processors if 0. The other modules wait for their turn.
+     *
+     * Values above 1 are at your own risk: the IBM packaging classes are not documented to be thread-safe, and the bar
+     * files packaged at the same time share the heap of 'packageBarJvmArgs'.
+     */
+    @Parameter(property = "packageBarThreads", required = false, defaultValue = "1")
+    protected int packageBarThreads;
+
+    /**
+     * the time in seconds the JVM of 'forkPackageBar' is given to package a bar file. If it takes longer, the JVM is
+     * considered stuck: the build fails and the JVM is stopped.
+     */
+    @Parameter(property = "packageBarTimeout", required = false, defaultValue = ForkedPackageBar.DEFAULT_TIMEOUT)
+    protected long packageBarTimeout;
+
+    /**
+     * whether 'mqsicreatebar -compileOnly' is run once for the modules sharing a workspace rather than by each of them.
+     * The projects compiled are recorded, and a later module compiles the workspace again only if one of its projects
+     * was not compiled or changed since, as told by the modification times of its files. Defaults to true, which
+     * changes the behavior of existing builds: set it to false to compile the workspace in every module as before.
+     */
+    @Parameter(property = "batchCompileOnly", required = false, defaultValue = "true")
+    protected boolean batchCompileOnly;
+
     @Parameter(property = "mqsiCreateBarReplacementCommand", required = false, defaultValue = "")
     protected String mqsiCreateBarReplacementCommand;
 
@@ -74,6 +152,14 @@ public class PackageBarMojo extends AbstractMojo {
     @Parameter(property = "barName", defaultValue = "${project.build.directory}/${project.artifactId}-${project.version}.bar", required = true)
     protected File barName;
 
+    /**
+     * whether an existing bar file is reused when the workspace projects it is built from are unchanged. If true, a
+     * content-hash manifest of the projects' files and the build parameters is stored next to 'barName' ('barName'.inputs)
+     * and mqsicreatebar is skipped as long as the manifest and the bar file itself are unchanged.
+     */
+    @Parameter(property = "incrementalBarBuild", required = false, defaultValue = "true")
+    protected boolean incrementalBarBuild;
+
     /**
      * The name of the trace file to use when packaging bar files
      */
@@ -225,11 +311,11 @@ public class PackageBarMojo extends AbstractMojo {
         DirectoriesUtil util = new DirectoriesUtil();
         try
         {
-            // / the better approach is simply to rename the pom.xml files as pom-xml-temp.txt
-            // / and run maven with a "mvn [goal] -f pom.xml.txt"
+            // / the pom.xml files are renamed to pom-xml-temp.txt while mqsicreatebar runs; a build killed
+            // / in the meantime has them restored by the next one (see DirectoriesUtil)
             util.renamePomXmlFiles(workspace, getLog());
 
-            new MqsiCommandLauncher().execute(
+            createMqsiCommandLauncher().execute(
                     getLog(),
                     pathToMqsiProfileScript,
                     mqsiPrefixCommands,
@@ -261,6 +347,17 @@ public class PackageBarMojo extends AbstractMojo {
     }
 
     public void execute() throws MojoFailureException, MojoExecutionException {
+        BuildTimings.Span span = BuildTimings.get(project, getLog()).start("package-bar");
+        try
+        {
+            packageBars(span);
+        } finally
+        {
+            span.stop();
+        }
+    }
+
+    private void packageBars(BuildTimings.Span span) throws MojoFailureException, MojoExecutionException {
         if (new SkipUtil().isSkip(this.getClass())) {
             return;
         }
@@ -274,19 +371,48 @@ public class PackageBarMojo extends AbstractMojo {
                 barDir.getParentFile().mkdirs();
             }
 
-            List<String> params = null;
+            List<String> params = create ? constructCreateBarParams() : constructPackageBarParams();
+
+            File manifestFile = BarBuildManifest.getManifestFile(barName);
+            BarBuildManifest manifest = null;
+            if (incrementalBarBuild)
+            {
+                BuildTimings.Span step = span.step("check-manifest");
+                boolean upToDate;
+                try
+                {
+                    manifest = BarBuildManifest.compute(workspace, dependenciesManager.getReferencedProjects(), params);
+                    upToDate = manifest.isUpToDate(barName, manifestFile, getLog());
+                } finally
+                {
+                    step.stop();
+                }
+                if (upToDate)
+                {
+                    getLog().info("The projects of bar file " + barName + " are unchanged since it was built, reusing it");
+                    return;
+                }
+            }
+            // / a failed build must not leave a manifest that matches its inputs
+            manifestFile.delete();
+
             if (create)
             {
                 getLog().info("Creating bar file: " + barName);
-                params = constructCreateBarParams();
                 executeMqsiCreateBar(params);
             }
             else
             {
                 getLog().info("Packaging bar file: " + barName);
-                params = constructPackageBarParams();
                 executeMqsiPackageBar(params);
             }
+            // / the build writes to the projects (e.g. compiled classes)
+            WorkspaceIndex.invalidate(workspace);
+
+            if (manifest != null)
+            {
+                manifest.store(barName, manifestFile);
+            }
         } catch (Exception e)
         {
 
@@ -331,7 +457,24 @@ public class PackageBarMojo extends AbstractMojo {
             {
                 getLog().info(param);
             }
-            new CommandProcessorPublicWrapper(paramsArray).process();
+            BuildTimings.Span span = BuildTimings.step(forkPackageBar ? ForkedPackageBar.STEP_NAME : "packagebar");
+            try
+            {
+                if (forkPackageBar)
+                {
+                    ForkedPackageBar.stopAtSessionEnd(session);
+                    ForkedPackageBar worker = ForkedPackageBar.getInstance(packageBarJvmArgs, packageBarThreads);
+                    worker.setTimeout(packageBarTimeout * 1000);
+                    worker.packageBar(getLog(), paramsArray);
+                }
+                else
+                {
+                    new CommandProcessorPublicWrapper(paramsArray).process();
+                }
+            } finally
+            {
+                span.stop();
+            }
 
         } finally
         {
@@ -342,6 +485,16 @@ public class PackageBarMojo extends AbstractMojo {
     }
 
 
+    private MqsiCommandLauncher createMqsiCommandLauncher()
+    {
+        MqsiCommandLauncher launcher = new MqsiCommandLauncher(reuseMqsiEnvironment);
+        launcher.setOutputFile(mqsiCreateBarOutputFile);
+        launcher.setFailFast(failFastOnBipErrors);
+        launcher.setFatalBipCodes(Arrays.asList(DirectoriesUtil.getFilesAndRegexes(fatalBipCodes)));
+        return launcher;
+    }
+
+
     private void executeCreateBarCompileOnly() throws MojoFailureException {
         // / To compile your message sets and Java code, complete one of the following steps
         // Enter the following command:
@@ -357,14 +510,27 @@ public class PackageBarMojo extends AbstractMojo {
             getLog().info(message);
         }
 
-        List<String> compileOnlyParams = constructCreateBarCompileOnlyParams();
-        new MqsiCommandLauncher().execute(
-                getLog(),
-                pathToMqsiProfileScript,
-                mqsiPrefixCommands,
-                MqsiCommand.mqsicreatebar,
-                compileOnlyParams.toArray(new String[compileOnlyParams.size()]),
-                mqsiCreateBarCompileOnlyReplacementCommand);
+        if (batchCompileOnly)
+        {
+            CompileOnlyRegistry registry = CompileOnlyRegistry.get(workspace, session.getRequest().getStartTime());
+            // / modules built in parallel wait for the compilation under way
+            synchronized (registry)
+            {
+                if (registry.isCompiled(dependenciesManager.getReferencedProjects(), getLog()))
+                {
+                    getLog().info("The projects of " + project.getName() + " were compiled by an earlier module, skipping mqsicreatebar -compileOnly");
+                }
+                else
+                {
+                    executeCompileOnly();
+                    registry.recordCompilation(getLog());
+                }
+            }
+        }
+        else
+        {
+            executeCompileOnly();
+        }
 
         // / stick the dependent jars into the root of the application
         Collection<String> javaProjects = dependenciesManager.getDependentJavaProjects();
@@ -385,6 +551,17 @@ public class PackageBarMojo extends AbstractMojo {
 
     }
 
+    private void executeCompileOnly() throws MojoFailureException {
+        List<String> compileOnlyParams = constructCreateBarCompileOnlyParams();
+        createMqsiCommandLauncher().execute(
+                getLog(),
+                pathToMqsiProfileScript,
+                mqsiPrefixCommands,
+                MqsiCommand.mqsicreatebar,
+                compileOnlyParams.toArray(new String[compileOnlyParams.size()]),
+                mqsiCreateBarCompileOnlyReplacementCommand);
+    }
+
     // private void jarDependentJars()
     // {
     //
@@ -30,6 +30,8 @@ import org.apache.maven.project.MavenProject;
 import org.codehaus.plexus.util.FileUtils;
 import org.codehaus.plexus.util.IOUtil;
 
+import ch.sbb.maven.plugins.iib.utils.BuildTimings;
+
 /**
  * Packages a built Maven Project with &lt;packaging&gt; iib-bar into the Maven .zip file for (Maven) installation / deployment
  * 
@@ -63,9 +65,14 @@ public class PackageIibBarMojo extends AbstractMojo {
     protected BuildPluginManager buildPluginManager;
 
     public void execute() throws MojoFailureException, MojoExecutionException {
-
-        packageIibBarArtifact();
-
+        BuildTimings.Span span = BuildTimings.get(project, getLog()).start("package-iib-bar");
+        try
+        {
+            packageIibBarArtifact();
+        } finally
+        {
+            span.stop();
+        }
     }
 
     private void packageIibBarArtifact() throws MojoFailureException, MojoExecutionException {
@@ -29,6 +29,8 @@ import org.apache.maven.project.MavenProject;
 import org.codehaus.plexus.util.FileUtils;
 import org.codehaus.plexus.util.IOUtil;
 
+import ch.sbb.maven.plugins.iib.utils.BuildTimings;
+
 /**
  * Creates a .zip file from a iib-classloader Project which contains the
  * 
@@ -62,9 +64,14 @@ public class PackageIibClassloaderMojo extends AbstractMojo {
     protected BuildPluginManager buildPluginManager;
 
     public void execute() throws MojoFailureException, MojoExecutionException {
-
-        packageIibBarArtifact();
-
+        BuildTimings.Span span = BuildTimings.get(project, getLog()).start("package-iib-classloader");
+        try
+        {
+            packageIibBarArtifact();
+        } finally
+        {
+            span.stop();
+        }
     }
 
     private void packageIibBarArtifact() throws MojoFailureException, MojoExecutionException {
@@ -33,6 +33,8 @@ import org.apache.maven.project.MavenProject;
 import org.codehaus.plexus.util.FileUtils;
 import org.codehaus.plexus.util.IOUtil;
 
+import ch.sbb.maven.plugins.iib.utils.BuildTimings;
+
 /**
  * Creates a .par file from a iib-par Project
  * 
@@ -66,9 +68,14 @@ public class PackageIibParMojo extends AbstractMojo {
     protected BuildPluginManager buildPluginManager;
 
     public void execute() throws MojoFailureException, MojoExecutionException {
-
-        packageIibBarArtifact();
-
+        BuildTimings.Span span = BuildTimings.get(project, getLog()).start("package-par");
+        try
+        {
+            packageIibBarArtifact();
+        } finally
+        {
+            span.stop();
+        }
     }
 
     private void packageIibBarArtifact() throws MojoFailureException, MojoExecutionException {
@@ -30,6 +30,8 @@ import org.apache.maven.project.MavenProject;
 import org.codehaus.plexus.util.FileUtils;
 import org.codehaus.plexus.util.IOUtil;
 
+import ch.sbb.maven.plugins.iib.utils.BuildTimings;
+
 /**
  * Packages a WebSphere Message Broker Project.
  * 
@@ -63,6 +65,17 @@ public class PackageIibSrcMojo extends AbstractMojo {
     private File buildAssemblyFile;
 
     public void execute() throws MojoExecutionException, MojoFailureException {
+        BuildTimings.Span span = BuildTimings.get(project, getLog()).start("package-iib-src");
+        try
+        {
+            packageIibSrc();
+        } finally
+        {
+            span.stop();
+        }
+    }
+
+    private void packageIibSrc() throws MojoExecutionException, MojoFailureException {
         InputStream is = this.getClass().getResourceAsStream("/assemblies/iib-src-project.xml");
         FileOutputStream fos;
         buildAssemblyFile.getParentFile().mkdirs();
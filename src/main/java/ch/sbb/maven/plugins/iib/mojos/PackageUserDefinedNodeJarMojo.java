@@ -25,6 +25,8 @@ import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
 import org.codehaus.plexus.util.FileUtils;
 
+import ch.sbb.maven.plugins.iib.utils.BuildTimings;
+
 /**
  * Creates a .zip file from a iib-classloader Project which contains the
  * 
@@ -52,6 +54,17 @@ public class PackageUserDefinedNodeJarMojo extends AbstractMojo {
     protected BuildPluginManager buildPluginManager;
 
     public void execute() throws MojoFailureException, MojoExecutionException {
+        BuildTimings.Span span = BuildTimings.get(project, getLog()).start("package-udn-jar");
+        try
+        {
+            packageUserDefinedNodeJar();
+        } finally
+        {
+            span.stop();
+        }
+    }
+
+    private void packageUserDefinedNodeJar() throws MojoFailureException, MojoExecutionException {
 
         executeMojo(plugin(groupId("org.apache.maven.plugins"), artifactId("maven-jar-plugin"), version("2.6")), goal("jar"),
                 configuration(element(name("finalName"), project.getArtifactId()), element(name("classesDirectory"), "bin")),
@@ -1,14 +1,7 @@
 package ch.sbb.maven.plugins.iib.mojos;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.io.FileFilter;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.maven.plugin.AbstractMojo;
@@ -19,6 +12,9 @@ import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
 
+import ch.sbb.maven.plugins.iib.utils.BuildTimings;
+import ch.sbb.maven.plugins.iib.utils.ParallelZipWriter;
+
 
 /**
  * creates a zipped-up IIB9 project.
@@ -35,10 +31,26 @@ public class PackageZipMojo extends AbstractMojo {
     protected String zipFilePath;
 
 
-    private File projectParentDirectory;
+    /**
+     * The number of threads compressing the files. Defaults to the number of available processors.
+     */
+    @Parameter(property = "zipThreads", defaultValue = "0", required = false)
+    protected int zipThreads;
 
 
     public void execute() throws MojoFailureException, MojoExecutionException
+    {
+        BuildTimings.Span span = BuildTimings.get(project, getLog()).start("package-zip");
+        try
+        {
+            packageZip();
+        } finally
+        {
+            span.stop();
+        }
+    }
+
+    private void packageZip() throws MojoFailureException, MojoExecutionException
     {
         try
         {
@@ -61,16 +73,21 @@ public class PackageZipMojo extends AbstractMojo {
             FileUtils.cleanDirectory(buildDirectory);
 
 
-            projectParentDirectory = project.getBasedir().getParentFile();
-
-            List<File> fileList = new ArrayList<File>();
-            getLog().info("Getting references to project artifacts in " + project.getBasedir().getCanonicalPath());
-
-            fileList.add(project.getBasedir());
-            getAllFiles(project.getBasedir(), fileList);
-
+            // / the build directory is left out, wherever it occurs in the project
+            final String buildDirectoryName = buildDirectory.getName();
+            FileFilter filter = new FileFilter() {
+                public boolean accept(File file)
+                {
+                    return !(file.isDirectory() && file.getName().equals(buildDirectoryName));
+                }
+            };
 
-            writeZipFile(new File(zipFilePath), fileList);
+            getLog().info("zipping the project artifacts in " + project.getBasedir().getAbsolutePath());
+            long startTime = System.currentTimeMillis();
+            ParallelZipWriter writer = new ParallelZipWriter(zipThreads, getLog());
+            writer.zipDirectory(project.getBasedir(), filter, new File(zipFilePath));
+            getLog().info(writer.getEntries() + " files (" + writer.getSize() + " bytes) zipped in " + (System.currentTimeMillis() - startTime)
+                    + "ms using " + writer.getThreads() + " thread(s)");
 
             getLog().info("project zipped up to " + zipFilePath);
 
@@ -84,83 +101,4 @@ public class PackageZipMojo extends AbstractMojo {
 
     }
 
-
-    public void getAllFiles(File dir, List<File> fileList) {
-        try {
-            File[] files = dir.listFiles();
-            for (File file : files)
-            {
-                // / ignore the project build directory
-                File buildDirectory = new File(project.getBuild().getDirectory());
-                if (file.isDirectory() && file.getName().equals(buildDirectory.getName()))
-                {
-                    continue;
-                }
-
-                fileList.add(file);
-                if (file.isDirectory()) {
-                    getLog().info("directory:" + file.getCanonicalPath());
-                    getAllFiles(file, fileList);
-                } else {
-                    getLog().info("  file:" + file.getCanonicalPath());
-                }
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-    }
-
-
-    public void writeZipFile(File zipFile, List<File> fileList) {
-
-        try {
-
-
-            FileOutputStream fos = new FileOutputStream(zipFile);
-            ZipOutputStream zos = new ZipOutputStream(fos);
-
-            for (File file : fileList) {
-                if (!file.isDirectory()) { // we add only files, not directories
-                    addToZip(file, zos);
-                }
-            }
-
-            zos.close();
-            fos.close();
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-    }
-
-
-    public void addToZip(File file, ZipOutputStream zos) throws FileNotFoundException,
-            IOException {
-
-        FileInputStream fis = new FileInputStream(file);
-
-        int startIndex = projectParentDirectory == null ? 0 : projectParentDirectory.getCanonicalPath().length() + 1;
-
-
-        // we want the zipEntry's path to be a relative path that is relative
-        // to the directory being zipped, so chop off the rest of the path
-        // directoryToZip.getCanonicalPath().length() + 1,
-
-        String zipFilePath = file.getCanonicalPath().substring(startIndex,
-                file.getCanonicalPath().length());
-        getLog().info("Writing '" + zipFilePath + "' to zip file");
-        ZipEntry zipEntry = new ZipEntry(zipFilePath);
-        zos.putNextEntry(zipEntry);
-
-        byte[] bytes = new byte[1024];
-        int length;
-        while ((length = fis.read(bytes)) >= 0) {
-            zos.write(bytes, 0, length);
-        }
-
-        zos.closeEntry();
-        fis.close();
-    }
-
 }
@@ -31,8 +31,10 @@ import org.eclipse.aether.RepositorySystem;
 import org.eclipse.aether.RepositorySystemSession;
 import org.twdata.maven.mojoexecutor.MojoExecutor.ExecutionEnvironment;
 
+import ch.sbb.maven.plugins.iib.utils.BuildTimings;
 import ch.sbb.maven.plugins.iib.utils.ConfigurationValidator;
 import ch.sbb.maven.plugins.iib.utils.SkipUtil;
+import ch.sbb.maven.plugins.iib.utils.WorkspaceIndex;
 
 /**
  * Unpacks the dependent WebSphere Message Broker Projects.
@@ -91,6 +93,17 @@ public class PrepareBarBuildWorkspaceMojo extends AbstractMojo {
     protected RepositorySystemSession repoSession;
 
     public void execute() throws MojoExecutionException, MojoFailureException {
+        BuildTimings.Span span = BuildTimings.get(project, getLog()).start("prepare-bar-build-workspace");
+        try
+        {
+            prepareBarBuildWorkspace(span);
+        } finally
+        {
+            span.stop();
+        }
+    }
+
+    private void prepareBarBuildWorkspace(BuildTimings.Span span) throws MojoExecutionException, MojoFailureException {
         if (new SkipUtil().isSkip(this.getClass())) {
             return;
         }
@@ -98,10 +111,25 @@ public class PrepareBarBuildWorkspaceMojo extends AbstractMojo {
         validateConfiguration();
 
         // unpack the iib-src dependencies
-        unpackIibCompileDependenciesToWorkspace();
+        BuildTimings.Span step = span.step("unpack-dependencies");
+        try
+        {
+            unpackIibCompileDependenciesToWorkspace();
+        } finally
+        {
+            step.stop();
+        }
 
-        copyJarDependencies();
+        step = span.step("copy-jar-dependencies");
+        try
+        {
+            copyJarDependencies();
+        } finally
+        {
+            step.stop();
+        }
 
+        WorkspaceIndex.invalidate(workspace);
 
     }
 
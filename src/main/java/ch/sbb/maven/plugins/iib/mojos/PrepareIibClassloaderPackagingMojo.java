@@ -26,6 +26,8 @@ import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.project.MavenProject;
 import org.codehaus.plexus.util.FileUtils;
 
+import ch.sbb.maven.plugins.iib.utils.BuildTimings;
+
 /**
  * Copies the dependencies into a directory for packaging later
  * 
@@ -61,6 +63,17 @@ public class PrepareIibClassloaderPackagingMojo extends AbstractMojo {
     protected File classloaderPath;
 
     public void execute() throws MojoExecutionException, MojoFailureException {
+        BuildTimings.Span span = BuildTimings.get(project, getLog()).start("prepare-iib-classloader-packaging");
+        try
+        {
+            prepareIibClassloaderPackaging();
+        } finally
+        {
+            span.stop();
+        }
+    }
+
+    private void prepareIibClassloaderPackaging() throws MojoExecutionException, MojoFailureException {
         // mvn
         // org.apache.maven.plugins:maven-dependency-plugin:2.1:copy-dependencies
         // -DoutputDirectory=${project.build.directory}/iib/classloader
@@ -26,6 +26,8 @@ import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.project.MavenProject;
 import org.codehaus.plexus.util.FileUtils;
 
+import ch.sbb.maven.plugins.iib.utils.BuildTimings;
+
 /**
  * Copies the dependencies into a directory for packaging later
  * 
@@ -55,6 +57,17 @@ public class PrepareIibParPackagingMojo extends AbstractMojo {
     protected BuildPluginManager buildPluginManager;
 
     public void execute() throws MojoExecutionException, MojoFailureException {
+        BuildTimings.Span span = BuildTimings.get(project, getLog()).start("prepare-iib-par-packaging");
+        try
+        {
+            prepareIibParPackaging();
+        } finally
+        {
+            span.stop();
+        }
+    }
+
+    private void prepareIibParPackaging() throws MojoExecutionException, MojoFailureException {
         // mvn
         // org.apache.maven.plugins:maven-dependency-plugin:2.1:copy-dependencies
         // -DoutputDirectory=${project.build.directory}/iib/classloader
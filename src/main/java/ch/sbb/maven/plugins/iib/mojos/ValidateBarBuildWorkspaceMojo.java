@@ -13,8 +13,11 @@ import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.project.MavenProject;
 
+import ch.sbb.maven.plugins.iib.utils.BuildTimings;
 import ch.sbb.maven.plugins.iib.utils.EclipseProjectUtils;
+import ch.sbb.maven.plugins.iib.utils.ProjectDependencyGraph;
 import ch.sbb.maven.plugins.iib.utils.SkipUtil;
+import ch.sbb.maven.plugins.iib.utils.WorkspaceIndex;
 
 /**
  * Unpacks the dependent WebSphere Message Broker Projects.
@@ -52,30 +55,32 @@ public class ValidateBarBuildWorkspaceMojo extends AbstractMojo {
 
 
     public void execute() throws MojoExecutionException, MojoFailureException {
+        BuildTimings.Span span = BuildTimings.get(project, getLog()).start("validate-bar-build-workspace");
+        try
+        {
+            validateBarBuildWorkspace();
+        } finally
+        {
+            span.stop();
+        }
+    }
+
+    private void validateBarBuildWorkspace() throws MojoExecutionException, MojoFailureException {
         if (new SkipUtil().isSkip(this.getClass())) {
             return;
         }
 
-        // loop through the project directories
-        File[] projects = workspace.listFiles();
-
-        for (File projectDirectory : projects) {
+        // loop through the project directories (hidden directories such as .metadata are not indexed)
+        WorkspaceIndex index = WorkspaceIndex.get(workspace, getLog());
+        ProjectDependencyGraph graph = new ProjectDependencyGraph(workspace, getLog());
 
-            if (!projectDirectory.isDirectory()) {
-                continue;
-            }
+        for (WorkspaceIndex.ProjectInfo project : index.getProjects()) {
 
-            String projectDirectoryName = projectDirectory.getName();
-
-            if (projectDirectoryName.startsWith("."))
-            {
-                getLog().info("ignoring the directory " + projectDirectoryName + " in the workspace.");
-                continue;
-            }
+            File projectDirectory = project.getDirectory();
+            String projectDirectoryName = project.getName();
 
             // / ignore any directory that doesn not have a .project file in it
-            File dotProjectFile = new File(projectDirectory, ".project");
-            if (!dotProjectFile.exists())
+            if (!project.hasProjectFile())
             {
                 getLog().info("The project directory " + projectDirectory.getName() + " does not have a .project file associated with it. skipping verification...");
                 continue;
@@ -90,6 +95,17 @@ public class ValidateBarBuildWorkspaceMojo extends AbstractMojo {
             if (!projectDirectoryName.equals(eclipseProjectName)) {
                 throw new MojoFailureException("The Project Directory Name ('" + projectDirectoryName + "') is not the same as the Project Name (in .project file) ('" + eclipseProjectName + "')");
             }
+
+            try
+            {
+                graph.getReferencedProjects(projectDirectoryName);
+            } catch (MojoFailureException e)
+            {
+                getLog().warn("unable to resolve the project references of " + projectDirectoryName + ": " + e.getMessage());
+            }
         }
+
+        // / warns about reference cycles
+        getLog().debug("workspace projects in build order: " + graph.getBuildOrder());
     }
 }
\ No newline at end of file
@@ -8,6 +8,7 @@ import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
 
+import ch.sbb.maven.plugins.iib.utils.BuildTimings;
 import ch.sbb.maven.plugins.iib.utils.EclipseProjectUtils;
 
 /**
@@ -30,6 +31,17 @@ public class ValidateProjectMojo extends AbstractMojo {
     protected MavenProject project;
 
     public void execute() throws MojoFailureException {
+        BuildTimings.Span span = BuildTimings.get(project, getLog()).start("validate-project");
+        try
+        {
+            validateProject();
+        } finally
+        {
+            span.stop();
+        }
+    }
+
+    private void validateProject() throws MojoFailureException {
 
         File projectDirectory = project.getBasedir();
         String projectDirectoryName = projectDirectory.getName();
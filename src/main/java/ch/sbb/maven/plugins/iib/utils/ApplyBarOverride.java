@@ -4,8 +4,10 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.Vector;
 
 import com.ibm.broker.config.proxy.BarFile;
 import com.ibm.broker.config.proxy.CompletionCodeType;
@@ -24,18 +26,32 @@ public class ApplyBarOverride
 {
 
     public static Enumeration<LogEntry> applyBarOverride(String srcBarFile, String propertiesFile, String targetBarFile) throws IOException {
+        return applyBarOverride(BarFile.loadBarFile(srcBarFile), propertiesFile, targetBarFile);
+    }
+
+    /**
+     * applies the overrides to a bar file held in memory, without reading the source bar from disk again
+     */
+    public static Enumeration<LogEntry> applyBarOverride(BarImage srcBar, String propertiesFile, String targetBarFile) throws IOException {
+        return applyBarOverride(srcBar.newBarFile(), propertiesFile, targetBarFile);
+    }
+
+    private static Enumeration<LogEntry> applyBarOverride(BarFile barfile, String propertiesFile, String targetBarFile) throws IOException {
         CompletionCodeType completionCode = CompletionCodeType.success;
-        BarFile barfile = null;
         Enumeration<LogEntry> logMessages = null;
 
-        barfile = BarFile.loadBarFile(srcBarFile);
-
         if (propertiesFile != null)
         {
             logMessages = applyOverridesFromFile(barfile, propertiesFile);
             // logMessages = null;
         }
-        completionCode = getCompletionCode(logMessages);
+        if (logMessages != null)
+        {
+            // / the completion code check consumes the enumeration; keep the entries for the caller's trace file
+            Vector<LogEntry> entries = new Vector<LogEntry>(Collections.list(logMessages));
+            completionCode = getCompletionCode(entries.elements());
+            logMessages = entries.elements();
+        }
         // enumeration = null;
         // }
         if (completionCode == CompletionCodeType.success)
@@ -62,7 +78,11 @@ public class ApplyBarOverride
         return enumeration;
     }
 
-    private static CompletionCodeType getCompletionCode(Enumeration<LogEntry> enumeration) {
+    /**
+     * @param enumeration the log entries of an applybaroverride
+     * @return failure if one of the overridden properties could not be found in the bar file (BIP1145)
+     */
+    public static CompletionCodeType getCompletionCode(Enumeration<LogEntry> enumeration) {
 
         CompletionCodeType completionCode = CompletionCodeType.success;
         if (enumeration != null)
@@ -80,7 +100,7 @@ public class ApplyBarOverride
     }
 
     // TODO Refactor into separate class and re-use for .properties validation
-    private static ConfigurableProperties readPropertiesFile(String propertiesFilename)
+    static ConfigurableProperties readPropertiesFile(String propertiesFilename)
             throws IOException // , ConfigUtilityException
     {
         String commentString = System.getProperty("COMMENT", "#");
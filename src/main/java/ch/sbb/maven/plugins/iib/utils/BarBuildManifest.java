@@ -0,0 +1,240 @@
+package ch.sbb.maven.plugins.iib.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Content-hash manifest of the inputs of a bar build (mqsicreatebar or mqsicreatebar -compileOnly + packagebar).
+ *
+ * The manifest holds a digest of every file of the workspace projects the bar is built from, the parameters of the
+ * build and the digest of the resulting bar file. It is stored next to the bar file, so that a later build can detect
+ * that neither the inputs nor the bar itself have changed and reuse the existing bar instead of running mqsicreatebar
+ * again.
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+public class BarBuildManifest {
+
+    /**
+     * directories holding build output rather than build input; they are not part of the manifest
+     */
+    static final List<String> EXCLUDED_DIRECTORIES = Arrays.asList("target", "bin", ".metadata");
+
+    /**
+     * the temporary name of the pom.xml files while mqsicreatebar runs (see {@link DirectoriesUtil})
+     */
+    static final String TEMP_POM_FILE = DirectoriesUtil.TEMP_POM_FILE;
+
+    private static final String FILE_PREFIX = "file.";
+    private static final String PARAMETER_PREFIX = "parameter.";
+    private static final String BAR_KEY = "bar";
+
+    private final SortedMap<String, String> entries = new TreeMap<String, String>();
+
+
+    BarBuildManifest()
+    {
+        super();
+    }
+
+
+    /**
+     * @param barFile the bar file being built
+     * @return the file holding the manifest of the given bar file
+     */
+    public static File getManifestFile(File barFile)
+    {
+        return new File(barFile.getParentFile(), barFile.getName() + ".inputs");
+    }
+
+
+    /**
+     * computes the manifest of the current build inputs
+     *
+     * @param workspace the workspace containing the projects
+     * @param projectNames the names of the workspace projects the bar is built from
+     * @param parameters the parameters of the build (e.g. the mqsicreatebar parameters)
+     * @return the manifest
+     * @throws IOException if one of the project files cannot be read
+     */
+    public static BarBuildManifest compute(File workspace, Collection<String> projectNames, List<String> parameters) throws IOException
+    {
+        BarBuildManifest manifest = new BarBuildManifest();
+        for (String projectName : projectNames)
+        {
+            File projectDirectory = new File(workspace, projectName);
+            if (!projectDirectory.isDirectory())
+            {
+                // / the project is not (yet) in the workspace - that is an input as well
+                manifest.entries.put(FILE_PREFIX + projectName, "");
+                continue;
+            }
+            manifest.addDirectory(projectDirectory, projectName, projectNames, true);
+        }
+        for (int i = 0; i < parameters.size(); i++)
+        {
+            manifest.entries.put(PARAMETER_PREFIX + i, parameters.get(i));
+        }
+        return manifest;
+    }
+
+
+    private void addDirectory(File directory, String relativePath, Collection<String> projectNames, boolean projectRoot) throws IOException
+    {
+        File[] files = directory.listFiles();
+        if (files == null)
+        {
+            throw new IOException("unable to list the files of " + directory.getAbsolutePath());
+        }
+        for (File file : files)
+        {
+            String name = file.getName();
+            String path = relativePath + "/" + name;
+            if (file.isDirectory())
+            {
+                if (!EXCLUDED_DIRECTORIES.contains(name))
+                {
+                    addDirectory(file, path, projectNames, false);
+                }
+                continue;
+            }
+            if (projectRoot && isBuildOutput(name, projectNames))
+            {
+                continue;
+            }
+            entries.put(FILE_PREFIX + path, digest(file));
+        }
+    }
+
+
+    /**
+     * @return true for the files written into a project's root directory by the build itself: the jars of the java
+     *         projects produced by mqsicreatebar -compileOnly (and copied into the application) and the temporarily
+     *         renamed pom.xml
+     */
+    private static boolean isBuildOutput(String fileName, Collection<String> projectNames)
+    {
+        if (fileName.equals(TEMP_POM_FILE))
+        {
+            return true;
+        }
+        return fileName.endsWith(".jar") && projectNames.contains(fileName.substring(0, fileName.length() - ".jar".length()));
+    }
+
+
+    /**
+     * @param barFile the bar file built from the inputs of this manifest
+     * @param manifestFile the manifest stored by the previous build
+     * @param log the logger
+     * @return true if the previous build had the same inputs and its bar file is still in place, unchanged
+     * @throws IOException if the bar file cannot be read
+     */
+    public boolean isUpToDate(File barFile, File manifestFile, Log log) throws IOException
+    {
+        if (!barFile.isFile() || !manifestFile.isFile())
+        {
+            return false;
+        }
+
+        SortedMap<String, String> stored = new TreeMap<String, String>();
+        Properties properties = new Properties();
+        InputStream in = null;
+        try
+        {
+            in = new FileInputStream(manifestFile);
+            properties.load(in);
+        } catch (IOException e)
+        {
+            log.warn("unable to read the bar build manifest " + manifestFile.getAbsolutePath() + ": " + e);
+            return false;
+        } finally
+        {
+            if (in != null)
+            {
+                in.close();
+            }
+        }
+        for (String key : properties.stringPropertyNames())
+        {
+            stored.put(key, properties.getProperty(key));
+        }
+
+        String barDigest = stored.remove(BAR_KEY);
+        if (!entries.equals(stored))
+        {
+            for (Map.Entry<String, String> entry : entries.entrySet())
+            {
+                if (!entry.getValue().equals(stored.get(entry.getKey())))
+                {
+                    log.info("bar build input changed: " + entry.getKey());
+                    return false;
+                }
+            }
+            log.info("bar build inputs removed since the last build");
+            return false;
+        }
+        if (!digest(barFile).equals(barDigest))
+        {
+            log.info("bar file " + barFile.getAbsolutePath() + " changed since the last build");
+            return false;
+        }
+        return true;
+    }
+
+
+    /**
+     * stores this manifest along with the digest of the bar file built from its inputs
+     *
+     * @param barFile the bar file built from the inputs of this manifest
+     * @param manifestFile the manifest file to write
+     * @throws IOException if the manifest cannot be written
+     */
+    public void store(File barFile, File manifestFile) throws IOException
+    {
+        Properties properties = new Properties();
+        properties.putAll(entries);
+        properties.put(BAR_KEY, digest(barFile));
+
+        File tempFile = new File(manifestFile.getParentFile(), manifestFile.getName() + ".tmp");
+        OutputStream out = new FileOutputStream(tempFile);
+        try
+        {
+            properties.store(out, "inputs of " + barFile.getName());
+        } finally
+        {
+            out.close();
+        }
+        if (manifestFile.exists() && !manifestFile.delete() || !tempFile.renameTo(manifestFile))
+        {
+            tempFile.delete();
+            throw new IOException("unable to write the bar build manifest " + manifestFile.getAbsolutePath());
+        }
+    }
+
+
+    SortedMap<String, String> getEntries()
+    {
+        return entries;
+    }
+
+
+    static String digest(File file) throws IOException
+    {
+        return DigestUtil.digest(file, DigestUtil.SHA1);
+    }
+
+}
@@ -0,0 +1,72 @@
+package ch.sbb.maven.plugins.iib.utils;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+
+import com.ibm.broker.config.proxy.BarFile;
+
+/**
+ * In-memory image of a bar file, read from disk once and shared by the 'ibm' override engine while applying the
+ * overrides of every environment during a mojo execution.
+ *
+ * The IBM BarFile API offers no way to copy a loaded bar, so every environment still gets its own full parse of the
+ * shared bytes ({@link #newBarFile()}); only the disk reads are saved.
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+public class BarImage {
+
+    private final String name;
+    private final byte[] bytes;
+
+
+    BarImage(String name, byte[] bytes)
+    {
+        this.name = name;
+        this.bytes = bytes;
+    }
+
+
+    /**
+     * @param file the bar file
+     * @return the image of the given bar file
+     * @throws IOException if the bar file cannot be read
+     */
+    public static BarImage load(File file) throws IOException
+    {
+        return new BarImage(file.getAbsolutePath(), FileUtils.readFileToByteArray(file));
+    }
+
+
+    /**
+     * @return the (absolute) name of the bar file
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+
+    /**
+     * @return the raw bytes of the bar file; callers must not modify them
+     */
+    public byte[] getBytes()
+    {
+        return bytes;
+    }
+
+
+    /**
+     * @return a new bar file parsed from the in-memory image, owned by the caller (e.g. to apply overrides and save it
+     *         under another name)
+     * @throws IOException if the bar file cannot be parsed
+     */
+    public BarFile newBarFile() throws IOException
+    {
+        return BarFile.loadBarFile(bytes, name);
+    }
+
+}
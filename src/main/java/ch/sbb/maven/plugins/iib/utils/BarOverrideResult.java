@@ -0,0 +1,69 @@
+package ch.sbb.maven.plugins.iib.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+import com.ibm.broker.config.proxy.CompletionCodeType;
+import com.ibm.broker.config.proxy.LogEntry;
+
+/**
+ * The outcome of applying an override properties file to a bar file, independent of the engine used
+ * ({@link ApplyBarOverride} or {@link NativeBarOverride}).
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+public class BarOverrideResult {
+
+    private final boolean success;
+    private final List<String> messages;
+
+
+    public BarOverrideResult(boolean success, List<String> messages)
+    {
+        this.success = success;
+        this.messages = messages;
+    }
+
+
+    /**
+     * @param logEntries the log entries returned by {@link ApplyBarOverride#applyBarOverride}, may be null
+     * @return the result described by the log entries
+     */
+    public static BarOverrideResult fromLogEntries(Enumeration<LogEntry> logEntries)
+    {
+        List<String> messages = new ArrayList<String>();
+        if (logEntries == null)
+        {
+            return new BarOverrideResult(true, messages);
+        }
+        List<LogEntry> entries = Collections.list(logEntries);
+        for (LogEntry entry : entries)
+        {
+            messages.add(entry.toString());
+        }
+        boolean success = ApplyBarOverride.getCompletionCode(Collections.enumeration(entries)) == CompletionCodeType.success;
+        return new BarOverrideResult(success, messages);
+    }
+
+
+    /**
+     * @return false if some of the properties could not be applied; the target bar file is not written in that case
+     */
+    public boolean isSuccess()
+    {
+        return success;
+    }
+
+
+    /**
+     * @return the messages to be written to the trace file
+     */
+    public List<String> getMessages()
+    {
+        return messages;
+    }
+
+}
@@ -0,0 +1,508 @@
+package ch.sbb.maven.plugins.iib.utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Records how long the mojos of a project take, and each of their steps (e.g. unpacking the dependencies, mqsicreatebar,
+ * the overrides of an environment), and writes it as a JSON report to target/iib-build-timings.json.
+ *
+ * A mojo starts a span with {@link #start(String)} and stops it when it is done, which rewrites the report; the report
+ * therefore covers every mojo of the build once the last one has run. Steps are nested: {@link #step(String)} starts a
+ * step of the span current on the calling thread, so that code without access to the mojo (e.g.
+ * {@link MqsiCommandLauncher}) can be measured too. Work handed to other threads starts its steps explicitly from the
+ * span it belongs to ({@link Span#step(String)}).
+ *
+ * Every span records:
+ * <ul>
+ * <li>its wall time</li>
+ * <li>the CPU time of the thread that started it</li>
+ * <li>the CPU time of the Maven process and of the (ended) processes it launched, e.g. mqsicreatebar</li>
+ * <li>the bytes read and written by the Maven process and the processes it launched</li>
+ * </ul>
+ * The process figures come from /proc/self and are -1 where it is not available. They include whatever else runs at
+ * the same time, e.g. the other environments of a parallel deployment.
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+public class BuildTimings {
+
+    /**
+     * the name of the report, in the build directory
+     */
+    public static final String REPORT_FILE = "iib-build-timings.json";
+
+    // / the clock ticks per second of /proc/self/stat (USER_HZ), which is 100 on every Linux platform
+    private static final long TICKS_PER_SECOND = 100;
+
+    private static final ThreadLocal<Span> CURRENT = new ThreadLocal<Span>();
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    // / the parent of the steps started outside of a mojo; they are measured, but neither kept nor reported
+    private static final Span DETACHED = new Span(null, null, "detached", false);
+
+    private final String projectId;
+    private final File reportFile;
+    private final List<Span> spans = Collections.synchronizedList(new ArrayList<Span>());
+    private volatile Log log;
+
+
+    private BuildTimings(String projectId, File reportFile)
+    {
+        this.projectId = projectId;
+        this.reportFile = reportFile;
+    }
+
+
+    /**
+     * @param project the project being built
+     * @param log the logger the problems writing the report are logged to
+     * @return the timings of the project, created on first use in a build
+     */
+    public static BuildTimings get(MavenProject project, Log log)
+    {
+        BuildTimings timings;
+        // / kept with the project, so that every build starts over even if the plugin is reused, e.g. by an IDE
+        synchronized (project)
+        {
+            Object value = project.getContextValue(BuildTimings.class.getName());
+            if (value instanceof BuildTimings)
+            {
+                timings = (BuildTimings) value;
+            }
+            else
+            {
+                timings = new BuildTimings(project.getGroupId() + ":" + project.getArtifactId() + ":" + project.getVersion(),
+                        new File(project.getBuild().getDirectory(), REPORT_FILE));
+                project.setContextValue(BuildTimings.class.getName(), timings);
+            }
+        }
+        timings.log = log;
+        return timings;
+    }
+
+
+    /**
+     * @param project a project of the build
+     * @return the timings recorded for the project, or null if none of the plugin's mojos has run for it (or it was
+     *         run by another copy of the plugin)
+     */
+    public static BuildTimings find(MavenProject project)
+    {
+        synchronized (project)
+        {
+            Object value = project.getContextValue(BuildTimings.class.getName());
+            return value instanceof BuildTimings ? (BuildTimings) value : null;
+        }
+    }
+
+
+    /**
+     * starts the span of a mojo; the report is written when it is stopped
+     *
+     * @param name the name of the mojo, e.g. package-bar
+     * @return the span, current on the calling thread until it is stopped
+     */
+    public Span start(String name)
+    {
+        Span span = new Span(this, null, name, true);
+        spans.add(span);
+        return span;
+    }
+
+
+    /**
+     * @param name the name of the step
+     * @return a step of the span current on the calling thread; if there is none, the step is measured but not
+     *         reported
+     */
+    public static Span step(String name)
+    {
+        return current().step(name);
+    }
+
+
+    /**
+     * @return the span current on the calling thread, to start the steps of work handed to other threads from; a
+     *         span that reports nothing if there is none
+     */
+    public static Span current()
+    {
+        Span current = CURRENT.get();
+        return current == null ? DETACHED : current;
+    }
+
+
+    /**
+     * @return the spans of the mojos, in the order they were started
+     */
+    public List<Span> getSpans()
+    {
+        return snapshot(spans);
+    }
+
+
+    /**
+     * @return the report file
+     */
+    public File getReportFile()
+    {
+        return reportFile;
+    }
+
+
+    /**
+     * writes the report of the spans recorded so far, through a temporary file
+     *
+     * @throws IOException if the report could not be written
+     */
+    public void writeReport() throws IOException
+    {
+        write(toJson(), reportFile);
+    }
+
+
+    /**
+     * writes a report through a temporary file, so that readers never see a partially written one
+     */
+    static void write(String report, File file) throws IOException
+    {
+        file.getParentFile().mkdirs();
+        File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(tempFile), "UTF-8");
+        try
+        {
+            writer.write(report);
+        } finally
+        {
+            writer.close();
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+
+    /**
+     * @return the report
+     */
+    public String toJson()
+    {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"project\": ").append(quote(projectId)).append(",\n  \"spans\": [");
+        appendSpans(json, snapshot(spans), "    ");
+        json.append("\n  ]\n}\n");
+        return json.toString();
+    }
+
+
+    private static void appendSpans(StringBuilder json, List<Span> spans, String indent)
+    {
+        for (int i = 0; i < spans.size(); i++)
+        {
+            Span span = spans.get(i);
+            json.append(i == 0 ? "\n" : ",\n").append(indent).append("{");
+            json.append("\"name\": ").append(quote(span.name));
+            json.append(", \"thread\": ").append(quote(span.thread));
+            json.append(", \"startTime\": ").append(span.startTime);
+            json.append(", \"wallMillis\": ").append(span.wallMillis);
+            json.append(", \"threadCpuMillis\": ").append(span.threadCpuMillis);
+            json.append(", \"processCpuMillis\": ").append(span.processCpuMillis);
+            json.append(", \"childProcessCpuMillis\": ").append(span.childProcessCpuMillis);
+            json.append(", \"bytesRead\": ").append(span.bytesRead);
+            json.append(", \"bytesWritten\": ").append(span.bytesWritten);
+            List<Span> steps = snapshot(span.steps);
+            if (!steps.isEmpty())
+            {
+                json.append(", \"steps\": [");
+                appendSpans(json, steps, indent + "  ");
+                json.append("\n").append(indent).append("]");
+            }
+            json.append("}");
+        }
+    }
+
+
+    private static List<Span> snapshot(List<Span> spans)
+    {
+        synchronized (spans)
+        {
+            return new ArrayList<Span>(spans);
+        }
+    }
+
+
+    static String quote(String value)
+    {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\')
+            {
+                quoted.append('\\').append(c);
+            }
+            else if (c < 0x20)
+            {
+                quoted.append(String.format("\\u%04x", (int) c));
+            }
+            else
+            {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+
+    /**
+     * a measured mojo or step; stopped exactly once, on the thread that started it
+     */
+    public static class Span {
+
+        private final BuildTimings timings;
+        private final Span previous;
+        private final String name;
+        private final String thread;
+        private final long startTime;
+        private final long startNanos;
+        private final long startThreadCpu;
+        private final ProcessSample startSample;
+        private final List<Span> steps = Collections.synchronizedList(new ArrayList<Span>());
+
+        // / -1 until stopped
+        private volatile long wallMillis = -1;
+        private volatile long threadCpuMillis = -1;
+        private volatile long processCpuMillis = -1;
+        private volatile long childProcessCpuMillis = -1;
+        private volatile long bytesRead = -1;
+        private volatile long bytesWritten = -1;
+
+
+        Span(BuildTimings timings, Span parent, String name, boolean current)
+        {
+            this.timings = timings;
+            this.name = name;
+            this.thread = Thread.currentThread().getName();
+            if (parent != null && timings != null)
+            {
+                parent.steps.add(this);
+            }
+            this.previous = current ? CURRENT.get() : null;
+            if (current)
+            {
+                CURRENT.set(this);
+            }
+            this.startTime = System.currentTimeMillis();
+            this.startSample = ProcessSample.take();
+            this.startThreadCpu = getThreadCpuTime();
+            this.startNanos = System.nanoTime();
+        }
+
+
+        /**
+         * @param stepName the name of the step
+         * @return a step of this span, current on the calling thread until it is stopped
+         */
+        public Span step(String stepName)
+        {
+            return new Span(timings, this, stepName, true);
+        }
+
+
+        /**
+         * stops the span; a mojo's span writes the report
+         */
+        public void stop()
+        {
+            wallMillis = (System.nanoTime() - startNanos) / 1000000;
+            long threadCpu = getThreadCpuTime();
+            if (threadCpu >= 0 && startThreadCpu >= 0)
+            {
+                threadCpuMillis = (threadCpu - startThreadCpu) / 1000000;
+            }
+            ProcessSample sample = ProcessSample.take();
+            processCpuMillis = difference(startSample.cpuTicks, sample.cpuTicks) * 1000 / TICKS_PER_SECOND;
+            childProcessCpuMillis = difference(startSample.childCpuTicks, sample.childCpuTicks) * 1000 / TICKS_PER_SECOND;
+            bytesRead = difference(startSample.bytesRead, sample.bytesRead);
+            bytesWritten = difference(startSample.bytesWritten, sample.bytesWritten);
+            if (CURRENT.get() == this)
+            {
+                if (previous == null)
+                {
+                    CURRENT.remove();
+                }
+                else
+                {
+                    CURRENT.set(previous);
+                }
+            }
+
+            if (timings != null && timings.spans.contains(this))
+            {
+                try
+                {
+                    timings.writeReport();
+                } catch (IOException e)
+                {
+                    Log log = timings.log;
+                    if (log != null)
+                    {
+                        log.warn("unable to write the build timings to " + timings.reportFile.getAbsolutePath() + ": " + e);
+                    }
+                }
+            }
+        }
+
+
+        public String getName()
+        {
+            return name;
+        }
+
+
+        /**
+         * @return when the span was started, in milliseconds since the epoch
+         */
+        public long getStartTime()
+        {
+            return startTime;
+        }
+
+
+        /**
+         * @return the wall time in milliseconds, -1 while running
+         */
+        public long getWallMillis()
+        {
+            return wallMillis;
+        }
+
+
+        /**
+         * @return the steps started so far
+         */
+        public List<Span> getSteps()
+        {
+            return snapshot(steps);
+        }
+
+
+        private static long getThreadCpuTime()
+        {
+            try
+            {
+                return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : -1;
+            } catch (UnsupportedOperationException e)
+            {
+                return -1;
+            }
+        }
+
+
+        private static long difference(long start, long end)
+        {
+            return start < 0 || end < 0 ? -1 : end - start;
+        }
+    }
+
+
+    /**
+     * the CPU time and I/O of the Maven process so far, including the processes it launched and waited for
+     */
+    static class ProcessSample {
+
+        private static final File STAT = new File("/proc/self/stat");
+        private static final File IO = new File("/proc/self/io");
+
+        long cpuTicks = -1;
+        long childCpuTicks = -1;
+        long bytesRead = -1;
+        long bytesWritten = -1;
+
+        static ProcessSample take()
+        {
+            ProcessSample sample = new ProcessSample();
+            if (STAT.canRead())
+            {
+                try
+                {
+                    sample.readStat();
+                } catch (Exception e)
+                {
+                    // / not a Linux /proc, leave -1
+                }
+            }
+            if (IO.canRead())
+            {
+                try
+                {
+                    sample.readIo();
+                } catch (Exception e)
+                {
+                    // / leave -1
+                }
+            }
+            return sample;
+        }
+
+
+        private void readStat() throws IOException
+        {
+            String stat;
+            FileInputStream fis = new FileInputStream(STAT);
+            try
+            {
+                stat = new BufferedReader(new InputStreamReader(fis, "US-ASCII")).readLine();
+            } finally
+            {
+                fis.close();
+            }
+            // / the command name may contain spaces: the fields are counted after its closing parenthesis, starting
+            // / with the state (field 3); utime, stime, cutime and cstime are fields 14 to 17
+            String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+            cpuTicks = Long.parseLong(fields[11]) + Long.parseLong(fields[12]);
+            childCpuTicks = Long.parseLong(fields[13]) + Long.parseLong(fields[14]);
+        }
+
+
+        private void readIo() throws IOException
+        {
+            BufferedReader reader = new BufferedReader(new FileReader(IO));
+            try
+            {
+                // / rchar and wchar count every read and write, whether or not it reached the disk
+                for (String line = reader.readLine(); line != null; line = reader.readLine())
+                {
+                    if (line.startsWith("rchar:"))
+                    {
+                        bytesRead = Long.parseLong(line.substring(6).trim());
+                    }
+                    else if (line.startsWith("wchar:"))
+                    {
+                        bytesWritten = Long.parseLong(line.substring(6).trim());
+                    }
+                }
+            } finally
+            {
+                reader.close();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,86 @@
+package ch.sbb.maven.plugins.iib.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.maven.AbstractMavenLifecycleParticipant;
+import org.apache.maven.MavenExecutionException;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.logging.LogEnabled;
+import org.codehaus.plexus.logging.Logger;
+
+/**
+ * Logs the {@link ReactorBuildTimings} of the IIB modules at the end of the build and writes them to
+ * target/iib-reactor-timings.json of the top-level project.
+ *
+ * Registered in META-INF/plexus/components.xml; Maven loads it along with the IIB packagings, i.e. when the plugin is
+ * declared with &lt;extensions&gt;true&lt;/extensions&gt;.
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+public class BuildTimingsLifecycleParticipant extends AbstractMavenLifecycleParticipant implements LogEnabled {
+
+    private Logger logger;
+
+
+    public void enableLogging(Logger logger)
+    {
+        this.logger = logger;
+    }
+
+
+    @Override
+    public void afterSessionEnd(MavenSession session) throws MavenExecutionException
+    {
+        ReactorBuildTimings timings = new ReactorBuildTimings();
+        for (MavenProject project : session.getProjects())
+        {
+            if (!ReactorBuildTimings.IIB_PACKAGINGS.contains(project.getPackaging()))
+            {
+                continue;
+            }
+            BuildTimings projectTimings = BuildTimings.find(project);
+            if (projectTimings == null)
+            {
+                continue;
+            }
+            List<String> upstream = new ArrayList<String>();
+            for (MavenProject upstreamProject : session.getProjectDependencyGraph().getUpstreamProjects(project, true))
+            {
+                upstream.add(getId(upstreamProject));
+            }
+            timings.addModule(getId(project), project.getArtifactId(), upstream, projectTimings.getSpans());
+        }
+        if (timings.getModules().isEmpty())
+        {
+            return;
+        }
+
+        for (String line : timings.getSummary())
+        {
+            logger.info(line);
+        }
+        MavenProject topLevelProject = session.getTopLevelProject() != null ? session.getTopLevelProject() : session.getProjects().get(0);
+        File reportFile = new File(topLevelProject.getBuild().getDirectory(), ReactorBuildTimings.REPORT_FILE);
+        try
+        {
+            timings.writeReport(reportFile);
+            logger.info("  see " + reportFile.getAbsolutePath());
+        } catch (IOException e)
+        {
+            // / the report must never fail the build
+            logger.warn("unable to write the build timings to " + reportFile.getAbsolutePath() + ": " + e);
+        }
+    }
+
+
+    private static String getId(MavenProject project)
+    {
+        return project.getGroupId() + ":" + project.getArtifactId();
+    }
+
+}
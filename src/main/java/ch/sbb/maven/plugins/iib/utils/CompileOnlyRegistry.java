@@ -0,0 +1,182 @@
+package ch.sbb.maven.plugins.iib.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Records, per workspace, which projects the last 'mqsicreatebar -compileOnly' of the build compiled, so that the
+ * modules sharing a workspace run it once rather than each: mqsicreatebar compiles the whole workspace, and starting its
+ * headless Eclipse takes long. A module needs to compile only if one of its projects was not in the workspace when it
+ * was compiled, or changed since (a file was added, removed or modified).
+ *
+ * The files the build writes into the projects are not taken into account: the build output directories (see
+ * {@link BarBuildManifest#EXCLUDED_DIRECTORIES}), the jars of the java projects copied into the projects' root, and the
+ * pom.xml files renamed while mqsicreatebar runs.
+ *
+ * The registry lasts for a build only: a Maven process may run several builds (e.g. in an IDE), and the workspace may be
+ * cleaned in between.
+ *
+ * The modules of a parallel build synchronize on the registry of their workspace while they check it and compile, so
+ * that the others wait for the compilation under way instead of starting another one in the same workspace.
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+public class CompileOnlyRegistry {
+
+    private static final ConcurrentMap<String, CompileOnlyRegistry> REGISTRIES = new ConcurrentHashMap<String, CompileOnlyRegistry>();
+
+    private final File workspace;
+    private final Date buildStartTime;
+
+    /**
+     * the files of every project compiled, with their modification time, by project name
+     */
+    private final Map<String, Map<String, Long>> compiledProjects = new HashMap<String, Map<String, Long>>();
+
+
+    CompileOnlyRegistry(File workspace, Date buildStartTime)
+    {
+        this.workspace = workspace;
+        this.buildStartTime = buildStartTime;
+    }
+
+
+    /**
+     * @param workspace the workspace directory
+     * @param buildStartTime the start time of the build, which tells the builds apart
+     * @return the registry of the workspace for the build, empty until a compilation is recorded
+     */
+    public static CompileOnlyRegistry get(File workspace, Date buildStartTime)
+    {
+        String key = getKey(workspace);
+        while (true)
+        {
+            CompileOnlyRegistry registry = REGISTRIES.get(key);
+            if (registry != null && registry.buildStartTime.equals(buildStartTime))
+            {
+                return registry;
+            }
+            CompileOnlyRegistry newRegistry = new CompileOnlyRegistry(workspace, buildStartTime);
+            if (registry == null ? REGISTRIES.putIfAbsent(key, newRegistry) == null : REGISTRIES.replace(key, registry, newRegistry))
+            {
+                return newRegistry;
+            }
+        }
+    }
+
+
+    private static String getKey(File workspace)
+    {
+        try
+        {
+            return workspace.getCanonicalPath();
+        } catch (IOException e)
+        {
+            return workspace.getAbsolutePath();
+        }
+    }
+
+
+    /**
+     * @param projectNames the workspace projects a module is built from
+     * @param log the logger
+     * @return true if all of them were compiled by the last recorded compilation and are unchanged since
+     */
+    public synchronized boolean isCompiled(Collection<String> projectNames, Log log)
+    {
+        if (compiledProjects.isEmpty())
+        {
+            return false;
+        }
+        // / the projects asked for are scanned again if they changed since they were indexed
+        WorkspaceIndex index = WorkspaceIndex.get(workspace, log);
+        for (String projectName : projectNames)
+        {
+            Map<String, Long> compiled = compiledProjects.get(projectName);
+            if (compiled == null)
+            {
+                log.info("The project " + projectName + " was not in the workspace when it was compiled");
+                return false;
+            }
+            WorkspaceIndex.ProjectInfo project = index.getProject(projectName);
+            if (project == null || !compiled.equals(getSourceFiles(project, index)))
+            {
+                log.info("The project " + projectName + " changed since the workspace was compiled");
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * records the projects of the workspace as compiled, to be called after mqsicreatebar -compileOnly succeeded
+     *
+     * @param log the logger
+     */
+    public synchronized void recordCompilation(Log log)
+    {
+        // / the compilation changed the workspace: all of it is scanned again
+        WorkspaceIndex.invalidate(workspace);
+        WorkspaceIndex index = WorkspaceIndex.get(workspace, log);
+        compiledProjects.clear();
+        for (WorkspaceIndex.ProjectInfo project : index.getProjects())
+        {
+            compiledProjects.put(project.getName(), getSourceFiles(project, index));
+        }
+        log.info("Compiled the " + compiledProjects.size() + " projects of the workspace " + workspace
+                + "; the other modules using it compile only if their projects change");
+    }
+
+
+    /**
+     * @return the number of projects recorded as compiled
+     */
+    public synchronized int getCompiledProjectCount()
+    {
+        return compiledProjects.size();
+    }
+
+
+    /**
+     * @return the files of the project that are no build output, with their modification time
+     */
+    private static Map<String, Long> getSourceFiles(WorkspaceIndex.ProjectInfo project, WorkspaceIndex index)
+    {
+        Map<String, Long> files = new TreeMap<String, Long>();
+        for (Map.Entry<String, Long> file : project.getLastModified().entrySet())
+        {
+            if (!isBuildOutput(file.getKey(), index))
+            {
+                files.put(file.getKey(), file.getValue());
+            }
+        }
+        return files;
+    }
+
+
+    private static boolean isBuildOutput(String path, WorkspaceIndex index)
+    {
+        int slash = path.indexOf('/');
+        if (slash >= 0)
+        {
+            return BarBuildManifest.EXCLUDED_DIRECTORIES.contains(path.substring(0, slash));
+        }
+        if (path.equals("pom.xml") || path.equals(DirectoriesUtil.TEMP_POM_FILE))
+        {
+            return true;
+        }
+        return path.endsWith(".jar") && index.hasProject(path.substring(0, path.length() - ".jar".length()));
+    }
+
+}
@@ -107,6 +107,43 @@ public class ConfigurationValidator extends AbstractValidator {
     }
 
 
+    public static String validateBarOverrideEngine(String barOverrideEngine, Log log) throws MojoFailureException
+    {
+        if (barOverrideEngine != null && !barOverrideEngine.trim().isEmpty())
+        {
+            if (barOverrideEngine.trim().equalsIgnoreCase("ibm")) {
+                return "ibm";
+            }
+            if (barOverrideEngine.trim().equalsIgnoreCase("native")) {
+                return "native";
+            }
+        }
+
+        logErrorStart(log);
+        String[] messages = { getArgumentMissingString("barOverrideEngine") };
+        logErrorBaseProblem(log, messages);
+
+        String tagName = "barOverrideEngine";
+        String exampleText1 = "ibm";
+        String exampleTagString1 = getExampleTagString(tagName, exampleText1);
+        String exampleText2 = "native";
+        String exampleTagString2 = getExampleTagString(tagName, exampleText2);
+        logErrorExample(log, new String[] { exampleTagString1, "OR", exampleTagString2 });
+
+        String[] instructions = new String[]
+        {
+                "The 'barOverrideEngine' configuration value tells the plugin how to apply the",
+                "override properties to the bar file: 'ibm' uses the IBM BarFile API (like",
+                "mqsiapplybaroverride), 'native' only rewrites the deployment descriptors",
+                "containing overridden properties and copies everything else unchanged."
+        };
+        logErrorInstructions(log, instructions);
+
+        logErrorFinish(log);
+
+        throw new MojoFailureException(getArgumentMissingString("barOverrideEngine"));
+    }
+
     public static void validatePathToMqsiProfileScript(String pathToMqsiProfileScript, Log log) throws MojoFailureException
     {
         if (pathToMqsiProfileScript == null || pathToMqsiProfileScript.trim().equals(""))
@@ -25,10 +25,12 @@ public class DependenciesManager {
     private TreeSet<String> apps = new TreeSet<String>();
     private TreeSet<String> libs = new TreeSet<String>();
     private TreeSet<String> javaProjects = new TreeSet<String>();
+    private TreeSet<String> referencedProjects = new TreeSet<String>();
 
     private MavenProject project;
     private File workspace;
     private Log log;
+    private ProjectDependencyGraph graph;
 
     public DependenciesManager() {
         super();
@@ -40,6 +42,7 @@ public class DependenciesManager {
         this.project = project;
         this.workspace = workspace;
         this.log = log;
+        this.graph = new ProjectDependencyGraph(workspace, log);
         determineDependencies();
     }
 
@@ -70,9 +73,27 @@ public class DependenciesManager {
         return projects;
     }
 
-    private void determineEclipseProjectDependencies() throws MojoFailureException
+    /**
+     * @return the names of all workspace projects this project is built from: the project itself, the projects
+     *         referenced (directly or indirectly) by its .project file - whatever their nature - and its dependent
+     *         applications and libraries
+     */
+    public Collection<String> getReferencedProjects()
     {
-        determineEclipseProjectDependencies(project.getArtifactId());
+        Set<String> projects = new TreeSet<String>();
+        projects.addAll(referencedProjects);
+        projects.addAll(apps);
+        projects.addAll(libs);
+        projects.addAll(javaProjects);
+        return projects;
+    }
+
+    /**
+     * @return the graph of the workspace projects this project is built from, for further queries
+     */
+    public ProjectDependencyGraph getGraph()
+    {
+        return graph;
     }
 
     private void determineDependencies() throws MojoFailureException {
@@ -80,22 +101,17 @@ public class DependenciesManager {
         determineEclipseProjectDependencies();
 
         // / let's add this project itself, either as an application or a
-        if (EclipseProjectUtils.isApplication(new File(workspace, project.getArtifactId()), getLog()))
-        {
-            apps.add(project.getArtifactId());
-        }
-        else if (EclipseProjectUtils.isLibrary(new File(workspace, project.getArtifactId()), getLog()))
-        {
-            libs.add(project.getArtifactId());
-        }
-        else if (EclipseProjectUtils.isJavaProject(new File(workspace, project.getArtifactId()), getLog()))
-        {
-            javaProjects.add(project.getArtifactId());
-        }
-        else
+        switch (graph.getProject(project.getArtifactId()).getNature())
         {
-            // / make the assumption that the project itself is an application
-            apps.add(project.getArtifactId());
+            case library:
+                libs.add(project.getArtifactId());
+                break;
+            case java:
+                javaProjects.add(project.getArtifactId());
+                break;
+            default:
+                // / make the assumption that the project itself is an application
+                apps.add(project.getArtifactId());
         }
 
         for (Dependency dependency : project.getDependencies()) {
@@ -107,13 +123,8 @@ public class DependenciesManager {
 
             // the projectName is the directoryName is the artifactId
             String projectName = dependency.getArtifactId();
-
-            if (EclipseProjectUtils.isApplication(new File(workspace, projectName), getLog())) {
-                apps.add(projectName);
-            }
-            else if (EclipseProjectUtils.isLibrary(new File(workspace, projectName), getLog())) {
-                libs.add(projectName);
-            }
+            graph.addDependency(project.getArtifactId(), projectName);
+            addAppOrLib(projectName);
 
         }
 
@@ -127,27 +138,31 @@ public class DependenciesManager {
     }
 
     /**
-     * @param projectDirectory
-     * @throws MojoFailureException
+     * adds the projects referenced, directly or indirectly, by this project's .project file
      */
-    private void determineEclipseProjectDependencies(String projectDirectory) throws MojoFailureException
+    private void determineEclipseProjectDependencies() throws MojoFailureException
     {
-        File projectDir = new File(workspace, projectDirectory);
-        String[] projectNames = EclipseProjectUtils.getDependentProjectNames(projectDir);
-        for (String projectName : projectNames)
+        for (String projectName : graph.getReferencedProjects(project.getArtifactId()))
         {
-            if (EclipseProjectUtils.isApplication(new File(workspace, projectName), getLog()))
-            {
-                apps.add(projectName);
+            referencedProjects.add(projectName);
+            addAppOrLib(projectName);
+        }
+    }
 
-            }
-            else if (EclipseProjectUtils.isLibrary(new File(workspace, projectName), getLog()))
-            {
+
+    private void addAppOrLib(String projectName) throws MojoFailureException
+    {
+        switch (graph.getProject(projectName).getNature())
+        {
+            case application:
+                apps.add(projectName);
+                break;
+            case library:
                 libs.add(projectName);
-            }
-            determineEclipseProjectDependencies(projectName);
+                break;
+            default:
+                break;
         }
-
     }
 
 
@@ -0,0 +1,69 @@
+package ch.sbb.maven.plugins.iib.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Computes content hashes of files.
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+public class DigestUtil {
+
+    public static final String SHA1 = "SHA-1";
+    public static final String SHA256 = "SHA-256";
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+
+    /**
+     * @param file the file
+     * @param algorithm the digest algorithm, e.g. {@link #SHA256}
+     * @return the digest of the file's content as lowercase hex string (as printed by sha256sum and the like)
+     * @throws IOException if the file cannot be read
+     */
+    public static String digest(File file, String algorithm) throws IOException
+    {
+        MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e)
+        {
+            // / SHA-1 and SHA-256 are always available
+            throw new IllegalStateException(e);
+        }
+        InputStream in = new FileInputStream(file);
+        try
+        {
+            byte[] buffer = new byte[65536];
+            int read;
+            while ((read = in.read(buffer)) != -1)
+            {
+                digest.update(buffer, 0, read);
+            }
+        } finally
+        {
+            in.close();
+        }
+        return toHex(digest.digest());
+    }
+
+
+    static String toHex(byte[] bytes)
+    {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++)
+        {
+            hex[2 * i] = HEX[(bytes[i] >> 4) & 0xf];
+            hex[2 * i + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+}
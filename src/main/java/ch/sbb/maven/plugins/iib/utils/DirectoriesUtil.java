@@ -1,16 +1,33 @@
 package ch.sbb.maven.plugins.iib.utils;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.maven.plugin.logging.Log;
 
 /**
+ * Besides splitting directory lists, hides the pom.xml files of the workspace projects from mqsicreatebar (whose
+ * build fails on them) by renaming them to {@value #TEMP_POM_FILE} for the duration of the build.
  *
- * 
+ * The renamed files are listed in a journal before they are renamed, so that the pom.xml files hidden by a build that
+ * was killed are restored by the next build. Every build hiding files writes its own journal in the workspace (named
+ * {@value #JOURNAL_FILE}-*), and holds a lock on it until it has restored them. Only the journals nobody holds a lock on
+ * are recovered: the modules of a parallel build, or other builds, may be running mqsicreatebar in the same workspace.
+ * The lock is released by the operating system when the build is killed.
  *
  * @author Brett Shelley
  * @version $Id: $
@@ -20,13 +37,46 @@ public class DirectoriesUtil {
 
     public static final String REGEX = "\\s*,[,\\s]*";
 
+    /**
+     * the name of a hidden pom.xml file
+     */
+    public static final String TEMP_POM_FILE = "pom-xml-temp.txt";
+
+    /**
+     * the name prefix of the journals of hidden pom.xml files: a comment naming the build that wrote it, then one
+     * project directory per line
+     */
+    public static final String JOURNAL_FILE = ".hidden-pom-files";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
     private List<File> tempPomFiles = new ArrayList<File>();
 
+    /**
+     * the journal of the files hidden, locked until they are restored
+     */
+    private File journal;
+    private FileChannel journalChannel;
+
     public void renamePomXmlFiles(File workspace, Log log) throws IOException
     {
-        // / remove .pom from directories
-        File[] projectDirectories = workspace.listFiles();
-        for (File projectDirectory : projectDirectories)
+        BuildTimings.Span span = BuildTimings.step("hide-pom-files");
+        try
+        {
+            hidePomXmlFiles(workspace, log);
+        } finally
+        {
+            span.stop();
+        }
+    }
+
+
+    private void hidePomXmlFiles(File workspace, Log log) throws IOException
+    {
+        recoverPomFiles(workspace, log);
+
+        List<File> projectDirectories = new ArrayList<File>();
+        for (File projectDirectory : workspace.listFiles())
         {
             if (!projectDirectory.isDirectory()) {
                 continue;
@@ -35,41 +85,39 @@ public class DirectoriesUtil {
             {
                 continue;
             }
-
-            String pomPath = projectDirectory.getAbsolutePath() + File.separator + "pom.xml";
-            File pomFile = new File(pomPath);
-            log.info("seeking file " + pomFile + " to temporarily rename");
-            if (!pomFile.exists()) {
-                continue;
+            if (new File(projectDirectory, "pom.xml").exists())
+            {
+                projectDirectories.add(projectDirectory);
             }
+        }
+        if (projectDirectories.isEmpty())
+        {
+            return;
+        }
 
-            String tempPomPath = projectDirectory.getAbsolutePath() + File.separator + "pom-xml-temp.txt";
-
-            File tempPomFile = new File(tempPomPath);
-            log.info("-->copying file " + pomFile + " to " + tempPomPath);
+        // / the journal is written before any file is renamed
+        writeJournal(workspace, projectDirectories);
 
-            FileUtils.copyFile(pomFile, tempPomFile, true);
-            tempPomFiles.add(tempPomFile);
-            log.info("-->deleting file: " + pomFile.getAbsolutePath());
+        for (File projectDirectory : projectDirectories)
+        {
+            File pomFile = new File(projectDirectory, "pom.xml");
+            File tempPomFile = new File(projectDirectory, TEMP_POM_FILE);
+            log.info("-->renaming file " + pomFile + " to " + TEMP_POM_FILE);
             try
             {
-                FileUtils.forceDelete(pomFile);
+                move(pomFile, tempPomFile);
+                tempPomFiles.add(tempPomFile);
             } catch (IOException e)
             {
-                String message = "This plugin attempts to remove pom.xml files from the workspace.\n";
-                message += "The pom.xml files are the temporarily stored in the user.home directory at " + System.getProperty("user.home") + "\n";
-                message += "It failed to delete the file " + pomFile.getAbsolutePath() + "\n";
-                message += "Please check to ensure that no process is blocking the file's (" + pomFile.getAbsolutePath() + ") deletion.\n";
-                message += "Please check to ensure that no process is blocking the file's deletion.\n";
+                String message = "This plugin temporarily renames the pom.xml files in the workspace to " + TEMP_POM_FILE + ".\n";
+                message += "It failed to rename the file " + pomFile.getAbsolutePath() + "\n";
+                message += "Please check to ensure that no process is blocking the file's (" + pomFile.getAbsolutePath() + ") renaming.\n";
                 message += "The presence of the pom.xml file(s) will cause the mqsicreatebar command to fail.\n";
                 message += "Error: " + e.toString();
                 log.warn(message);
                 throw e;
             }
-
         }
-
-
     }
 
 
@@ -86,17 +134,197 @@ public class DirectoriesUtil {
 
     public void restorePomFiles(File workspace, Log log) throws IOException
     {
+        BuildTimings.Span span = BuildTimings.step("restore-pom-files");
+        try
+        {
+            unhidePomFiles(workspace, log);
+        } finally
+        {
+            span.stop();
+        }
+    }
+
 
+    private void unhidePomFiles(File workspace, Log log) throws IOException
+    {
+        IOException failure = null;
         for (File tempPomFile : tempPomFiles)
         {
-            String pomFilePath = tempPomFile.getAbsolutePath();
-            pomFilePath = pomFilePath.substring(0, pomFilePath.lastIndexOf(File.separator));
-            pomFilePath += File.separator + "pom.xml";
+            try
+            {
+                move(tempPomFile, new File(tempPomFile.getParentFile(), "pom.xml"));
+            } catch (IOException e)
+            {
+                log.warn("unable to restore " + tempPomFile.getAbsolutePath() + ": " + e);
+                if (failure == null)
+                {
+                    failure = e;
+                }
+            }
+        }
+        tempPomFiles.clear();
 
-            File origFile = new File(pomFilePath);
-            FileUtils.copyFile(tempPomFile, origFile);
-            FileUtils.forceDelete(tempPomFile);
+        if (failure != null)
+        {
+            // / the journal is kept, so that the next build retries
+            closeJournal();
+            throw failure;
         }
+        if (journal != null)
+        {
+            closeJournal();
+            Files.deleteIfExists(journal.toPath());
+            journal = null;
+        }
+    }
+
+
+    /**
+     * releases the lock on the journal, as the operating system does when the build is killed
+     */
+    void closeJournal() throws IOException
+    {
+        if (journalChannel != null)
+        {
+            // / closing the channel releases its lock
+            journalChannel.close();
+            journalChannel = null;
+        }
+    }
+
 
+    /**
+     * restores the pom.xml files still hidden by the builds that did not finish, as listed in their journals; the
+     * journals of the builds still running are left alone
+     *
+     * @param workspace the workspace
+     * @param log the logger
+     * @throws IOException if a pom.xml file cannot be restored
+     */
+    public static void recoverPomFiles(File workspace, Log log) throws IOException
+    {
+        File[] files = workspace.listFiles();
+        if (files == null)
+        {
+            return;
+        }
+        for (File file : files)
+        {
+            if (file.isFile() && file.getName().startsWith(JOURNAL_FILE))
+            {
+                recoverJournal(file, log);
+            }
+        }
+    }
+
+
+    private static void recoverJournal(File journal, Log log) throws IOException
+    {
+        RandomAccessFile file;
+        try
+        {
+            file = new RandomAccessFile(journal, "rw");
+        } catch (IOException e)
+        {
+            // / deleted by its build meanwhile
+            return;
+        }
+        String[] lines;
+        try
+        {
+            FileLock lock;
+            try
+            {
+                lock = file.getChannel().tryLock();
+            } catch (OverlappingFileLockException e)
+            {
+                // / held by another module of this build
+                lock = null;
+            }
+            if (lock == null)
+            {
+                log.debug("not restoring the pom.xml files listed in " + journal.getAbsolutePath() + ": its build is running");
+                return;
+            }
+            byte[] content = new byte[(int) file.length()];
+            file.readFully(content);
+            lines = new String(content, UTF_8).split("\n");
+        } finally
+        {
+            // / releases the lock too
+            file.close();
+        }
+
+        log.warn("restoring the pom.xml files hidden by a previous build that did not finish, as listed in " + journal.getAbsolutePath());
+        for (String projectDirectory : lines)
+        {
+            if (projectDirectory.trim().isEmpty() || projectDirectory.startsWith("#"))
+            {
+                continue;
+            }
+            File pomFile = new File(projectDirectory, "pom.xml");
+            File tempPomFile = new File(projectDirectory, TEMP_POM_FILE);
+            if (!tempPomFile.exists())
+            {
+                // / either never renamed or already restored
+                continue;
+            }
+            if (pomFile.exists())
+            {
+                log.warn("-->not restoring " + tempPomFile + ": " + pomFile + " exists");
+                continue;
+            }
+            log.info("-->restoring file " + pomFile);
+            move(tempPomFile, pomFile);
+        }
+        Files.deleteIfExists(journal.toPath());
+    }
+
+
+    /**
+     * writes a new journal of the build, and locks it until the files are restored
+     */
+    private void writeJournal(File workspace, List<File> projectDirectories) throws IOException
+    {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        content.write(("# hidden by " + ManagementFactory.getRuntimeMXBean().getName() + " at " + new Date() + "\n").getBytes(UTF_8));
+        for (File projectDirectory : projectDirectories)
+        {
+            content.write((projectDirectory.getAbsolutePath() + "\n").getBytes(UTF_8));
+        }
+
+        // / a journal of its own, so that the builds sharing the workspace do not overwrite each other's
+        File newJournal = File.createTempFile(JOURNAL_FILE + "-", "", workspace);
+        FileChannel channel = new RandomAccessFile(newJournal, "rw").getChannel();
+        try
+        {
+            channel.lock();
+            channel.write(ByteBuffer.wrap(content.toByteArray()));
+            // / the journal must be on disk before the first file is renamed
+            channel.force(true);
+        } catch (IOException e)
+        {
+            channel.close();
+            Files.deleteIfExists(newJournal.toPath());
+            throw e;
+        }
+        journal = newJournal;
+        journalChannel = channel;
+    }
+
+
+    /**
+     * renames a file within its directory, replacing the target if it exists, atomically where the file system supports
+     * it
+     */
+    static void move(File source, File target) throws IOException
+    {
+        try
+        {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e)
+        {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
     }
 }
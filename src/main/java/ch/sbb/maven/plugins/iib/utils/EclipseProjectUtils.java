@@ -1,8 +1,11 @@
 package ch.sbb.maven.plugins.iib.utils;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
@@ -20,6 +23,30 @@ import ch.sbb.maven.plugins.iib.generated.eclipse_project.ProjectDescription.Pro
  */
 public class EclipseProjectUtils {
 
+    /**
+     * the parsed .project files, by canonical path. An entry is only used while the file's modification time and
+     * length are unchanged, so that .project files written during the build (e.g. by the mavenize goal) are read again.
+     */
+    private static final ConcurrentMap<String, CachedProjectDescription> PROJECT_DESCRIPTIONS = new ConcurrentHashMap<String, CachedProjectDescription>();
+
+    /**
+     * JAXBContext is thread-safe and expensive to create, so there is one per plugin class loader (i.e. per build)
+     */
+    private static volatile JAXBContext context;
+
+    private static class CachedProjectDescription {
+        final long lastModified;
+        final long length;
+        final ProjectDescription projectDescription;
+
+        CachedProjectDescription(long lastModified, long length, ProjectDescription projectDescription) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.projectDescription = projectDescription;
+        }
+    }
+
+
     private static ProjectDescription getProjectDescription(File projectDirectory) throws MojoFailureException {
         ProjectDescription projectDescription = new ProjectDescription();
         try {
@@ -43,26 +70,7 @@ public class EclipseProjectUtils {
      */
     public static List<String> getWorkspaceProjects(File workspace) throws MojoFailureException {
 
-        List<String> workspaceProjects = new ArrayList<String>();
-
-        for (File file : workspace.listFiles()) {
-            if (!file.isDirectory()) {
-                continue;
-            }
-            if (file.getName().equals(".metadata")) {
-                continue;
-            }
-            if (file.getName().startsWith("."))
-            {
-                continue;
-            }
-            File dotProjectFile = new File(file, ".project");
-            if (dotProjectFile.exists())
-            {
-                workspaceProjects.add(file.getName());
-            }
-
-        }
+        List<String> workspaceProjects = WorkspaceIndex.get(workspace, null).getEclipseProjectNames();
 
         if (workspaceProjects.isEmpty()) {
             throw (new MojoFailureException(
@@ -172,7 +180,30 @@ public class EclipseProjectUtils {
 
 
     /**
-     * returns a java object containing the contents of the .project file
+     * as {@link #isJavaProject(File, Log)}, with the file counts taken from the index of the workspace
+     * 
+     * @param workspace the workspace directory
+     * @param projectName the name of the project directory in the workspace
+     * @param log the logger
+     * @return true if the project is a java project
+     */
+    public static boolean isJavaProject(File workspace, String projectName, Log log)
+    {
+        if (projectName.equalsIgnoreCase("BARFiles")) {
+            return false;
+        }
+
+        WorkspaceIndex.ProjectInfo project = WorkspaceIndex.get(workspace, log).getProject(projectName);
+        if (project != null) {
+            return project.isJavaProject();
+        }
+        return new JavaProjectUtil().isJavaProject(new File(workspace, projectName), log);
+    }
+
+
+    /**
+     * returns a java object containing the contents of the .project file. Each file is parsed once as long as it is
+     * unchanged; the returned object is shared and must not be modified.
      * 
      * @param projectFile the .project file to be unmarshalled
      * @return the unmarshalled .profile file
@@ -180,10 +211,41 @@ public class EclipseProjectUtils {
      */
     protected static ProjectDescription unmarshallEclipseProjectFile(File projectFile)
             throws JAXBException {
-        JAXBContext context = JAXBContext.newInstance(ProjectDescription.class);
-        Unmarshaller unmarshaller = context.createUnmarshaller();
-        return (ProjectDescription) unmarshaller.unmarshal(projectFile);
+        String key;
+        try {
+            key = projectFile.getCanonicalPath();
+        } catch (IOException e) {
+            key = projectFile.getAbsolutePath();
+        }
+        long lastModified = projectFile.lastModified();
+        long length = projectFile.length();
+
+        CachedProjectDescription cached = PROJECT_DESCRIPTIONS.get(key);
+        if (cached != null && cached.lastModified == lastModified && cached.length == length) {
+            return cached.projectDescription;
+        }
+
+        // Unmarshaller is not thread-safe, but cheap to create
+        Unmarshaller unmarshaller = getContext().createUnmarshaller();
+        ProjectDescription projectDescription = (ProjectDescription) unmarshaller.unmarshal(projectFile);
+        if (lastModified != 0) {
+            PROJECT_DESCRIPTIONS.put(key, new CachedProjectDescription(lastModified, length, projectDescription));
+        }
+        return projectDescription;
+    }
+
 
+    private static JAXBContext getContext() throws JAXBException {
+        JAXBContext result = context;
+        if (result == null) {
+            synchronized (EclipseProjectUtils.class) {
+                if (context == null) {
+                    context = JAXBContext.newInstance(ProjectDescription.class);
+                }
+                result = context;
+            }
+        }
+        return result;
     }
 
 }
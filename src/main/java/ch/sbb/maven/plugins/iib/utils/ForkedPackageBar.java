@@ -0,0 +1,586 @@
+package ch.sbb.maven.plugins.iib.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.lang.ProcessBuilder.Redirect;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Runs mqsipackagebar in a separate JVM (see {@link PackageBarWorker}) rather than in the one of Maven, so that the
+ * packaging has a heap and garbage collector settings of its own and doesn't compete with the build for memory. The
+ * worker is a daemon: it is started on first use and reused for every bar file packaged with the same settings, across
+ * the modules of the build, so that the IBM packaging classes are loaded and compiled once. The plugin's classes are
+ * shared by the modules, and so are the workers. They are stopped at the end of the build (see
+ * {@link #stopAtSessionEnd(MavenSession)}), or when Maven exits.
+ *
+ * A worker packages up to a given number of bar files at the same time; the requests of parallel modules are told apart
+ * by their id and the others wait in the worker for their turn. One at a time is the safe choice: nothing says the IBM
+ * packaging classes are thread-safe, and parallel requests share the heap of the worker. The requests and responses go
+ * over a loopback connection the worker opens, not its standard output, which the JVM writes its own messages to; the
+ * standard output and error of the worker go to the console of Maven. A request that gets no response within the
+ * timeout (see {@link #setTimeout(long)}) fails and stops the worker, which is started again by the next request.
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+public class ForkedPackageBar {
+
+    /**
+     * a large young generation, as packaging allocates mostly short-lived buffers, and the throughput collector
+     */
+    public static final String DEFAULT_JVM_ARGS = "-Xms1g -Xmx2g -Xmn768m -XX:+UseParallelGC";
+
+    /**
+     * the default time a request waits for its response, in seconds
+     */
+    public static final String DEFAULT_TIMEOUT = "3600";
+
+    /**
+     * the name of the build timings step packaging a bar file in the worker, which {@link ReactorBuildTimings} counts
+     * as time spent outside of the JVM of Maven, like the mqsi commands
+     */
+    public static final String STEP_NAME = "packagebar-forked";
+
+    /**
+     * the time the worker JVM is given to connect after it was started
+     */
+    private static final long CONNECT_TIMEOUT = 60000;
+
+    /**
+     * the key of the top-level project's context value that stops the workers at the end of the build, a
+     * {@link Closeable}; see ForkedPackageBarLifecycleParticipant
+     */
+    public static final String SESSION_KEY = "ch.sbb.maven.plugins.iib.utils.ForkedPackageBar.session";
+
+    private static final Map<String, ForkedPackageBar> workers = new HashMap<String, ForkedPackageBar>();
+    private static boolean shutdownHookAdded;
+
+    private final List<String> jvmArgs;
+    private final int threads;
+    private final String processorClass;
+
+    private Connection connection;
+    private int nextId;
+    private long timeout = Long.parseLong(DEFAULT_TIMEOUT) * 1000;
+
+
+    /**
+     * @param jvmArgs the arguments of the worker JVM, separated by spaces
+     * @param threads the number of bar files packaged at the same time; the number of available processors if 0 or less
+     * @param processorClass the class packaging the bar files, see {@link PackageBarWorker#PROCESSOR_CLASS}
+     */
+    ForkedPackageBar(String jvmArgs, int threads, String processorClass)
+    {
+        this.jvmArgs = new ArrayList<String>();
+        for (String jvmArg : jvmArgs.trim().split("\\s+"))
+        {
+            if (jvmArg.length() > 0)
+            {
+                this.jvmArgs.add(jvmArg);
+            }
+        }
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.processorClass = processorClass;
+    }
+
+
+    /**
+     * returns the worker for the given settings, creating it the first time it is requested
+     *
+     * @param jvmArgs the arguments of the worker JVM, separated by spaces; {@link #DEFAULT_JVM_ARGS} if empty
+     * @param threads the number of bar files packaged at the same time; the number of available processors if 0 or less
+     * @return the worker, started on its first request
+     */
+    public static synchronized ForkedPackageBar getInstance(String jvmArgs, int threads)
+    {
+        String args = jvmArgs == null || jvmArgs.trim().length() == 0 ? DEFAULT_JVM_ARGS : jvmArgs.trim();
+        String key = threads + " " + args;
+        ForkedPackageBar worker = workers.get(key);
+        if (worker == null)
+        {
+            worker = new ForkedPackageBar(args, threads, PackageBarWorker.PROCESSOR_CLASS);
+            workers.put(key, worker);
+        }
+        if (!shutdownHookAdded)
+        {
+            Runtime.getRuntime().addShutdownHook(new Thread("packagebar-worker-shutdown") {
+                @Override
+                public void run()
+                {
+                    stopAll();
+                }
+            });
+            shutdownHookAdded = true;
+        }
+        return worker;
+    }
+
+
+    /**
+     * @param timeout the time a request waits for its response, in milliseconds
+     */
+    public synchronized void setTimeout(long timeout)
+    {
+        this.timeout = timeout;
+    }
+
+
+    /**
+     * makes sure the workers are stopped at the end of the build, rather than when Maven exits: a Maven process may run
+     * several builds, e.g. in an IDE.
+     *
+     * The lifecycle participant may not see the static state of the plugin's classes (it may be loaded by another class
+     * realm), so a {@link Closeable} stopping the workers is left in the context of the top-level project.
+     *
+     * @param session the current build
+     */
+    public static synchronized void stopAtSessionEnd(MavenSession session)
+    {
+        MavenProject topLevelProject = session.getTopLevelProject() != null ? session.getTopLevelProject() : session.getProjects().get(0);
+        if (topLevelProject.getContextValue(SESSION_KEY) == null)
+        {
+            topLevelProject.setContextValue(SESSION_KEY, new Closeable() {
+                public void close()
+                {
+                    stopAll();
+                }
+            });
+        }
+    }
+
+
+    /**
+     * stops all workers
+     */
+    public static synchronized void stopAll()
+    {
+        for (ForkedPackageBar worker : workers.values())
+        {
+            worker.stop();
+        }
+    }
+
+
+    /**
+     * packages a bar file in the worker JVM and logs the output of the packaging
+     *
+     * @param log the log of the calling mojo
+     * @param args the mqsipackagebar arguments
+     * @throws MojoFailureException if the packaging failed or the worker could not be run
+     */
+    public void packageBar(Log log, String[] args) throws MojoFailureException
+    {
+        PendingRequest request;
+        long requestTimeout;
+        synchronized (this)
+        {
+            requestTimeout = timeout;
+            try
+            {
+                if (connection == null || !connection.isRunning())
+                {
+                    start(log);
+                }
+                request = connection.send(++nextId, args);
+                log.debug("packagebar request " + request.id + " sent to the worker JVM");
+            } catch (IOException e)
+            {
+                // / the worker is restarted by the next request
+                stop();
+                throw new MojoFailureException("the packagebar worker JVM failed: " + e, e);
+            }
+        }
+
+        PackageBarWorker.Response response;
+        try
+        {
+            response = request.await(requestTimeout);
+        } catch (IOException e)
+        {
+            throw new MojoFailureException("the packagebar worker JVM failed: " + e, e);
+        }
+        if (response == null)
+        {
+            // / the worker is stuck; whatever else it was doing fails as well
+            stop(request.connection);
+            throw new MojoFailureException("the packagebar worker JVM did not answer within " + requestTimeout / 1000 + " seconds");
+        }
+        for (String line : response.output.split("\r?\n"))
+        {
+            if (line.length() > 0)
+            {
+                log.info(line);
+            }
+        }
+        if (response.error != null)
+        {
+            throw new MojoFailureException("mqsipackagebar failed: " + response.error);
+        }
+    }
+
+
+    /**
+     * stops the worker once it answered the requests under way; it is started again by the next request
+     */
+    public synchronized void stop()
+    {
+        if (connection != null)
+        {
+            connection.close();
+            connection = null;
+        }
+    }
+
+
+    /**
+     * stops the worker if it still runs on the given connection
+     */
+    private synchronized void stop(Connection stuck)
+    {
+        if (connection == stuck)
+        {
+            stop();
+        }
+        else
+        {
+            stuck.close();
+        }
+    }
+
+
+    private void start(Log log) throws IOException
+    {
+        stop();
+        ServerSocket server = new ServerSocket(0, 1, InetAddress.getByName(null));
+        try
+        {
+            long token = new SecureRandom().nextLong();
+            List<String> command = new ArrayList<String>();
+            command.add(new File(System.getProperty("java.home"), "bin" + File.separator + "java").getPath());
+            command.addAll(jvmArgs);
+            command.addAll(Arrays.asList("-cp", getClasspath(), PackageBarWorker.class.getName(), processorClass, String.valueOf(threads),
+                    String.valueOf(server.getLocalPort()), String.valueOf(token)));
+            log.info("Starting the packagebar worker JVM with " + jvmArgs + ", packaging up to " + threads + " bar files at the same time");
+            log.debug(new CommandParser().toSingleLineCommand(command));
+
+            ProcessBuilder builder = new ProcessBuilder(command);
+            // / only what happens outside of the requests, e.g. VM warnings or -verbose:gc
+            builder.redirectOutput(Redirect.INHERIT);
+            builder.redirectError(Redirect.INHERIT);
+            Process process = builder.start();
+            try
+            {
+                connection = new Connection(process, accept(server, process, token));
+            } catch (IOException e)
+            {
+                process.destroy();
+                throw e;
+            }
+        } finally
+        {
+            server.close();
+        }
+    }
+
+
+    /**
+     * @return the connection of the worker, once it identified itself with the token
+     */
+    private static Socket accept(ServerSocket server, Process process, long token) throws IOException
+    {
+        long end = System.currentTimeMillis() + CONNECT_TIMEOUT;
+        // / checks every second whether the worker is still starting
+        server.setSoTimeout(1000);
+        while (System.currentTimeMillis() < end)
+        {
+            Socket socket;
+            try
+            {
+                socket = server.accept();
+            } catch (SocketTimeoutException e)
+            {
+                try
+                {
+                    throw new IOException("the packagebar worker JVM exited with " + process.exitValue() + " before it connected");
+                } catch (IllegalThreadStateException running)
+                {
+                    continue;
+                }
+            }
+            try
+            {
+                socket.setSoTimeout((int) CONNECT_TIMEOUT);
+                if (new DataInputStream(socket.getInputStream()).readLong() == token)
+                {
+                    socket.setSoTimeout(0);
+                    return socket;
+                }
+            } catch (IOException e)
+            {
+                // / not the worker
+            }
+            socket.close();
+        }
+        throw new IOException("the packagebar worker JVM did not connect within " + CONNECT_TIMEOUT / 1000 + " seconds");
+    }
+
+
+    /**
+     * @return the classpath of the plugin, which holds the packaging classes
+     */
+    static String getClasspath()
+    {
+        ClassLoader loader = PackageBarWorker.class.getClassLoader();
+        if (!(loader instanceof URLClassLoader))
+        {
+            return System.getProperty("java.class.path");
+        }
+        StringBuilder classpath = new StringBuilder();
+        for (URL url : ((URLClassLoader) loader).getURLs())
+        {
+            if (!"file".equals(url.getProtocol()))
+            {
+                continue;
+            }
+            if (classpath.length() > 0)
+            {
+                classpath.append(File.pathSeparatorChar);
+            }
+            try
+            {
+                classpath.append(new File(url.toURI()).getPath());
+            } catch (URISyntaxException e)
+            {
+                classpath.append(url.getPath());
+            }
+        }
+        return classpath.toString();
+    }
+
+
+    private static void waitFor(Process process, long timeout)
+    {
+        long end = System.currentTimeMillis() + timeout;
+        while (System.currentTimeMillis() < end)
+        {
+            try
+            {
+                process.exitValue();
+                return;
+            } catch (IllegalThreadStateException e)
+            {
+                try
+                {
+                    TimeUnit.MILLISECONDS.sleep(50);
+                } catch (InterruptedException interrupted)
+                {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+
+
+    /**
+     * a running worker JVM: the requests are written by the calling threads, the responses read by a thread of the
+     * connection and handed to the requests waiting for them
+     */
+    static class Connection implements Runnable {
+        private final Process process;
+        private final Socket socket;
+        private final DataOutputStream out;
+        private final DataInputStream in;
+        private final Map<Integer, PendingRequest> pending = new HashMap<Integer, PendingRequest>();
+        private IOException failure;
+
+        Connection(Process process, Socket socket) throws IOException
+        {
+            this.process = process;
+            this.socket = socket;
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            Thread reader = new Thread(this, "packagebar-worker-responses");
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        synchronized PendingRequest send(int id, String[] args) throws IOException
+        {
+            if (failure != null)
+            {
+                throw failure;
+            }
+            PendingRequest request = new PendingRequest(this, id);
+            pending.put(Integer.valueOf(id), request);
+            new PackageBarWorker.Request(id, args).write(out);
+            out.flush();
+            return request;
+        }
+
+        public void run()
+        {
+            IOException end;
+            try
+            {
+                while (true)
+                {
+                    int id = in.readInt();
+                    PackageBarWorker.Response response = PackageBarWorker.Response.read(in);
+                    PendingRequest request;
+                    synchronized (this)
+                    {
+                        request = pending.remove(Integer.valueOf(id));
+                    }
+                    if (request != null)
+                    {
+                        request.complete(response, null);
+                    }
+                }
+            } catch (EOFException e)
+            {
+                end = new IOException("the worker JVM exited");
+            } catch (IOException e)
+            {
+                end = e;
+            } catch (Throwable e)
+            {
+                // / e.g. an OutOfMemoryError: the requests must not wait for a reader that is gone
+                end = new IOException("unable to read the responses of the worker JVM: " + e, e);
+            }
+
+            synchronized (this)
+            {
+                failure = end;
+                for (PendingRequest request : pending.values())
+                {
+                    request.complete(null, end);
+                }
+                pending.clear();
+            }
+            // / the connection can't be trusted anymore
+            process.destroy();
+        }
+
+        boolean isRunning()
+        {
+            synchronized (this)
+            {
+                if (failure != null)
+                {
+                    return false;
+                }
+            }
+            try
+            {
+                process.exitValue();
+                return false;
+            } catch (IllegalThreadStateException e)
+            {
+                return true;
+            }
+        }
+
+        void close()
+        {
+            try
+            {
+                // / the worker exits once it answered the requests under way
+                synchronized (this)
+                {
+                    out.flush();
+                    socket.shutdownOutput();
+                }
+                waitFor(process, 10000);
+            } catch (IOException e)
+            {
+                // / destroyed below
+            }
+            process.destroy();
+            try
+            {
+                socket.close();
+            } catch (IOException e)
+            {
+                // / closed anyway
+            }
+        }
+    }
+
+
+    /**
+     * a request sent to the worker, waiting for its response
+     */
+    static class PendingRequest {
+        final Connection connection;
+        final int id;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private PackageBarWorker.Response response;
+        private IOException failure;
+
+        PendingRequest(Connection connection, int id)
+        {
+            this.connection = connection;
+            this.id = id;
+        }
+
+        void complete(PackageBarWorker.Response response, IOException failure)
+        {
+            this.response = response;
+            this.failure = failure;
+            done.countDown();
+        }
+
+        /**
+         * @param timeout the time to wait, in milliseconds
+         * @return the response, or null if none came within the timeout
+         * @throws IOException if the worker failed
+         */
+        PackageBarWorker.Response await(long timeout) throws IOException
+        {
+            try
+            {
+                if (!done.await(timeout, TimeUnit.MILLISECONDS))
+                {
+                    return null;
+                }
+            } catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while waiting for the packagebar worker", e);
+            }
+            if (failure != null)
+            {
+                throw failure;
+            }
+            return response;
+        }
+    }
+
+}
@@ -0,0 +1,56 @@
+package ch.sbb.maven.plugins.iib.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import org.apache.maven.AbstractMavenLifecycleParticipant;
+import org.apache.maven.MavenExecutionException;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.logging.LogEnabled;
+import org.codehaus.plexus.logging.Logger;
+
+/**
+ * Stops the packagebar worker JVMs started by the build (see {@link ForkedPackageBar}) at its end.
+ *
+ * Registered in META-INF/plexus/components.xml, like {@link BuildTimingsLifecycleParticipant}.
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+public class ForkedPackageBarLifecycleParticipant extends AbstractMavenLifecycleParticipant implements LogEnabled {
+
+    private Logger logger;
+
+
+    public void enableLogging(Logger logger)
+    {
+        this.logger = logger;
+    }
+
+
+    @Override
+    public void afterSessionEnd(MavenSession session) throws MavenExecutionException
+    {
+        if (session.getProjects() == null || session.getProjects().isEmpty())
+        {
+            return;
+        }
+        MavenProject topLevelProject = session.getTopLevelProject() != null ? session.getTopLevelProject() : session.getProjects().get(0);
+        Object workers = topLevelProject.getContextValue(ForkedPackageBar.SESSION_KEY);
+        if (!(workers instanceof Closeable))
+        {
+            return;
+        }
+        try
+        {
+            ((Closeable) workers).close();
+        } catch (IOException e)
+        {
+            // / they are stopped when Maven exits anyway
+            logger.warn("unable to stop the packagebar worker JVMs: " + e);
+        }
+        topLevelProject.setContextValue(ForkedPackageBar.SESSION_KEY, null);
+    }
+
+}
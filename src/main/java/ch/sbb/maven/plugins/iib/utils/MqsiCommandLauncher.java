@@ -1,11 +1,14 @@
 package ch.sbb.maven.plugins.iib.utils;
 
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.File;
+import java.io.IOException;
 import java.lang.ProcessBuilder.Redirect;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Pattern;
 
 import org.apache.maven.plugin.MojoFailureException;
@@ -20,6 +23,75 @@ import org.codehaus.plexus.util.FileUtils;
  */
 public class MqsiCommandLauncher {
 
+    /**
+     * whether the environment produced by mqsiprofile is captured once and reused for subsequent commands
+     */
+    private final boolean reuseMqsiEnvironment;
+
+    /**
+     * the file the complete output of the commands is written to, or null to log it at info level
+     */
+    private File outputFile;
+
+    /**
+     * how long the output of a command stopped by 'failFast' is drained at most, in milliseconds
+     */
+    private static final long STOPPED_OUTPUT_TIMEOUT = 10000;
+
+    private MqsiOutputListener outputListener;
+    private boolean failFast;
+    private final Set<String> fatalBipCodes = new HashSet<String>();
+
+
+    public MqsiCommandLauncher() {
+        this(false);
+    }
+
+    /**
+     * @param reuseMqsiEnvironment if true, mqsiprofile is run once per session and the mqsi commands are
+     *            launched directly with the environment it produced
+     */
+    public MqsiCommandLauncher(boolean reuseMqsiEnvironment) {
+        this.reuseMqsiEnvironment = reuseMqsiEnvironment;
+    }
+
+    /**
+     * @param outputFile the file the complete output of the mqsi commands is written to. If set, the output is
+     *            logged at debug level only; its last lines are part of the failure message either way.
+     */
+    public void setOutputFile(File outputFile) {
+        this.outputFile = outputFile;
+    }
+
+    /**
+     * @param outputListener receives the BIP messages, progress lines and error blocks of the commands' output
+     */
+    public void setOutputListener(MqsiOutputListener outputListener) {
+        this.outputListener = outputListener;
+    }
+
+    /**
+     * @param failFast if true, a command is stopped as soon as it reports a fatal error (see
+     *            {@link #setFatalBipCodes(Collection)}) and fails with that error. The processes the command
+     *            started are stopped as well, as far as they can be found (see {@link ProcessTree}); the build does not
+     *            wait for the others.
+     */
+    public void setFailFast(boolean failFast) {
+        this.failFast = failFast;
+    }
+
+    /**
+     * @param fatalBipCodes the error (E) or severe (S) BIP codes that stop a command with 'failFast', either with
+     *            severity letter (BIP2087E) or without (BIP2087); every error and severe message if empty
+     */
+    public void setFatalBipCodes(Collection<String> fatalBipCodes) {
+        this.fatalBipCodes.clear();
+        for (String code : fatalBipCodes) {
+            if (code != null && !code.trim().isEmpty()) {
+                this.fatalBipCodes.add(code.trim().toUpperCase());
+            }
+        }
+    }
 
     /**
      * 
@@ -64,7 +136,62 @@ public class MqsiCommandLauncher {
         }
 
 
-        final ProcessBuilder builder = new ProcessBuilder(osCommands);
+        BuildTimings.Span span = BuildTimings.step(mqsiCommand.toString());
+        try
+        {
+            if (reuseMqsiEnvironment)
+            {
+                launchWithCapturedEnvironment(log, pathToMqsiProfileScript, mqsiPrefixCommands, mqsiCommand, commands, osCommands);
+            }
+            else
+            {
+                launch(log, mqsiCommand, commands, new ProcessBuilder(osCommands));
+            }
+        } finally
+        {
+            span.stop();
+        }
+    }
+
+    /**
+     * launches the mqsi command directly with the environment captured from mqsiprofile. If the environment
+     * can't be captured or the command can't be found on its PATH, then the profile commands are run as before.
+     */
+    private void launchWithCapturedEnvironment(Log log, String pathToMqsiProfileScript, String mqsiPrefixCommands, MqsiCommand mqsiCommand, String[] commands,
+            List<String> osCommands) throws MojoFailureException
+    {
+        ArrayList<String> profileCommands = new ArrayList<String>();
+        addMqsiSetProfileCommands(log, pathToMqsiProfileScript, mqsiPrefixCommands, profileCommands);
+        MqsiEnvironment environment = MqsiEnvironment.getInstance(log, profileCommands);
+
+        // / osCommands always starts with the profile commands, followed by the mqsi (or replacement) command
+        List<String> directCommands = new ArrayList<String>(osCommands.subList(profileCommands.size(), osCommands.size()));
+        String executable = environment == null ? null : environment.resolveExecutable(directCommands.get(0));
+        if (executable == null)
+        {
+            if (environment != null) {
+                log.info("unable to find " + directCommands.get(0) + " on the mqsiprofile PATH; running the mqsiprofile commands");
+            }
+            launch(log, mqsiCommand, commands, new ProcessBuilder(osCommands));
+            return;
+        }
+
+        directCommands.set(0, executable);
+        if (OSValidator.isWindows() && (executable.toLowerCase().endsWith(".cmd") || executable.toLowerCase().endsWith(".bat")))
+        {
+            directCommands.add(0, "/c");
+            directCommands.add(0, "cmd");
+        }
+        log.info("launching with the captured mqsiprofile environment: " + new CommandParser().toSingleLineCommand(directCommands));
+
+        ProcessBuilder builder = new ProcessBuilder(directCommands);
+        builder.environment().clear();
+        builder.environment().putAll(environment.getVariables());
+        launch(log, mqsiCommand, commands, builder);
+    }
+
+    private void launch(final Log log, MqsiCommand mqsiCommand, String[] commands, ProcessBuilder builder) throws MojoFailureException
+    {
 
         TimeElapsedThread thread = new TimeElapsedThread(log);
         try
@@ -74,38 +201,95 @@ public class MqsiCommandLauncher {
 
 
             thread.start();
-            Process process = builder.start();
+            final Process process = builder.start();
 
-            final InputStream in = process.getInputStream();
-
-            BufferedReader brStandardOut = new BufferedReader(new InputStreamReader(in, "UTF-8"));
-            StringBuilder out = new StringBuilder();
-            String standardOutLine = null;
-            while ((standardOutLine = brStandardOut.readLine()) != null)
+            // / only the last part of the output is kept for the failure message
+            ProcessOutputPump pump = new ProcessOutputPump(process.getInputStream(), log, outputFile, ProcessOutputPump.DEFAULT_TAIL_SIZE);
+            final AtomicReference<MqsiOutputEvent> fatalError = new AtomicReference<MqsiOutputEvent>();
+            if (outputListener != null || failFast)
             {
-                log.info(standardOutLine);
-                out.append(standardOutLine + "\n");
+                pump.setParser(new MqsiOutputParser(new MqsiOutputListener() {
+                    public void onEvent(MqsiOutputEvent event)
+                    {
+                        if (outputListener != null)
+                        {
+                            outputListener.onEvent(event);
+                        }
+                        if (failFast && isFatal(event) && fatalError.compareAndSet(null, event))
+                        {
+                            ProcessTree.destroy(process, log);
+                        }
+                    }
+                }));
             }
+            pump.start();
             process.waitFor();
-            thread.interrupt();
+            try
+            {
+                if (fatalError.get() == null)
+                {
+                    pump.awaitCompletion();
+                }
+                else if (!pump.awaitCompletion(STOPPED_OUTPUT_TIMEOUT))
+                {
+                    // / see ProcessTree for the processes that cannot be stopped
+                    log.warn("the output of the stopped " + mqsiCommand + " is still open: a process it started may still be running");
+                }
+            } catch (IOException e)
+            {
+                // / destroying the process closes its output
+                if (fatalError.get() == null)
+                {
+                    throw e;
+                }
+            }
+
+            if (fatalError.get() != null)
+            {
+                MqsiOutputEvent event = fatalError.get();
+                log.error("stopped " + mqsiCommand + " after the fatal error " + event.getBipCode());
+                throw new MojoFailureException(event.getText());
+            }
 
             log.info("process ended with a " + process.exitValue() + " value");
 
             if (process.exitValue() != 0)
             {
-                throw new MojoFailureException(out.toString());
+                String message = pump.getTail();
+                if (pump.isOutputFileWritten())
+                {
+                    message += "\n(the complete output is in " + outputFile.getAbsolutePath() + ")";
+                }
+                throw new MojoFailureException(message);
             }
 
 
         } catch (Exception e)
         {
             log.info("unable to execute " + mqsiCommand + " with arguments " + commands);
-            throw new MojoFailureException("Unable to execute command(s): " + osCommands + " : " + e);
+            throw new MojoFailureException("Unable to execute command(s): " + builder.command() + " : " + e);
+        } finally
+        {
+            thread.interrupt();
         }
 
 
     }
 
+    private boolean isFatal(MqsiOutputEvent event)
+    {
+        if (event.getType() != MqsiOutputEvent.Type.errorBlock)
+        {
+            return false;
+        }
+        if (fatalBipCodes.isEmpty())
+        {
+            return true;
+        }
+        String code = event.getBipCode();
+        return fatalBipCodes.contains(code) || fatalBipCodes.contains(code.substring(0, code.length() - 1));
+    }
+
     private void addMqsiSetProfileCommands(Log log, String pathToMqsiProfileScript, String mqsiPrefixCommands, final ArrayList<String> osCommands) throws MojoFailureException {
         if (OSValidator.isWindows())
         {
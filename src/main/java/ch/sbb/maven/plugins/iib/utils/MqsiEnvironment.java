@@ -0,0 +1,489 @@
+package ch.sbb.maven.plugins.iib.utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * The operating system environment as it looks after mqsiprofile has been executed. The environment is captured
+ * once by running the profile commands followed by a command that dumps the environment ('set' on Windows, 'env'
+ * elsewhere). The mqsi* commands can then be launched directly with the captured environment instead of
+ * re-running mqsiprofile for each and every invocation.
+ *
+ * Captured environments are held for as long as the plugin's classes are loaded, i.e. for the whole Maven session
+ * including all modules of a reactor build. In addition, the variables that mqsiprofile added, changed or removed are
+ * stored in a cache file in the user's home directory, so that following builds on the same machine don't need to run
+ * mqsiprofile at all. The cache file is keyed by the profile commands and the modification times of the
+ * scripts they reference, so changing the mqsiprofile script leads to a new capture.
+ *
+ * A variable that mqsiprofile extended (e.g. PATH, LD_LIBRARY_PATH or CLASSPATH) is stored as what it put before and
+ * after the value it found, and applied to the value of the build that loads it. Any other variable is stored with
+ * the value it replaced: if a later build starts with another value (or with or without the variable), the cache file
+ * is considered stale and mqsiprofile is run again.
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+public class MqsiEnvironment {
+
+    /**
+     * a variable that mqsiprofile always sets; used to check that the profile actually ran
+     */
+    static final String MQSI_MARKER_VARIABLE = "MQSI_FILEPATH";
+
+    private static final Pattern VARIABLE_LINE = Pattern.compile("^([A-Za-z_][A-Za-z0-9_().{}\\-]*)=(.*)$");
+
+    private static final Map<String, MqsiEnvironment> sessionEnvironments = new HashMap<String, MqsiEnvironment>();
+
+    /**
+     * the directory holding the environment cache files
+     */
+    static File cacheDirectory = new File(System.getProperty("user.home"), ".iib-maven-plugin" + File.separator + "mqsi-environment");
+
+    /**
+     * prefix of the cache file keys for variables that mqsiprofile removed from the environment
+     */
+    private static final String REMOVED_PREFIX = "removed.";
+
+    /**
+     * prefix of the cache file keys for variables that mqsiprofile added or replaced
+     */
+    private static final String VARIABLE_PREFIX = "variable.";
+
+    /**
+     * prefix of the cache file keys for the value a variable had before mqsiprofile replaced it
+     */
+    private static final String BASE_PREFIX = "base.";
+
+    /**
+     * prefixes of the cache file keys for what mqsiprofile put before and after the value of a variable it extended
+     */
+    private static final String BEFORE_PREFIX = "before.";
+    private static final String AFTER_PREFIX = "after.";
+
+    private final Map<String, String> variables;
+
+
+    MqsiEnvironment(Map<String, String> variables) {
+        this.variables = variables;
+    }
+
+    /**
+     * returns the environment produced by the given profile commands, capturing it the first time it is requested
+     *
+     * @param log
+     * @param profileCommands the commands that execute mqsiprofile and then launch the command that follows them
+     * @return the captured environment or null if it could not be captured
+     */
+    public static synchronized MqsiEnvironment getInstance(Log log, List<String> profileCommands)
+    {
+        String key = new CommandParser().toSingleLineCommand(profileCommands);
+        if (sessionEnvironments.containsKey(key))
+        {
+            return sessionEnvironments.get(key);
+        }
+
+        File cacheFile = getCacheFile(profileCommands);
+        MqsiEnvironment environment = load(log, cacheFile);
+        if (environment == null)
+        {
+            environment = capture(log, profileCommands);
+            if (environment != null)
+            {
+                environment.store(log, cacheFile, key);
+            }
+        }
+        // / a failed capture is remembered as well, so that it isn't retried for every mqsi command
+        sessionEnvironments.put(key, environment);
+        return environment;
+    }
+
+    /**
+     * the cache file name is a hash of the profile commands plus the modification time of every file they reference
+     *
+     * @param profileCommands
+     * @return the cache file for the given profile commands
+     */
+    static File getCacheFile(List<String> profileCommands)
+    {
+        StringBuilder key = new StringBuilder();
+        for (String profileCommand : profileCommands)
+        {
+            key.append(profileCommand).append('\n');
+        }
+        for (File file : getReferencedFiles(profileCommands))
+        {
+            key.append(file.getAbsolutePath()).append('@').append(file.lastModified()).append('\n');
+        }
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            String hash = new BigInteger(1, digest.digest(key.toString().getBytes("UTF-8"))).toString(16);
+            return new File(cacheDirectory, "mqsiprofile-" + hash + ".properties");
+        } catch (Exception e)
+        {
+            // / SHA-1 and UTF-8 are always available
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * finds the existing files among the profile commands and their words, e.g. the mqsiprofile script in
+     * "sh -c '. /opt/ibm/mqsi/9.0.0.2/bin/mqsiprofile; exec "$0" "$@"'"
+     */
+    static Set<File> getReferencedFiles(List<String> profileCommands)
+    {
+        Set<File> files = new LinkedHashSet<File>();
+        for (String profileCommand : profileCommands)
+        {
+            List<String> candidates = new ArrayList<String>();
+            candidates.add(profileCommand.replace("\"", "").trim());
+            for (String word : profileCommand.split("[\\s;&|\"']+"))
+            {
+                candidates.add(word);
+            }
+            for (String candidate : candidates)
+            {
+                if (candidate.isEmpty())
+                {
+                    continue;
+                }
+                File file = new File(candidate);
+                if (file.isAbsolute() && file.isFile())
+                {
+                    files.add(file);
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * loads a previously stored environment and applies it to the environment of the current process
+     *
+     * @return the environment or null if there is no (readable) cache file, or it is stale
+     */
+    static MqsiEnvironment load(Log log, File cacheFile)
+    {
+        return load(log, cacheFile, System.getenv());
+    }
+
+    /**
+     * loads a previously stored environment and applies it to the given base environment
+     *
+     * @return the environment or null if there is no (readable) cache file, or it was stored for another value of a
+     *         variable that mqsiprofile replaced
+     */
+    static MqsiEnvironment load(Log log, File cacheFile, Map<String, String> baseEnvironment)
+    {
+        if (!cacheFile.isFile())
+        {
+            return null;
+        }
+        try
+        {
+            Properties properties = new Properties();
+            FileInputStream fis = new FileInputStream(cacheFile);
+            try
+            {
+                properties.load(fis);
+            } finally
+            {
+                fis.close();
+            }
+
+            Map<String, String> variables = new TreeMap<String, String>(baseEnvironment);
+            for (String name : properties.stringPropertyNames())
+            {
+                if (name.startsWith(VARIABLE_PREFIX))
+                {
+                    String variable = name.substring(VARIABLE_PREFIX.length());
+                    String base = properties.getProperty(BASE_PREFIX + variable);
+                    if (base == null ? baseEnvironment.containsKey(variable) : !base.equals(baseEnvironment.get(variable)))
+                    {
+                        log.info("the variable " + variable + " changed since the mqsiprofile environment was cached in " + cacheFile.getAbsolutePath());
+                        return null;
+                    }
+                    variables.put(variable, properties.getProperty(name));
+                }
+                else if (name.startsWith(BEFORE_PREFIX))
+                {
+                    String variable = name.substring(BEFORE_PREFIX.length());
+                    String base = baseEnvironment.get(variable);
+                    if (base == null)
+                    {
+                        log.info("the variable " + variable + " is not set, unlike when the mqsiprofile environment was cached in " + cacheFile.getAbsolutePath());
+                        return null;
+                    }
+                    variables.put(variable, properties.getProperty(name) + base + properties.getProperty(AFTER_PREFIX + variable, ""));
+                }
+                else if (name.startsWith(REMOVED_PREFIX))
+                {
+                    variables.remove(name.substring(REMOVED_PREFIX.length()));
+                }
+            }
+            if (getIgnoreCase(variables, MQSI_MARKER_VARIABLE) == null)
+            {
+                return null;
+            }
+            log.info("using the mqsiprofile environment cached in " + cacheFile.getAbsolutePath());
+            return new MqsiEnvironment(variables);
+        } catch (Exception e)
+        {
+            log.warn("unable to read the mqsiprofile environment cache file " + cacheFile.getAbsolutePath() + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * stores the variables that mqsiprofile added, changed or removed compared to the environment of the current
+     * process
+     */
+    void store(Log log, File cacheFile, String profileCommands)
+    {
+        store(log, cacheFile, profileCommands, System.getenv());
+    }
+
+    /**
+     * stores the variables that mqsiprofile added, changed or removed compared to the given base environment. Only the
+     * difference is stored, so that variables specific to a single build (e.g. those set by a CI server) are not
+     * carried over into the next build: a variable that was extended is stored as what was put before and after its
+     * base value, a variable that was replaced along with its base value (see {@link #load(Log, File, Map)}).
+     */
+    void store(Log log, File cacheFile, String profileCommands, Map<String, String> baseEnvironment)
+    {
+        Properties properties = new Properties();
+        for (Map.Entry<String, String> variable : variables.entrySet())
+        {
+            String base = baseEnvironment.get(variable.getKey());
+            String value = variable.getValue();
+            if (value.equals(base))
+            {
+                continue;
+            }
+            int index = base == null || base.isEmpty() ? -1 : value.indexOf(base);
+            if (index >= 0)
+            {
+                properties.setProperty(BEFORE_PREFIX + variable.getKey(), value.substring(0, index));
+                properties.setProperty(AFTER_PREFIX + variable.getKey(), value.substring(index + base.length()));
+            }
+            else
+            {
+                properties.setProperty(VARIABLE_PREFIX + variable.getKey(), value);
+                if (base != null)
+                {
+                    properties.setProperty(BASE_PREFIX + variable.getKey(), base);
+                }
+            }
+        }
+        for (String name : baseEnvironment.keySet())
+        {
+            if (!variables.containsKey(name))
+            {
+                properties.setProperty(REMOVED_PREFIX + name, "");
+            }
+        }
+
+        try
+        {
+            cacheFile.getParentFile().mkdirs();
+            // / write to a temporary file first, so that a concurrent build never reads a half-written file
+            File tempFile = File.createTempFile(cacheFile.getName(), ".tmp", cacheFile.getParentFile());
+            FileOutputStream fos = new FileOutputStream(tempFile);
+            try
+            {
+                properties.store(fos, "mqsiprofile environment captured with: " + profileCommands);
+            } finally
+            {
+                fos.close();
+            }
+            cacheFile.delete();
+            if (!tempFile.renameTo(cacheFile))
+            {
+                tempFile.delete();
+            }
+            log.info("stored the mqsiprofile environment in " + cacheFile.getAbsolutePath());
+        } catch (Exception e)
+        {
+            log.warn("unable to store the mqsiprofile environment in " + cacheFile.getAbsolutePath() + ": " + e);
+        }
+    }
+
+    /**
+     * runs the profile commands followed by an environment dump and parses the result
+     *
+     * @param log
+     * @param profileCommands
+     * @return the captured environment or null if it could not be captured
+     */
+    static MqsiEnvironment capture(Log log, List<String> profileCommands)
+    {
+        List<String> osCommands = new ArrayList<String>(profileCommands);
+        osCommands.add(MqsiCommandLauncher.OSValidator.isWindows() ? "set" : "env");
+
+        log.info("capturing the mqsiprofile environment with: " + new CommandParser().toSingleLineCommand(osCommands));
+        try
+        {
+            ProcessBuilder builder = new ProcessBuilder(osCommands);
+            builder.redirectErrorStream(true);
+            Process process = builder.start();
+            process.getOutputStream().close();
+
+            List<String> lines = new ArrayList<String>();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+            String line = null;
+            while ((line = reader.readLine()) != null)
+            {
+                lines.add(line);
+            }
+            reader.close();
+            process.waitFor();
+
+            if (process.exitValue() != 0)
+            {
+                log.warn("capturing the mqsiprofile environment ended with a " + process.exitValue() + " value; the mqsiprofile will be run for each mqsi command");
+                return null;
+            }
+
+            Map<String, String> variables = parseVariables(lines);
+            if (getIgnoreCase(variables, MQSI_MARKER_VARIABLE) == null)
+            {
+                log.warn("the captured environment does not contain " + MQSI_MARKER_VARIABLE + "; the mqsiprofile will be run for each mqsi command");
+                return null;
+            }
+            log.info("captured " + variables.size() + " environment variables from the mqsiprofile");
+            return new MqsiEnvironment(variables);
+
+        } catch (Exception e)
+        {
+            log.warn("unable to capture the mqsiprofile environment; the mqsiprofile will be run for each mqsi command: " + e);
+            return null;
+        }
+    }
+
+    /**
+     * parses the output of 'set' or 'env'. Lines that don't look like a variable assignment are treated as
+     * the continuation of a multi-line value, unless they come before the first variable (mqsiprofile output).
+     *
+     * @param lines
+     * @return the variables found in the lines
+     */
+    static Map<String, String> parseVariables(List<String> lines)
+    {
+        Map<String, String> variables = new TreeMap<String, String>();
+        String lastName = null;
+        for (String line : lines)
+        {
+            Matcher matcher = VARIABLE_LINE.matcher(line);
+            if (matcher.matches())
+            {
+                lastName = matcher.group(1);
+                variables.put(lastName, matcher.group(2));
+            }
+            else if (lastName != null)
+            {
+                variables.put(lastName, variables.get(lastName) + "\n" + line);
+            }
+        }
+        return variables;
+    }
+
+    /**
+     * @return the captured variables
+     */
+    public Map<String, String> getVariables()
+    {
+        return variables;
+    }
+
+    /**
+     * searches the captured PATH for the given command, the same way the shell would have done after running mqsiprofile.
+     *
+     * @param command a command name such as mqsicreatebar
+     * @return the absolute path of the executable or null if it can't be found
+     */
+    public String resolveExecutable(String command)
+    {
+        if (command == null || command.trim().isEmpty())
+        {
+            return null;
+        }
+        File commandFile = new File(command);
+        if (commandFile.isAbsolute())
+        {
+            return commandFile.isFile() ? commandFile.getAbsolutePath() : null;
+        }
+
+        String path = getIgnoreCase(variables, "PATH");
+        if (path == null)
+        {
+            return null;
+        }
+
+        List<String> extensions = new ArrayList<String>();
+        extensions.add("");
+        if (MqsiCommandLauncher.OSValidator.isWindows())
+        {
+            String pathExt = getIgnoreCase(variables, "PATHEXT");
+            if (pathExt == null)
+            {
+                pathExt = ".COM;.EXE;.BAT;.CMD";
+            }
+            for (String extension : pathExt.split(Pattern.quote(File.pathSeparator)))
+            {
+                if (!extension.trim().isEmpty())
+                {
+                    extensions.add(extension.trim().toLowerCase());
+                }
+            }
+        }
+
+        for (String directory : path.split(Pattern.quote(File.pathSeparator)))
+        {
+            if (directory.trim().isEmpty())
+            {
+                continue;
+            }
+            // / Windows PATH entries are sometimes quoted
+            directory = directory.trim().replace("\"", "");
+            for (String extension : extensions)
+            {
+                File candidate = new File(directory, command + extension);
+                if (candidate.isFile() && (MqsiCommandLauncher.OSValidator.isWindows() || candidate.canExecute()))
+                {
+                    return candidate.getAbsolutePath();
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String getIgnoreCase(Map<String, String> variables, String name)
+    {
+        for (Map.Entry<String, String> entry : variables.entrySet())
+        {
+            if (entry.getKey().equalsIgnoreCase(name))
+            {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+}
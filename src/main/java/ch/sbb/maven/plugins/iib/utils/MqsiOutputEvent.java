@@ -0,0 +1,125 @@
+package ch.sbb.maven.plugins.iib.utils;
+
+import java.util.Date;
+
+/**
+ * An event recognized in the output of an mqsi command (mqsicreatebar, mqsipackagebar, mqsideploy...): a BIP
+ * message, a progress line or an error block (an error message together with the lines explaining it).
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+public class MqsiOutputEvent {
+
+    public enum Type {
+        /**
+         * a line with a BIP message code, e.g. 'BIP8071I: Successful command completion.'
+         */
+        message,
+        /**
+         * a line reporting progress, e.g. 'Building workspace' or '50%'
+         */
+        progress,
+        /**
+         * an error or severe BIP message along with the lines following it, emitted once the block is complete
+         */
+        errorBlock
+    }
+
+    public enum Severity {
+        information,
+        warning,
+        error,
+        severe;
+
+        static Severity fromCode(char code)
+        {
+            switch (code)
+            {
+                case 'W':
+                    return warning;
+                case 'E':
+                    return error;
+                case 'S':
+                    return severe;
+                default:
+                    return information;
+            }
+        }
+    }
+
+    private final Type type;
+    private final long timestamp;
+    private final String bipCode;
+    private final Severity severity;
+    private final String text;
+
+
+    MqsiOutputEvent(Type type, long timestamp, String bipCode, Severity severity, String text)
+    {
+        this.type = type;
+        this.timestamp = timestamp;
+        this.bipCode = bipCode;
+        this.severity = severity;
+        this.text = text;
+    }
+
+
+    public Type getType()
+    {
+        return type;
+    }
+
+
+    /**
+     * @return the time the (first) line of the event was read, in milliseconds since the epoch
+     */
+    public long getTimestamp()
+    {
+        return timestamp;
+    }
+
+
+    /**
+     * @return the message code including its severity letter, e.g. 'BIP2087E', or null for progress lines
+     */
+    public String getBipCode()
+    {
+        return bipCode;
+    }
+
+
+    /**
+     * @return the severity of the BIP message, or null for progress lines
+     */
+    public Severity getSeverity()
+    {
+        return severity;
+    }
+
+
+    /**
+     * @return true for error and severe BIP messages
+     */
+    public boolean isError()
+    {
+        return severity == Severity.error || severity == Severity.severe;
+    }
+
+
+    /**
+     * @return the line, or the lines of an error block separated by newlines
+     */
+    public String getText()
+    {
+        return text;
+    }
+
+
+    @Override
+    public String toString()
+    {
+        return type + " " + new Date(timestamp) + (bipCode == null ? "" : " " + bipCode) + ": " + text;
+    }
+
+}
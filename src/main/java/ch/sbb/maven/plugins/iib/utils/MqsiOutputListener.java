@@ -0,0 +1,18 @@
+package ch.sbb.maven.plugins.iib.utils;
+
+/**
+ * Receives the events recognized in the output of an mqsi command by {@link MqsiOutputParser}.
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+public interface MqsiOutputListener {
+
+    /**
+     * called on the thread reading the process output, so implementations should return quickly
+     *
+     * @param event the event
+     */
+    void onEvent(MqsiOutputEvent event);
+
+}
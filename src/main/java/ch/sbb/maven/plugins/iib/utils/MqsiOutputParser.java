@@ -0,0 +1,124 @@
+package ch.sbb.maven.plugins.iib.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Recognizes BIP messages, progress lines and error blocks in the output of the mqsi commands, line by line as it is
+ * produced, and passes them as {@link MqsiOutputEvent}s to a listener.
+ *
+ * An error block starts with an error or severe BIP message and takes all following lines up to the next BIP message,
+ * an empty line or the end of the output (see {@link #finish()}).
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+public class MqsiOutputParser {
+
+    /**
+     * e.g. 'BIP2087E: Integration node ...' or '[BIP1045I]'
+     */
+    static final Pattern BIP_MESSAGE = Pattern.compile("\\bBIP(\\d{4})([IWES])\\b");
+
+    static final Pattern PROGRESS = Pattern.compile("^\\s*(\\d{1,3}%|(Building|Compiling|Processing|Adding|Deploying|Packaging|Validating|Creating|Writing)\\b)");
+
+    /**
+     * the number of lines after which an error block is emitted even if it did not end yet
+     */
+    private static final int MAX_BLOCK_LINES = 50;
+
+    private final MqsiOutputListener listener;
+
+    private List<String> block;
+    private long blockTimestamp;
+    private String blockCode;
+    private MqsiOutputEvent.Severity blockSeverity;
+
+
+    /**
+     * @param listener the listener receiving the events
+     */
+    public MqsiOutputParser(MqsiOutputListener listener)
+    {
+        this.listener = listener;
+    }
+
+
+    /**
+     * @param line a line of output, without line terminator
+     */
+    public void parseLine(String line)
+    {
+        long timestamp = System.currentTimeMillis();
+        Matcher matcher = BIP_MESSAGE.matcher(line);
+        if (matcher.find())
+        {
+            endBlock();
+            String code = "BIP" + matcher.group(1) + matcher.group(2);
+            MqsiOutputEvent.Severity severity = MqsiOutputEvent.Severity.fromCode(matcher.group(2).charAt(0));
+            MqsiOutputEvent event = new MqsiOutputEvent(MqsiOutputEvent.Type.message, timestamp, code, severity, line);
+            listener.onEvent(event);
+            if (event.isError())
+            {
+                block = new ArrayList<String>();
+                block.add(line);
+                blockTimestamp = timestamp;
+                blockCode = code;
+                blockSeverity = severity;
+            }
+            return;
+        }
+
+        if (block != null)
+        {
+            if (line.trim().isEmpty())
+            {
+                endBlock();
+                return;
+            }
+            block.add(line);
+            if (block.size() >= MAX_BLOCK_LINES)
+            {
+                endBlock();
+            }
+            return;
+        }
+
+        if (PROGRESS.matcher(line).find())
+        {
+            listener.onEvent(new MqsiOutputEvent(MqsiOutputEvent.Type.progress, timestamp, null, null, line.trim()));
+        }
+    }
+
+
+    /**
+     * to be called at the end of the output: emits the pending error block, if any
+     */
+    public void finish()
+    {
+        endBlock();
+    }
+
+
+    private void endBlock()
+    {
+        if (block == null)
+        {
+            return;
+        }
+        StringBuilder text = new StringBuilder();
+        for (String line : block)
+        {
+            if (text.length() > 0)
+            {
+                text.append('\n');
+            }
+            text.append(line);
+        }
+        block = null;
+        listener.onEvent(new MqsiOutputEvent(MqsiOutputEvent.Type.errorBlock, blockTimestamp, blockCode, blockSeverity, text.toString()));
+    }
+
+}
@@ -0,0 +1,280 @@
+package ch.sbb.maven.plugins.iib.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Applies override properties to a bar file without going through the IBM BarFile API.
+ *
+ * Only the deployment descriptors (META-INF/broker.xml) that contain an overridden property are rewritten - in the bar
+ * itself and in the applications and libraries (.appzip, .libzip) nested in it, at any depth. All other entries,
+ * including unchanged nested archives, are copied raw, without being inflated and deflated again.
+ *
+ * The bar file is not loaded into memory: its entries are copied from the file (see {@link RawZipFile#RawZipFile(File)}).
+ * A nested archive is first streamed to find out whether its deployment descriptors contain an overridden property;
+ * only then is it inflated into memory and rebuilt, so that the heap needed is bound by the nested archives that are
+ * actually overridden.
+ *
+ * As with {@link ApplyBarOverride}, a property that is not found in any deployment descriptor makes the override fail
+ * and no target bar file is written. A property without a value (no '=' in the properties file) removes the override.
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+public class NativeBarOverride {
+
+    static final String DEPLOYMENT_DESCRIPTOR = "META-INF/broker.xml";
+
+    private final Map<String, String> overrides;
+    private final Set<String> applied = new TreeSet<String>();
+    private final List<String> messages = new ArrayList<String>();
+
+
+    NativeBarOverride(Map<String, String> overrides)
+    {
+        this.overrides = overrides;
+    }
+
+
+    /**
+     * @param srcBar the bar file to apply the overrides to
+     * @param propertiesFile the override properties file
+     * @param targetBarFile the bar file to be written
+     * @return the result, listing every overridden property
+     * @throws IOException if the bar file cannot be read or written
+     */
+    public static BarOverrideResult applyBarOverride(File srcBar, String propertiesFile, String targetBarFile) throws IOException
+    {
+        Map<String, String> overrides = new LinkedHashMap<String, String>();
+        for (Map.Entry<String, String> property : ApplyBarOverride.readPropertiesFile(propertiesFile).entrySet())
+        {
+            // / blank lines end up as an empty property name
+            if (property.getKey().length() > 0)
+            {
+                overrides.put(property.getKey(), property.getValue());
+            }
+        }
+
+        File targetFile = new File(targetBarFile);
+        File tempFile = new File(targetFile.getParentFile(), targetFile.getName() + ".tmp");
+        RawZipFile bar = new RawZipFile(srcBar);
+        BarOverrideResult result;
+        try
+        {
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(tempFile), 65536);
+            try
+            {
+                result = applyOverrides(bar, overrides, out);
+            } finally
+            {
+                out.close();
+            }
+        } finally
+        {
+            bar.close();
+        }
+
+        if (!result.isSuccess())
+        {
+            tempFile.delete();
+            return result;
+        }
+        if (targetFile.exists() && !targetFile.delete() || !tempFile.renameTo(targetFile))
+        {
+            tempFile.delete();
+            throw new IOException("unable to write " + targetFile.getAbsolutePath());
+        }
+        return result;
+    }
+
+
+    /**
+     * @param zip the bar file
+     * @param overrides the properties to override
+     * @param out the stream the resulting bar is written to
+     * @return the result, listing every overridden property
+     * @throws IOException if the bar file cannot be read or written
+     */
+    public static BarOverrideResult applyOverrides(RawZipFile zip, Map<String, String> overrides, OutputStream out) throws IOException
+    {
+        NativeBarOverride override = new NativeBarOverride(overrides);
+        Map<RawZipFile.Entry, byte[]> replacements = override.collectReplacements(zip, "");
+
+        boolean success = true;
+        for (String property : overrides.keySet())
+        {
+            if (!override.applied.contains(property))
+            {
+                override.messages.add("property " + property + " was not found in any deployment descriptor of the bar file");
+                success = false;
+            }
+        }
+        if (success)
+        {
+            writeArchive(zip, replacements, out);
+        }
+        return new BarOverrideResult(success, override.messages);
+    }
+
+
+    /**
+     * @return the new content of the entries of the given archive that are changed by the overrides
+     */
+    private Map<RawZipFile.Entry, byte[]> collectReplacements(RawZipFile zip, String path) throws IOException
+    {
+        Map<RawZipFile.Entry, byte[]> replacements = new HashMap<RawZipFile.Entry, byte[]>();
+        for (RawZipFile.Entry entry : zip.getEntries())
+        {
+            String name = entry.getName().replace('\\', '/');
+            if (name.equals(DEPLOYMENT_DESCRIPTOR))
+            {
+                byte[] descriptor = overrideDescriptor(zip.getBytes(entry), path + entry.getName());
+                if (descriptor != null)
+                {
+                    replacements.put(entry, descriptor);
+                }
+            }
+            else if (isNestedArchive(name) && containsOverrides(zip, entry))
+            {
+                RawZipFile nested = new RawZipFile(zip.getBytes(entry));
+                Map<RawZipFile.Entry, byte[]> nestedReplacements = collectReplacements(nested, path + entry.getName() + "!/");
+                if (!nestedReplacements.isEmpty())
+                {
+                    ByteArrayOutputStream archive = new ByteArrayOutputStream((int) entry.getSize());
+                    writeArchive(nested, nestedReplacements, archive);
+                    replacements.put(entry, archive.toByteArray());
+                }
+            }
+        }
+        return replacements;
+    }
+
+
+    /**
+     * @return true if a deployment descriptor of the given nested archive, at any depth, contains an overridden
+     *         property; the archive is streamed rather than inflated into memory
+     */
+    private boolean containsOverrides(RawZipFile zip, RawZipFile.Entry entry) throws IOException
+    {
+        InputStream in = zip.getInputStream(entry);
+        try
+        {
+            return !Collections.disjoint(ReadBar.getOverridableProperties(in).keySet(), overrides.keySet());
+        } finally
+        {
+            in.close();
+        }
+    }
+
+
+    static boolean isNestedArchive(String name)
+    {
+        String lowerCaseName = name.toLowerCase();
+        return lowerCaseName.endsWith(".appzip") || lowerCaseName.endsWith(".libzip");
+    }
+
+
+    private static void writeArchive(RawZipFile zip, Map<RawZipFile.Entry, byte[]> replacements, OutputStream out) throws IOException
+    {
+        RawZipOutputStream zipOut = new RawZipOutputStream(out);
+        for (RawZipFile.Entry entry : zip.getEntries())
+        {
+            byte[] replacement = replacements.get(entry);
+            if (replacement == null)
+            {
+                zipOut.copyEntry(zip, entry);
+            }
+            else
+            {
+                zipOut.putEntry(entry, replacement);
+            }
+        }
+        zipOut.finish();
+    }
+
+
+    /**
+     * @return the changed deployment descriptor or null if none of its properties is overridden
+     */
+    private byte[] overrideDescriptor(byte[] descriptor, String path) throws IOException
+    {
+        try
+        {
+            Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new ByteArrayInputStream(descriptor));
+            NodeList properties = document.getElementsByTagName("ConfigurableProperty");
+            boolean changed = false;
+            for (int i = 0; i < properties.getLength(); i++)
+            {
+                Element property = (Element) properties.item(i);
+                String uri = property.getAttribute("uri");
+                if (!overrides.containsKey(uri))
+                {
+                    continue;
+                }
+                applied.add(uri);
+
+                String value = overrides.get(uri);
+                if (value == null)
+                {
+                    if (property.hasAttribute("override"))
+                    {
+                        property.removeAttribute("override");
+                        changed = true;
+                    }
+                    messages.add(path + ": removed the override of " + uri);
+                }
+                else
+                {
+                    if (!property.hasAttribute("override") || !value.equals(property.getAttribute("override")))
+                    {
+                        property.setAttribute("override", value);
+                        changed = true;
+                    }
+                    messages.add(path + ": " + uri + " = " + value);
+                }
+            }
+            if (!changed)
+            {
+                return null;
+            }
+
+            Transformer transformer = TransformerFactory.newInstance().newTransformer();
+            transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+            ByteArrayOutputStream result = new ByteArrayOutputStream(descriptor.length + 1024);
+            transformer.transform(new DOMSource(document), new StreamResult(result));
+            return result.toByteArray();
+        } catch (IOException e)
+        {
+            throw e;
+        } catch (Exception e)
+        {
+            throw new IOException("unable to override the deployment descriptor " + path + ": " + e);
+        }
+    }
+
+}
@@ -0,0 +1,374 @@
+package ch.sbb.maven.plugins.iib.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The main class of the JVM that {@link ForkedPackageBar} runs mqsipackagebar in. It connects to the loopback port
+ * ForkedPackageBar listens on, identifies itself with the token it was given, then reads packagebar requests from the
+ * connection and answers every one on it, until the connection is closed:
+ * <ul>
+ * <li>request: its id, the number of arguments, then the arguments</li>
+ * <li>response: the id of the request, whether the bar file was packaged, the error if not, then everything written
+ * to System.out and System.err while packaging</li>
+ * </ul>
+ * Numbers are written as ints, strings as their length and UTF-8 bytes (see {@link #writeString(DataOutputStream,
+ * String)}). The requests are run on a fixed number of threads, so the responses may come in another order than the
+ * requests. The connection is used rather than the standard output, as the JVM itself writes to the latter (e.g. VM
+ * warnings or -verbose:gc). What the packaging classes write to System.out and System.err is captured per thread.
+ *
+ * This class must not use any Maven classes: the worker is launched with the classpath of the plugin only.
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+public class PackageBarWorker {
+
+    /**
+     * the class packaging the bar files, created with the arguments and run by its process() method
+     */
+    static final String PROCESSOR_CLASS = "com.ibm.broker.config.appdev.CommandProcessorPublicWrapper";
+
+    /**
+     * the largest string or number of arguments read; anything larger means the connection is out of step
+     */
+    static final int MAX_LENGTH = 256 * 1024 * 1024;
+
+    private final Constructor<?> constructor;
+    private final Method process;
+    private final CapturingOutputStream capture;
+
+
+    /**
+     * @param processorClass the class packaging the bar files, see {@link #PROCESSOR_CLASS}
+     * @param capture the stream System.out and System.err are redirected to
+     * @throws Exception if the class cannot be loaded or has no public constructor(String[]) and process() method
+     */
+    PackageBarWorker(String processorClass, CapturingOutputStream capture) throws Exception
+    {
+        Class<?> processor = Class.forName(processorClass);
+        this.constructor = processor.getConstructor(String[].class);
+        this.process = processor.getMethod("process");
+        this.capture = capture;
+    }
+
+
+    /**
+     * @param args the class packaging the bar files (see {@link #PROCESSOR_CLASS}), the number of bar files packaged
+     *            at the same time, the loopback port to connect to and the token to identify with
+     */
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length < 4)
+        {
+            System.err.println("usage: PackageBarWorker processorClass threads port token");
+            System.exit(2);
+        }
+        Socket socket = new Socket(InetAddress.getByName(null), Integer.parseInt(args[2]));
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        out.writeLong(Long.parseLong(args[3]));
+        out.flush();
+
+        CapturingOutputStream capture = new CapturingOutputStream(new FileOutputStream(FileDescriptor.err));
+        System.setOut(new PrintStream(capture, true, "UTF-8"));
+        System.setErr(new PrintStream(capture, true, "UTF-8"));
+
+        final PackageBarWorker worker = new PackageBarWorker(args[0], capture);
+        int threads = Integer.parseInt(args[1]);
+        ExecutorService executor = Executors.newFixedThreadPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+        Request request;
+        while ((request = readRequest(in)) != null)
+        {
+            final Request next = request;
+            executor.execute(new Runnable() {
+                public void run()
+                {
+                    Response response = worker.packageBar(next.args);
+                    try
+                    {
+                        synchronized (out)
+                        {
+                            out.writeInt(next.id);
+                            response.write(out);
+                            out.flush();
+                        }
+                    } catch (IOException e)
+                    {
+                        // / the client is gone
+                        System.exit(1);
+                    }
+                }
+            });
+        }
+
+        // / the client closed the connection: the requests under way are answered first
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        socket.close();
+        // / the packaging classes may leave threads behind
+        System.exit(0);
+    }
+
+
+    /**
+     * @return the next request, or null if the connection was closed or broke down
+     */
+    private static Request readRequest(DataInputStream in)
+    {
+        try
+        {
+            return Request.read(in);
+        } catch (IOException e)
+        {
+            // / the client is gone: the requests under way are finished all the same
+            return null;
+        }
+    }
+
+
+    /**
+     * packages a bar file, capturing the output of the packaging classes
+     *
+     * @param args the mqsipackagebar arguments
+     * @return the result
+     */
+    Response packageBar(String[] args)
+    {
+        capture.start();
+        String error = null;
+        try
+        {
+            process.invoke(constructor.newInstance(new Object[] { args }));
+        } catch (InvocationTargetException e)
+        {
+            error = getStackTrace(e.getCause());
+        } catch (Throwable e)
+        {
+            error = getStackTrace(e);
+        }
+        System.out.flush();
+        System.err.flush();
+        return new Response(error, capture.stop());
+    }
+
+
+    private static String getStackTrace(Throwable e)
+    {
+        StringWriter stackTrace = new StringWriter();
+        e.printStackTrace(new PrintWriter(stackTrace));
+        return stackTrace.toString();
+    }
+
+
+    /**
+     * writes a string of any length; {@link DataOutputStream#writeUTF(String)} is limited to 64KB
+     */
+    static void writeString(DataOutputStream out, String value) throws IOException
+    {
+        byte[] bytes = value.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+
+    static String readString(DataInputStream in) throws IOException
+    {
+        byte[] bytes = new byte[readLength(in)];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+
+    /**
+     * @return a length read, checked to be within 0 and {@link #MAX_LENGTH}
+     * @throws IOException if it isn't
+     */
+    static int readLength(DataInputStream in) throws IOException
+    {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_LENGTH)
+        {
+            throw new IOException("invalid length " + length + " read from the packagebar worker connection");
+        }
+        return length;
+    }
+
+
+    /**
+     * a packagebar request
+     */
+    static class Request {
+        final int id;
+        final String[] args;
+
+        Request(int id, String[] args)
+        {
+            this.id = id;
+            this.args = args;
+        }
+
+        void write(DataOutputStream out) throws IOException
+        {
+            out.writeInt(id);
+            out.writeInt(args.length);
+            for (String arg : args)
+            {
+                writeString(out, arg);
+            }
+        }
+
+        /**
+         * @return the next request, or null if the input was closed
+         */
+        static Request read(DataInputStream in) throws IOException
+        {
+            int id;
+            try
+            {
+                id = in.readInt();
+            } catch (EOFException e)
+            {
+                return null;
+            }
+            String[] args = new String[readLength(in)];
+            for (int i = 0; i < args.length; i++)
+            {
+                args[i] = readString(in);
+            }
+            return new Request(id, args);
+        }
+    }
+
+
+    /**
+     * the result of a packagebar request, without its id
+     */
+    static class Response {
+        /**
+         * the stack trace of the exception that stopped the packaging, or null if the bar file was packaged
+         */
+        final String error;
+        final String output;
+
+        Response(String error, String output)
+        {
+            this.error = error;
+            this.output = output;
+        }
+
+        void write(DataOutputStream out) throws IOException
+        {
+            out.writeBoolean(error == null);
+            if (error != null)
+            {
+                writeString(out, error);
+            }
+            writeString(out, output);
+        }
+
+        static Response read(DataInputStream in) throws IOException
+        {
+            String error = in.readBoolean() ? null : readString(in);
+            return new Response(error, readString(in));
+        }
+    }
+
+
+    /**
+     * collects what a thread writes between {@link #start()} and {@link #stop()}; anything written outside of a
+     * request goes to the standard error of the worker
+     */
+    static class CapturingOutputStream extends OutputStream {
+        private final OutputStream other;
+        private final ThreadLocal<ByteArrayOutputStream> captured = new ThreadLocal<ByteArrayOutputStream>();
+
+        CapturingOutputStream(OutputStream other)
+        {
+            this.other = other;
+        }
+
+        void start()
+        {
+            captured.set(new ByteArrayOutputStream());
+        }
+
+        String stop()
+        {
+            String output;
+            try
+            {
+                output = captured.get().toString("UTF-8");
+            } catch (IOException e)
+            {
+                // / UTF-8 is always available
+                throw new IllegalStateException(e);
+            }
+            captured.remove();
+            return output;
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            ByteArrayOutputStream bytes = captured.get();
+            if (bytes != null)
+            {
+                bytes.write(b);
+            }
+            else
+            {
+                synchronized (other)
+                {
+                    other.write(b);
+                }
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            ByteArrayOutputStream bytes = captured.get();
+            if (bytes != null)
+            {
+                bytes.write(b, off, len);
+            }
+            else
+            {
+                synchronized (other)
+                {
+                    other.write(b, off, len);
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException
+        {
+            synchronized (other)
+            {
+                other.flush();
+            }
+        }
+    }
+
+}
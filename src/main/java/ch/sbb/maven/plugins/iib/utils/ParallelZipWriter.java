@@ -0,0 +1,616 @@
+package ch.sbb.maven.plugins.iib.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Zips a directory tree, deflating the files on a pool of threads. The tree is walked as the archive is written, a
+ * directory at a time and in name order; the files are compressed in parallel, but written in the order they were
+ * found. At most a few files per thread are compressed ahead of the one being written, and the compressed data of a
+ * file is held in memory up to {@value #SPILL_THRESHOLD} bytes only, the rest going to a temporary file next to the
+ * archive, so that the memory used stays bounded however large the tree and its files.
+ *
+ * Files that are compressed already (see {@link #STORED_EXTENSIONS}) are stored rather than deflated again.
+ *
+ * Every thread reuses its {@link Deflater} and a 1MB read buffer; the files are read through their {@link FileChannel}.
+ *
+ * The archive is written without the zip64 format (see {@link RawZipOutputStream}). A tree that needs it - 65535 files
+ * or more, a file of 4GB or more, or an archive larger than 4GB - is zipped again by {@link ZipOutputStream}, on one
+ * thread.
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+public class ParallelZipWriter {
+
+    static final int BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * the number of files compressed ahead of the one being written, per thread
+     */
+    private static final int PENDING_PER_THREAD = 4;
+
+    /**
+     * the compressed size above which the data of a file is written to a temporary file rather than held in memory
+     */
+    static final int SPILL_THRESHOLD = 1024 * 1024;
+
+    /**
+     * the extensions of the files that are compressed already
+     */
+    static final List<String> STORED_EXTENSIONS = Collections.unmodifiableList(Arrays.asList("jar", "zip", "war", "ear", "bar", "appzip", "libzip",
+            "par", "gz", "tgz"));
+
+    private final int threads;
+    private final Log log;
+    private final List<Deflater> deflaters = Collections.synchronizedList(new ArrayList<Deflater>());
+    private final ThreadLocal<Compressor> compressors = new ThreadLocal<Compressor>() {
+        @Override
+        protected Compressor initialValue()
+        {
+            Compressor compressor = new Compressor();
+            deflaters.add(compressor.deflater);
+            return compressor;
+        }
+    };
+
+    private int entries;
+    private long size;
+
+
+    /**
+     * @param threads the number of threads compressing the files; the number of available processors if 0 or less
+     * @param log the log the zipped files are listed in, at debug level
+     */
+    public ParallelZipWriter(int threads, Log log)
+    {
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.log = log;
+    }
+
+
+    /**
+     * zips the files of a directory and its subdirectories. The entries are named after the directory and the path of
+     * the file within it, e.g. MyApplication/flows/Main.msgflow; directories are not added as entries.
+     *
+     * @param directory the directory to be zipped
+     * @param filter accepts the files and directories to be zipped, or null for all
+     * @param zipFile the archive written
+     * @throws IOException if a file cannot be read or the archive cannot be written
+     */
+    public void zipDirectory(File directory, FileFilter filter, File zipFile) throws IOException
+    {
+        try
+        {
+            zipInParallel(directory, filter, zipFile);
+        } catch (RawZipOutputStream.Zip64RequiredException e)
+        {
+            log.info(e.getMessage() + "; zipping " + directory.getAbsolutePath() + " again as a zip64 archive, on one thread");
+            zipWithZip64(directory, filter, zipFile);
+        }
+    }
+
+
+    private void zipInParallel(File directory, FileFilter filter, File zipFile) throws IOException
+    {
+        entries = 0;
+        size = 0;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        RawZipOutputStream out = new RawZipOutputStream(new BufferedOutputStream(new FileOutputStream(zipFile), BUFFER_SIZE));
+        LinkedList<Future<CompressedFile>> pending = new LinkedList<Future<CompressedFile>>();
+        boolean written = false;
+        try
+        {
+            addDirectory(directory, directory.getName(), filter, zipFile.getAbsoluteFile().getParentFile(), executor, pending, out);
+            while (!pending.isEmpty())
+            {
+                writeNext(pending, out);
+            }
+            out.close();
+            written = true;
+        } finally
+        {
+            executor.shutdownNow();
+            if (!written)
+            {
+                try
+                {
+                    out.close();
+                } catch (IOException e)
+                {
+                    // / the archive is incomplete anyway
+                }
+                zipFile.delete();
+            }
+            endDeflaters(executor);
+            deleteSpillFiles(pending);
+        }
+    }
+
+
+    /**
+     * zips the directory with {@link ZipOutputStream}, which writes the zip64 format where needed
+     */
+    private void zipWithZip64(File directory, FileFilter filter, File zipFile) throws IOException
+    {
+        entries = 0;
+        size = 0;
+        ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(zipFile), BUFFER_SIZE));
+        boolean written = false;
+        try
+        {
+            addDirectory(directory, directory.getName(), filter, out, new byte[BUFFER_SIZE]);
+            out.close();
+            written = true;
+        } finally
+        {
+            if (!written)
+            {
+                try
+                {
+                    out.close();
+                } catch (IOException e)
+                {
+                    // / the archive is incomplete anyway
+                }
+                zipFile.delete();
+            }
+        }
+    }
+
+
+    /**
+     * @return the number of files written by the last {@link #zipDirectory(File, FileFilter, File)}
+     */
+    public int getEntries()
+    {
+        return entries;
+    }
+
+
+    /**
+     * @return the uncompressed size of the files written by the last {@link #zipDirectory(File, FileFilter, File)}
+     */
+    public long getSize()
+    {
+        return size;
+    }
+
+
+    /**
+     * @return the number of threads compressing the files
+     */
+    public int getThreads()
+    {
+        return threads;
+    }
+
+
+    private void addDirectory(File directory, String name, FileFilter filter, final File spillDirectory, ExecutorService executor,
+            LinkedList<Future<CompressedFile>> pending, RawZipOutputStream out) throws IOException
+    {
+        for (final File file : listFiles(directory, filter))
+        {
+            final String entryName = name + "/" + file.getName();
+            if (file.isDirectory())
+            {
+                addDirectory(file, entryName, filter, spillDirectory, executor, pending, out);
+                continue;
+            }
+
+            pending.add(executor.submit(new Callable<CompressedFile>() {
+                public CompressedFile call() throws IOException
+                {
+                    return compressors.get().compress(file, entryName, spillDirectory);
+                }
+            }));
+            if (pending.size() >= threads * PENDING_PER_THREAD)
+            {
+                writeNext(pending, out);
+            }
+        }
+    }
+
+
+    private void addDirectory(File directory, String name, FileFilter filter, ZipOutputStream out, byte[] buffer) throws IOException
+    {
+        for (File file : listFiles(directory, filter))
+        {
+            String entryName = name + "/" + file.getName();
+            if (file.isDirectory())
+            {
+                addDirectory(file, entryName, filter, out, buffer);
+                continue;
+            }
+
+            log.debug("  file:" + entryName);
+            ZipEntry entry = new ZipEntry(entryName);
+            entry.setTime(file.lastModified());
+            out.putNextEntry(entry);
+            InputStream in = new FileInputStream(file);
+            try
+            {
+                int length;
+                while ((length = in.read(buffer)) >= 0)
+                {
+                    out.write(buffer, 0, length);
+                    size += length;
+                }
+            } finally
+            {
+                in.close();
+            }
+            out.closeEntry();
+            entries++;
+        }
+    }
+
+
+    /**
+     * @return the files of the directory accepted by the filter, in name order
+     */
+    private static File[] listFiles(File directory, FileFilter filter) throws IOException
+    {
+        File[] files = directory.listFiles(filter);
+        if (files == null)
+        {
+            throw new IOException("unable to list the files of " + directory.getAbsolutePath());
+        }
+        Arrays.sort(files);
+        return files;
+    }
+
+
+    private void writeNext(LinkedList<Future<CompressedFile>> pending, RawZipOutputStream out) throws IOException
+    {
+        CompressedFile file;
+        try
+        {
+            file = pending.removeFirst().get();
+        } catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof IOException)
+            {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("unable to compress a file: " + e.getCause(), e.getCause());
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while compressing the files", e);
+        }
+
+        log.debug("  file:" + file.entry.name);
+        try
+        {
+            InputStream data = file.openData();
+            try
+            {
+                out.putRawEntry(file.entry, file.method, file.size, file.crc, file.compressedSize, data);
+            } finally
+            {
+                data.close();
+            }
+        } finally
+        {
+            file.deleteSpillFile();
+        }
+        entries++;
+        size += file.size;
+    }
+
+
+    /**
+     * deletes the temporary files of the files compressed but not written, once the threads stopped
+     */
+    private static void deleteSpillFiles(List<Future<CompressedFile>> pending)
+    {
+        for (Future<CompressedFile> future : pending)
+        {
+            if (future.isDone() && !future.isCancelled())
+            {
+                try
+                {
+                    future.get().deleteSpillFile();
+                } catch (Exception e)
+                {
+                    // / failed to compress: the compressor deleted its temporary file
+                }
+            }
+        }
+    }
+
+
+    private void endDeflaters(ExecutorService executor)
+    {
+        try
+        {
+            // / a deflater may only be ended once its thread stopped using it
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        synchronized (deflaters)
+        {
+            for (Deflater deflater : deflaters)
+            {
+                deflater.end();
+            }
+            deflaters.clear();
+        }
+    }
+
+
+    /**
+     * a file deflated (or to be stored), ready to be written
+     */
+    static class CompressedFile {
+        final RawZipFile.Entry entry;
+        final int method;
+        final long size;
+        final long crc;
+        final long compressedSize;
+        // / the data: in memory, in a temporary file, or the file itself if stored
+        private final byte[] compressed;
+        private final File dataFile;
+        private final boolean spilled;
+
+        CompressedFile(RawZipFile.Entry entry, int method, long size, long crc, long compressedSize, byte[] compressed, File dataFile,
+                boolean spilled)
+        {
+            this.entry = entry;
+            this.method = method;
+            this.size = size;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.compressed = compressed;
+            this.dataFile = dataFile;
+            this.spilled = spilled;
+        }
+
+        InputStream openData() throws IOException
+        {
+            if (compressed != null)
+            {
+                return new ByteArrayInputStream(compressed);
+            }
+            return new BufferedInputStream(new FileInputStream(dataFile), 65536);
+        }
+
+        void deleteSpillFile()
+        {
+            if (spilled)
+            {
+                dataFile.delete();
+            }
+        }
+    }
+
+
+    /**
+     * the deflater and buffers of a thread
+     */
+    static class Compressor {
+        final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        final byte[] input = new byte[BUFFER_SIZE];
+        final byte[] output = new byte[BUFFER_SIZE];
+        final CRC32 crc = new CRC32();
+
+        CompressedFile compress(File file, String name, File spillDirectory) throws IOException
+        {
+            RawZipFile.Entry entry = RawZipOutputStream.newEntry(name, file.lastModified());
+            if (isCompressed(file))
+            {
+                return store(file, entry);
+            }
+
+            deflater.reset();
+            crc.reset();
+            long size = 0;
+            SpillingOutputStream compressed = new SpillingOutputStream(spillDirectory, (int) Math.min(Math.max(64, file.length() / 2), SPILL_THRESHOLD));
+            boolean done = false;
+            try
+            {
+                FileInputStream in = new FileInputStream(file);
+                try
+                {
+                    FileChannel channel = in.getChannel();
+                    ByteBuffer buffer = ByteBuffer.wrap(input);
+                    int length;
+                    while ((length = channel.read(buffer)) >= 0)
+                    {
+                        if (length == 0)
+                        {
+                            continue;
+                        }
+                        crc.update(input, 0, length);
+                        size += length;
+                        deflater.setInput(input, 0, length);
+                        while (!deflater.needsInput())
+                        {
+                            compressed.write(output, 0, deflater.deflate(output));
+                        }
+                        buffer.clear();
+                    }
+                } finally
+                {
+                    in.close();
+                }
+
+                deflater.finish();
+                while (!deflater.finished())
+                {
+                    compressed.write(output, 0, deflater.deflate(output));
+                }
+                compressed.close();
+                done = true;
+            } finally
+            {
+                if (!done)
+                {
+                    compressed.discard();
+                }
+            }
+            return new CompressedFile(entry, RawZipFile.DEFLATED, size, crc.getValue(), compressed.getLength(), compressed.getBytes(), compressed.getFile(),
+                    compressed.getFile() != null);
+        }
+
+        /**
+         * @return the file as is, with its crc
+         */
+        private CompressedFile store(File file, RawZipFile.Entry entry) throws IOException
+        {
+            crc.reset();
+            long size = 0;
+            FileInputStream in = new FileInputStream(file);
+            try
+            {
+                FileChannel channel = in.getChannel();
+                ByteBuffer buffer = ByteBuffer.wrap(input);
+                int length;
+                while ((length = channel.read(buffer)) >= 0)
+                {
+                    crc.update(input, 0, length);
+                    size += length;
+                    buffer.clear();
+                }
+            } finally
+            {
+                in.close();
+            }
+            return new CompressedFile(entry, RawZipFile.STORED, size, crc.getValue(), size, null, file, false);
+        }
+
+        private static boolean isCompressed(File file)
+        {
+            String name = file.getName();
+            int dot = name.lastIndexOf('.');
+            return dot >= 0 && STORED_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ENGLISH));
+        }
+    }
+
+
+    /**
+     * collects the compressed data in memory, up to {@link #SPILL_THRESHOLD} bytes, then in a temporary file
+     */
+    static class SpillingOutputStream extends OutputStream {
+        private final File directory;
+        private ByteArrayOutputStream memory;
+        private File file;
+        private OutputStream fileOut;
+        private long length;
+
+        SpillingOutputStream(File directory, int initialSize)
+        {
+            this.directory = directory;
+            this.memory = new ByteArrayOutputStream(initialSize);
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            if (fileOut == null && length + len > SPILL_THRESHOLD)
+            {
+                file = File.createTempFile("zip-entry", ".tmp", directory);
+                fileOut = new BufferedOutputStream(new FileOutputStream(file), 65536);
+                memory.writeTo(fileOut);
+                memory = null;
+            }
+            if (fileOut == null)
+            {
+                memory.write(b, off, len);
+            }
+            else
+            {
+                fileOut.write(b, off, len);
+            }
+            length += len;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            if (fileOut != null)
+            {
+                fileOut.close();
+            }
+        }
+
+        /**
+         * closes the stream and deletes its temporary file
+         */
+        void discard()
+        {
+            try
+            {
+                close();
+            } catch (IOException e)
+            {
+                // / deleted anyway
+            }
+            if (file != null)
+            {
+                file.delete();
+            }
+        }
+
+        long getLength()
+        {
+            return length;
+        }
+
+        /**
+         * @return the data if held in memory, or null
+         */
+        byte[] getBytes()
+        {
+            return memory == null ? null : memory.toByteArray();
+        }
+
+        /**
+         * @return the temporary file holding the data, or null
+         */
+        File getFile()
+        {
+            return file;
+        }
+    }
+
+}
@@ -21,20 +21,13 @@ public class ProcessOutputCatcher extends Thread {
         BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(is));
         String line = null;
         try {
-            while (true) {
-                line = bufferedReader.readLine();
-                if (line != null) {
-                    output.add(line);
-                    line = null;
-                } else {
-                    Thread.sleep(500);
-                }
+            // readLine() blocks until a line is available and returns null once the process closed its output
+            while ((line = bufferedReader.readLine()) != null) {
+                output.add(line);
             }
         } catch (IOException ioe) {
             // TODO handle this better
             ioe.printStackTrace();
-        } catch (InterruptedException ie) {
-            // this is to be expected when the child process is finished
         } catch (Throwable t) {
             // TODO handle this better
             t.printStackTrace();
@@ -22,20 +22,13 @@ public class ProcessOutputLogger extends Thread {
         BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(is));
         String line = null;
         try {
-            while (true) {
-                line = bufferedReader.readLine();
-                if (line != null) {
-                    log.info(line);
-                    line = null;
-                } else {
-                    Thread.sleep(500);
-                }
+            // readLine() blocks until a line is available and returns null once the process closed its output
+            while ((line = bufferedReader.readLine()) != null) {
+                log.info(line);
             }
         } catch (IOException ioe) {
             // TODO handle this better
             ioe.printStackTrace();
-        } catch (InterruptedException ie) {
-            // this is to be expected when the child process is finished
         } catch (Exception e) {
             // TODO handle this better
             e.printStackTrace();
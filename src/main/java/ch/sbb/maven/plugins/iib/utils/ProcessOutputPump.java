@@ -0,0 +1,393 @@
+package ch.sbb.maven.plugins.iib.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Drains the output of a process on its own thread, with bounded memory whatever the amount of output:
+ * <ul>
+ * <li>every line is logged - at info level, or at debug level if the output is written to a file</li>
+ * <li>the complete output is optionally written to a file, by a second thread, so that a slow disk does not hold up
+ * the process. The file is a convenience only: if it cannot be written, a warning is logged and the remaining lines
+ * are logged at info level, but the command does not fail for it.</li>
+ * <li>only the last bytes of the output are kept in memory, for the failure report ({@link #getTail()})</li>
+ * </ul>
+ * The pump blocks on reading the process output and on handing chunks to the file writer; it never polls.
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+public class ProcessOutputPump extends Thread {
+
+    /**
+     * the default amount of output kept for failure reports
+     */
+    public static final int DEFAULT_TAIL_SIZE = 64 * 1024;
+
+    private static final int CHUNK_SIZE = 8192;
+    private static final int MAX_QUEUED_CHUNKS = 256;
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+    private static final byte[] END_OF_OUTPUT = new byte[0];
+
+    private final InputStream in;
+    private final Log log;
+    private final File outputFile;
+
+    private final byte[] tail;
+    private int tailEnd;
+    private boolean tailWrapped;
+
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+    private boolean lineTruncated;
+
+    private MqsiOutputParser parser;
+
+    private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<byte[]>(MAX_QUEUED_CHUNKS);
+    private Thread writer;
+    private volatile boolean writerFailed;
+    private volatile IOException failure;
+
+
+    /**
+     * @param in the process output
+     * @param log the log every line is written to
+     * @param outputFile the file the complete output is written to, or null
+     * @param tailSize the number of bytes kept for {@link #getTail()}
+     */
+    public ProcessOutputPump(InputStream in, Log log, File outputFile, int tailSize)
+    {
+        super("process-output-pump");
+        setDaemon(true);
+        this.in = in;
+        this.log = log;
+        this.outputFile = outputFile;
+        this.tail = new byte[tailSize];
+    }
+
+
+    /**
+     * @param parser the parser every line is passed to, or null; it is called on the pump's thread
+     */
+    public void setParser(MqsiOutputParser parser)
+    {
+        this.parser = parser;
+    }
+
+
+    @Override
+    public void run()
+    {
+        try
+        {
+            if (outputFile != null)
+            {
+                try
+                {
+                    startWriter();
+                } catch (IOException e)
+                {
+                    // / the output still has to be drained, or the process blocks
+                    writerFailed(e);
+                }
+            }
+            byte[] buffer = new byte[CHUNK_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1)
+            {
+                appendToTail(buffer, read);
+                logLines(buffer, read);
+                if (writer != null)
+                {
+                    byte[] chunk = new byte[read];
+                    System.arraycopy(buffer, 0, chunk, 0, read);
+                    // / blocks while the writer is behind, which bounds the memory used
+                    chunks.put(chunk);
+                }
+            }
+            if (line.size() > 0 || lineTruncated)
+            {
+                logLine();
+            }
+            if (parser != null)
+            {
+                parser.finish();
+            }
+        } catch (IOException e)
+        {
+            failure = e;
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        } finally
+        {
+            try
+            {
+                in.close();
+            } catch (IOException e)
+            {
+                // / ignore
+            }
+            if (writer != null)
+            {
+                try
+                {
+                    chunks.put(END_OF_OUTPUT);
+                    writer.join();
+                } catch (InterruptedException e)
+                {
+                    writer.interrupt();
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+
+    /**
+     * waits until the process output is completely drained (and written)
+     *
+     * @throws IOException if the output could not be read
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void awaitCompletion() throws IOException, InterruptedException
+    {
+        join();
+        if (failure != null)
+        {
+            throw failure;
+        }
+    }
+
+
+    /**
+     * waits until the process output is completely drained (and written), or the timeout elapsed
+     *
+     * @param timeout the time to wait at most, in milliseconds
+     * @return false if the output is still open after the timeout, e.g. held by a process the command started
+     * @throws IOException if the output could not be read
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitCompletion(long timeout) throws IOException, InterruptedException
+    {
+        join(timeout);
+        if (isAlive())
+        {
+            return false;
+        }
+        awaitCompletion();
+        return true;
+    }
+
+
+    /**
+     * @return true if the complete output was written to the output file
+     */
+    public boolean isOutputFileWritten()
+    {
+        return outputFile != null && !writerFailed;
+    }
+
+
+    /**
+     * @return the last lines of the output, at most the tail size given to the constructor
+     */
+    public synchronized String getTail()
+    {
+        int start = 0;
+        int length = tailEnd;
+        if (tailWrapped)
+        {
+            // / skip the partial first line
+            start = tailEnd;
+            length = tail.length;
+            for (int i = 0; i < tail.length - 1; i++)
+            {
+                if (tail[(tailEnd + i) % tail.length] == '\n')
+                {
+                    start = (tailEnd + i + 1) % tail.length;
+                    length = tail.length - i - 1;
+                    break;
+                }
+            }
+        }
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++)
+        {
+            bytes[i] = tail[(start + i) % tail.length];
+        }
+        return decode(bytes, bytes.length);
+    }
+
+
+    private synchronized void appendToTail(byte[] buffer, int length)
+    {
+        if (tail.length == 0)
+        {
+            return;
+        }
+        int offset = Math.max(0, length - tail.length);
+        if (length >= tail.length)
+        {
+            tailWrapped = true;
+        }
+        for (int i = offset; i < length; i++)
+        {
+            tail[tailEnd] = buffer[i];
+            tailEnd++;
+            if (tailEnd == tail.length)
+            {
+                tailEnd = 0;
+                tailWrapped = true;
+            }
+        }
+    }
+
+
+    private void logLines(byte[] buffer, int length)
+    {
+        for (int i = 0; i < length; i++)
+        {
+            byte b = buffer[i];
+            if (b == '\n')
+            {
+                logLine();
+            }
+            else if (line.size() < MAX_LINE_LENGTH)
+            {
+                line.write(b);
+            }
+            else
+            {
+                lineTruncated = true;
+            }
+        }
+    }
+
+
+    private void logLine()
+    {
+        boolean toFile = outputFile != null && !writerFailed;
+        if (toFile && !log.isDebugEnabled() && parser == null)
+        {
+            line.reset();
+            lineTruncated = false;
+            return;
+        }
+        int length = line.size();
+        byte[] bytes = line.toByteArray();
+        if (length > 0 && bytes[length - 1] == '\r')
+        {
+            length--;
+        }
+        String text = decode(bytes, length);
+        if (lineTruncated)
+        {
+            text += " [...]";
+        }
+        if (!toFile)
+        {
+            log.info(text);
+        }
+        else
+        {
+            log.debug(text);
+        }
+        line.reset();
+        lineTruncated = false;
+        if (parser != null)
+        {
+            parser.parseLine(text);
+        }
+    }
+
+
+    private void startWriter() throws IOException
+    {
+        File parent = outputFile.getAbsoluteFile().getParentFile();
+        if (parent != null)
+        {
+            parent.mkdirs();
+        }
+        final OutputStream out = new BufferedOutputStream(new FileOutputStream(outputFile), 65536);
+        writer = new Thread("process-output-writer") {
+            @Override
+            public void run()
+            {
+                boolean ended = false;
+                try
+                {
+                    try
+                    {
+                        for (byte[] chunk = chunks.take(); chunk != END_OF_OUTPUT; chunk = chunks.take())
+                        {
+                            out.write(chunk);
+                        }
+                        ended = true;
+                    } finally
+                    {
+                        out.close();
+                    }
+                } catch (IOException e)
+                {
+                    writerFailed(e);
+                    if (!ended)
+                    {
+                        // / keep draining, so that the pump is never blocked by a failed writer
+                        drain();
+                    }
+                } catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+
+    private void writerFailed(IOException e)
+    {
+        writerFailed = true;
+        log.warn("unable to write the process output to " + outputFile.getAbsolutePath() + "; the rest of it is logged instead: " + e);
+    }
+
+
+    private void drain()
+    {
+        try
+        {
+            while (chunks.take() != END_OF_OUTPUT)
+            {
+                // / discard
+            }
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    private static String decode(byte[] bytes, int length)
+    {
+        try
+        {
+            return new String(bytes, 0, length, "UTF-8");
+        } catch (UnsupportedEncodingException e)
+        {
+            // / UTF-8 is always available
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
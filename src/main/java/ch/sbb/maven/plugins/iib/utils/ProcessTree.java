@@ -0,0 +1,170 @@
+package ch.sbb.maven.plugins.iib.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.ProcessBuilder.Redirect;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Stops a process along with the processes it started. {@link Process#destroy()} stops the process itself only, while
+ * the mqsi commands are mostly run through 'cmd /c' or a shell: the mqsi command would keep running, and keep the
+ * output of the process open.
+ *
+ * The process tree is stopped with 'taskkill /T /F' on Windows and by killing the descendants found with 'ps' on the
+ * other systems. Both need the process id, which Java 7 and 8 do not publish: it is read from the Unix process
+ * implementation, so that on Windows with Java 7 or 8 only the process itself is stopped. A descendant that detached
+ * from its parent (e.g. a daemon started by the command) is not found either.
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+class ProcessTree {
+
+    private ProcessTree()
+    {
+    }
+
+
+    /**
+     * stops the process and its descendants, as far as they can be found
+     *
+     * @param process the process
+     * @param log the logger
+     */
+    static void destroy(Process process, Log log)
+    {
+        long pid = getPid(process);
+        if (pid < 0)
+        {
+            log.debug("unable to find the process id: stopping the process only, not the processes it started");
+        }
+        else if (MqsiCommandLauncher.OSValidator.isWindows())
+        {
+            run(log, "taskkill", "/T", "/F", "/PID", String.valueOf(pid));
+        }
+        else
+        {
+            // / the descendants are found before the process is stopped: they are inherited by init afterwards
+            List<String> command = new ArrayList<String>();
+            command.add("kill");
+            command.add("-KILL");
+            command.addAll(getDescendants(pid, log));
+            if (command.size() > 2)
+            {
+                run(log, command.toArray(new String[command.size()]));
+            }
+        }
+        process.destroy();
+    }
+
+
+    /**
+     * @return the id of the process, or -1 if unknown
+     */
+    static long getPid(Process process)
+    {
+        try
+        {
+            // / Java 9 and later
+            Method pid = Process.class.getMethod("pid");
+            return ((Number) pid.invoke(process)).longValue();
+        } catch (Exception e)
+        {
+            // / try the next one
+        }
+        try
+        {
+            // / java.lang.UNIXProcess of Java 7 and 8
+            Field pid = process.getClass().getDeclaredField("pid");
+            pid.setAccessible(true);
+            return pid.getInt(process);
+        } catch (Exception e)
+        {
+            return -1;
+        }
+    }
+
+
+    /**
+     * @return the ids of the descendants of the process, as listed by 'ps'
+     */
+    private static List<String> getDescendants(long pid, Log log)
+    {
+        Map<String, List<String>> children = new HashMap<String, List<String>>();
+        try
+        {
+            Process ps = new ProcessBuilder("ps", "-A", "-o", "pid=", "-o", "ppid=").redirectError(Redirect.INHERIT).start();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(ps.getInputStream(), "UTF-8"));
+            try
+            {
+                String line;
+                while ((line = reader.readLine()) != null)
+                {
+                    String[] ids = line.trim().split("\\s+");
+                    if (ids.length < 2)
+                    {
+                        continue;
+                    }
+                    List<String> parentChildren = children.get(ids[1]);
+                    if (parentChildren == null)
+                    {
+                        parentChildren = new ArrayList<String>();
+                        children.put(ids[1], parentChildren);
+                    }
+                    parentChildren.add(ids[0]);
+                }
+            } finally
+            {
+                reader.close();
+            }
+            ps.waitFor();
+        } catch (Exception e)
+        {
+            log.warn("unable to list the processes started by the process " + pid + ": " + e);
+        }
+
+        List<String> descendants = new ArrayList<String>();
+        List<String> parents = new ArrayList<String>();
+        parents.add(String.valueOf(pid));
+        while (!parents.isEmpty())
+        {
+            List<String> parentChildren = children.get(parents.remove(0));
+            if (parentChildren != null)
+            {
+                descendants.addAll(parentChildren);
+                parents.addAll(parentChildren);
+            }
+        }
+        return descendants;
+    }
+
+
+    private static void run(Log log, String... command)
+    {
+        try
+        {
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            // / the output is of no interest, but must not block the command
+            while (process.getInputStream().read(new byte[1024]) >= 0)
+            {
+                // / drain
+            }
+            process.waitFor();
+        } catch (IOException e)
+        {
+            log.warn("unable to run " + command[0] + ": " + e);
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
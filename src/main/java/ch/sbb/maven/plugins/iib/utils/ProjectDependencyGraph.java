@@ -0,0 +1,314 @@
+package ch.sbb.maven.plugins.iib.utils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * The dependencies between the projects of a workspace: nodes are the workspace projects with their nature, edges are
+ * the project references of their .project files and the Maven compile dependencies added through
+ * {@link #addDependency(String, String)}.
+ *
+ * Each project's nature and .project references are read once, when the project is first reached. Reference cycles
+ * are tolerated: every project is visited only once, and {@link #getBuildOrder()} lists the projects of a cycle
+ * together, after their dependencies.
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+public class ProjectDependencyGraph {
+
+    public enum Nature {
+        application,
+        library,
+        java,
+        other
+    }
+
+    /**
+     * a workspace project
+     */
+    public class Node {
+        private final String name;
+        private Nature nature;
+        private Set<String> references;
+        private final Set<String> dependencies = new TreeSet<String>();
+
+        Node(String name)
+        {
+            this.name = name;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        /**
+         * @return the nature of the project, determined from its .project file
+         * @throws MojoFailureException if the nature cannot be determined
+         */
+        public Nature getNature() throws MojoFailureException
+        {
+            if (nature == null)
+            {
+                nature = determineNature(name);
+            }
+            return nature;
+        }
+
+        /**
+         * @return the names of the projects referenced by the project's .project file
+         * @throws MojoFailureException if the .project file cannot be read
+         */
+        public Set<String> getReferences() throws MojoFailureException
+        {
+            if (references == null)
+            {
+                Set<String> projectNames = new LinkedHashSet<String>();
+                Collections.addAll(projectNames, EclipseProjectUtils.getDependentProjectNames(new File(workspace, name)));
+                references = Collections.unmodifiableSet(projectNames);
+            }
+            return references;
+        }
+
+        /**
+         * @return the names of the projects this project has a Maven compile dependency on
+         */
+        public Set<String> getDependencies()
+        {
+            return Collections.unmodifiableSet(dependencies);
+        }
+
+        @Override
+        public String toString()
+        {
+            return name;
+        }
+    }
+
+
+    private final File workspace;
+    private final Log log;
+    private final Map<String, Node> nodes = new TreeMap<String, Node>();
+    private final Map<String, Set<String>> referenceClosures = new HashMap<String, Set<String>>();
+
+
+    /**
+     * @param workspace the workspace containing the projects, each in a directory named after it
+     * @param log the logger used when determining the nature of a project
+     */
+    public ProjectDependencyGraph(File workspace, Log log)
+    {
+        this.workspace = workspace;
+        this.log = log;
+    }
+
+
+    /**
+     * @param name the project name (the directory name in the workspace)
+     * @return the node of the project, added to the graph if it was not yet part of it
+     */
+    public Node getProject(String name)
+    {
+        Node node = nodes.get(name);
+        if (node == null)
+        {
+            node = new Node(name);
+            nodes.put(name, node);
+        }
+        return node;
+    }
+
+
+    /**
+     * @return all projects added so far, ordered by name
+     */
+    public Collection<Node> getProjects()
+    {
+        return Collections.unmodifiableCollection(nodes.values());
+    }
+
+
+    /**
+     * records a Maven compile dependency; the dependency's own .project references are not followed
+     *
+     * @param project the dependent project
+     * @param dependency the project depended upon
+     */
+    public void addDependency(String project, String dependency)
+    {
+        getProject(project).dependencies.add(dependency);
+        getProject(dependency);
+    }
+
+
+    /**
+     * @param project the project
+     * @return the names of all projects reachable through .project references from the given project, the project
+     *         itself excluded (unless it is part of a reference cycle)
+     * @throws MojoFailureException if a .project file cannot be read
+     */
+    public Set<String> getReferencedProjects(String project) throws MojoFailureException
+    {
+        Set<String> closure = referenceClosures.get(project);
+        if (closure != null)
+        {
+            return closure;
+        }
+
+        // / iterative depth-first walk: every project is expanded only once, however often it is referenced
+        Set<String> reached = new TreeSet<String>();
+        List<String> pending = new ArrayList<String>(getProject(project).getReferences());
+        while (!pending.isEmpty())
+        {
+            String name = pending.remove(pending.size() - 1);
+            if (!reached.add(name))
+            {
+                continue;
+            }
+            Set<String> known = referenceClosures.get(name);
+            if (known != null)
+            {
+                reached.addAll(known);
+                continue;
+            }
+            pending.addAll(getProject(name).getReferences());
+        }
+
+        closure = Collections.unmodifiableSet(reached);
+        referenceClosures.put(project, closure);
+        return closure;
+    }
+
+
+    /**
+     * @return the names of all projects of the graph, each after the projects it references or depends on. The
+     *         projects of a reference cycle are listed together, in name order. The references of projects not yet
+     *         expanded through {@link #getReferencedProjects(String)} are not taken into account, so that projects
+     *         missing from the workspace do not fail the build.
+     */
+    public List<String> getBuildOrder()
+    {
+        Map<String, Set<String>> edges = new TreeMap<String, Set<String>>();
+        for (Node node : new ArrayList<Node>(nodes.values()))
+        {
+            Set<String> nodeEdges = new TreeSet<String>(node.dependencies);
+            if (node.references != null)
+            {
+                nodeEdges.addAll(node.references);
+            }
+            nodeEdges.remove(node.name);
+            edges.put(node.name, nodeEdges);
+        }
+        for (Set<String> nodeEdges : new ArrayList<Set<String>>(edges.values()))
+        {
+            for (String edge : nodeEdges)
+            {
+                if (!edges.containsKey(edge))
+                {
+                    edges.put(edge, new TreeSet<String>());
+                }
+            }
+        }
+
+        // / Tarjan's algorithm emits each strongly connected component (a single project or a reference cycle)
+        // / after all components it can reach, i.e. after its dependencies
+        BuildOrder buildOrder = new BuildOrder(edges);
+        for (String name : edges.keySet())
+        {
+            if (!buildOrder.index.containsKey(name))
+            {
+                buildOrder.visit(name);
+            }
+        }
+        return buildOrder.order;
+    }
+
+
+    private class BuildOrder
+    {
+        final Map<String, Set<String>> edges;
+        final Map<String, Integer> index = new HashMap<String, Integer>();
+        final Map<String, Integer> lowLink = new HashMap<String, Integer>();
+        final List<String> stack = new ArrayList<String>();
+        final Set<String> onStack = new HashSet<String>();
+        final List<String> order = new ArrayList<String>();
+
+        BuildOrder(Map<String, Set<String>> edges)
+        {
+            this.edges = edges;
+        }
+
+        void visit(String name)
+        {
+            index.put(name, index.size());
+            lowLink.put(name, index.get(name));
+            stack.add(name);
+            onStack.add(name);
+
+            for (String edge : edges.get(name))
+            {
+                if (!index.containsKey(edge))
+                {
+                    visit(edge);
+                    lowLink.put(name, Math.min(lowLink.get(name), lowLink.get(edge)));
+                }
+                else if (onStack.contains(edge))
+                {
+                    lowLink.put(name, Math.min(lowLink.get(name), index.get(edge)));
+                }
+            }
+
+            if (lowLink.get(name).equals(index.get(name)))
+            {
+                Set<String> component = new TreeSet<String>();
+                String member;
+                do
+                {
+                    member = stack.remove(stack.size() - 1);
+                    onStack.remove(member);
+                    component.add(member);
+                } while (!member.equals(name));
+
+                if (component.size() > 1 && log != null)
+                {
+                    log.warn("The projects " + component + " reference each other");
+                }
+                order.addAll(component);
+            }
+        }
+    }
+
+
+    private Nature determineNature(String name) throws MojoFailureException
+    {
+        File projectDirectory = new File(workspace, name);
+        if (EclipseProjectUtils.isApplication(projectDirectory, log))
+        {
+            return Nature.application;
+        }
+        if (EclipseProjectUtils.isLibrary(projectDirectory, log))
+        {
+            return Nature.library;
+        }
+        if (EclipseProjectUtils.isJavaProject(workspace, name, log))
+        {
+            return Nature.java;
+        }
+        return Nature.other;
+    }
+
+}
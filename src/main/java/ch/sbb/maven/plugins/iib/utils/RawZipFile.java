@@ -0,0 +1,550 @@
+package ch.sbb.maven.plugins.iib.utils;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Read-only view of a zip archive (bar, appzip, libzip, ...), held in memory or read from a file, giving access to the
+ * entries' raw (compressed) data.
+ *
+ * Together with {@link RawZipOutputStream} this allows to copy entries from one archive to another without inflating
+ * and deflating them again. Only the central directory is parsed; zip64 archives are not supported. An archive read
+ * from a file is never loaded as a whole: the entries are read at their offsets when they are copied or inflated, by
+ * positional reads that the threads sharing the archive may do at the same time. It must be closed after use.
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+public class RawZipFile implements Closeable {
+
+    static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    static final int LOCAL_HEADER_LENGTH = 30;
+    static final int CENTRAL_HEADER_LENGTH = 46;
+    static final int END_OF_CENTRAL_DIRECTORY_LENGTH = 22;
+
+    static final int STORED = 0;
+    static final int DEFLATED = 8;
+
+    /**
+     * general purpose flag: crc and sizes follow the data in a data descriptor
+     */
+    static final int FLAG_DATA_DESCRIPTOR = 0x08;
+
+    /**
+     * general purpose flag: the name is encoded in UTF-8
+     */
+    static final int FLAG_UTF8 = 0x800;
+
+    /**
+     * the size of the buffer entries are copied from a file with
+     */
+    private static final int COPY_BUFFER_SIZE = 65536;
+
+    // / either the data or the file is set
+    private final byte[] data;
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long length;
+    private final List<Entry> entries;
+
+
+    /**
+     * @param data the complete zip archive
+     * @throws IOException if the data is not a (supported) zip archive
+     */
+    public RawZipFile(byte[] data) throws IOException
+    {
+        this.data = data;
+        this.file = null;
+        this.channel = null;
+        this.length = data.length;
+        this.entries = Collections.unmodifiableList(readCentralDirectory());
+    }
+
+
+    /**
+     * @param zipFile the zip archive, which is kept open until {@link #close()}
+     * @throws IOException if the file cannot be read or is not a (supported) zip archive
+     */
+    public RawZipFile(File zipFile) throws IOException
+    {
+        this.data = null;
+        this.file = new RandomAccessFile(zipFile, "r");
+        this.channel = file.getChannel();
+        try
+        {
+            this.length = channel.size();
+            this.entries = Collections.unmodifiableList(readCentralDirectory());
+        } catch (IOException e)
+        {
+            file.close();
+            throw new IOException(zipFile.getAbsolutePath() + ": " + e.getMessage(), e);
+        }
+    }
+
+
+    /**
+     * closes the file the archive is read from, if any
+     */
+    public void close() throws IOException
+    {
+        if (file != null)
+        {
+            file.close();
+        }
+    }
+
+
+    /**
+     * @return the entries, in the order of the central directory
+     */
+    public List<Entry> getEntries()
+    {
+        return entries;
+    }
+
+
+    /**
+     * @param name the entry name
+     * @return the entry with the given name or null
+     */
+    public Entry getEntry(String name)
+    {
+        for (Entry entry : entries)
+        {
+            if (entry.getName().equals(name))
+            {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+
+    /**
+     * writes the raw (still compressed) data of the given entry
+     */
+    void writeRawData(Entry entry, OutputStream out) throws IOException
+    {
+        if (data != null)
+        {
+            out.write(data, (int) entry.dataOffset, (int) entry.compressedSize);
+            return;
+        }
+        byte[] buffer = new byte[(int) Math.min(COPY_BUFFER_SIZE, entry.compressedSize)];
+        long position = entry.dataOffset;
+        long remaining = entry.compressedSize;
+        while (remaining > 0)
+        {
+            int length = (int) Math.min(buffer.length, remaining);
+            read(position, buffer, 0, length);
+            out.write(buffer, 0, length);
+            position += length;
+            remaining -= length;
+        }
+    }
+
+
+    /**
+     * @return a stream of the uncompressed content of the given entry
+     */
+    public InputStream getInputStream(Entry entry) throws IOException
+    {
+        InputStream raw;
+        if (data != null)
+        {
+            raw = new ByteArrayInputStream(data, (int) entry.dataOffset, (int) entry.compressedSize);
+        }
+        else
+        {
+            raw = new BufferedInputStream(new RangeInputStream(entry.dataOffset, entry.compressedSize), COPY_BUFFER_SIZE);
+        }
+        switch (entry.method)
+        {
+            case STORED:
+                return raw;
+            case DEFLATED:
+                // / the "nowrap" inflater may need one byte more than the compressed data
+                return new InflaterInputStream(new SequenceInputStream(raw, new ByteArrayInputStream(new byte[1])), new Inflater(true));
+            default:
+                throw new IOException("unsupported compression method " + entry.method + " of zip entry " + entry.getName());
+        }
+    }
+
+
+    /**
+     * @return the uncompressed content of the given entry, verified against its crc
+     */
+    public byte[] getBytes(Entry entry) throws IOException
+    {
+        if (entry.size > Integer.MAX_VALUE || entry.compressedSize > Integer.MAX_VALUE)
+        {
+            throw new IOException("zip entry " + entry.getName() + " is too large to be held in memory");
+        }
+        byte[] raw = data;
+        int rawOffset = (int) entry.dataOffset;
+        if (raw == null)
+        {
+            raw = new byte[(int) entry.compressedSize];
+            rawOffset = 0;
+            read(entry.dataOffset, raw, 0, raw.length);
+        }
+
+        byte[] content;
+        if (entry.method == STORED)
+        {
+            content = new byte[(int) entry.size];
+            System.arraycopy(raw, rawOffset, content, 0, content.length);
+        }
+        else if (entry.method == DEFLATED)
+        {
+            content = new byte[(int) entry.size];
+            Inflater inflater = new Inflater(true);
+            try
+            {
+                inflater.setInput(raw, rawOffset, (int) entry.compressedSize);
+                int length = 0;
+                boolean padded = false;
+                while (length < content.length)
+                {
+                    int inflated = inflater.inflate(content, length, content.length - length);
+                    if (inflated == 0)
+                    {
+                        if (inflater.needsInput() && !padded)
+                        {
+                            // / the "nowrap" inflater may need one byte more than the compressed data
+                            inflater.setInput(new byte[1]);
+                            padded = true;
+                        }
+                        else if (inflater.needsInput() || inflater.finished() || inflater.needsDictionary())
+                        {
+                            break;
+                        }
+                    }
+                    length += inflated;
+                }
+                if (length != content.length)
+                {
+                    throw new IOException("truncated zip entry " + entry.getName());
+                }
+            } catch (DataFormatException e)
+            {
+                throw new IOException("corrupt zip entry " + entry.getName() + ": " + e.getMessage());
+            } finally
+            {
+                inflater.end();
+            }
+        }
+        else
+        {
+            throw new IOException("unsupported compression method " + entry.method + " of zip entry " + entry.getName());
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        if (crc.getValue() != entry.crc)
+        {
+            throw new IOException("crc mismatch in zip entry " + entry.getName());
+        }
+        return content;
+    }
+
+
+    private List<Entry> readCentralDirectory() throws IOException
+    {
+        // / the end of central directory record is followed by a comment of at most 64k
+        int tailLength = (int) Math.min(length, END_OF_CENTRAL_DIRECTORY_LENGTH + 0xffff);
+        byte[] tail = new byte[tailLength];
+        read(length - tailLength, tail, 0, tailLength);
+        int end = findEndOfCentralDirectory(tail);
+        int count = readShort(tail, end + 10);
+        long centralDirectorySize = readInt(tail, end + 12);
+        long centralDirectoryOffset = readInt(tail, end + 16);
+        if (count == 0xffff || centralDirectoryOffset == 0xffffffffL)
+        {
+            throw new IOException("zip64 archives are not supported");
+        }
+        if (centralDirectoryOffset + centralDirectorySize > length)
+        {
+            throw new IOException("invalid zip central directory");
+        }
+        byte[] centralDirectory = new byte[(int) centralDirectorySize];
+        read(centralDirectoryOffset, centralDirectory, 0, centralDirectory.length);
+
+        List<Entry> result = new ArrayList<Entry>(count);
+        byte[] localHeader = new byte[LOCAL_HEADER_LENGTH];
+        int offset = 0;
+        for (int i = 0; i < count; i++)
+        {
+            if (offset + CENTRAL_HEADER_LENGTH > centralDirectory.length || readInt(centralDirectory, offset) != CENTRAL_HEADER_SIGNATURE)
+            {
+                throw new IOException("invalid zip central directory");
+            }
+            Entry entry = new Entry();
+            entry.versionMadeBy = readShort(centralDirectory, offset + 4);
+            entry.versionNeeded = readShort(centralDirectory, offset + 6);
+            entry.flags = readShort(centralDirectory, offset + 8);
+            entry.method = readShort(centralDirectory, offset + 10);
+            entry.dosTime = readInt(centralDirectory, offset + 12);
+            entry.crc = readInt(centralDirectory, offset + 16);
+            entry.compressedSize = readInt(centralDirectory, offset + 20);
+            entry.size = readInt(centralDirectory, offset + 24);
+            int nameLength = readShort(centralDirectory, offset + 28);
+            int extraLength = readShort(centralDirectory, offset + 30);
+            int commentLength = readShort(centralDirectory, offset + 32);
+            entry.internalAttributes = readShort(centralDirectory, offset + 36);
+            entry.externalAttributes = readInt(centralDirectory, offset + 38);
+            entry.localHeaderOffset = readInt(centralDirectory, offset + 42);
+            if (entry.compressedSize == 0xffffffffL || entry.size == 0xffffffffL || entry.localHeaderOffset == 0xffffffffL)
+            {
+                throw new IOException("zip64 archives are not supported");
+            }
+
+            offset += CENTRAL_HEADER_LENGTH;
+            entry.nameBytes = copy(centralDirectory, offset, nameLength);
+            entry.name = decodeName(entry.nameBytes);
+            offset += nameLength;
+            entry.centralExtra = copy(centralDirectory, offset, extraLength);
+            offset += extraLength;
+            entry.comment = copy(centralDirectory, offset, commentLength);
+            offset += commentLength;
+
+            long local = entry.localHeaderOffset;
+            if (local + LOCAL_HEADER_LENGTH > length)
+            {
+                throw new IOException("invalid zip local header of entry " + entry.name);
+            }
+            read(local, localHeader, 0, LOCAL_HEADER_LENGTH);
+            if (readInt(localHeader, 0) != LOCAL_HEADER_SIGNATURE)
+            {
+                throw new IOException("invalid zip local header of entry " + entry.name);
+            }
+            int localNameLength = readShort(localHeader, 26);
+            int localExtraLength = readShort(localHeader, 28);
+            entry.dataOffset = local + LOCAL_HEADER_LENGTH + localNameLength + localExtraLength;
+            if (entry.dataOffset + entry.compressedSize > length)
+            {
+                throw new IOException("truncated zip entry " + entry.name);
+            }
+            entry.localExtra = new byte[localExtraLength];
+            read(local + LOCAL_HEADER_LENGTH + localNameLength, entry.localExtra, 0, localExtraLength);
+            result.add(entry);
+        }
+        return result;
+    }
+
+
+    private static int findEndOfCentralDirectory(byte[] tail) throws IOException
+    {
+        for (int offset = tail.length - END_OF_CENTRAL_DIRECTORY_LENGTH; offset >= 0; offset--)
+        {
+            if (readInt(tail, offset) == END_OF_CENTRAL_DIRECTORY_SIGNATURE)
+            {
+                return offset;
+            }
+        }
+        throw new IOException("not a zip archive");
+    }
+
+
+    /**
+     * reads the given range of the archive, from memory or from the file
+     */
+    private void read(long position, byte[] buffer, int offset, int length) throws IOException
+    {
+        if (position < 0 || position + length > this.length)
+        {
+            throw new EOFException("truncated zip archive");
+        }
+        if (data != null)
+        {
+            System.arraycopy(data, (int) position, buffer, offset, length);
+            return;
+        }
+        ByteBuffer target = ByteBuffer.wrap(buffer, offset, length);
+        while (target.hasRemaining())
+        {
+            // / positional reads leave the position of the channel alone, so that threads may read at the same time
+            if (channel.read(target, position + target.position() - offset) < 0)
+            {
+                throw new EOFException("truncated zip archive");
+            }
+        }
+    }
+
+
+    private static byte[] copy(byte[] buffer, int offset, int length) throws IOException
+    {
+        if (offset + length > buffer.length)
+        {
+            throw new IOException("invalid zip central directory");
+        }
+        byte[] result = new byte[length];
+        System.arraycopy(buffer, offset, result, 0, length);
+        return result;
+    }
+
+
+    private static int readShort(byte[] buffer, int offset)
+    {
+        return (buffer[offset] & 0xff) | (buffer[offset + 1] & 0xff) << 8;
+    }
+
+
+    private static long readInt(byte[] buffer, int offset)
+    {
+        return (readShort(buffer, offset) | (long) readShort(buffer, offset + 2) << 16) & 0xffffffffL;
+    }
+
+
+    static String decodeName(byte[] nameBytes)
+    {
+        try
+        {
+            // / java.util.zip reads names as UTF-8 regardless of the flag as well
+            return new String(nameBytes, "UTF-8");
+        } catch (UnsupportedEncodingException e)
+        {
+            // / UTF-8 is always available
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    /**
+     * a stream of a range of the file the archive is read from
+     */
+    private class RangeInputStream extends InputStream {
+        private long position;
+        private long remaining;
+
+        RangeInputStream(long position, long length)
+        {
+            this.position = position;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            if (remaining == 0)
+            {
+                return -1;
+            }
+            int length = (int) Math.min(len, remaining);
+            RawZipFile.this.read(position, b, off, length);
+            position += length;
+            remaining -= length;
+            return length;
+        }
+    }
+
+
+    /**
+     * An entry of a zip archive, as described by the central directory.
+     */
+    public static class Entry implements Cloneable
+    {
+        int versionMadeBy;
+        int versionNeeded;
+        int flags;
+        int method;
+        long dosTime;
+        long crc;
+        long compressedSize;
+        long size;
+        int internalAttributes;
+        long externalAttributes;
+        byte[] nameBytes;
+        String name;
+        byte[] centralExtra = new byte[0];
+        byte[] localExtra = new byte[0];
+        byte[] comment = new byte[0];
+        long localHeaderOffset;
+        long dataOffset;
+
+        Entry()
+        {
+            super();
+        }
+
+        /**
+         * @return the name of the entry, as stored in the archive (including any backslashes)
+         */
+        public String getName()
+        {
+            return name;
+        }
+
+        /**
+         * @return true if the entry is a directory
+         */
+        public boolean isDirectory()
+        {
+            return name.endsWith("/");
+        }
+
+        /**
+         * @return the uncompressed size of the entry
+         */
+        public long getSize()
+        {
+            return size;
+        }
+
+        /**
+         * @return the compressed size of the entry
+         */
+        public long getCompressedSize()
+        {
+            return compressedSize;
+        }
+
+        @Override
+        protected Entry clone()
+        {
+            try
+            {
+                return (Entry) super.clone();
+            } catch (CloneNotSupportedException e)
+            {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return name;
+        }
+    }
+
+
+}
@@ -0,0 +1,373 @@
+package ch.sbb.maven.plugins.iib.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a zip archive whose entries are either copied raw (still compressed) from a {@link RawZipFile} or deflated
+ * from new content.
+ *
+ * Copied entries keep their name, timestamp, attributes and compressed data; they are never inflated. The output is
+ * not buffered here, so callers should pass a buffered stream.
+ *
+ * The zip64 format is not supported: an archive with 65535 entries or more, an entry of 4GB or more, or an archive
+ * growing beyond 4GB fails with a {@link Zip64RequiredException}, so that the caller can fall back to
+ * {@link java.util.zip.ZipOutputStream}.
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+public class RawZipOutputStream {
+
+    private static final int VERSION_NEEDED_DEFLATED = 20;
+    private static final int VERSION_NEEDED_STORED = 10;
+
+    private final OutputStream out;
+    private final List<RawZipFile.Entry> entries = new ArrayList<RawZipFile.Entry>();
+    private final Set<String> names = new HashSet<String>();
+    private long offset;
+    private boolean finished;
+
+
+    /**
+     * @param out the stream the archive is written to; it is closed by {@link #close()}
+     */
+    public RawZipOutputStream(OutputStream out)
+    {
+        this.out = out;
+    }
+
+
+    /**
+     * copies an entry without inflating it
+     *
+     * @param source the archive containing the entry
+     * @param entry the entry
+     * @throws IOException if the entry cannot be written
+     */
+    public void copyEntry(RawZipFile source, RawZipFile.Entry entry) throws IOException
+    {
+        RawZipFile.Entry copy = entry.clone();
+        // / crc and sizes are known up front, so the copy needs no data descriptor
+        copy.flags &= ~RawZipFile.FLAG_DATA_DESCRIPTOR;
+        writeLocalHeader(copy);
+        source.writeRawData(entry, out);
+        offset += copy.compressedSize;
+    }
+
+
+    /**
+     * writes an entry with new content, keeping the name, timestamp and attributes of an existing entry
+     *
+     * @param template the entry whose name and attributes are used
+     * @param content the new uncompressed content
+     * @throws IOException if the entry cannot be written
+     */
+    public void putEntry(RawZipFile.Entry template, byte[] content) throws IOException
+    {
+        RawZipFile.Entry entry = template.clone();
+        entry.flags &= ~RawZipFile.FLAG_DATA_DESCRIPTOR;
+        putCompressedEntry(entry, content.length, crc(content), deflate(content, Deflater.DEFAULT_COMPRESSION));
+    }
+
+
+    /**
+     * writes a new entry
+     *
+     * @param name the entry name
+     * @param time the modification time of the entry
+     * @param content the uncompressed content
+     * @throws IOException if the entry cannot be written
+     */
+    public void putEntry(String name, long time, byte[] content) throws IOException
+    {
+        putCompressedEntry(newEntry(name, time), content.length, crc(content), deflate(content, Deflater.DEFAULT_COMPRESSION));
+    }
+
+
+    /**
+     * writes an entry whose content has already been deflated (see {@link #deflate(byte[], int)})
+     *
+     * @param template the entry whose name and attributes are used
+     * @param size the uncompressed size
+     * @param crc the crc of the uncompressed content
+     * @param compressed the deflated content
+     * @throws IOException if the entry cannot be written
+     */
+    void putCompressedEntry(RawZipFile.Entry template, long size, long crc, byte[] compressed) throws IOException
+    {
+        putRawEntry(template, RawZipFile.DEFLATED, size, crc, compressed.length, new ByteArrayInputStream(compressed));
+    }
+
+
+    /**
+     * writes an entry whose data is ready to be stored in the archive, either deflated or stored
+     *
+     * @param template the entry whose name and attributes are used
+     * @param method {@link RawZipFile#DEFLATED} or {@link RawZipFile#STORED}
+     * @param size the uncompressed size
+     * @param crc the crc of the uncompressed content
+     * @param compressedSize the size of the data
+     * @param data the data, read up to compressedSize
+     * @throws IOException if the entry cannot be written, or the data is shorter than compressedSize
+     */
+    void putRawEntry(RawZipFile.Entry template, int method, long size, long crc, long compressedSize, InputStream data) throws IOException
+    {
+        if (size >= 0xffffffffL || compressedSize >= 0xffffffffL)
+        {
+            throw new Zip64RequiredException("the entry " + template.name + " is 4GB or larger");
+        }
+        RawZipFile.Entry entry = template.clone();
+        entry.method = method;
+        entry.versionNeeded = Math.max(entry.versionNeeded, method == RawZipFile.DEFLATED ? VERSION_NEEDED_DEFLATED : VERSION_NEEDED_STORED);
+        entry.size = size;
+        entry.crc = crc;
+        entry.compressedSize = compressedSize;
+        writeLocalHeader(entry);
+        byte[] buffer = new byte[(int) Math.min(65536, Math.max(1, compressedSize))];
+        long remaining = compressedSize;
+        while (remaining > 0)
+        {
+            int length = data.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (length < 0)
+            {
+                throw new IOException("the data of the entry " + entry.name + " ended " + remaining + " bytes early");
+            }
+            out.write(buffer, 0, length);
+            remaining -= length;
+        }
+        offset += compressedSize;
+    }
+
+
+    /**
+     * @return a new entry with the given name and time, to be passed to {@link #putCompressedEntry}
+     */
+    static RawZipFile.Entry newEntry(String name, long time)
+    {
+        RawZipFile.Entry entry = new RawZipFile.Entry();
+        entry.name = name;
+        try
+        {
+            entry.nameBytes = name.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e)
+        {
+            // / UTF-8 is always available
+            throw new IllegalStateException(e);
+        }
+        entry.flags = RawZipFile.FLAG_UTF8;
+        entry.versionNeeded = VERSION_NEEDED_STORED;
+        entry.versionMadeBy = VERSION_NEEDED_DEFLATED;
+        entry.dosTime = toDosTime(time);
+        return entry;
+    }
+
+
+    /**
+     * @return the raw ("nowrap") deflated content, as stored in zip entries
+     */
+    static byte[] deflate(byte[] content, int level)
+    {
+        Deflater deflater = new Deflater(level, true);
+        try
+        {
+            deflater.setInput(content);
+            deflater.finish();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, content.length / 2));
+            byte[] buffer = new byte[65536];
+            while (!deflater.finished())
+            {
+                int length = deflater.deflate(buffer);
+                compressed.write(buffer, 0, length);
+            }
+            return compressed.toByteArray();
+        } finally
+        {
+            deflater.end();
+        }
+    }
+
+
+    static long crc(byte[] content)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        return crc.getValue();
+    }
+
+
+    private void writeLocalHeader(RawZipFile.Entry entry) throws IOException
+    {
+        if (finished)
+        {
+            throw new IOException("zip archive already finished");
+        }
+        if (!names.add(entry.name))
+        {
+            throw new IOException("duplicate zip entry " + entry.name);
+        }
+        if (offset > 0xffffffffL)
+        {
+            throw new Zip64RequiredException("the archive is larger than 4GB");
+        }
+        // / 0xffff entries already mark a zip64 archive
+        if (entries.size() + 1 >= 0xffff)
+        {
+            throw new Zip64RequiredException("the archive has more than " + entries.size() + " entries");
+        }
+
+        RawZipFile.Entry central = entry.clone();
+        central.localHeaderOffset = offset;
+        entries.add(central);
+
+        writeInt(RawZipFile.LOCAL_HEADER_SIGNATURE);
+        writeShort(entry.versionNeeded);
+        writeShort(entry.flags);
+        writeShort(entry.method);
+        writeInt(entry.dosTime);
+        writeInt(entry.crc);
+        writeInt(entry.compressedSize);
+        writeInt(entry.size);
+        writeShort(entry.nameBytes.length);
+        writeShort(entry.localExtra.length);
+        writeBytes(entry.nameBytes);
+        writeBytes(entry.localExtra);
+    }
+
+
+    /**
+     * writes the central directory; no entries can be added afterwards
+     *
+     * @throws IOException if the central directory cannot be written
+     */
+    public void finish() throws IOException
+    {
+        if (finished)
+        {
+            return;
+        }
+        finished = true;
+
+        long centralDirectoryOffset = offset;
+        for (RawZipFile.Entry entry : entries)
+        {
+            writeInt(RawZipFile.CENTRAL_HEADER_SIGNATURE);
+            writeShort(entry.versionMadeBy);
+            writeShort(entry.versionNeeded);
+            writeShort(entry.flags);
+            writeShort(entry.method);
+            writeInt(entry.dosTime);
+            writeInt(entry.crc);
+            writeInt(entry.compressedSize);
+            writeInt(entry.size);
+            writeShort(entry.nameBytes.length);
+            writeShort(entry.centralExtra.length);
+            writeShort(entry.comment.length);
+            writeShort(0); // / disk number
+            writeShort(entry.internalAttributes);
+            writeInt(entry.externalAttributes);
+            writeInt(entry.localHeaderOffset);
+            writeBytes(entry.nameBytes);
+            writeBytes(entry.centralExtra);
+            writeBytes(entry.comment);
+        }
+        long centralDirectorySize = offset - centralDirectoryOffset;
+        if (offset > 0xffffffffL)
+        {
+            throw new Zip64RequiredException("the archive is larger than 4GB");
+        }
+
+        writeInt(RawZipFile.END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+        writeShort(0); // / number of this disk
+        writeShort(0); // / disk with the central directory
+        writeShort(entries.size());
+        writeShort(entries.size());
+        writeInt(centralDirectorySize);
+        writeInt(centralDirectoryOffset);
+        writeShort(0); // / comment length
+        out.flush();
+    }
+
+
+    /**
+     * finishes the archive and closes the underlying stream
+     *
+     * @throws IOException if the archive cannot be written
+     */
+    public void close() throws IOException
+    {
+        try
+        {
+            finish();
+        } finally
+        {
+            out.close();
+        }
+    }
+
+
+    private void writeShort(int value) throws IOException
+    {
+        out.write(value & 0xff);
+        out.write((value >>> 8) & 0xff);
+        offset += 2;
+    }
+
+
+    private void writeInt(long value) throws IOException
+    {
+        writeShort((int) (value & 0xffff));
+        writeShort((int) ((value >>> 16) & 0xffff));
+    }
+
+
+    private void writeBytes(byte[] bytes) throws IOException
+    {
+        out.write(bytes);
+        offset += bytes.length;
+    }
+
+
+    private static long toDosTime(long time)
+    {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        int year = calendar.get(Calendar.YEAR);
+        if (year < 1980)
+        {
+            return (1 << 21) | (1 << 16);
+        }
+        return (long) (year - 1980) << 25
+                | (calendar.get(Calendar.MONTH) + 1) << 21
+                | calendar.get(Calendar.DAY_OF_MONTH) << 16
+                | calendar.get(Calendar.HOUR_OF_DAY) << 11
+                | calendar.get(Calendar.MINUTE) << 5
+                | calendar.get(Calendar.SECOND) >> 1;
+    }
+
+
+    /**
+     * thrown if the archive needs the zip64 format, which is not supported
+     */
+    public static class Zip64RequiredException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        Zip64RequiredException(String message)
+        {
+            super(message + ": zip64 archives are not supported");
+        }
+    }
+
+}
@@ -0,0 +1,357 @@
+package ch.sbb.maven.plugins.iib.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Sums up the {@link BuildTimings} of the IIB modules of a reactor build: the modules on the critical path (the
+ * longest chain of modules that depend on each other, which no -T thread count can shorten), the slowest modules, and
+ * how much of the time is spent waiting for mqsi commands rather than in the JVM.
+ *
+ * The time of a module is the sum of the wall times of the plugin's mojos; the mojos of other plugins (e.g.
+ * maven-install-plugin) are not counted. The mqsi time of a module is the time during which at least one mqsi command
+ * was running, so that commands run in parallel (e.g. deployments) are not counted twice. The bar files packaged in
+ * the forked packagebar JVM ({@link ForkedPackageBar#STEP_NAME}) are counted as mqsi commands too: the time is spent
+ * in another process.
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+public class ReactorBuildTimings {
+
+    /**
+     * the name of the report, in the build directory of the top-level project
+     */
+    public static final String REPORT_FILE = "iib-reactor-timings.json";
+
+    /**
+     * the packagings whose modules are reported
+     */
+    public static final List<String> IIB_PACKAGINGS = Collections.unmodifiableList(Arrays.asList("iib-bar", "iib-src", "iib-zip", "iib-par",
+            "iib-classloader"));
+
+    private static final int SLOWEST_MODULES = 5;
+
+    /**
+     * the timings of a module
+     */
+    public static class Module {
+        private final String id;
+        private final String name;
+        private final List<String> upstream;
+        private final List<BuildTimings.Span> mojos;
+        private long wallMillis;
+        private long mqsiMillis;
+
+        Module(String id, String name, List<String> upstream, List<BuildTimings.Span> mojos)
+        {
+            this.id = id;
+            this.name = name;
+            this.upstream = upstream;
+            this.mojos = mojos;
+            List<long[]> mqsiIntervals = new ArrayList<long[]>();
+            for (BuildTimings.Span mojo : mojos)
+            {
+                wallMillis += Math.max(0, mojo.getWallMillis());
+                // / the mqsi commands are steps; the mqsideploy mojo is named like its command
+                for (BuildTimings.Span step : mojo.getSteps())
+                {
+                    addMqsiIntervals(step, mqsiIntervals);
+                }
+            }
+            mqsiMillis = getUnionMillis(mqsiIntervals);
+        }
+
+        public String getId()
+        {
+            return id;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        /**
+         * @return the time spent in the plugin's mojos
+         */
+        public long getWallMillis()
+        {
+            return wallMillis;
+        }
+
+        /**
+         * @return the part of {@link #getWallMillis()} spent waiting for mqsi commands
+         */
+        public long getMqsiMillis()
+        {
+            return mqsiMillis;
+        }
+
+        /**
+         * @return the part of {@link #getWallMillis()} spent in the JVM
+         */
+        public long getJvmMillis()
+        {
+            return wallMillis - mqsiMillis;
+        }
+
+        private static void addMqsiIntervals(BuildTimings.Span span, List<long[]> intervals)
+        {
+            if (isMqsiCommand(span.getName()))
+            {
+                if (span.getWallMillis() > 0)
+                {
+                    intervals.add(new long[] { span.getStartTime(), span.getStartTime() + span.getWallMillis() });
+                }
+                return;
+            }
+            for (BuildTimings.Span step : span.getSteps())
+            {
+                addMqsiIntervals(step, intervals);
+            }
+        }
+
+        /**
+         * @return the time covered by at least one of the intervals (start and end time)
+         */
+        static long getUnionMillis(List<long[]> intervals)
+        {
+            List<long[]> sorted = new ArrayList<long[]>(intervals);
+            Collections.sort(sorted, new Comparator<long[]>() {
+                public int compare(long[] interval1, long[] interval2)
+                {
+                    return interval1[0] < interval2[0] ? -1 : interval1[0] > interval2[0] ? 1 : 0;
+                }
+            });
+            long millis = 0;
+            long end = Long.MIN_VALUE;
+            for (long[] interval : sorted)
+            {
+                long start = Math.max(interval[0], end);
+                if (interval[1] > start)
+                {
+                    millis += interval[1] - start;
+                    end = interval[1];
+                }
+            }
+            return millis;
+        }
+
+        private static boolean isMqsiCommand(String name)
+        {
+            if (ForkedPackageBar.STEP_NAME.equals(name))
+            {
+                return true;
+            }
+            for (MqsiCommand command : MqsiCommand.values())
+            {
+                if (command.toString().equals(name))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+
+    private final Map<String, Module> modules = new LinkedHashMap<String, Module>();
+
+
+    /**
+     * @param id the unique id of the module, e.g. groupId:artifactId
+     * @param name the name the module is reported with, e.g. its artifactId
+     * @param upstream the ids of the modules it depends on, directly or not
+     * @param mojos the spans of the plugin's mojos run for the module ({@link BuildTimings#getSpans()})
+     * @return the module
+     */
+    public Module addModule(String id, String name, List<String> upstream, List<BuildTimings.Span> mojos)
+    {
+        Module module = new Module(id, name, upstream, mojos);
+        modules.put(id, module);
+        return module;
+    }
+
+
+    /**
+     * @return the modules, in the order they were added
+     */
+    public Collection<Module> getModules()
+    {
+        return Collections.unmodifiableCollection(modules.values());
+    }
+
+
+    /**
+     * @param count the maximum number of modules returned
+     * @return the slowest modules, the slowest first
+     */
+    public List<Module> getSlowestModules(int count)
+    {
+        List<Module> slowest = new ArrayList<Module>(modules.values());
+        Collections.sort(slowest, new Comparator<Module>() {
+            public int compare(Module module1, Module module2)
+            {
+                return module1.wallMillis < module2.wallMillis ? 1 : module1.wallMillis > module2.wallMillis ? -1 : 0;
+            }
+        });
+        return slowest.subList(0, Math.min(count, slowest.size()));
+    }
+
+
+    /**
+     * @return the chain of modules with the longest total time, the upstream module first
+     */
+    public List<Module> getCriticalPath()
+    {
+        Map<String, Long> pathMillis = new HashMap<String, Long>();
+        Map<String, Module> previous = new HashMap<String, Module>();
+        Module last = null;
+        for (Module module : modules.values())
+        {
+            long millis = getPathMillis(module, pathMillis, previous);
+            if (last == null || millis > pathMillis.get(last.id))
+            {
+                last = module;
+            }
+        }
+
+        List<Module> path = new ArrayList<Module>();
+        for (Module module = last; module != null; module = previous.get(module.id))
+        {
+            path.add(0, module);
+        }
+        return path;
+    }
+
+
+    /**
+     * @return the time of the longest chain of modules ending with the given one, memoized in pathMillis
+     */
+    private long getPathMillis(Module module, Map<String, Long> pathMillis, Map<String, Module> previous)
+    {
+        Long millis = pathMillis.get(module.id);
+        if (millis != null)
+        {
+            return millis;
+        }
+        // / a reactor has no cycles; this only guards against a broken upstream list
+        pathMillis.put(module.id, module.wallMillis);
+        long upstreamMillis = 0;
+        for (String upstreamId : module.upstream)
+        {
+            Module upstreamModule = modules.get(upstreamId);
+            if (upstreamModule == null)
+            {
+                continue;
+            }
+            long candidate = getPathMillis(upstreamModule, pathMillis, previous);
+            if (candidate > upstreamMillis)
+            {
+                upstreamMillis = candidate;
+                previous.put(module.id, upstreamModule);
+            }
+        }
+        pathMillis.put(module.id, module.wallMillis + upstreamMillis);
+        return module.wallMillis + upstreamMillis;
+    }
+
+
+    /**
+     * @return the summary to be logged at the end of the build
+     */
+    public List<String> getSummary()
+    {
+        List<String> lines = new ArrayList<String>();
+        long wallMillis = 0;
+        long mqsiMillis = 0;
+        for (Module module : modules.values())
+        {
+            wallMillis += module.wallMillis;
+            mqsiMillis += module.mqsiMillis;
+        }
+        lines.add("IIB build timings of " + modules.size() + " modules:");
+
+        List<Module> criticalPath = getCriticalPath();
+        long criticalPathMillis = 0;
+        StringBuilder path = new StringBuilder();
+        for (Module module : criticalPath)
+        {
+            criticalPathMillis += module.wallMillis;
+            path.append(path.length() == 0 ? "" : " -> ").append(module.name).append(" (").append(format(module.wallMillis)).append(")");
+        }
+        lines.add("  critical path " + format(criticalPathMillis) + ": " + path);
+
+        StringBuilder slowest = new StringBuilder();
+        for (Module module : getSlowestModules(SLOWEST_MODULES))
+        {
+            slowest.append(slowest.length() == 0 ? "" : ", ").append(module.name).append(" ").append(format(module.wallMillis));
+        }
+        lines.add("  slowest modules: " + slowest);
+        lines.add("  total " + format(wallMillis) + ", of which " + format(mqsiMillis) + " in mqsi commands and " + format(wallMillis - mqsiMillis)
+                + " in the JVM");
+        return lines;
+    }
+
+
+    /**
+     * @return the report
+     */
+    public String toJson()
+    {
+        StringBuilder json = new StringBuilder("{\n  \"criticalPath\": [");
+        List<Module> criticalPath = getCriticalPath();
+        for (int i = 0; i < criticalPath.size(); i++)
+        {
+            json.append(i == 0 ? "" : ", ").append(BuildTimings.quote(criticalPath.get(i).id));
+        }
+        json.append("],\n  \"modules\": [");
+        int i = 0;
+        for (Module module : modules.values())
+        {
+            json.append(i++ == 0 ? "\n" : ",\n").append("    {\"id\": ").append(BuildTimings.quote(module.id));
+            json.append(", \"wallMillis\": ").append(module.wallMillis);
+            json.append(", \"mqsiMillis\": ").append(module.mqsiMillis);
+            json.append(", \"jvmMillis\": ").append(module.getJvmMillis());
+            json.append(", \"mojos\": [");
+            for (int j = 0; j < module.mojos.size(); j++)
+            {
+                BuildTimings.Span mojo = module.mojos.get(j);
+                json.append(j == 0 ? "" : ", ").append("{\"name\": ").append(BuildTimings.quote(mojo.getName()));
+                json.append(", \"startTime\": ").append(mojo.getStartTime());
+                json.append(", \"wallMillis\": ").append(mojo.getWallMillis()).append("}");
+            }
+            json.append("]}");
+        }
+        json.append("\n  ]\n}\n");
+        return json.toString();
+    }
+
+
+    /**
+     * @param file the report file
+     * @throws IOException if the report could not be written
+     */
+    public void writeReport(File file) throws IOException
+    {
+        BuildTimings.write(toJson(), file);
+    }
+
+
+    private static String format(long millis)
+    {
+        return String.format(Locale.ENGLISH, "%.1fs", millis / 1000.0);
+    }
+
+}
@@ -1,7 +1,18 @@
 package ch.sbb.maven.plugins.iib.utils;
 
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import com.ibm.broker.config.proxy.BarEntry;
 import com.ibm.broker.config.proxy.BarFile;
@@ -18,6 +29,10 @@ import com.ibm.broker.config.proxy.DeploymentDescriptor;
 @SuppressWarnings("javadoc")
 public class ReadBar {
 
+    private static final String DEPLOYMENT_DESCRIPTOR = "META-INF/broker.xml";
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+
     public static ConfigurableProperties getOverridableProperties(BarFile barfile) throws IOException {
         ConfigurableProperties configurableProperties = new ConfigurableProperties();
         // int i = 0;
@@ -56,9 +71,83 @@ public class ReadBar {
 
     public static ConfigurableProperties getOverridableProperties(String barFileName) throws IOException {
 
-        BarFile barfile = BarFile.loadBarFile(barFileName);
-        return ReadBar.getOverridableProperties(barfile);
+        InputStream in = new BufferedInputStream(new FileInputStream(barFileName), 65536);
+        try
+        {
+            return ReadBar.getOverridableProperties(in);
+        } finally
+        {
+            in.close();
+        }
+
+    }
+
+    /**
+     * reads the overridable properties without loading the bar file: the zip is streamed, nested applications and
+     * libraries are read on the fly and only the deployment descriptors (META-INF/broker.xml) are parsed. The result
+     * is the same as {@link #getOverridableProperties(BarFile)}.
+     * 
+     * @param barStream the bar file content; it is not closed
+     */
+    public static ConfigurableProperties getOverridableProperties(InputStream barStream) throws IOException {
+        ConfigurableProperties nestedProperties = new ConfigurableProperties();
+        ConfigurableProperties descriptorProperties = null;
 
+        ZipInputStream zip = new ZipInputStream(barStream);
+        for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry())
+        {
+            String name = entry.getName().replace('\\', '/');
+            if (name.equals(DEPLOYMENT_DESCRIPTOR))
+            {
+                // / the xml parser closes its input at the end of the document, which must not close the zip stream
+                descriptorProperties = readDeploymentDescriptor(new FilterInputStream(zip) {
+
+                    @Override
+                    public void close()
+                    {
+                        // / the zip stream stays open
+                    }
+                }, name);
+            }
+            else if (NativeBarOverride.isNestedArchive(name))
+            {
+                nestedProperties.putAll(getOverridableProperties(zip));
+            }
+        }
+
+        // / as with the BarFile API, the properties of the deployment descriptor win over those of nested archives
+        if (descriptorProperties != null)
+        {
+            nestedProperties.putAll(descriptorProperties);
+        }
+        return nestedProperties;
+    }
+
+    private static ConfigurableProperties readDeploymentDescriptor(InputStream in, String name) throws IOException {
+        ConfigurableProperties configurableProperties = new ConfigurableProperties();
+        try
+        {
+            XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(in);
+            try
+            {
+                while (reader.hasNext())
+                {
+                    if (reader.next() == XMLStreamConstants.START_ELEMENT && reader.getLocalName().equals("ConfigurableProperty"))
+                    {
+                        String overrideKey = reader.getAttributeValue(null, "uri");
+                        String overrideValue = reader.getAttributeValue(null, "override");
+                        configurableProperties.put(overrideKey, overrideValue != null ? overrideValue : "");
+                    }
+                }
+            } finally
+            {
+                reader.close();
+            }
+        } catch (XMLStreamException e)
+        {
+            throw new IOException("unable to read the deployment descriptor " + name + ": " + e.getMessage());
+        }
+        return configurableProperties;
     }
 
 }
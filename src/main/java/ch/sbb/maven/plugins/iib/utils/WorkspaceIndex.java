@@ -0,0 +1,473 @@
+package ch.sbb.maven.plugins.iib.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import javax.xml.bind.JAXBException;
+
+import org.apache.maven.plugin.logging.Log;
+
+import ch.sbb.maven.plugins.iib.generated.eclipse_project.ProjectDescription;
+
+/**
+ * A snapshot of the projects of a workspace, taken in a single parallel scan: for every top-level directory its
+ * .project description, the number of files and of .java/.class files, and the modification time of every file.
+ *
+ * The index of a workspace is kept for the rest of the build (see {@link #get(File, Log)}). It is scanned again when
+ * projects are added to or removed from the workspace (judging by the modification time of the workspace directory)
+ * and after {@link #invalidate(File)}, which the mojos that change the workspace call. Besides, a project asked for by
+ * name through {@link #getProject(String)} is checked on its own: if any of its files or directories was added,
+ * removed or modified since it was indexed (judging by their modification times), it is scanned again. As with any
+ * check by modification time, a change within the timestamp resolution of the file system goes unnoticed.
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+public class WorkspaceIndex {
+
+    private static final ConcurrentMap<String, WorkspaceIndex> INDEXES = new ConcurrentHashMap<String, WorkspaceIndex>();
+
+    /**
+     * a top-level directory of the workspace
+     */
+    public static class ProjectInfo {
+        private final File directory;
+        private ProjectDescription projectDescription;
+        private int fileCount;
+        private int javaFileCount;
+        private final Map<String, Long> lastModified = new TreeMap<String, Long>();
+        // / the modification time of the project directory ("") and its subdirectories, which changes when an entry
+        // / is added, removed or renamed
+        private final Map<String, Long> directoryLastModified = new HashMap<String, Long>();
+
+        ProjectInfo(File directory)
+        {
+            this.directory = directory;
+        }
+
+        /**
+         * @return the directory name, which is the project name in a valid workspace
+         */
+        public String getName()
+        {
+            return directory.getName();
+        }
+
+        public File getDirectory()
+        {
+            return directory;
+        }
+
+        /**
+         * @return true if the directory contains a .project file
+         */
+        public boolean hasProjectFile()
+        {
+            return lastModified.containsKey(".project");
+        }
+
+        /**
+         * @return the parsed .project file, or null if there is none or it could not be parsed
+         */
+        public ProjectDescription getProjectDescription()
+        {
+            return projectDescription;
+        }
+
+        /**
+         * @return the natures listed in the .project file
+         */
+        public List<String> getNatures()
+        {
+            if (projectDescription == null || projectDescription.getNatures() == null)
+            {
+                return Collections.emptyList();
+            }
+            return projectDescription.getNatures().getNature();
+        }
+
+        /**
+         * @return the number of files in the directory and its subdirectories
+         */
+        public int getFileCount()
+        {
+            return fileCount;
+        }
+
+        /**
+         * @return the number of .java and .class files in the directory and its subdirectories
+         */
+        public int getJavaFileCount()
+        {
+            return javaFileCount;
+        }
+
+        /**
+         * @return true if at least half of the files are .java or .class files (see {@link JavaProjectUtil})
+         */
+        public boolean isJavaProject()
+        {
+            return fileCount > 0 && javaFileCount * 100.0 / fileCount >= 50;
+        }
+
+        /**
+         * @return the modification time of every file, by path relative to the project directory ('/' separated)
+         */
+        public Map<String, Long> getLastModified()
+        {
+            return Collections.unmodifiableMap(lastModified);
+        }
+
+        /**
+         * @return true if none of the directories and files indexed was added, removed or modified since
+         */
+        boolean isUnchanged()
+        {
+            for (Map.Entry<String, Long> entry : directoryLastModified.entrySet())
+            {
+                if (WorkspaceIndex.getLastModified(new File(directory, entry.getKey())) != entry.getValue())
+                {
+                    return false;
+                }
+            }
+            for (Map.Entry<String, Long> entry : lastModified.entrySet())
+            {
+                if (WorkspaceIndex.getLastModified(new File(directory, entry.getKey())) != entry.getValue())
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+
+    private final File workspace;
+    private final long workspaceLastModified;
+    // / the projects scanned again by getProject() are replaced while other threads may read the index
+    private final ConcurrentMap<String, ProjectInfo> projects;
+
+
+    private WorkspaceIndex(File workspace, long workspaceLastModified, Map<String, ProjectInfo> projects)
+    {
+        this.workspace = workspace;
+        this.workspaceLastModified = workspaceLastModified;
+        this.projects = new ConcurrentSkipListMap<String, ProjectInfo>(projects);
+    }
+
+
+    /**
+     * @param workspace the workspace directory
+     * @param log the logger, may be null
+     * @return the index of the workspace, scanned on first use, after {@link #invalidate(File)} and when the list of
+     *         projects changed (i.e. the directory's modification time). The projects themselves are not checked.
+     */
+    public static WorkspaceIndex get(File workspace, Log log)
+    {
+        String key = getKey(workspace);
+        WorkspaceIndex index = INDEXES.get(key);
+        if (index != null && index.workspaceLastModified == workspace.lastModified())
+        {
+            return index;
+        }
+        index = scan(workspace, log);
+        INDEXES.put(key, index);
+        return index;
+    }
+
+
+    /**
+     * discards the index of the workspace, to be called after changing the workspace
+     *
+     * @param workspace the workspace directory
+     */
+    public static void invalidate(File workspace)
+    {
+        if (workspace != null)
+        {
+            INDEXES.remove(getKey(workspace));
+        }
+    }
+
+
+    private static String getKey(File workspace)
+    {
+        try
+        {
+            return workspace.getCanonicalPath();
+        } catch (IOException e)
+        {
+            return workspace.getAbsolutePath();
+        }
+    }
+
+
+    public File getWorkspace()
+    {
+        return workspace;
+    }
+
+
+    /**
+     * @return all top-level directories of the workspace but the hidden ones (e.g. .metadata), ordered by name, as
+     *         they were indexed: unlike {@link #getProject(String)}, the projects are not checked for changes
+     */
+    public Collection<ProjectInfo> getProjects()
+    {
+        return Collections.unmodifiableCollection(projects.values());
+    }
+
+
+    /**
+     * @param name the directory name
+     * @return the top-level directory of the given name, or null if there is none. The directory is scanned again if
+     *         it changed since it was indexed (see {@link ProjectInfo#isUnchanged()}); the other ones are not checked.
+     */
+    public ProjectInfo getProject(String name)
+    {
+        ProjectInfo project = projects.get(name);
+        if (project == null || project.isUnchanged())
+        {
+            return project;
+        }
+        if (!project.directory.isDirectory())
+        {
+            projects.remove(name, project);
+            return null;
+        }
+        ProjectInfo scanned = scanProjects(Collections.singletonList(project.directory), null).get(name);
+        projects.replace(name, project, scanned);
+        return scanned;
+    }
+
+
+    /**
+     * @param name the directory name
+     * @return true if the workspace has a top-level directory of the given name, without checking it for changes
+     */
+    boolean hasProject(String name)
+    {
+        return projects.containsKey(name);
+    }
+
+
+    /**
+     * @return the names of the top-level directories with a .project file, ordered by name
+     */
+    public List<String> getEclipseProjectNames()
+    {
+        List<String> names = new ArrayList<String>();
+        for (ProjectInfo project : projects.values())
+        {
+            if (project.hasProjectFile())
+            {
+                names.add(project.getName());
+            }
+        }
+        return names;
+    }
+
+
+    private static WorkspaceIndex scan(File workspace, Log log)
+    {
+        long start = System.currentTimeMillis();
+        // / read before the scan, so that a change during the scan triggers another one
+        long workspaceLastModified = workspace.lastModified();
+        File[] files = workspace.listFiles();
+        if (files == null)
+        {
+            return new WorkspaceIndex(workspace, workspaceLastModified, new TreeMap<String, ProjectInfo>());
+        }
+
+        List<File> directories = new ArrayList<File>();
+        for (File file : files)
+        {
+            if (file.isDirectory() && !file.getName().startsWith("."))
+            {
+                directories.add(file);
+            }
+        }
+        Map<String, ProjectInfo> projects = scanProjects(directories, log);
+
+        if (log != null)
+        {
+            log.debug("indexed " + projects.size() + " directories of the workspace " + workspace + " in " + (System.currentTimeMillis() - start) + "ms");
+        }
+        return new WorkspaceIndex(workspace, workspaceLastModified, projects);
+    }
+
+
+    /**
+     * @return the given top-level directories scanned in parallel, by name
+     */
+    private static Map<String, ProjectInfo> scanProjects(List<File> directories, Log log)
+    {
+        Map<String, ProjectInfo> projects = new TreeMap<String, ProjectInfo>();
+        List<DirectoryScan> scans = new ArrayList<DirectoryScan>();
+        for (File directory : directories)
+        {
+            ProjectInfo project = new ProjectInfo(directory);
+            projects.put(project.getName(), project);
+            scans.add(new DirectoryScan(directory.toPath(), ""));
+        }
+
+        ForkJoinPool pool = new ForkJoinPool();
+        try
+        {
+            for (DirectoryScan scan : scans)
+            {
+                pool.execute(scan);
+            }
+            for (DirectoryScan scan : scans)
+            {
+                ProjectInfo project = projects.get(scan.directory.getFileName().toString());
+                DirectoryScan.Result result = scan.join();
+                project.fileCount = result.fileCount;
+                project.javaFileCount = result.javaFileCount;
+                project.lastModified.putAll(result.lastModified);
+                project.directoryLastModified.putAll(result.directoryLastModified);
+            }
+        } finally
+        {
+            pool.shutdown();
+        }
+
+        for (ProjectInfo project : projects.values())
+        {
+            if (project.hasProjectFile())
+            {
+                try
+                {
+                    project.projectDescription = EclipseProjectUtils.unmarshallEclipseProjectFile(new File(project.directory, ".project"));
+                } catch (JAXBException e)
+                {
+                    if (log != null)
+                    {
+                        log.warn("unable to parse " + new File(project.directory, ".project").getAbsolutePath() + ": " + e);
+                    }
+                }
+            }
+        }
+        return projects;
+    }
+
+
+    /**
+     * @return the modification time of the file, -1 if it does not exist; read like the scan does, as
+     *         {@link File#lastModified()} drops the milliseconds on some platforms
+     */
+    static long getLastModified(File file)
+    {
+        try
+        {
+            return Files.getLastModifiedTime(file.toPath()).toMillis();
+        } catch (IOException e)
+        {
+            return -1;
+        }
+    }
+
+
+    /**
+     * counts and records the files of a directory, forking a task for every subdirectory
+     */
+    private static class DirectoryScan extends RecursiveTask<DirectoryScan.Result> {
+
+        private static final long serialVersionUID = 1L;
+
+        static class Result {
+            int fileCount;
+            int javaFileCount;
+            Map<String, Long> lastModified = new HashMap<String, Long>();
+            Map<String, Long> directoryLastModified = new HashMap<String, Long>();
+        }
+
+        private final Path directory;
+        private final String relativePath;
+
+        DirectoryScan(Path directory, String relativePath)
+        {
+            this.directory = directory;
+            this.relativePath = relativePath;
+        }
+
+        @Override
+        protected Result compute()
+        {
+            Result result = new Result();
+            List<DirectoryScan> subdirectories = new ArrayList<DirectoryScan>();
+            // / read before the directory is listed, so that a change while it is listed is noticed later
+            result.directoryLastModified.put(relativePath, getLastModified(directory.toFile()));
+            try
+            {
+                DirectoryStream<Path> entries = Files.newDirectoryStream(directory);
+                try
+                {
+                    for (Path entry : entries)
+                    {
+                        String name = entry.getFileName().toString();
+                        BasicFileAttributes attributes;
+                        try
+                        {
+                            // / like File.isDirectory(), symbolic links are followed
+                            attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+                        } catch (IOException e)
+                        {
+                            // / e.g. a dangling link, which File.listFiles() lists as a file
+                            result.fileCount++;
+                            continue;
+                        }
+                        if (attributes.isDirectory())
+                        {
+                            DirectoryScan subdirectory = new DirectoryScan(entry, relativePath + name + "/");
+                            subdirectory.fork();
+                            subdirectories.add(subdirectory);
+                        }
+                        else
+                        {
+                            result.fileCount++;
+                            if (name.endsWith(".java") || name.endsWith(".class"))
+                            {
+                                result.javaFileCount++;
+                            }
+                            result.lastModified.put(relativePath + name, attributes.lastModifiedTime().toMillis());
+                        }
+                    }
+                } finally
+                {
+                    entries.close();
+                }
+            } catch (IOException e)
+            {
+                // / an unreadable directory counts as empty, as with File.listFiles()
+            }
+
+            for (DirectoryScan subdirectory : subdirectories)
+            {
+                Result subResult = subdirectory.join();
+                result.fileCount += subResult.fileCount;
+                result.javaFileCount += subResult.javaFileCount;
+                result.lastModified.putAll(subResult.lastModified);
+                result.directoryLastModified.putAll(subResult.directoryLastModified);
+            }
+            return result;
+        }
+    }
+
+}
@@ -0,0 +1,207 @@
+package ch.sbb.maven.plugins.iib.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringTokenizer;
+
+import org.codehaus.plexus.util.SelectorUtils;
+
+/**
+ * Removes, renames and adds entries of a zip archive in one pass. The entries kept or renamed are copied as they are
+ * stored (see {@link RawZipOutputStream#copyEntry(RawZipFile, RawZipFile.Entry)}), with their timestamps, attributes
+ * and compressed data; only added entries are deflated. The kept entries are read from the file at their offsets, so
+ * that the archive is never held in memory.
+ *
+ * The archive is written to a temporary file next to it, which then replaces it. If nothing is to be changed, the
+ * archive is left as it is.
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+public class ZipEditor {
+
+    private final File zipFile;
+    private final List<String> removePatterns = new ArrayList<String>();
+    private final Map<String, String> renames = new HashMap<String, String>();
+    private final Map<String, byte[]> additions = new LinkedHashMap<String, byte[]>();
+
+
+    /**
+     * @param zipFile the archive to be edited
+     */
+    public ZipEditor(File zipFile)
+    {
+        this.zipFile = zipFile;
+    }
+
+
+    /**
+     * @param patterns Ant-style patterns of the entries to be removed, separated by commas or spaces, e.g.
+     *            "**&#47;*.esql, META-INF/"
+     * @return the editor, for chaining
+     */
+    public ZipEditor remove(String patterns)
+    {
+        StringTokenizer tokenizer = new StringTokenizer(patterns, ", ", false);
+        while (tokenizer.hasMoreTokens())
+        {
+            String pattern = tokenizer.nextToken().trim();
+            // / as with Ant, a pattern ending with a slash matches everything below
+            if (pattern.endsWith("/"))
+            {
+                pattern += "**";
+            }
+            removePatterns.add(pattern);
+        }
+        return this;
+    }
+
+
+    /**
+     * @param name the name of the entry to be renamed
+     * @param newName its new name
+     * @return the editor, for chaining
+     */
+    public ZipEditor rename(String name, String newName)
+    {
+        renames.put(name, newName);
+        return this;
+    }
+
+
+    /**
+     * adds an entry, replacing the entry of the same name if there is one
+     *
+     * @param name the entry name
+     * @param content the uncompressed content
+     * @return the editor, for chaining
+     */
+    public ZipEditor add(String name, byte[] content)
+    {
+        additions.put(name, content);
+        return this;
+    }
+
+
+    /**
+     * writes the edited archive
+     *
+     * @return false if nothing had to be changed, and the archive was left as it is
+     * @throws IOException if the archive cannot be read or written
+     */
+    public boolean apply() throws IOException
+    {
+        File tempFile = new File(zipFile.getAbsoluteFile().getParentFile(), zipFile.getName() + ".tmp");
+        RawZipFile source = new RawZipFile(zipFile);
+        try
+        {
+            List<RawZipFile.Entry> kept = new ArrayList<RawZipFile.Entry>();
+            boolean changed = !additions.isEmpty();
+            for (RawZipFile.Entry entry : source.getEntries())
+            {
+                String newName = renames.containsKey(entry.getName()) ? renames.get(entry.getName()) : entry.getName();
+                if (isRemoved(entry.getName()) || additions.containsKey(newName))
+                {
+                    changed = true;
+                    continue;
+                }
+                if (!newName.equals(entry.getName()))
+                {
+                    entry = renamed(entry, newName);
+                    changed = true;
+                }
+                kept.add(entry);
+            }
+            if (!changed)
+            {
+                return false;
+            }
+
+            RawZipOutputStream out = new RawZipOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 65536));
+            boolean written = false;
+            try
+            {
+                for (RawZipFile.Entry entry : kept)
+                {
+                    out.copyEntry(source, entry);
+                }
+                long now = System.currentTimeMillis();
+                for (Map.Entry<String, byte[]> addition : additions.entrySet())
+                {
+                    out.putEntry(addition.getKey(), now, addition.getValue());
+                }
+                out.close();
+                written = true;
+            } finally
+            {
+                if (!written)
+                {
+                    try
+                    {
+                        out.close();
+                    } catch (IOException e)
+                    {
+                        // / the archive is incomplete anyway
+                    }
+                    tempFile.delete();
+                }
+            }
+        } finally
+        {
+            // / closed before the archive is replaced, which Windows does not allow while it is open
+            source.close();
+        }
+
+        try
+        {
+            // / replaces the archive in one step: it is never missing or incomplete
+            DirectoriesUtil.move(tempFile, zipFile);
+        } catch (IOException e)
+        {
+            tempFile.delete();
+            throw new IOException("unable to write " + zipFile.getAbsolutePath() + ": " + e, e);
+        }
+        return true;
+    }
+
+
+    private boolean isRemoved(String name)
+    {
+        // / SelectorUtils splits paths at the platform's separator
+        String path = name.replace('/', File.separatorChar);
+        for (String pattern : removePatterns)
+        {
+            if (SelectorUtils.matchPath(pattern.replace('/', File.separatorChar).replace('\\', File.separatorChar), path, true))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    private static RawZipFile.Entry renamed(RawZipFile.Entry entry, String newName)
+    {
+        RawZipFile.Entry copy = entry.clone();
+        copy.name = newName;
+        try
+        {
+            copy.nameBytes = newName.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e)
+        {
+            // / UTF-8 is always available
+            throw new IllegalStateException(e);
+        }
+        copy.flags |= RawZipFile.FLAG_UTF8;
+        return copy;
+    }
+
+}
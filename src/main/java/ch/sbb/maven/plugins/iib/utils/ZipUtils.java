@@ -3,11 +3,6 @@ package ch.sbb.maven.plugins.iib.utils;
 import java.io.File;
 import java.io.IOException;
 
-import org.apache.tools.ant.Project;
-import org.apache.tools.ant.Target;
-import org.apache.tools.ant.taskdefs.Zip;
-import org.apache.tools.ant.types.ZipFileSet;
-
 public final class ZipUtils {
 
     /**
@@ -22,27 +17,13 @@ public final class ZipUtils {
      * Removes files from a given zip file.
      * 
      * @param zipFile name of the zip file to be modified
-     * @param removePattern pattern of the files to be removed
+     * @param removePattern Ant-style patterns of the files to be removed, separated by commas or spaces
      * 
      * @throws IOException
      */
     public static void removeFiles(File zipFile, String removePattern) throws IOException {
-        String zipFileName = zipFile.getName();
-        File tmpFile = new File(zipFile.getCanonicalPath() + ".tmp");
-        Project antProject = new Project();
-        Target antTarget = new Target();
-        antProject.addTarget("zip", antTarget);
-        Zip zipTask = new Zip();
-        zipTask.setProject(antProject);
-        zipTask.setDestFile(tmpFile);
-        ZipFileSet set = new ZipFileSet();
-        set.setSrc(zipFile);
-        set.setExcludes(removePattern);
-        zipTask.addZipfileset(set);
-        antTarget.addTask(zipTask);
-        antTarget.execute();
-        zipFile.delete();
-        tmpFile.renameTo(new File(tmpFile.getParentFile(), zipFileName));
+        // / the remaining entries are copied without being inflated and deflated again
+        new ZipEditor(zipFile).remove(removePattern).apply();
     }
 
 }
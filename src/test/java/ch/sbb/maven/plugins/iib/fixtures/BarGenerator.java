@@ -0,0 +1,276 @@
+package ch.sbb.maven.plugins.iib.fixtures;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import ch.sbb.maven.plugins.iib.utils.ConfigurableProperties;
+
+/**
+ * Writes bar files laid out as mqsicreatebar does, without the IBM tooling: an .appzip per application, each with its
+ * compiled message flows (.cmf), its META-INF/broker.xml and a nested copy of every library, plus the libraries
+ * (.libzip) at the top level.
+ *
+ * Every message flow has the flow properties mqsicreatebar writes and the given number of node properties, so that a
+ * bar of 100 applications with 20 flows of 10 node properties has 100 * 20 * 19 = 38000 overridable properties (and as
+ * many again for the libraries). The content is generated from a seed, so that the same settings always write the same
+ * bar file.
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+public class BarGenerator {
+
+    // / the configurable properties mqsicreatebar writes for every message flow
+    private static final String[] FLOW_PROPERTIES = { "additionalInstances", "commitCount", "commitInterval", "coordinatedTransaction",
+            "consumerPolicySet", "providerPolicySet", "securityProfileName", "monitoringProfile", "startMode" };
+
+    private int applications = 5;
+    private int libraries = 3;
+    private int flows = 10;
+    private int nodeProperties = 5;
+    private int flowSize = 20000;
+    private long seed = 42;
+
+
+    /**
+     * @param factor the factor the number of applications and libraries is multiplied with
+     * @return the generator, for chaining
+     */
+    public BarGenerator scale(int factor)
+    {
+        applications *= factor;
+        libraries *= factor;
+        return this;
+    }
+
+
+    /**
+     * @param applications the number of applications (.appzip); 5 by default
+     */
+    public BarGenerator setApplications(int applications)
+    {
+        this.applications = applications;
+        return this;
+    }
+
+
+    /**
+     * @param libraries the number of libraries (.libzip), nested in every application; 3 by default
+     */
+    public BarGenerator setLibraries(int libraries)
+    {
+        this.libraries = libraries;
+        return this;
+    }
+
+
+    /**
+     * @param flows the number of message flows of every application and library; 10 by default
+     */
+    public BarGenerator setFlows(int flows)
+    {
+        this.flows = flows;
+        return this;
+    }
+
+
+    /**
+     * @param nodeProperties the number of node properties of every message flow, on top of the flow properties; 5 by
+     *            default
+     */
+    public BarGenerator setNodeProperties(int nodeProperties)
+    {
+        this.nodeProperties = nodeProperties;
+        return this;
+    }
+
+
+    /**
+     * @param flowSize the size in bytes of every compiled message flow; 20000 by default
+     */
+    public BarGenerator setFlowSize(int flowSize)
+    {
+        this.flowSize = flowSize;
+        return this;
+    }
+
+
+    /**
+     * @param seed the seed the content is generated from
+     */
+    public BarGenerator setSeed(long seed)
+    {
+        this.seed = seed;
+        return this;
+    }
+
+
+    /**
+     * @param barFile the bar file written
+     * @throws IOException if the bar file could not be written
+     */
+    public void generate(File barFile) throws IOException
+    {
+        Random random = new Random(seed);
+        List<byte[]> libzips = new ArrayList<byte[]>();
+        for (int library = 0; library < libraries; library++)
+        {
+            libzips.add(createArchive(getLibraryName(library), "Library", new ArrayList<byte[]>(), random));
+        }
+
+        File parent = barFile.getAbsoluteFile().getParentFile();
+        parent.mkdirs();
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(barFile));
+        try
+        {
+            for (int application = 0; application < applications; application++)
+            {
+                putEntry(out, getApplicationName(application) + ".appzip", createArchive(getApplicationName(application), "Application", libzips, random));
+            }
+            for (int library = 0; library < libraries; library++)
+            {
+                putEntry(out, getLibraryName(library) + ".libzip", libzips.get(library));
+            }
+            putEntry(out, "META-INF/manifest.mf", "Manifest-Version: 1.0\n".getBytes("UTF-8"));
+        } finally
+        {
+            out.close();
+        }
+    }
+
+
+    /**
+     * @return the names of the flow and node properties of the bar file, as listed by ReadBar (the libraries' are
+     *         listed once, although every application has a copy)
+     */
+    public List<String> getPropertyNames()
+    {
+        List<String> names = new ArrayList<String>();
+        for (int application = 0; application < applications; application++)
+        {
+            addPropertyNames(getApplicationName(application), names);
+        }
+        for (int library = 0; library < libraries; library++)
+        {
+            addPropertyNames(getLibraryName(library), names);
+        }
+        return names;
+    }
+
+
+    /**
+     * writes the properties file of an environment that overrides every flow and node property of the bar file
+     *
+     * @param propertiesFile the properties file written
+     * @throws IOException if the file could not be written
+     */
+    public void writeOverrides(File propertiesFile) throws IOException
+    {
+        ConfigurableProperties properties = new ConfigurableProperties();
+        int i = 0;
+        for (String name : getPropertyNames())
+        {
+            properties.put(name, "value" + i++);
+        }
+        properties.save(propertiesFile);
+    }
+
+
+    /**
+     * @return the name of the application of the given index, e.g. Application0
+     */
+    public static String getApplicationName(int application)
+    {
+        return "Application" + application;
+    }
+
+
+    /**
+     * @return the name of the library of the given index, e.g. Library0
+     */
+    public static String getLibraryName(int library)
+    {
+        return "Library" + library;
+    }
+
+
+    private byte[] createArchive(String name, String type, List<byte[]> libzips, Random random) throws IOException
+    {
+        StringBuilder descriptor = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<Broker><Compiled").append(type)
+                .append("><ConfigurableProperty uri=\"startMode\"/><ConfigurableProperty uri=\"javaIsolation\"/></Compiled").append(type).append(">");
+        for (int flow = 0; flow < flows; flow++)
+        {
+            String flowName = getFlowName(name, flow);
+            descriptor.append("<CompiledMessageFlow name=\"").append(flowName).append("\">");
+            for (String property : FLOW_PROPERTIES)
+            {
+                descriptor.append("<ConfigurableProperty uri=\"").append(flowName).append('#').append(property).append("\"/>");
+            }
+            for (int property = 0; property < nodeProperties; property++)
+            {
+                descriptor.append("<ConfigurableProperty override=\"DEFAULT.QUEUE\" uri=\"").append(getNodePropertyName(flowName, property)).append("\"/>");
+            }
+            descriptor.append("</CompiledMessageFlow>");
+        }
+        descriptor.append("</Broker>\n");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ZipOutputStream out = new ZipOutputStream(bytes);
+        putEntry(out, "META-INF/broker.xml", descriptor.toString().getBytes("UTF-8"));
+        for (int flow = 0; flow < flows; flow++)
+        {
+            putEntry(out, getFlowName(name, flow) + ".cmf", Content.generate(flowSize, random));
+        }
+        for (int library = 0; library < libzips.size(); library++)
+        {
+            putEntry(out, getLibraryName(library) + ".libzip", libzips.get(library));
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+
+
+    private void addPropertyNames(String name, List<String> names)
+    {
+        for (int flow = 0; flow < flows; flow++)
+        {
+            String flowName = getFlowName(name, flow);
+            for (String property : FLOW_PROPERTIES)
+            {
+                names.add(flowName + "#" + property);
+            }
+            for (int property = 0; property < nodeProperties; property++)
+            {
+                names.add(getNodePropertyName(flowName, property));
+            }
+        }
+    }
+
+
+    private static String getFlowName(String name, int flow)
+    {
+        return name.toLowerCase() + ".flows.Flow" + flow;
+    }
+
+
+    private static String getNodePropertyName(String flowName, int property)
+    {
+        return flowName + "#Node" + property + ".queueName";
+    }
+
+
+    private static void putEntry(ZipOutputStream out, String name, byte[] content) throws IOException
+    {
+        out.putNextEntry(new ZipEntry(name));
+        out.write(content);
+        out.closeEntry();
+    }
+
+}
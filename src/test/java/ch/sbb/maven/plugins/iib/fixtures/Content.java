@@ -0,0 +1,40 @@
+package ch.sbb.maven.plugins.iib.fixtures;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Random;
+
+/**
+ * text-like file content, which compresses about as well as message flows, ESQL and Java sources do
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+final class Content {
+
+    private static final String[] WORDS = { "<nodes", "xmi:type=", "ComIbmMQInput.msgnode", "SET", "OutputRoot", "InputRoot.XMLNSC", "DECLARE",
+            "CHARACTER", "public", "void", "return", "\n", "  " };
+
+    private Content()
+    {
+    }
+
+
+    static byte[] generate(int size, Random random)
+    {
+        StringBuilder content = new StringBuilder(size + 32);
+        while (content.length() < size)
+        {
+            content.append(WORDS[random.nextInt(WORDS.length)]).append(' ').append(random.nextInt(1000)).append(' ');
+        }
+        content.setLength(size);
+        try
+        {
+            return content.toString().getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e)
+        {
+            // / UTF-8 is always available
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
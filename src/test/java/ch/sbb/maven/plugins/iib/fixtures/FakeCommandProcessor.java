@@ -0,0 +1,49 @@
+package ch.sbb.maven.plugins.iib.fixtures;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stands in for the IBM CommandProcessorPublicWrapper in the packagebar worker JVM (see
+ * ch.sbb.maven.plugins.iib.utils.PackageBarWorker): packages like the fake mqsipackagebar (see {@link FakeMqsi}). The
+ * FAKE_MQSI_ settings are read from the environment and from the system properties of the JVM, e.g.
+ * -DFAKE_MQSI_EXIT_CODE=3. A failing command throws an IllegalStateException.
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+public class FakeCommandProcessor {
+
+    private final String[] args;
+
+
+    /**
+     * @param args the mqsipackagebar arguments
+     */
+    public FakeCommandProcessor(String[] args)
+    {
+        this.args = args;
+    }
+
+
+    public void process() throws Exception
+    {
+        Map<String, String> environment = new HashMap<String, String>(System.getenv());
+        for (String name : System.getProperties().stringPropertyNames())
+        {
+            if (name.startsWith(FakeMqsi.PREFIX))
+            {
+                environment.put(name, System.getProperty(name));
+            }
+        }
+        // / tells the JVMs apart
+        System.out.println("fake packagebar in " + ManagementFactory.getRuntimeMXBean().getName());
+        int exitCode = new FakeMqsi("mqsipackagebar", args, environment).run(System.out);
+        if (exitCode != 0)
+        {
+            throw new IllegalStateException("the fake mqsipackagebar failed with exit code " + exitCode);
+        }
+    }
+
+}
@@ -0,0 +1,396 @@
+package ch.sbb.maven.plugins.iib.fixtures;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Stands in for mqsicreatebar, mqsipackagebar and mqsideploy, so that MqsiCommandLauncher and the mojos launching mqsi
+ * commands can be run without an IIB installation. It is launched by the shell scripts in
+ * src/test/resources/fake-mqsi: use 'sh,/path/to/fake-mqsi/mqsi' as the mqsiPrefixCommands. That script sets up the
+ * environment as mqsiprofile does (so that reuseMqsiEnvironment finds the commands in fake-mqsi/bin) and runs the command
+ * that follows.
+ *
+ * The commands are configured with environment variables, e.g. in the mqsiPrefixCommands
+ * 'env,FAKE_MQSI_DURATION_MS=5000,sh,/path/to/fake-mqsi/mqsi'. Every variable FAKE_MQSI_&lt;NAME&gt; can be set for a
+ * single command as FAKE_MQSI_&lt;COMMAND&gt;_&lt;NAME&gt;, e.g. FAKE_MQSI_MQSIDEPLOY_EXIT_CODE.
+ * <ul>
+ * <li>DURATION_MS - the time the command takes, spread over its output lines; 0 by default</li>
+ * <li>LINES - the number of progress lines written; 20 by default</li>
+ * <li>LINE_LENGTH - the length of the progress lines; 80 by default</li>
+ * <li>EXIT_CODE - the exit code; 0 by default. A failing command writes BIP2087E unless BIP names an error.</li>
+ * <li>BIP - comma-separated BIP codes written in addition to the usual ones, e.g. BIP2087E,BIP4041W</li>
+ * <li>BIP_AT - the number of progress lines after which the BIP messages are written; after the last by default</li>
+ * <li>LOG - a file every command appends a line to: its name, start and end time, exit code and arguments</li>
+ * <li>CLASSPATH and JAVA - the classpath of this class (the test classes by default) and the java executable, used by
+ * the scripts only</li>
+ * </ul>
+ * A successful mqsicreatebar or mqsipackagebar writes a bar file with an application for every -a/-k and a library for
+ * every -l/-y argument; a trace file (-v) is written by every command.
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+public class FakeMqsi {
+
+    static final String PREFIX = "FAKE_MQSI_";
+
+    private final String command;
+    private final String[] args;
+    private final Map<String, String> environment;
+
+
+    /**
+     * @param command the mqsi command simulated
+     * @param args its arguments
+     * @param environment the environment holding the FAKE_MQSI_ settings
+     */
+    public FakeMqsi(String command, String[] args, Map<String, String> environment)
+    {
+        this.command = command;
+        this.args = args;
+        this.environment = environment;
+    }
+
+
+    public static void main(String[] args)
+    {
+        if (args.length == 0)
+        {
+            System.err.println("usage: FakeMqsi mqsicreatebar|mqsipackagebar|mqsideploy [arguments]");
+            System.exit(2);
+        }
+        int exitCode;
+        try
+        {
+            exitCode = new FakeMqsi(args[0], Arrays.copyOfRange(args, 1, args.length), System.getenv()).run(System.out);
+        } catch (Exception e)
+        {
+            e.printStackTrace();
+            exitCode = 99;
+        }
+        System.out.flush();
+        System.exit(exitCode);
+    }
+
+
+    /**
+     * writes the output of the command and its files
+     *
+     * @param out the stream the output is written to
+     * @return the exit code
+     * @throws IOException if a file could not be written
+     * @throws InterruptedException if interrupted while simulating the duration
+     */
+    public int run(PrintStream out) throws IOException, InterruptedException
+    {
+        long startTime = System.currentTimeMillis();
+        long duration = Long.parseLong(getSetting("DURATION_MS", "0"));
+        int lines = Integer.parseInt(getSetting("LINES", "20"));
+        int lineLength = Integer.parseInt(getSetting("LINE_LENGTH", "80"));
+        int exitCode = Integer.parseInt(getSetting("EXIT_CODE", "0"));
+        int bipAt = Integer.parseInt(getSetting("BIP_AT", String.valueOf(lines)));
+        List<String> bipCodes = new ArrayList<String>();
+        for (String code : getSetting("BIP", "").split(","))
+        {
+            if (code.trim().length() > 0)
+            {
+                bipCodes.add(code.trim().toUpperCase());
+            }
+        }
+
+        Map<String, List<String>> options = parseOptions();
+        out.println(getStartMessage(options));
+        for (int line = 0; line <= lines; line++)
+        {
+            if (line == bipAt)
+            {
+                for (String code : bipCodes)
+                {
+                    writeMessage(out, code);
+                }
+            }
+            if (line < lines)
+            {
+                out.println(getProgressLine(line, lines, lineLength));
+            }
+            // / the lines are spread over the duration, rather than written at once after it
+            if (duration > 0)
+            {
+                out.flush();
+                long sleep = startTime + duration * (line + 1) / (lines + 1) - System.currentTimeMillis();
+                if (sleep > 0)
+                {
+                    Thread.sleep(sleep);
+                }
+            }
+        }
+
+        if (exitCode == 0)
+        {
+            writeBar(options);
+            if (command.equals("mqsideploy"))
+            {
+                out.println("BIP1092I: The integration node successfully processed the deployment request.");
+            }
+            out.println("BIP8071I: Successful command completion.");
+        }
+        else if (!containsError(bipCodes))
+        {
+            writeMessage(out, "BIP2087E");
+        }
+        out.flush();
+
+        writeTrace(options);
+        log(startTime, exitCode);
+        return exitCode;
+    }
+
+
+    /**
+     * @return the value of FAKE_MQSI_&lt;COMMAND&gt;_&lt;name&gt;, FAKE_MQSI_&lt;name&gt; or the default value
+     */
+    String getSetting(String name, String defaultValue)
+    {
+        String value = environment.get(PREFIX + command.toUpperCase() + "_" + name);
+        if (value == null)
+        {
+            value = environment.get(PREFIX + name);
+        }
+        return value == null || value.trim().length() == 0 ? defaultValue : value.trim();
+    }
+
+
+    /**
+     * @return the values of every option (-a, -b...), in the order given
+     */
+    private Map<String, List<String>> parseOptions()
+    {
+        Map<String, List<String>> options = new LinkedHashMap<String, List<String>>();
+        List<String> values = null;
+        for (String arg : args)
+        {
+            if (arg.startsWith("-"))
+            {
+                values = options.get(arg);
+                if (values == null)
+                {
+                    values = new ArrayList<String>();
+                    options.put(arg, values);
+                }
+            }
+            else if (values != null)
+            {
+                values.add(arg);
+            }
+        }
+        return options;
+    }
+
+
+    private static String getOption(Map<String, List<String>> options, String name)
+    {
+        List<String> values = options.get(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+
+    private static List<String> getOptions(Map<String, List<String>> options, String... names)
+    {
+        List<String> values = new ArrayList<String>();
+        for (String name : names)
+        {
+            if (options.containsKey(name))
+            {
+                values.addAll(options.get(name));
+            }
+        }
+        return values;
+    }
+
+
+    private String getStartMessage(Map<String, List<String>> options)
+    {
+        if (command.equals("mqsideploy"))
+        {
+            return "BIP1039I: Deploying BAR file '" + getOption(options, "-a") + "' to integration node '" + getOption(options, "-n") + "' (integration server '"
+                    + getOption(options, "-e") + "') ...";
+        }
+        if (command.equals("mqsicreatebar") && options.containsKey("-compileOnly"))
+        {
+            return "Building the workspace " + getOption(options, "-data");
+        }
+        return "Creating the bar file " + getBarFile(options);
+    }
+
+
+    private String getProgressLine(int line, int lines, int lineLength)
+    {
+        StringBuilder progress = new StringBuilder(command.equals("mqsideploy") ? "Deploying " : "Processing ");
+        progress.append(100 * (line + 1) / lines).append("% file").append(line);
+        for (int i = 0; progress.length() < lineLength; i++)
+        {
+            progress.append(i % 10 == 0 ? '/' : (char) ('a' + i % 26));
+        }
+        return progress.toString();
+    }
+
+
+    private void writeMessage(PrintStream out, String code)
+    {
+        if (code.equals("BIP2087E"))
+        {
+            out.println("BIP2087E: Integration node 'FAKE' was unable to process the internal configuration message.");
+            out.println("The entire internal configuration message failed to be processed successfully.");
+            out.println("Use the messages following this message to determine the reasons for the failure.");
+            out.println();
+        }
+        else if (code.endsWith("E") || code.endsWith("S"))
+        {
+            out.println(code + ": The fake " + command + " failed as configured.");
+            out.println("No user action required.");
+            out.println();
+        }
+        else
+        {
+            out.println(code + ": A message of the fake " + command + ".");
+        }
+    }
+
+
+    private static boolean containsError(List<String> bipCodes)
+    {
+        for (String code : bipCodes)
+        {
+            if (code.endsWith("E") || code.endsWith("S"))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    private String getBarFile(Map<String, List<String>> options)
+    {
+        return getOption(options, command.equals("mqsipackagebar") ? "-a" : "-b");
+    }
+
+
+    private void writeBar(Map<String, List<String>> options) throws IOException
+    {
+        String barFile = getBarFile(options);
+        if (command.equals("mqsideploy") || barFile == null)
+        {
+            return;
+        }
+        List<String> applications = getOptions(options, "-k");
+        if (command.equals("mqsicreatebar"))
+        {
+            applications.addAll(getOptions(options, "-a"));
+        }
+        List<String> libraries = getOptions(options, "-l", "-y");
+
+        File file = new File(barFile).getAbsoluteFile();
+        file.getParentFile().mkdirs();
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+        try
+        {
+            for (String application : applications)
+            {
+                putEntry(out, application + ".appzip", createArchive("Application"));
+            }
+            for (String library : libraries)
+            {
+                putEntry(out, library + ".libzip", createArchive("Library"));
+            }
+            putEntry(out, "META-INF/manifest.mf", "Manifest-Version: 1.0\n".getBytes("UTF-8"));
+        } finally
+        {
+            out.close();
+        }
+    }
+
+
+    private static byte[] createArchive(String type) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ZipOutputStream out = new ZipOutputStream(bytes);
+        putEntry(out, "META-INF/broker.xml", ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<Broker><Compiled" + type + "/></Broker>\n").getBytes("UTF-8"));
+        out.close();
+        return bytes.toByteArray();
+    }
+
+
+    private static void putEntry(ZipOutputStream out, String name, byte[] content) throws IOException
+    {
+        out.putNextEntry(new ZipEntry(name));
+        out.write(content);
+        out.closeEntry();
+    }
+
+
+    private void writeTrace(Map<String, List<String>> options) throws IOException
+    {
+        String traceFile = getOption(options, "-v");
+        if (traceFile != null)
+        {
+            File file = new File(traceFile).getAbsoluteFile();
+            file.getParentFile().mkdirs();
+            PrintStream out = new PrintStream(new FileOutputStream(file), true, "UTF-8");
+            out.println("fake " + command + " " + Arrays.asList(args));
+            out.close();
+        }
+    }
+
+
+    /**
+     * appends this invocation to the LOG file, locked as the commands may run in parallel; the lock of a file is held by
+     * the JVM, so the threads of a JVM (see FakeCommandProcessor) take turns first
+     */
+    private void log(long startTime, int exitCode) throws IOException
+    {
+        String logFile = getSetting("LOG", null);
+        if (logFile == null)
+        {
+            return;
+        }
+        StringBuilder line = new StringBuilder(command).append('\t').append(startTime).append('\t').append(System.currentTimeMillis()).append('\t')
+                .append(exitCode);
+        for (String arg : args)
+        {
+            line.append('\t').append(arg);
+        }
+        line.append('\n');
+
+        synchronized (FakeMqsi.class)
+        {
+            FileOutputStream out = new FileOutputStream(logFile, true);
+            try
+            {
+                FileLock lock = out.getChannel().lock();
+                try
+                {
+                    out.write(line.toString().getBytes("UTF-8"));
+                } finally
+                {
+                    lock.release();
+                }
+            } finally
+            {
+                out.close();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,121 @@
+package ch.sbb.maven.plugins.iib.fixtures;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.MavenProject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.sbb.maven.plugins.iib.utils.BarOverrideResult;
+import ch.sbb.maven.plugins.iib.utils.ConfigurableProperties;
+import ch.sbb.maven.plugins.iib.utils.DependenciesManager;
+import ch.sbb.maven.plugins.iib.utils.NativeBarOverride;
+import ch.sbb.maven.plugins.iib.utils.ProjectDependencyGraph;
+import ch.sbb.maven.plugins.iib.utils.ReadBar;
+
+/**
+ *
+ *
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+public class GeneratorsTest {
+
+    private File directory;
+
+    @Before
+    public void createDirectory() throws IOException
+    {
+        directory = File.createTempFile("generators", "");
+        directory.delete();
+        directory.mkdirs();
+    }
+
+    @After
+    public void deleteDirectory() throws IOException
+    {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void barPropertiesAreReadAndOverridden() throws IOException
+    {
+        BarGenerator generator = new BarGenerator().setApplications(3).setLibraries(2).setFlows(4).setFlowSize(1000);
+        File barFile = new File(directory, "generated.bar");
+        generator.generate(barFile);
+
+        List<String> expected = new ArrayList<String>(generator.getPropertyNames());
+        Assert.assertEquals((3 + 2) * 4 * 14, expected.size());
+        List<String> actual = new ArrayList<String>();
+        for (Object name : ReadBar.getOverridableProperties(barFile.getAbsolutePath()).keySet())
+        {
+            if (((String) name).contains("#"))
+            {
+                actual.add((String) name);
+            }
+        }
+        Collections.sort(expected);
+        Collections.sort(actual);
+        Assert.assertEquals(expected, actual);
+
+        File propertiesFile = new File(directory, "generated-test.properties");
+        generator.writeOverrides(propertiesFile);
+        File targetFile = new File(directory, "generated-test.bar");
+        BarOverrideResult result = NativeBarOverride.applyBarOverride(barFile, propertiesFile.getAbsolutePath(), targetFile.getAbsolutePath());
+        Assert.assertTrue(result.getMessages().toString(), result.isSuccess());
+
+        ConfigurableProperties overridden = ReadBar.getOverridableProperties(targetFile.getAbsolutePath());
+        Assert.assertEquals("value0", overridden.get(generator.getPropertyNames().get(0)));
+    }
+
+    @Test
+    public void sameSeedWritesSameBar() throws IOException
+    {
+        File first = new File(directory, "first.bar");
+        File second = new File(directory, "second.bar");
+        new BarGenerator().setFlowSize(1000).generate(first);
+        new BarGenerator().setFlowSize(1000).generate(second);
+        Assert.assertTrue(FileUtils.contentEquals(first, second));
+    }
+
+    @Test
+    public void workspaceDependenciesAreResolved() throws IOException, MojoFailureException
+    {
+        WorkspaceGenerator generator = new WorkspaceGenerator().setFlows(2).setJavaClasses(2).setFileSize(100).setPomFiles(true).scale(2);
+        List<String> projects = generator.generate(directory);
+        Assert.assertEquals(2 * (10 + 20 + 5), projects.size());
+
+        MavenProject project = new MavenProject();
+        project.setArtifactId(WorkspaceGenerator.getApplicationName(0));
+        DependenciesManager dependencies = new DependenciesManager(project, directory, new SystemStreamLog());
+        Assert.assertFalse(dependencies.getDependentLibs().isEmpty());
+        Assert.assertTrue(dependencies.getReferencedProjects().contains(WorkspaceGenerator.getJavaProjectName(0)));
+
+        // / every project is built after the projects it references
+        ProjectDependencyGraph graph = new ProjectDependencyGraph(directory, new SystemStreamLog());
+        for (String name : projects)
+        {
+            graph.getReferencedProjects(name);
+        }
+        List<String> buildOrder = graph.getBuildOrder();
+        Assert.assertEquals(projects.size(), buildOrder.size());
+        for (String name : projects)
+        {
+            for (String reference : graph.getProject(name).getReferences())
+            {
+                Assert.assertTrue(name + " before " + reference, buildOrder.indexOf(reference) < buildOrder.indexOf(name));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,280 @@
+package ch.sbb.maven.plugins.iib.fixtures;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Writes IIB workspaces as the toolkit lays them out, without the IBM tooling:
+ * <ul>
+ * <li>libraries, each referencing some of the libraries before it (so that the references never form a cycle)</li>
+ * <li>applications, each referencing some libraries and a Java project</li>
+ * <li>Java projects, with their sources and classes</li>
+ * </ul>
+ * Applications and libraries have their message flows (.msgflow) and ESQL modules (.esql), and optionally a pom.xml.
+ * The references are chosen from a seed, so that the same settings always write the same workspace.
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+public class WorkspaceGenerator {
+
+    public static final String APPLICATION_NATURE = "com.ibm.etools.msgbroker.tooling.applicationNature";
+    public static final String LIBRARY_NATURE = "com.ibm.etools.msgbroker.tooling.libraryNature";
+    public static final String JAVA_NATURE = "org.eclipse.jdt.core.javanature";
+
+    private int applications = 10;
+    private int libraries = 20;
+    private int javaProjects = 5;
+    private int librariesPerApplication = 3;
+    private int libraryReferences = 2;
+    private int flows = 10;
+    private int javaClasses = 20;
+    private int fileSize = 5000;
+    private boolean pomFiles;
+    private long seed = 42;
+
+
+    /**
+     * @param factor the factor the number of applications, libraries and Java projects is multiplied with
+     * @return the generator, for chaining
+     */
+    public WorkspaceGenerator scale(int factor)
+    {
+        applications *= factor;
+        libraries *= factor;
+        javaProjects *= factor;
+        return this;
+    }
+
+
+    /**
+     * @param applications the number of applications; 10 by default
+     */
+    public WorkspaceGenerator setApplications(int applications)
+    {
+        this.applications = applications;
+        return this;
+    }
+
+
+    /**
+     * @param libraries the number of libraries; 20 by default
+     */
+    public WorkspaceGenerator setLibraries(int libraries)
+    {
+        this.libraries = libraries;
+        return this;
+    }
+
+
+    /**
+     * @param javaProjects the number of Java projects; 5 by default
+     */
+    public WorkspaceGenerator setJavaProjects(int javaProjects)
+    {
+        this.javaProjects = javaProjects;
+        return this;
+    }
+
+
+    /**
+     * @param librariesPerApplication the number of libraries every application references; 3 by default
+     */
+    public WorkspaceGenerator setLibrariesPerApplication(int librariesPerApplication)
+    {
+        this.librariesPerApplication = librariesPerApplication;
+        return this;
+    }
+
+
+    /**
+     * @param libraryReferences the maximum number of libraries a library references; 2 by default
+     */
+    public WorkspaceGenerator setLibraryReferences(int libraryReferences)
+    {
+        this.libraryReferences = libraryReferences;
+        return this;
+    }
+
+
+    /**
+     * @param flows the number of message flows (and ESQL modules) of every application and library; 10 by default
+     */
+    public WorkspaceGenerator setFlows(int flows)
+    {
+        this.flows = flows;
+        return this;
+    }
+
+
+    /**
+     * @param javaClasses the number of classes of every Java project; 20 by default
+     */
+    public WorkspaceGenerator setJavaClasses(int javaClasses)
+    {
+        this.javaClasses = javaClasses;
+        return this;
+    }
+
+
+    /**
+     * @param fileSize the size in bytes of every message flow, ESQL module and Java source; 5000 by default
+     */
+    public WorkspaceGenerator setFileSize(int fileSize)
+    {
+        this.fileSize = fileSize;
+        return this;
+    }
+
+
+    /**
+     * @param pomFiles true to write a pom.xml into every application and library, as PrepareBarBuildWorkspaceMojo
+     *            unpacks them; false by default
+     */
+    public WorkspaceGenerator setPomFiles(boolean pomFiles)
+    {
+        this.pomFiles = pomFiles;
+        return this;
+    }
+
+
+    /**
+     * @param seed the seed the references and content are generated from
+     */
+    public WorkspaceGenerator setSeed(long seed)
+    {
+        this.seed = seed;
+        return this;
+    }
+
+
+    /**
+     * @param workspace the workspace directory, created if necessary
+     * @return the names of the projects written: the libraries, the Java projects and the applications
+     * @throws IOException if a file could not be written
+     */
+    public List<String> generate(File workspace) throws IOException
+    {
+        Random random = new Random(seed);
+        List<String> projects = new ArrayList<String>();
+
+        for (int library = 0; library < libraries; library++)
+        {
+            Set<String> references = new TreeSet<String>();
+            for (int i = 0; i < libraryReferences && library > 0; i++)
+            {
+                references.add(getLibraryName(random.nextInt(library)));
+            }
+            writeFlowProject(new File(workspace, getLibraryName(library)), LIBRARY_NATURE, references, random);
+            projects.add(getLibraryName(library));
+        }
+
+        for (int javaProject = 0; javaProject < javaProjects; javaProject++)
+        {
+            writeJavaProject(new File(workspace, getJavaProjectName(javaProject)), random);
+            projects.add(getJavaProjectName(javaProject));
+        }
+
+        for (int application = 0; application < applications; application++)
+        {
+            Set<String> references = new TreeSet<String>();
+            for (int i = 0; i < librariesPerApplication && libraries > 0; i++)
+            {
+                references.add(getLibraryName(random.nextInt(libraries)));
+            }
+            if (javaProjects > 0)
+            {
+                references.add(getJavaProjectName(application % javaProjects));
+            }
+            writeFlowProject(new File(workspace, getApplicationName(application)), APPLICATION_NATURE, references, random);
+            projects.add(getApplicationName(application));
+        }
+        return projects;
+    }
+
+
+    /**
+     * @return the name of the application of the given index, e.g. Application0
+     */
+    public static String getApplicationName(int application)
+    {
+        return "Application" + application;
+    }
+
+
+    /**
+     * @return the name of the library of the given index, e.g. Library0
+     */
+    public static String getLibraryName(int library)
+    {
+        return "Library" + library;
+    }
+
+
+    /**
+     * @return the name of the Java project of the given index, e.g. JavaProject0
+     */
+    public static String getJavaProjectName(int javaProject)
+    {
+        return "JavaProject" + javaProject;
+    }
+
+
+    private void writeFlowProject(File projectDirectory, String nature, Set<String> references, Random random) throws IOException
+    {
+        String name = projectDirectory.getName();
+        writeProjectFile(projectDirectory, nature, "com.ibm.etools.mft.applib.applibbuilder", references);
+        String folder = name.toLowerCase() + "/flows";
+        for (int flow = 0; flow < flows; flow++)
+        {
+            String flowXml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<ecore:EPackage xmi:version=\"2.0\" nsURI=\"" + folder + "/Flow" + flow
+                    + ".msgflow\">\n<!--\n";
+            FileUtils.writeStringToFile(new File(projectDirectory, folder + "/Flow" + flow + ".msgflow"), flowXml
+                    + new String(Content.generate(fileSize, random), "UTF-8") + "\n-->\n</ecore:EPackage>\n", "UTF-8");
+            FileUtils.writeByteArrayToFile(new File(projectDirectory, folder + "/Flow" + flow + ".esql"), Content.generate(fileSize, random));
+        }
+        if (pomFiles)
+        {
+            FileUtils.writeStringToFile(new File(projectDirectory, "pom.xml"), "<project><modelVersion>4.0.0</modelVersion><groupId>ch.sbb.fixtures</groupId>"
+                    + "<artifactId>" + name + "</artifactId><version>1.0</version><packaging>"
+                    + (nature.equals(APPLICATION_NATURE) ? "iib-bar" : "iib-src") + "</packaging></project>\n", "UTF-8");
+        }
+    }
+
+
+    private void writeJavaProject(File projectDirectory, Random random) throws IOException
+    {
+        writeProjectFile(projectDirectory, JAVA_NATURE, "org.eclipse.jdt.core.javabuilder", new TreeSet<String>());
+        FileUtils.writeStringToFile(new File(projectDirectory, ".classpath"), "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<classpath>\n"
+                + "\t<classpathentry kind=\"src\" path=\"src\"/>\n\t<classpathentry kind=\"con\" path=\"org.eclipse.jdt.launching.JRE_CONTAINER\"/>\n"
+                + "\t<classpathentry kind=\"output\" path=\"bin\"/>\n</classpath>\n", "UTF-8");
+        String packagePath = "ch/sbb/" + projectDirectory.getName().toLowerCase();
+        for (int i = 0; i < javaClasses; i++)
+        {
+            FileUtils.writeByteArrayToFile(new File(projectDirectory, "src/" + packagePath + "/Compute" + i + ".java"), Content.generate(fileSize, random));
+            FileUtils.writeByteArrayToFile(new File(projectDirectory, "bin/" + packagePath + "/Compute" + i + ".class"), Content.generate(fileSize / 2, random));
+        }
+    }
+
+
+    private static void writeProjectFile(File projectDirectory, String nature, String builder, Set<String> references) throws IOException
+    {
+        StringBuilder projects = new StringBuilder();
+        for (String reference : references)
+        {
+            projects.append("\t\t<project>").append(reference).append("</project>\n");
+        }
+        FileUtils.writeStringToFile(new File(projectDirectory, ".project"), "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<projectDescription>\n"
+                + "\t<name>" + projectDirectory.getName() + "</name>\n\t<comment></comment>\n\t<projects>\n" + projects + "\t</projects>\n"
+                + "\t<buildSpec>\n\t\t<buildCommand>\n\t\t\t<name>" + builder + "</name>\n\t\t\t<arguments>\n\t\t\t</arguments>\n\t\t</buildCommand>\n"
+                + "\t</buildSpec>\n\t<natures>\n\t\t<nature>" + nature + "</nature>\n\t</natures>\n</projectDescription>\n", "UTF-8");
+    }
+
+}
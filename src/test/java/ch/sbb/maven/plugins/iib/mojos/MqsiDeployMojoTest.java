@@ -0,0 +1,225 @@
+package ch.sbb.maven.plugins.iib.mojos;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.model.Build;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.project.MavenProject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.sbb.maven.plugins.iib.fixtures.FakeMqsi;
+
+/**
+ * deploys to the fake mqsideploy (see ch.sbb.maven.plugins.iib.fixtures.FakeMqsi), on Linux and other Unix systems
+ * only
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+public class MqsiDeployMojoTest {
+
+    private File directory;
+    private File overridesDir;
+    private File logFile;
+
+    @Before
+    public void createDirectory() throws IOException
+    {
+        Assume.assumeTrue(!System.getProperty("os.name").toLowerCase().contains("win"));
+        directory = File.createTempFile("mqsi-deploy", "");
+        directory.delete();
+        overridesDir = new File(directory, "target/iib-overrides");
+        overridesDir.mkdirs();
+        logFile = new File(directory, "fake-mqsi.log");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException
+    {
+        if (directory != null)
+        {
+            FileUtils.deleteDirectory(directory);
+        }
+    }
+
+    @Test
+    public void deploysUnchangedBarByDefault() throws Exception
+    {
+        addEnvironment("DEV", "broker-a", "bar");
+
+        createMojo().execute();
+        createMojo().execute();
+        Assert.assertEquals(2, getDeployments().size());
+    }
+
+    @Test
+    public void skipsUnchangedDeployments() throws Exception
+    {
+        addEnvironment("DEV", "broker-a", "bar");
+
+        MqsiDeployMojo mojo = createMojo();
+        mojo.skipUnchangedDeployments = true;
+        mojo.execute();
+        mojo.execute();
+        Assert.assertEquals(1, getDeployments().size());
+        // / the skipped environment is listed all the same
+        Assert.assertEquals(new File(overridesDir, "app-1.0-DEV.bar").getAbsolutePath(), loadResults().getProperty("DEV"));
+
+        // / another bar file
+        FileUtils.writeStringToFile(new File(overridesDir, "app-1.0-DEV.bar"), "changed bar");
+        mojo.execute();
+        Assert.assertEquals(2, getDeployments().size());
+
+        // / another broker
+        FileUtils.writeStringToFile(new File(overridesDir, "DEV.broker"), "broker-b");
+        mojo.execute();
+        Assert.assertEquals(3, getDeployments().size());
+
+        mojo.execute();
+        Assert.assertEquals(3, getDeployments().size());
+    }
+
+    @Test
+    public void failedDeploymentIsNotSkipped() throws Exception
+    {
+        addEnvironment("DEV", "broker-a", "bar");
+
+        MqsiDeployMojo mojo = createMojo("FAKE_MQSI_EXIT_CODE=5");
+        mojo.skipUnchangedDeployments = true;
+        try
+        {
+            mojo.execute();
+            Assert.fail();
+        } catch (MojoFailureException e)
+        {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("BIP2087E"));
+        }
+
+        mojo = createMojo();
+        mojo.skipUnchangedDeployments = true;
+        mojo.execute();
+        // / the successful ones only
+        Assert.assertEquals(1, getDeployments().size());
+    }
+
+    @Test
+    public void deploymentsToABrokerDoNotOverlap() throws Exception
+    {
+        addEnvironment("DEV1", "broker-a", "bar");
+        addEnvironment("DEV2", "broker-a", "bar");
+        addEnvironment("TEST", "broker-b", "bar");
+
+        MqsiDeployMojo mojo = createMojo("FAKE_MQSI_DURATION_MS=1000");
+        mojo.maxParallelDeployments = 3;
+        mojo.execute();
+
+        List<String[]> deployments = getDeployments();
+        Assert.assertEquals(3, deployments.size());
+        String[] dev1 = getDeployment(deployments, "DEV1");
+        String[] dev2 = getDeployment(deployments, "DEV2");
+        Assert.assertTrue(Long.parseLong(dev1[2]) <= Long.parseLong(dev2[1]) || Long.parseLong(dev2[2]) <= Long.parseLong(dev1[1]));
+        Assert.assertEquals(3, loadResults().size());
+    }
+
+    private void addEnvironment(String environment, String broker, String bar) throws IOException
+    {
+        FileUtils.writeStringToFile(new File(overridesDir, environment + ".properties"), "");
+        FileUtils.writeStringToFile(new File(overridesDir, environment + ".broker"), broker);
+        FileUtils.writeStringToFile(new File(overridesDir, "app-1.0-" + environment + ".bar"), bar);
+    }
+
+    private MqsiDeployMojo createMojo(String... settings) throws URISyntaxException
+    {
+        MavenProject project = new MavenProject();
+        project.setGroupId("ch.sbb");
+        project.setArtifactId("app");
+        project.setVersion("1.0");
+        Build build = new Build();
+        build.setDirectory(new File(directory, "target").getAbsolutePath());
+        project.setBuild(build);
+
+        MqsiDeployMojo mojo = new MqsiDeployMojo();
+        mojo.project = project;
+        mojo.workspace = new File(directory, "workspace");
+        mojo.mqsiPrefixCommands = getPrefixCommands(settings);
+        mojo.maxParallelDeployments = 1;
+        mojo.deploymentStateFile = new File(directory, "target/iib-deployments.properties");
+        return mojo;
+    }
+
+    /**
+     * @return the mqsideploy invocations logged by the fake: the command, start time, end time, exit code, arguments
+     */
+    private List<String[]> getDeployments() throws IOException
+    {
+        List<String[]> deployments = new ArrayList<String[]>();
+        for (String line : FileUtils.readLines(logFile))
+        {
+            String[] fields = line.split("\t");
+            if (fields[0].equals("mqsideploy") && fields[3].equals("0"))
+            {
+                deployments.add(fields);
+            }
+        }
+        return deployments;
+    }
+
+    private static String[] getDeployment(List<String[]> deployments, String environment)
+    {
+        for (String[] deployment : deployments)
+        {
+            for (String arg : deployment)
+            {
+                if (arg.endsWith("-" + environment + ".bar"))
+                {
+                    return deployment;
+                }
+            }
+        }
+        throw new AssertionError("no deployment of " + environment);
+    }
+
+    private Properties loadResults() throws IOException
+    {
+        Properties results = new Properties();
+        FileInputStream in = new FileInputStream(new File(overridesDir, "deployment.results"));
+        try
+        {
+            results.load(in);
+        } finally
+        {
+            in.close();
+        }
+        return results;
+    }
+
+    /**
+     * @return the mqsiPrefixCommands that run the fake mqsi commands with the given settings
+     */
+    private String getPrefixCommands(String... settings) throws URISyntaxException
+    {
+        File fakeMqsi = new File(getClass().getResource("/fake-mqsi/mqsi").toURI());
+        // / the fake has no dependencies
+        File classes = new File(FakeMqsi.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        StringBuilder prefixCommands = new StringBuilder("env,FAKE_MQSI_CLASSPATH=").append(classes.getPath());
+        prefixCommands.append(",FAKE_MQSI_JAVA=").append(new File(System.getProperty("java.home"), "bin/java").getPath());
+        prefixCommands.append(",FAKE_MQSI_LOG=").append(logFile.getPath());
+        for (String setting : settings)
+        {
+            prefixCommands.append(',').append(setting);
+        }
+        return prefixCommands.append(",sh,").append(fakeMqsi.getPath()).toString();
+    }
+
+}
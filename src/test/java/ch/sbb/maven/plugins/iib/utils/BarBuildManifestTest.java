@@ -0,0 +1,97 @@
+package ch.sbb.maven.plugins.iib.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ *
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+public class BarBuildManifestTest {
+
+    private File workspace;
+    private File barFile;
+    private File manifestFile;
+    private List<String> projects = Arrays.asList("App", "JavaProject");
+    private List<String> params = Arrays.asList("-k", "App");
+
+    @Before
+    public void createWorkspace() throws IOException
+    {
+        workspace = File.createTempFile("workspace", "");
+        workspace.delete();
+        FileUtils.writeStringToFile(new File(workspace, "App/.project"), "<projectDescription/>");
+        FileUtils.writeStringToFile(new File(workspace, "App/Flow.msgflow"), "flow");
+        FileUtils.writeStringToFile(new File(workspace, "JavaProject/src/Compute.java"), "class Compute {}");
+
+        barFile = new File(workspace, "App/target/App.bar");
+        FileUtils.writeStringToFile(barFile, "bar");
+        manifestFile = BarBuildManifest.getManifestFile(barFile);
+        BarBuildManifest.compute(workspace, projects, params).store(barFile, manifestFile);
+    }
+
+    @After
+    public void deleteWorkspace() throws IOException
+    {
+        FileUtils.deleteDirectory(workspace);
+    }
+
+    @Test
+    public void unchanged() throws IOException
+    {
+        // / build output does not count as a change
+        FileUtils.writeStringToFile(new File(workspace, "JavaProject/bin/Compute.class"), "class");
+        FileUtils.writeStringToFile(new File(workspace, "JavaProject/JavaProject.jar"), "jar");
+        FileUtils.writeStringToFile(new File(workspace, "App/JavaProject.jar"), "jar");
+
+        Assert.assertTrue(isUpToDate(params));
+    }
+
+    @Test
+    public void inputChanged() throws IOException
+    {
+        FileUtils.writeStringToFile(new File(workspace, "JavaProject/src/Compute.java"), "class Compute { }");
+        Assert.assertFalse(isUpToDate(params));
+    }
+
+    @Test
+    public void inputAdded() throws IOException
+    {
+        FileUtils.writeStringToFile(new File(workspace, "App/Other.msgflow"), "flow");
+        Assert.assertFalse(isUpToDate(params));
+    }
+
+    @Test
+    public void parametersChanged() throws IOException
+    {
+        Assert.assertFalse(isUpToDate(Arrays.asList("-k", "App", "Other")));
+    }
+
+    @Test
+    public void barChanged() throws IOException
+    {
+        FileUtils.writeStringToFile(barFile, "other bar");
+        Assert.assertFalse(isUpToDate(params));
+
+        barFile.delete();
+        Assert.assertFalse(isUpToDate(params));
+    }
+
+    private boolean isUpToDate(List<String> parameters) throws IOException
+    {
+        return BarBuildManifest.compute(workspace, projects, parameters).isUpToDate(barFile, manifestFile, new SystemStreamLog());
+    }
+
+}
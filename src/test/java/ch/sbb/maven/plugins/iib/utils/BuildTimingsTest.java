@@ -0,0 +1,100 @@
+package ch.sbb.maven.plugins.iib.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.MavenProject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ *
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+public class BuildTimingsTest {
+
+    private File buildDirectory;
+    private MavenProject project;
+
+    @Before
+    public void createProject() throws IOException
+    {
+        buildDirectory = File.createTempFile("target", "");
+        buildDirectory.delete();
+        project = new MavenProject();
+        project.setGroupId("ch.sbb");
+        project.setArtifactId("HDR");
+        project.setVersion("6.0");
+        project.getBuild().setDirectory(buildDirectory.getAbsolutePath());
+    }
+
+    @After
+    public void deleteBuildDirectory() throws IOException
+    {
+        FileUtils.deleteDirectory(buildDirectory);
+    }
+
+    @Test
+    public void nestedSteps() throws Exception
+    {
+        BuildTimings timings = BuildTimings.get(project, new SystemStreamLog());
+        Assert.assertSame(timings, BuildTimings.get(project, new SystemStreamLog()));
+
+        final BuildTimings.Span span = timings.start("apply-bar-overrides");
+        // / a step of the span current on this thread, e.g. from MqsiCommandLauncher
+        BuildTimings.Span step = BuildTimings.step("read-bar");
+        BuildTimings.step("unzip").stop();
+        step.stop();
+        Assert.assertSame(span, BuildTimings.current());
+
+        // / a step of work handed to another thread
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            executor.submit(new Callable<Void>() {
+                public Void call()
+                {
+                    span.step("override ENVIRONMENT1").stop();
+                    return null;
+                }
+            }).get();
+        } finally
+        {
+            executor.shutdown();
+        }
+        span.stop();
+
+        Assert.assertEquals(2, span.getSteps().size());
+        Assert.assertEquals("read-bar", span.getSteps().get(0).getName());
+        Assert.assertEquals("unzip", span.getSteps().get(0).getSteps().get(0).getName());
+        Assert.assertEquals("override ENVIRONMENT1", span.getSteps().get(1).getName());
+        Assert.assertTrue(span.getWallMillis() >= 0);
+
+        String report = FileUtils.readFileToString(new File(buildDirectory, BuildTimings.REPORT_FILE), "UTF-8");
+        Assert.assertTrue(report.contains("\"project\": \"ch.sbb:HDR:6.0\""));
+        Assert.assertTrue(report.contains("\"name\": \"apply-bar-overrides\""));
+        Assert.assertTrue(report.contains("\"name\": \"override ENVIRONMENT1\""));
+        Assert.assertTrue(report.contains("\"threadCpuMillis\": "));
+    }
+
+    @Test
+    public void stepWithoutMojo()
+    {
+        BuildTimings.Span step = BuildTimings.step("mqsicreatebar");
+        step.stop();
+        Assert.assertTrue(step.getWallMillis() >= 0);
+        Assert.assertTrue(BuildTimings.current().getSteps().isEmpty());
+        Assert.assertFalse(new File(buildDirectory, BuildTimings.REPORT_FILE).exists());
+    }
+
+}
@@ -0,0 +1,98 @@
+package ch.sbb.maven.plugins.iib.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ *
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+public class CompileOnlyRegistryTest {
+
+    private final Log log = new SystemStreamLog();
+    private File workspace;
+    private CompileOnlyRegistry registry;
+
+    @Before
+    public void createWorkspace() throws IOException
+    {
+        workspace = File.createTempFile("workspace", "");
+        workspace.delete();
+        FileUtils.writeStringToFile(new File(workspace, "App/.project"), "<projectDescription><name>App</name></projectDescription>");
+        FileUtils.writeStringToFile(new File(workspace, "App/Flow.msgflow"), "flow");
+        FileUtils.writeStringToFile(new File(workspace, "App/pom.xml"), "<project/>");
+        FileUtils.writeStringToFile(new File(workspace, "Lib/.project"), "<projectDescription><name>Lib</name></projectDescription>");
+        FileUtils.writeStringToFile(new File(workspace, "Lib/Lib.esql"), "esql");
+        FileUtils.writeStringToFile(new File(workspace, "JavaProject/.project"), "<projectDescription><name>JavaProject</name></projectDescription>");
+        FileUtils.writeStringToFile(new File(workspace, "JavaProject/src/a/Compute.java"), "class Compute {}");
+        registry = new CompileOnlyRegistry(workspace, new Date());
+    }
+
+    @After
+    public void deleteWorkspace() throws IOException
+    {
+        WorkspaceIndex.invalidate(workspace);
+        FileUtils.deleteDirectory(workspace);
+    }
+
+    @Test
+    public void compiledProjectsAreRecorded()
+    {
+        Assert.assertFalse(registry.isCompiled(Arrays.asList("App"), log));
+        registry.recordCompilation(log);
+        Assert.assertEquals(3, registry.getCompiledProjectCount());
+        Assert.assertTrue(registry.isCompiled(Arrays.asList("App", "Lib", "JavaProject"), log));
+        Assert.assertFalse(registry.isCompiled(Arrays.asList("App", "OtherLib"), log));
+    }
+
+    @Test
+    public void buildOutputIsIgnored() throws IOException
+    {
+        registry.recordCompilation(log);
+        FileUtils.writeStringToFile(new File(workspace, "JavaProject/bin/a/Compute.class"), "class");
+        FileUtils.writeStringToFile(new File(workspace, "JavaProject/JavaProject.jar"), "jar");
+        FileUtils.writeStringToFile(new File(workspace, "App/JavaProject.jar"), "jar");
+        FileUtils.writeStringToFile(new File(workspace, "App/target/App.bar"), "bar");
+        new File(workspace, "App/pom.xml").renameTo(new File(workspace, "App/" + DirectoriesUtil.TEMP_POM_FILE));
+        Assert.assertTrue(registry.isCompiled(Arrays.asList("App", "JavaProject"), log));
+    }
+
+    @Test
+    public void changedProjectsAreCompiledAgain() throws IOException
+    {
+        registry.recordCompilation(log);
+        File esql = new File(workspace, "Lib/Lib.esql");
+        esql.setLastModified(esql.lastModified() + 10000);
+        Assert.assertTrue(registry.isCompiled(Arrays.asList("App", "JavaProject"), log));
+        Assert.assertFalse(registry.isCompiled(Arrays.asList("App", "Lib"), log));
+
+        registry.recordCompilation(log);
+        FileUtils.writeStringToFile(new File(workspace, "JavaProject/src/a/Transform.java"), "class Transform {}");
+        Assert.assertTrue(registry.isCompiled(Arrays.asList("App", "Lib"), log));
+        Assert.assertFalse(registry.isCompiled(Arrays.asList("JavaProject"), log));
+    }
+
+    @Test
+    public void registryLastsForOneBuild()
+    {
+        Date buildStartTime = new Date();
+        CompileOnlyRegistry build = CompileOnlyRegistry.get(workspace, buildStartTime);
+        build.recordCompilation(log);
+        Assert.assertSame(build, CompileOnlyRegistry.get(workspace, new Date(buildStartTime.getTime())));
+        Assert.assertEquals(0, CompileOnlyRegistry.get(workspace, new Date(buildStartTime.getTime() + 1)).getCompiledProjectCount());
+    }
+
+}
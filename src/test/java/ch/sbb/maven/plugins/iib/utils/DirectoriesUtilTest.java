@@ -3,8 +3,13 @@
  */
 package ch.sbb.maven.plugins.iib.utils;
 
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
 import java.util.Arrays;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -42,4 +47,105 @@ public class DirectoriesUtilTest {
 
     }
 
+
+    @Test
+    public void hideAndRestorePomFiles() throws IOException
+    {
+        File workspace = createWorkspace();
+        try
+        {
+            DirectoriesUtil util = new DirectoriesUtil();
+            util.renamePomXmlFiles(workspace, new SystemStreamLog());
+            Assert.assertFalse(new File(workspace, "App/pom.xml").exists());
+            Assert.assertEquals("app", FileUtils.readFileToString(new File(workspace, "App/" + DirectoriesUtil.TEMP_POM_FILE)));
+            Assert.assertEquals(1, getJournals(workspace).length);
+
+            util.restorePomFiles(workspace, new SystemStreamLog());
+            assertRestored(workspace);
+        } finally
+        {
+            FileUtils.deleteDirectory(workspace);
+        }
+    }
+
+    @Test
+    public void recoverPomFilesOfAKilledBuild() throws IOException
+    {
+        File workspace = createWorkspace();
+        try
+        {
+            // / a build killed while mqsicreatebar runs never restores the files, and its lock is released
+            DirectoriesUtil killedBuild = new DirectoriesUtil();
+            killedBuild.renamePomXmlFiles(workspace, new SystemStreamLog());
+            killedBuild.closeJournal();
+
+            DirectoriesUtil nextBuild = new DirectoriesUtil();
+            nextBuild.renamePomXmlFiles(workspace, new SystemStreamLog());
+            Assert.assertFalse(new File(workspace, "Lib/pom.xml").exists());
+            nextBuild.restorePomFiles(workspace, new SystemStreamLog());
+            assertRestored(workspace);
+
+            killedBuild = new DirectoriesUtil();
+            killedBuild.renamePomXmlFiles(workspace, new SystemStreamLog());
+            killedBuild.closeJournal();
+            DirectoriesUtil.recoverPomFiles(workspace, new SystemStreamLog());
+            assertRestored(workspace);
+        } finally
+        {
+            FileUtils.deleteDirectory(workspace);
+        }
+    }
+
+    @Test
+    public void doNotRecoverPomFilesOfARunningBuild() throws IOException
+    {
+        File workspace = createWorkspace();
+        try
+        {
+            // / another module of a parallel build, running mqsicreatebar in the same workspace
+            DirectoriesUtil runningBuild = new DirectoriesUtil();
+            runningBuild.renamePomXmlFiles(workspace, new SystemStreamLog());
+
+            DirectoriesUtil.recoverPomFiles(workspace, new SystemStreamLog());
+            Assert.assertFalse(new File(workspace, "App/pom.xml").exists());
+            Assert.assertFalse(new File(workspace, "Lib/pom.xml").exists());
+            Assert.assertEquals(1, getJournals(workspace).length);
+
+            runningBuild.restorePomFiles(workspace, new SystemStreamLog());
+            assertRestored(workspace);
+        } finally
+        {
+            FileUtils.deleteDirectory(workspace);
+        }
+    }
+
+    private static File[] getJournals(File workspace)
+    {
+        return workspace.listFiles(new FilenameFilter() {
+            public boolean accept(File dir, String name)
+            {
+                return name.startsWith(DirectoriesUtil.JOURNAL_FILE);
+            }
+        });
+    }
+
+    private static File createWorkspace() throws IOException
+    {
+        File workspace = File.createTempFile("workspace", "");
+        workspace.delete();
+        FileUtils.writeStringToFile(new File(workspace, "App/pom.xml"), "app");
+        FileUtils.writeStringToFile(new File(workspace, "Lib/pom.xml"), "lib");
+        FileUtils.writeStringToFile(new File(workspace, "NoPom/.project"), "<projectDescription/>");
+        return workspace;
+    }
+
+    private static void assertRestored(File workspace) throws IOException
+    {
+        Assert.assertEquals("app", FileUtils.readFileToString(new File(workspace, "App/pom.xml")));
+        Assert.assertEquals("lib", FileUtils.readFileToString(new File(workspace, "Lib/pom.xml")));
+        Assert.assertFalse(new File(workspace, "App/" + DirectoriesUtil.TEMP_POM_FILE).exists());
+        Assert.assertFalse(new File(workspace, "NoPom/pom.xml").exists());
+        Assert.assertEquals(0, getJournals(workspace).length);
+    }
+
 }
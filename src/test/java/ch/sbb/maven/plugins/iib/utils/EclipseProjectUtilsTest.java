@@ -1,13 +1,21 @@
 package ch.sbb.maven.plugins.iib.utils;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.io.IOException;
 
 import javax.xml.bind.JAXBException;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.MojoFailureException;
 import org.junit.Test;
 
+import ch.sbb.maven.plugins.iib.generated.eclipse_project.ProjectDescription;
+
 public class EclipseProjectUtilsTest {
 
     /**
@@ -24,6 +32,33 @@ public class EclipseProjectUtilsTest {
         }
     }
 
+    /**
+     * a .project file is parsed once, and again after it was changed
+     */
+    @Test
+    public void unmarshallEclipseProjectFileIsCached() throws IOException, JAXBException, MojoFailureException {
+        File projectDir = new File(System.getProperty("java.io.tmpdir"), "EclipseProjectUtilsTest-" + System.nanoTime());
+        File projectFile = new File(projectDir, ".project");
+        try {
+            FileUtils.writeStringToFile(projectFile, dotProject("first"), "UTF-8");
+            ProjectDescription first = EclipseProjectUtils.unmarshallEclipseProjectFile(projectFile);
+            assertSame(first, EclipseProjectUtils.unmarshallEclipseProjectFile(new File(projectDir, "../" + projectDir.getName() + "/.project")));
+            assertEquals("first", EclipseProjectUtils.getProjectName(projectDir));
+
+            FileUtils.writeStringToFile(projectFile, dotProject("second-name"), "UTF-8");
+            ProjectDescription second = EclipseProjectUtils.unmarshallEclipseProjectFile(projectFile);
+            assertNotSame(first, second);
+            assertEquals("second-name", second.getName());
+        } finally {
+            FileUtils.deleteDirectory(projectDir);
+        }
+    }
+
+    private static String dotProject(String name) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<projectDescription><name>" + name
+                + "</name><comment></comment><projects></projects><buildSpec></buildSpec><natures></natures></projectDescription>\n";
+    }
+
     /**
      * Hier sollten vor allem:
      * - isApplication
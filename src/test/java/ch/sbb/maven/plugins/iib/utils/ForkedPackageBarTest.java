@@ -0,0 +1,215 @@
+package ch.sbb.maven.plugins.iib.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.sbb.maven.plugins.iib.fixtures.FakeCommandProcessor;
+
+/**
+ * runs the packagebar worker JVM with the fake command processor (see
+ * ch.sbb.maven.plugins.iib.fixtures.FakeCommandProcessor)
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+public class ForkedPackageBarTest {
+
+    private File directory;
+    private ForkedPackageBar worker;
+    private final List<String> lines = new ArrayList<String>();
+    private final SystemStreamLog log = new SystemStreamLog() {
+        @Override
+        public void info(CharSequence content)
+        {
+            lines.add(content.toString());
+        }
+    };
+
+    @Before
+    public void createDirectory() throws IOException
+    {
+        directory = File.createTempFile("forked-packagebar", "");
+        directory.delete();
+        directory.mkdirs();
+    }
+
+    @After
+    public void deleteDirectory() throws IOException
+    {
+        if (worker != null)
+        {
+            worker.stop();
+        }
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void packagesInTheSameJvm() throws MojoFailureException
+    {
+        worker = new ForkedPackageBar("-Xmx64m -XX:+UseSerialGC", 1, FakeCommandProcessor.class.getName());
+        for (int i = 0; i < 3; i++)
+        {
+            worker.packageBar(log, getArgs("App" + i));
+            Assert.assertTrue(new File(directory, "App" + i + ".bar").isFile());
+        }
+        Assert.assertTrue(lines.contains("BIP8071I: Successful command completion."));
+        Assert.assertEquals(1, getJvms().size());
+    }
+
+    @Test
+    public void jvmOutputDoesNotDisturbTheRequests() throws MojoFailureException
+    {
+        // / both write to the standard output of the worker
+        worker = new ForkedPackageBar("-Xmx64m -verbose:gc -XX:+PrintCommandLineFlags", 1, FakeCommandProcessor.class.getName());
+        worker.packageBar(log, getArgs("App1"));
+        worker.packageBar(log, getArgs("App2"));
+        Assert.assertTrue(new File(directory, "App2.bar").isFile());
+        Assert.assertEquals(1, getJvms().size());
+    }
+
+    @Test
+    public void stuckWorkerTimesOut() throws MojoFailureException
+    {
+        worker = new ForkedPackageBar("-Xmx64m -DFAKE_MQSI_DURATION_MS=60000", 1, FakeCommandProcessor.class.getName());
+        worker.setTimeout(3000);
+        long startTime = System.currentTimeMillis();
+        try
+        {
+            worker.packageBar(log, getArgs("App"));
+            Assert.fail();
+        } catch (MojoFailureException e)
+        {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("did not answer within 3 seconds"));
+        }
+        Assert.assertTrue(System.currentTimeMillis() - startTime < 30000);
+    }
+
+    @Test
+    public void failureIsReported() throws MojoFailureException
+    {
+        worker = new ForkedPackageBar("-Xmx64m -DFAKE_MQSI_EXIT_CODE=3", 1, FakeCommandProcessor.class.getName());
+        try
+        {
+            worker.packageBar(log, getArgs("App"));
+            Assert.fail();
+        } catch (MojoFailureException e)
+        {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("exit code 3"));
+        }
+        Assert.assertTrue(lines.toString(), lines.get(lines.size() - 3).startsWith("BIP2087E"));
+        Assert.assertFalse(new File(directory, "App.bar").exists());
+    }
+
+    @Test
+    public void stoppedWorkerIsRestarted() throws MojoFailureException
+    {
+        worker = new ForkedPackageBar("-Xmx64m", 1, FakeCommandProcessor.class.getName());
+        worker.packageBar(log, getArgs("App1"));
+        worker.stop();
+        worker.packageBar(log, getArgs("App2"));
+        Assert.assertTrue(new File(directory, "App2.bar").isFile());
+        Assert.assertEquals(2, getJvms().size());
+    }
+
+    @Test
+    public void parallelRequestsAreLimited() throws Exception
+    {
+        File logFile = new File(directory, "fake-mqsi.log");
+        worker = new ForkedPackageBar("-Xmx64m -DFAKE_MQSI_DURATION_MS=1000 -DFAKE_MQSI_LOG=" + logFile.getPath(), 2, FakeCommandProcessor.class.getName());
+        List<Callable<List<String>>> modules = new ArrayList<Callable<List<String>>>();
+        for (int i = 0; i < 5; i++)
+        {
+            final String application = "App" + i;
+            modules.add(new Callable<List<String>>() {
+                public List<String> call() throws MojoFailureException
+                {
+                    final List<String> moduleLines = new ArrayList<String>();
+                    worker.packageBar(new SystemStreamLog() {
+                        @Override
+                        public void info(CharSequence content)
+                        {
+                            moduleLines.add(content.toString());
+                        }
+                    }, getArgs(application));
+                    return moduleLines;
+                }
+            });
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(modules.size());
+        try
+        {
+            List<Future<List<String>>> results = executor.invokeAll(modules);
+            for (int i = 0; i < results.size(); i++)
+            {
+                // / every module gets the output of its own request, and of no other
+                List<String> moduleLines = results.get(i).get();
+                Assert.assertTrue(moduleLines.toString(), moduleLines.contains("Creating the bar file " + new File(directory, "App" + i + ".bar").getPath()));
+                int progressLines = 0;
+                for (String line : moduleLines)
+                {
+                    progressLines += line.startsWith("Processing ") ? 1 : 0;
+                }
+                Assert.assertEquals(20, progressLines);
+            }
+        } finally
+        {
+            executor.shutdown();
+        }
+
+        // / no more than two commands ran at the same time
+        List<long[]> runs = new ArrayList<long[]>();
+        for (String line : FileUtils.readLines(logFile))
+        {
+            String[] fields = line.split("\t");
+            runs.add(new long[] { Long.parseLong(fields[1]), Long.parseLong(fields[2]) });
+        }
+        Assert.assertEquals(5, runs.size());
+        int maximum = 0;
+        for (long[] run : runs)
+        {
+            int running = 0;
+            for (long[] other : runs)
+            {
+                running += other[0] <= run[0] && run[0] < other[1] ? 1 : 0;
+            }
+            maximum = Math.max(maximum, running);
+        }
+        Assert.assertEquals(2, maximum);
+    }
+
+    private String[] getArgs(String application)
+    {
+        return new String[] { "-a", new File(directory, application + ".bar").getPath(), "-w", directory.getPath(), "-k", application };
+    }
+
+    /**
+     * @return the JVMs the fake packaged in, in order
+     */
+    private List<String> getJvms()
+    {
+        List<String> jvms = new ArrayList<String>();
+        for (String line : lines)
+        {
+            if (line.startsWith("fake packagebar in ") && !jvms.contains(line))
+            {
+                jvms.add(line);
+            }
+        }
+        return jvms;
+    }
+
+}
@@ -0,0 +1,192 @@
+package ch.sbb.maven.plugins.iib.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.sbb.maven.plugins.iib.fixtures.FakeMqsi;
+
+/**
+ * runs the launcher against the fake mqsi commands (see ch.sbb.maven.plugins.iib.fixtures.FakeMqsi), on Linux and
+ * other Unix systems only
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+public class MqsiCommandLauncherTest {
+
+    private File directory;
+    private File fakeMqsi;
+    private File logFile;
+    private File originalCacheDirectory;
+
+    @Before
+    public void createDirectory() throws IOException, URISyntaxException
+    {
+        Assume.assumeTrue(!MqsiCommandLauncher.OSValidator.isWindows());
+        directory = File.createTempFile("mqsi-launcher", "");
+        directory.delete();
+        directory.mkdirs();
+        logFile = new File(directory, "fake-mqsi.log");
+        fakeMqsi = new File(getClass().getResource("/fake-mqsi/mqsi").toURI());
+        // / launched directly with a captured environment, the commands need to be executable
+        for (File command : new File(fakeMqsi.getParentFile(), "bin").listFiles())
+        {
+            command.setExecutable(true);
+        }
+        originalCacheDirectory = MqsiEnvironment.cacheDirectory;
+        MqsiEnvironment.cacheDirectory = new File(directory, "cache");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException
+    {
+        if (directory != null)
+        {
+            MqsiEnvironment.cacheDirectory = originalCacheDirectory;
+            FileUtils.deleteDirectory(directory);
+        }
+    }
+
+    @Test
+    public void createBar() throws MojoFailureException, IOException, URISyntaxException
+    {
+        final List<MqsiOutputEvent> events = new ArrayList<MqsiOutputEvent>();
+        MqsiCommandLauncher launcher = new MqsiCommandLauncher();
+        launcher.setOutputListener(new MqsiOutputListener() {
+            public void onEvent(MqsiOutputEvent event)
+            {
+                events.add(event);
+            }
+        });
+        File barFile = new File(directory, "App.bar");
+        launcher.execute(new SystemStreamLog(), null, getPrefixCommands(), MqsiCommand.mqsicreatebar, new String[] { "-data", directory.getPath(), "-b",
+                barFile.getPath(), "-a", "App", "-l", "Lib" }, null);
+
+        ZipFile bar = new ZipFile(barFile);
+        try
+        {
+            Assert.assertNotNull(bar.getEntry("App.appzip"));
+            Assert.assertNotNull(bar.getEntry("Lib.libzip"));
+        } finally
+        {
+            bar.close();
+        }
+        Assert.assertEquals("BIP8071I", events.get(events.size() - 1).getBipCode());
+    }
+
+    @Test
+    public void failureMessageHasTheError() throws IOException, URISyntaxException
+    {
+        File outputFile = new File(directory, "output.txt");
+        MqsiCommandLauncher launcher = new MqsiCommandLauncher();
+        launcher.setOutputFile(outputFile);
+        try
+        {
+            launcher.execute(new SystemStreamLog(), null, getPrefixCommands("FAKE_MQSI_EXIT_CODE=5", "FAKE_MQSI_LINES=100000"), MqsiCommand.mqsideploy,
+                    new String[] { "-n", "broker.broker", "-e", "default", "-a", "App.bar" }, null);
+            Assert.fail();
+        } catch (MojoFailureException e)
+        {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("BIP2087E"));
+        }
+        // / the complete output is in the file, the message has the last lines only
+        Assert.assertEquals(100000 + 5, FileUtils.readLines(outputFile).size());
+    }
+
+    @Test
+    public void failFastStopsTheCommand() throws IOException, URISyntaxException
+    {
+        MqsiCommandLauncher launcher = new MqsiCommandLauncher();
+        launcher.setFailFast(true);
+        long startTime = System.currentTimeMillis();
+        try
+        {
+            launcher.execute(new SystemStreamLog(), null, getPrefixCommands("FAKE_MQSI_DURATION_MS=60000", "FAKE_MQSI_BIP=BIP2087E", "FAKE_MQSI_BIP_AT=1"),
+                    MqsiCommand.mqsideploy, new String[] { "-n", "broker.broker", "-e", "default", "-a", "App.bar" }, null);
+            Assert.fail();
+        } catch (MojoFailureException e)
+        {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("BIP2087E"));
+        }
+        Assert.assertTrue(System.currentTimeMillis() - startTime < 30000);
+        // / the command did not get to log its end
+        Assert.assertFalse(FileUtils.readFileToString(logFile).contains("mqsideploy"));
+    }
+
+    @Test
+    public void failFastStopsTheProcessesStartedByTheCommand() throws IOException, URISyntaxException, InterruptedException
+    {
+        // / a shell that does not exec the mqsi command, as 'cmd /c' does on Windows
+        String prefixCommands = getPrefixCommands("FAKE_MQSI_DURATION_MS=3000", "FAKE_MQSI_BIP=BIP2087E", "FAKE_MQSI_BIP_AT=1");
+        prefixCommands = prefixCommands.substring(0, prefixCommands.lastIndexOf(",sh,")) + ",sh,-c,sh " + fakeMqsi.getPath() + " \"$0\" \"$@\"; exit $?";
+        MqsiCommandLauncher launcher = new MqsiCommandLauncher();
+        launcher.setFailFast(true);
+        long startTime = System.currentTimeMillis();
+        try
+        {
+            launcher.execute(new SystemStreamLog(), null, prefixCommands, MqsiCommand.mqsideploy, new String[] { "-n", "broker.broker", "-e", "default",
+                    "-a", "App.bar" }, null);
+            Assert.fail();
+        } catch (MojoFailureException e)
+        {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("BIP2087E"));
+        }
+        Assert.assertTrue(System.currentTimeMillis() - startTime < 3000);
+        // / the fake mqsideploy was killed along with the shell: it does not get to log its end either
+        Thread.sleep(5000);
+        Assert.assertFalse(FileUtils.readFileToString(logFile).contains("mqsideploy"));
+    }
+
+    @Test
+    public void capturedEnvironmentIsReused() throws MojoFailureException, IOException, URISyntaxException
+    {
+        MqsiCommandLauncher launcher = new MqsiCommandLauncher(true);
+        for (int i = 0; i < 3; i++)
+        {
+            launcher.execute(new SystemStreamLog(), null, getPrefixCommands(), MqsiCommand.mqsicreatebar, new String[] { "-data", directory.getPath(),
+                    "-compileOnly" }, null);
+        }
+
+        // / mqsiprofile is run once only, to capture the environment
+        int profiles = 0;
+        int commands = 0;
+        for (String line : FileUtils.readLines(logFile))
+        {
+            profiles += line.startsWith("mqsiprofile\t") ? 1 : 0;
+            commands += line.startsWith("mqsicreatebar\t") ? 1 : 0;
+        }
+        Assert.assertEquals(1, profiles);
+        Assert.assertEquals(3, commands);
+    }
+
+    /**
+     * @return the mqsiPrefixCommands that run the fake mqsi commands with the given settings
+     */
+    private String getPrefixCommands(String... settings) throws URISyntaxException
+    {
+        // / the fake has no dependencies
+        File classes = new File(FakeMqsi.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        StringBuilder prefixCommands = new StringBuilder("env,FAKE_MQSI_CLASSPATH=").append(classes.getPath());
+        prefixCommands.append(",FAKE_MQSI_JAVA=").append(new File(System.getProperty("java.home"), "bin/java").getPath());
+        prefixCommands.append(",FAKE_MQSI_LOG=").append(logFile.getPath());
+        for (String setting : settings)
+        {
+            prefixCommands.append(',').append(setting);
+        }
+        return prefixCommands.append(",sh,").append(fakeMqsi.getPath()).toString();
+    }
+
+}
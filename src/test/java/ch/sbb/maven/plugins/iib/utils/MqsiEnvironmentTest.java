@@ -0,0 +1,143 @@
+package ch.sbb.maven.plugins.iib.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ *
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+public class MqsiEnvironmentTest {
+
+    @Test
+    public void parseVariables()
+    {
+        Map<String, String> variables = MqsiEnvironment.parseVariables(Arrays.asList(
+                "MQSI 9.0.0.2",
+                "/opt/ibm/mqsi/9.0.0.2",
+                "MQSI_FILEPATH=/opt/ibm/mqsi/9.0.0.2",
+                "PATH=/opt/ibm/mqsi/9.0.0.2/bin:/usr/bin",
+                "MULTI=first",
+                "second",
+                "EMPTY="));
+
+        Assert.assertEquals(4, variables.size());
+        Assert.assertEquals("/opt/ibm/mqsi/9.0.0.2", variables.get("MQSI_FILEPATH"));
+        Assert.assertEquals("/opt/ibm/mqsi/9.0.0.2/bin:/usr/bin", variables.get("PATH"));
+        Assert.assertEquals("first\nsecond", variables.get("MULTI"));
+        Assert.assertEquals("", variables.get("EMPTY"));
+    }
+
+    @Test
+    public void resolveUnknownExecutable()
+    {
+        Map<String, String> variables = MqsiEnvironment.parseVariables(Arrays.asList("PATH=" + System.getProperty("java.io.tmpdir")));
+        MqsiEnvironment environment = new MqsiEnvironment(variables);
+        Assert.assertNull(environment.resolveExecutable("mqsi-command-that-does-not-exist"));
+        Assert.assertNull(environment.resolveExecutable(""));
+    }
+
+    @Test
+    public void cacheFileChangesWithProfileScript() throws IOException
+    {
+        File profileScript = File.createTempFile("mqsiprofile", ".sh");
+        try
+        {
+            List<String> profileCommands = Arrays.asList("sh", "-c", ". " + profileScript.getAbsolutePath() + "; exec \"$0\" \"$@\"");
+            Assert.assertTrue(MqsiEnvironment.getReferencedFiles(profileCommands).contains(profileScript.getAbsoluteFile()));
+
+            File before = MqsiEnvironment.getCacheFile(profileCommands);
+            Assert.assertEquals(before, MqsiEnvironment.getCacheFile(profileCommands));
+
+            profileScript.setLastModified(profileScript.lastModified() - 60000);
+            Assert.assertFalse(before.equals(MqsiEnvironment.getCacheFile(profileCommands)));
+        } finally
+        {
+            profileScript.delete();
+        }
+    }
+
+    @Test
+    public void storeAndLoad() throws IOException
+    {
+        File cacheFile = File.createTempFile("mqsiprofile", ".properties");
+        try
+        {
+            Map<String, String> variables = new TreeMap<String, String>(System.getenv());
+            variables.put(MqsiEnvironment.MQSI_MARKER_VARIABLE, "/opt/ibm/mqsi/9.0.0.2");
+            new MqsiEnvironment(variables).store(new SystemStreamLog(), cacheFile, "mqsiprofile");
+
+            MqsiEnvironment loaded = MqsiEnvironment.load(new SystemStreamLog(), cacheFile);
+            Assert.assertNotNull(loaded);
+            Assert.assertEquals(variables, loaded.getVariables());
+        } finally
+        {
+            cacheFile.delete();
+        }
+    }
+
+
+    @Test
+    public void extendedVariablesAreAppliedToTheCurrentValue() throws IOException
+    {
+        File cacheFile = File.createTempFile("mqsiprofile", ".properties");
+        try
+        {
+            Map<String, String> base = new TreeMap<String, String>();
+            base.put("PATH", "/usr/bin");
+            Map<String, String> variables = new TreeMap<String, String>(base);
+            variables.put(MqsiEnvironment.MQSI_MARKER_VARIABLE, "/opt/ibm/mqsi/9.0.0.2");
+            variables.put("PATH", "/opt/ibm/mqsi/9.0.0.2/bin:/usr/bin:/opt/ibm/java/bin");
+            new MqsiEnvironment(variables).store(new SystemStreamLog(), cacheFile, "mqsiprofile", base);
+
+            base.put("PATH", "/usr/local/bin:/usr/bin");
+            MqsiEnvironment loaded = MqsiEnvironment.load(new SystemStreamLog(), cacheFile, base);
+            Assert.assertNotNull(loaded);
+            Assert.assertEquals("/opt/ibm/mqsi/9.0.0.2/bin:/usr/local/bin:/usr/bin:/opt/ibm/java/bin", loaded.getVariables().get("PATH"));
+
+            base.remove("PATH");
+            Assert.assertNull(MqsiEnvironment.load(new SystemStreamLog(), cacheFile, base));
+        } finally
+        {
+            cacheFile.delete();
+        }
+    }
+
+
+    @Test
+    public void replacedVariablesAreStaleWhenTheirValueChanged() throws IOException
+    {
+        File cacheFile = File.createTempFile("mqsiprofile", ".properties");
+        try
+        {
+            Map<String, String> base = new TreeMap<String, String>();
+            base.put("JAVA_HOME", "/usr/lib/jvm/java-7");
+            Map<String, String> variables = new TreeMap<String, String>(base);
+            variables.put(MqsiEnvironment.MQSI_MARKER_VARIABLE, "/opt/ibm/mqsi/9.0.0.2");
+            variables.put("JAVA_HOME", "/opt/ibm/java");
+            new MqsiEnvironment(variables).store(new SystemStreamLog(), cacheFile, "mqsiprofile", base);
+
+            MqsiEnvironment loaded = MqsiEnvironment.load(new SystemStreamLog(), cacheFile, base);
+            Assert.assertNotNull(loaded);
+            Assert.assertEquals("/opt/ibm/java", loaded.getVariables().get("JAVA_HOME"));
+
+            base.put("JAVA_HOME", "/usr/lib/jvm/java-8");
+            Assert.assertNull(MqsiEnvironment.load(new SystemStreamLog(), cacheFile, base));
+        } finally
+        {
+            cacheFile.delete();
+        }
+    }
+
+}
@@ -0,0 +1,74 @@
+package ch.sbb.maven.plugins.iib.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ *
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+public class MqsiOutputParserTest {
+
+    private final List<MqsiOutputEvent> events = new ArrayList<MqsiOutputEvent>();
+
+    private final MqsiOutputParser parser = new MqsiOutputParser(new MqsiOutputListener() {
+        public void onEvent(MqsiOutputEvent event)
+        {
+            events.add(event);
+        }
+    });
+
+    @Test
+    public void messagesAndProgress()
+    {
+        parser.parseLine("Building workspace");
+        parser.parseLine("some unrelated line");
+        parser.parseLine("BIP1039I: Deploying BAR file 'app.bar' to integration node 'IB9NODE' ...");
+        parser.parseLine("BIP8071I: Successful command completion.");
+        parser.finish();
+
+        Assert.assertEquals(3, events.size());
+        Assert.assertEquals(MqsiOutputEvent.Type.progress, events.get(0).getType());
+        Assert.assertEquals("Building workspace", events.get(0).getText());
+        Assert.assertEquals(MqsiOutputEvent.Type.message, events.get(1).getType());
+        Assert.assertEquals("BIP1039I", events.get(1).getBipCode());
+        Assert.assertEquals(MqsiOutputEvent.Severity.information, events.get(1).getSeverity());
+        Assert.assertEquals("BIP8071I", events.get(2).getBipCode());
+        Assert.assertTrue(events.get(2).getTimestamp() >= events.get(1).getTimestamp());
+    }
+
+    @Test
+    public void errorBlocks()
+    {
+        parser.parseLine("BIP2087E: Integration node 'IB9NODE' was unable to process the internal configuration message.");
+        parser.parseLine("The entire internal configuration message failed to be processed successfully.");
+        parser.parseLine("");
+        parser.parseLine("BIP4041W: Integration server 'default' received an administration request ...");
+        parser.parseLine("[BIP0874S] severe error");
+        parser.parseLine("  with details");
+        parser.finish();
+
+        Assert.assertEquals(5, events.size());
+        Assert.assertEquals(MqsiOutputEvent.Type.message, events.get(0).getType());
+        Assert.assertTrue(events.get(0).isError());
+
+        MqsiOutputEvent block = events.get(1);
+        Assert.assertEquals(MqsiOutputEvent.Type.errorBlock, block.getType());
+        Assert.assertEquals("BIP2087E", block.getBipCode());
+        Assert.assertEquals(2, block.getText().split("\n").length);
+
+        Assert.assertEquals(MqsiOutputEvent.Severity.warning, events.get(2).getSeverity());
+        Assert.assertFalse(events.get(2).isError());
+
+        Assert.assertEquals(MqsiOutputEvent.Severity.severe, events.get(3).getSeverity());
+        Assert.assertEquals(MqsiOutputEvent.Type.errorBlock, events.get(4).getType());
+        Assert.assertEquals("[BIP0874S] severe error\n  with details", events.get(4).getText());
+    }
+
+}
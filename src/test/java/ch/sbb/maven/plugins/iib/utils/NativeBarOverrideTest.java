@@ -0,0 +1,155 @@
+package ch.sbb.maven.plugins.iib.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ *
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+public class NativeBarOverrideTest {
+
+    private static final String APPZIP = "estaint-logging-test-app_2.0.appzip";
+    private static final String LIBZIP = "estaint-logging-lib.libzip";
+
+    @Test
+    public void overrideNestedDescriptors() throws IOException
+    {
+        byte[] bar = readTestBar();
+        Map<String, String> overrides = new HashMap<String, String>();
+        overrides.put("estaint.logging.ApplicationLoggingTest#MQ Input.queueName", "OVERRIDDEN.REQ");
+        overrides.put("estaint.logging.Sub_ApplicationLogging#LogLevel", "DEBUG");
+        overrides.put("estaint.logging.Sub_ApplicationLogging#ApplicationId", null);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BarOverrideResult result = NativeBarOverride.applyOverrides(new RawZipFile(bar), overrides, out);
+        Assert.assertTrue(result.getMessages().toString(), result.isSuccess());
+
+        byte[] overridden = out.toByteArray();
+        String appDescriptor = new String(read(read(overridden, APPZIP), "META-INF/broker.xml"), "UTF-8");
+        Assert.assertTrue(appDescriptor.contains("override=\"OVERRIDDEN.REQ\" uri=\"estaint.logging.ApplicationLoggingTest#MQ Input.queueName\""));
+
+        // / the library exists both at the top level and nested in the application
+        for (byte[] libzip : new byte[][] { read(overridden, LIBZIP), read(read(overridden, APPZIP), LIBZIP) })
+        {
+            String libDescriptor = new String(read(libzip, "META-INF/broker.xml"), "UTF-8");
+            Assert.assertTrue(libDescriptor.contains("override=\"DEBUG\" uri=\"estaint.logging.Sub_ApplicationLogging#LogLevel\""));
+            Assert.assertTrue(libDescriptor.contains("<ConfigurableProperty uri=\"estaint.logging.Sub_ApplicationLogging#ApplicationId\"/>"));
+        }
+
+        // / everything else is copied unchanged
+        RawZipFile original = new RawZipFile(bar);
+        RawZipFile copy = new RawZipFile(overridden);
+        Assert.assertEquals(original.getEntries().size(), copy.getEntries().size());
+        for (RawZipFile.Entry entry : original.getEntries())
+        {
+            if (!NativeBarOverride.isNestedArchive(entry.getName()))
+            {
+                Assert.assertArrayEquals(original.getBytes(entry), copy.getBytes(copy.getEntry(entry.getName())));
+                Assert.assertEquals(entry.getCompressedSize(), copy.getEntry(entry.getName()).getCompressedSize());
+            }
+        }
+    }
+
+    @Test
+    public void noOverridesCopiesTheBar() throws IOException
+    {
+        byte[] bar = readTestBar();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BarOverrideResult result = NativeBarOverride.applyOverrides(new RawZipFile(bar), new HashMap<String, String>(), out);
+        Assert.assertTrue(result.isSuccess());
+
+        RawZipFile copy = new RawZipFile(out.toByteArray());
+        for (RawZipFile.Entry entry : new RawZipFile(bar).getEntries())
+        {
+            Assert.assertArrayEquals(read(bar, entry.getName()), read(out.toByteArray(), entry.getName()));
+            Assert.assertEquals(entry.getCompressedSize(), copy.getEntry(entry.getName()).getCompressedSize());
+        }
+    }
+
+    @Test
+    public void nestedArchivesWithoutOverridesAreCopiedFromTheFile() throws IOException
+    {
+        File barFile = new File(getClass().getResource("/estaint-logging-test-bar-2.0.bar").getFile());
+        Map<String, String> overrides = new HashMap<String, String>();
+        overrides.put("estaint.logging.ApplicationLoggingTest#MQ Input.queueName", "OVERRIDDEN.REQ");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RawZipFile bar = new RawZipFile(barFile);
+        try
+        {
+            BarOverrideResult result = NativeBarOverride.applyOverrides(bar, overrides, out);
+            Assert.assertTrue(result.getMessages().toString(), result.isSuccess());
+        } finally
+        {
+            bar.close();
+        }
+
+        byte[] overridden = out.toByteArray();
+        String appDescriptor = new String(read(read(overridden, APPZIP), "META-INF/broker.xml"), "UTF-8");
+        Assert.assertTrue(appDescriptor.contains("override=\"OVERRIDDEN.REQ\" uri=\"estaint.logging.ApplicationLoggingTest#MQ Input.queueName\""));
+
+        // / the library has no overridden property: it is copied raw rather than rebuilt
+        RawZipFile original = new RawZipFile(readTestBar());
+        RawZipFile copy = new RawZipFile(overridden);
+        Assert.assertEquals(original.getEntry(LIBZIP).getCompressedSize(), copy.getEntry(LIBZIP).getCompressedSize());
+        Assert.assertArrayEquals(original.getBytes(original.getEntry(LIBZIP)), copy.getBytes(copy.getEntry(LIBZIP)));
+        Assert.assertFalse(original.getEntry(APPZIP).getCompressedSize() == copy.getEntry(APPZIP).getCompressedSize()
+                && Arrays.equals(original.getBytes(original.getEntry(APPZIP)), copy.getBytes(copy.getEntry(APPZIP))));
+    }
+
+    @Test
+    public void unknownProperty() throws IOException
+    {
+        Map<String, String> overrides = new HashMap<String, String>();
+        overrides.put("estaint.logging.DoesNotExist#queueName", "X");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BarOverrideResult result = NativeBarOverride.applyOverrides(new RawZipFile(readTestBar()), overrides, out);
+        Assert.assertFalse(result.isSuccess());
+        Assert.assertEquals(0, out.size());
+    }
+
+    private byte[] readTestBar() throws IOException
+    {
+        return FileUtils.readFileToByteArray(new File(getClass().getResource("/estaint-logging-test-bar-2.0.bar").getFile()));
+    }
+
+    /**
+     * reads an entry with java.util.zip, so that the written archives are checked by an independent reader
+     */
+    private static byte[] read(byte[] zip, String name) throws IOException
+    {
+        ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(zip));
+        try
+        {
+            for (ZipEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry())
+            {
+                if (entry.getName().replace('\\', '/').equals(name))
+                {
+                    return IOUtils.toByteArray((InputStream) in);
+                }
+            }
+        } finally
+        {
+            in.close();
+        }
+        throw new IOException("no entry " + name);
+    }
+
+}
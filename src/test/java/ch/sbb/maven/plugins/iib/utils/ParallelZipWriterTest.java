@@ -0,0 +1,146 @@
+package ch.sbb.maven.plugins.iib.utils;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ *
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+public class ParallelZipWriterTest {
+
+    private File directory;
+    private File project;
+
+    @Before
+    public void createProject() throws IOException
+    {
+        directory = File.createTempFile("parallel-zip", "");
+        directory.delete();
+        project = new File(directory, "MyApplication");
+        Random random = new Random(42);
+        for (int i = 0; i < 100; i++)
+        {
+            FileUtils.writeStringToFile(new File(project, "flows/folder" + (i % 7) + "/Flow" + i + ".msgflow"), "<flow number=\"" + i + "\"/>\n", "UTF-8");
+        }
+        // / larger than the read buffer, and not compressible
+        byte[] jar = new byte[ParallelZipWriter.BUFFER_SIZE * 3 + 17];
+        random.nextBytes(jar);
+        FileUtils.writeByteArrayToFile(new File(project, "lib/vendored.jar"), jar);
+        // / not compressible either, but deflated, and larger than the compressed data held in memory
+        FileUtils.writeByteArrayToFile(new File(project, "lib/random.bin"), Arrays.copyOf(jar, ParallelZipWriter.SPILL_THRESHOLD * 2));
+        FileUtils.writeByteArrayToFile(new File(project, "empty.txt"), new byte[0]);
+        FileUtils.writeStringToFile(new File(project, "target/MyApplication-1.0.zip"), "left out", "UTF-8");
+    }
+
+    @After
+    public void deleteProject() throws IOException
+    {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void zipDirectory() throws IOException
+    {
+        File zipFile = new File(directory, "MyApplication.zip");
+        ParallelZipWriter writer = new ParallelZipWriter(4, new SystemStreamLog());
+        writer.zipDirectory(project, new FileFilter() {
+            public boolean accept(File file)
+            {
+                return !file.getName().equals("target");
+            }
+        }, zipFile);
+        Assert.assertEquals(103, writer.getEntries());
+
+        List<String> names = new ArrayList<String>();
+        ZipFile zip = new ZipFile(zipFile);
+        try
+        {
+            for (Enumeration<? extends ZipEntry> entries = zip.entries(); entries.hasMoreElements();)
+            {
+                ZipEntry entry = entries.nextElement();
+                names.add(entry.getName());
+                File file = new File(directory, entry.getName());
+                Assert.assertArrayEquals(entry.getName(), FileUtils.readFileToByteArray(file), IOUtils.toByteArray(zip.getInputStream(entry)));
+                // / the jar is compressed already
+                Assert.assertEquals(entry.getName(), entry.getName().endsWith(".jar") ? ZipEntry.STORED : ZipEntry.DEFLATED, entry.getMethod());
+            }
+        } finally
+        {
+            zip.close();
+        }
+        // / the temporary file of random.bin is gone
+        Assert.assertEquals(Arrays.asList("MyApplication", "MyApplication.zip"), Arrays.asList(directory.list()));
+
+        // / written in the order the tree is walked, whichever thread compressed them
+        Assert.assertEquals(Arrays.asList("MyApplication/empty.txt", "MyApplication/flows/folder0/Flow0.msgflow"), names.subList(0, 2));
+        Assert.assertEquals("MyApplication/lib/vendored.jar", names.get(names.size() - 1));
+        List<String> sorted = new ArrayList<String>(names);
+        Collections.sort(sorted);
+        Assert.assertEquals(sorted, names);
+    }
+
+    @Test
+    public void manyFilesAreZippedAsZip64() throws IOException
+    {
+        File manyFiles = new File(directory, "ManyFiles");
+        for (int i = 0; i < 66; i++)
+        {
+            File folder = new File(manyFiles, "folder" + i);
+            folder.mkdirs();
+            for (int j = 0; j < 1000; j++)
+            {
+                new File(folder, "file" + j).createNewFile();
+            }
+        }
+        File zipFile = new File(directory, "ManyFiles.zip");
+        ParallelZipWriter writer = new ParallelZipWriter(2, new SystemStreamLog());
+        writer.zipDirectory(manyFiles, null, zipFile);
+        Assert.assertEquals(66000, writer.getEntries());
+
+        ZipFile zip = new ZipFile(zipFile);
+        try
+        {
+            Assert.assertEquals(66000, zip.size());
+            Assert.assertNotNull(zip.getEntry("ManyFiles/folder65/file999"));
+        } finally
+        {
+            zip.close();
+        }
+    }
+
+    @Test
+    public void missingDirectoryFails() throws IOException
+    {
+        File zipFile = new File(directory, "Missing.zip");
+        try
+        {
+            new ParallelZipWriter(2, new SystemStreamLog()).zipDirectory(new File(directory, "Missing"), null, zipFile);
+            Assert.fail();
+        } catch (IOException e)
+        {
+            Assert.assertFalse(zipFile.exists());
+        }
+    }
+
+}
@@ -0,0 +1,97 @@
+package ch.sbb.maven.plugins.iib.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ *
+ *
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+public class ProcessOutputPumpTest {
+
+    @Test
+    public void tailAndOutputFile() throws IOException, InterruptedException
+    {
+        StringBuilder output = new StringBuilder();
+        for (int i = 0; i < 20000; i++)
+        {
+            output.append("line ").append(i).append("\r\n");
+        }
+        output.append("last line without newline");
+        byte[] bytes = output.toString().getBytes("UTF-8");
+
+        File outputFile = File.createTempFile("process-output", ".txt");
+        try
+        {
+            ProcessOutputPump pump = new ProcessOutputPump(new ByteArrayInputStream(bytes), new SystemStreamLog(), outputFile, 100);
+            pump.start();
+            pump.awaitCompletion();
+
+            Assert.assertArrayEquals(bytes, FileUtils.readFileToByteArray(outputFile));
+            // / the last 100 bytes, without the partial first line
+            Assert.assertEquals("line 19994\r\nline 19995\r\nline 19996\r\nline 19997\r\nline 19998\r\nline 19999\r\nlast line without newline",
+                    pump.getTail());
+        } finally
+        {
+            outputFile.delete();
+        }
+    }
+
+    @Test
+    public void unwritableOutputFileIsNoFailure() throws IOException, InterruptedException
+    {
+        File notADirectory = File.createTempFile("process-output", ".txt");
+        try
+        {
+            ProcessOutputPump pump = new ProcessOutputPump(new ByteArrayInputStream("BIP8071I: Successful command completion.\n".getBytes("UTF-8")),
+                    new SystemStreamLog(), new File(notADirectory, "output.txt"), ProcessOutputPump.DEFAULT_TAIL_SIZE);
+            pump.start();
+            pump.awaitCompletion();
+            Assert.assertFalse(pump.isOutputFileWritten());
+            Assert.assertEquals("BIP8071I: Successful command completion.\n", pump.getTail());
+        } finally
+        {
+            notADirectory.delete();
+        }
+    }
+
+    @Test
+    public void failedOutputFileWriterIsNoFailure() throws IOException, InterruptedException
+    {
+        // / every write fails with "No space left on device"
+        File fullDevice = new File("/dev/full");
+        Assume.assumeTrue(fullDevice.exists());
+        StringBuilder output = new StringBuilder();
+        for (int i = 0; i < 20000; i++)
+        {
+            output.append("line ").append(i).append('\n');
+        }
+        ProcessOutputPump pump = new ProcessOutputPump(new ByteArrayInputStream(output.toString().getBytes("UTF-8")), new SystemStreamLog(), fullDevice,
+                ProcessOutputPump.DEFAULT_TAIL_SIZE);
+        pump.start();
+        pump.awaitCompletion();
+        Assert.assertFalse(pump.isOutputFileWritten());
+        Assert.assertTrue(pump.getTail().endsWith("line 19999\n"));
+    }
+
+    @Test
+    public void shortOutput() throws IOException, InterruptedException
+    {
+        ProcessOutputPump pump = new ProcessOutputPump(new ByteArrayInputStream("BIP8071I: Successful command completion.\n".getBytes("UTF-8")),
+                new SystemStreamLog(), null, ProcessOutputPump.DEFAULT_TAIL_SIZE);
+        pump.start();
+        pump.awaitCompletion();
+        Assert.assertEquals("BIP8071I: Successful command completion.\n", pump.getTail());
+    }
+
+}
@@ -0,0 +1,97 @@
+package ch.sbb.maven.plugins.iib.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ *
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+public class ProjectDependencyGraphTest {
+
+    private static final String APPLICATION = "com.ibm.etools.msgbroker.tooling.applicationNature";
+    private static final String LIBRARY = "com.ibm.etools.msgbroker.tooling.libraryNature";
+
+    private File workspace;
+    private ProjectDependencyGraph graph;
+
+    @Before
+    public void createWorkspace() throws IOException
+    {
+        workspace = File.createTempFile("workspace", "");
+        workspace.delete();
+        // / App -> LibA, LibB; LibA -> LibCommon; LibB -> LibCommon (a diamond); LibCommon <-> LibCycle
+        writeProject("App", APPLICATION, "LibA", "LibB");
+        writeProject("LibA", LIBRARY, "LibCommon");
+        writeProject("LibB", LIBRARY, "LibCommon");
+        writeProject("LibCommon", LIBRARY, "LibCycle");
+        writeProject("LibCycle", LIBRARY, "LibCommon");
+        writeProject("Other", "org.eclipse.jdt.core.javanature");
+        FileUtils.writeStringToFile(new File(workspace, "Other/src/Compute.java"), "class Compute {}");
+        graph = new ProjectDependencyGraph(workspace, new SystemStreamLog());
+    }
+
+    @After
+    public void deleteWorkspace() throws IOException
+    {
+        FileUtils.deleteDirectory(workspace);
+    }
+
+    @Test
+    public void referencedProjects() throws MojoFailureException
+    {
+        Assert.assertEquals(new TreeSet<String>(Arrays.asList("LibA", "LibB", "LibCommon", "LibCycle")), graph.getReferencedProjects("App"));
+        // / a project in a cycle reaches itself
+        Assert.assertEquals(new TreeSet<String>(Arrays.asList("LibCommon", "LibCycle")), graph.getReferencedProjects("LibCommon"));
+        Assert.assertTrue(graph.getReferencedProjects("Other").isEmpty());
+    }
+
+    @Test
+    public void natures() throws MojoFailureException
+    {
+        Assert.assertEquals(ProjectDependencyGraph.Nature.application, graph.getProject("App").getNature());
+        Assert.assertEquals(ProjectDependencyGraph.Nature.library, graph.getProject("LibA").getNature());
+        Assert.assertEquals(ProjectDependencyGraph.Nature.java, graph.getProject("Other").getNature());
+    }
+
+    @Test
+    public void buildOrder() throws MojoFailureException
+    {
+        graph.getReferencedProjects("App");
+        graph.addDependency("App", "Other");
+        List<String> order = graph.getBuildOrder();
+
+        Assert.assertEquals(6, order.size());
+        Assert.assertEquals("App", order.get(order.size() - 1));
+        Assert.assertTrue(order.indexOf("Other") < order.indexOf("App"));
+        Assert.assertTrue(order.indexOf("LibCommon") < order.indexOf("LibA"));
+        Assert.assertTrue(order.indexOf("LibCycle") < order.indexOf("LibB"));
+    }
+
+    private void writeProject(String name, String nature, String... references) throws IOException
+    {
+        StringBuilder projects = new StringBuilder();
+        for (String reference : references)
+        {
+            projects.append("<project>").append(reference).append("</project>");
+        }
+        FileUtils.writeStringToFile(new File(workspace, name + "/.project"), "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<projectDescription><name>" + name + "</name><comment></comment><projects>" + projects
+                + "</projects><buildSpec></buildSpec><natures><nature>" + nature + "</nature></natures></projectDescription>\n");
+    }
+
+}
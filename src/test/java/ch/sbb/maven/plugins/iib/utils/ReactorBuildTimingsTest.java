@@ -0,0 +1,118 @@
+package ch.sbb.maven.plugins.iib.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ *
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+public class ReactorBuildTimingsTest {
+
+    /**
+     * a stopped span with a fixed wall time
+     */
+    private static class FixedSpan extends BuildTimings.Span {
+        private final long startTime;
+        private final long wallMillis;
+        private final List<BuildTimings.Span> steps;
+
+        FixedSpan(String name, long wallMillis, BuildTimings.Span... steps)
+        {
+            this(name, 0, wallMillis, steps);
+        }
+
+        FixedSpan(String name, long startTime, long wallMillis, BuildTimings.Span... steps)
+        {
+            super(null, null, name, false);
+            this.startTime = startTime;
+            this.wallMillis = wallMillis;
+            this.steps = Arrays.asList(steps);
+        }
+
+        @Override
+        public long getStartTime()
+        {
+            return startTime;
+        }
+
+        @Override
+        public long getWallMillis()
+        {
+            return wallMillis;
+        }
+
+        @Override
+        public List<BuildTimings.Span> getSteps()
+        {
+            return steps;
+        }
+    }
+
+    @Test
+    public void criticalPathAndMqsiTime()
+    {
+        ReactorBuildTimings timings = new ReactorBuildTimings();
+        // / Lib <- App1 <- Tests, Lib <- App2; App2 is the slowest module but App1 and Tests are the longer chain
+        timings.addModule("g:Lib", "Lib", Collections.<String> emptyList(), mojos(new FixedSpan("package-iib-src", 1000)));
+        timings.addModule("g:App1", "App1", Arrays.asList("g:Lib"), mojos(
+                new FixedSpan("package-bar", 3000, new FixedSpan("mqsicreatebar", 2500)),
+                new FixedSpan("apply-bar-overrides", 500)));
+        timings.addModule("g:App2", "App2", Arrays.asList("g:Lib", "g:Other"), mojos(
+                new FixedSpan("package-bar", 5000, new FixedSpan("check-manifest", 100), new FixedSpan("mqsicreatebar", 4000))));
+        timings.addModule("g:Tests", "Tests", Arrays.asList("g:App1", "g:Lib"), mojos(
+                new FixedSpan("mqsideploy", 2000, new FixedSpan("deploy DEV", 2000, new FixedSpan("mqsideploy", 1800)))));
+
+        List<String> path = new ArrayList<String>();
+        for (ReactorBuildTimings.Module module : timings.getCriticalPath())
+        {
+            path.add(module.getName());
+        }
+        Assert.assertEquals(Arrays.asList("Lib", "App1", "Tests"), path);
+
+        Assert.assertEquals("App2", timings.getSlowestModules(2).get(0).getName());
+        Assert.assertEquals("App1", timings.getSlowestModules(2).get(1).getName());
+
+        ReactorBuildTimings.Module app1 = timings.getSlowestModules(2).get(1);
+        Assert.assertEquals(3500, app1.getWallMillis());
+        Assert.assertEquals(2500, app1.getMqsiMillis());
+        Assert.assertEquals(1000, app1.getJvmMillis());
+
+        List<String> summary = timings.getSummary();
+        Assert.assertEquals("  critical path 6.5s: Lib (1.0s) -> App1 (3.5s) -> Tests (2.0s)", summary.get(1));
+        Assert.assertEquals("  total 11.5s, of which 8.3s in mqsi commands and 3.2s in the JVM", summary.get(3));
+        Assert.assertTrue(timings.toJson().contains("\"criticalPath\": [\"g:Lib\", \"g:App1\", \"g:Tests\"]"));
+    }
+
+    @Test
+    public void overlappingMqsiCommandsAreCountedOnce()
+    {
+        ReactorBuildTimings timings = new ReactorBuildTimings();
+        // / three deployments in parallel: 1000-3000, 1500-2500 and 2800-4000
+        ReactorBuildTimings.Module module = timings.addModule("g:App", "App", Collections.<String> emptyList(), mojos(
+                new FixedSpan("package-bar", 0, 1000, new FixedSpan(ForkedPackageBar.STEP_NAME, 0, 600)),
+                new FixedSpan("mqsideploy", 1000, 3200,
+                        new FixedSpan("deploy DEV", 1000, 2000, new FixedSpan("mqsideploy", 1000, 2000)),
+                        new FixedSpan("deploy TEST", 1500, 1000, new FixedSpan("mqsideploy", 1500, 1000)),
+                        new FixedSpan("deploy PROD", 2800, 1200, new FixedSpan("mqsideploy", 2800, 1200)))));
+
+        Assert.assertEquals(4200, module.getWallMillis());
+        // / the forked packagebar, then the deployments from 1000 to 4000
+        Assert.assertEquals(600 + 3000, module.getMqsiMillis());
+        Assert.assertEquals(600, module.getJvmMillis());
+    }
+
+    private static List<BuildTimings.Span> mojos(BuildTimings.Span... mojos)
+    {
+        return Arrays.asList(mojos);
+    }
+
+}
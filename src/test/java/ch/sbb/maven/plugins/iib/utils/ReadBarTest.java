@@ -5,8 +5,15 @@ package ch.sbb.maven.plugins.iib.utils;
 
 import static org.junit.Assert.assertEquals;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Properties;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import org.junit.Test;
 
@@ -24,6 +31,94 @@ public class ReadBarTest {
         assertEquals(getExpectedProperties(), properties);
     }
 
+    @Test
+    public void streamedPropertiesAreThoseOfTheBarFile() throws IOException {
+        String barFileName = getClass().getResource("/estaint-logging-test-bar-2.0.bar").getFile();
+        InputStream in = new FileInputStream(barFileName);
+        try
+        {
+            ConfigurableProperties properties = ReadBar.getOverridableProperties(in);
+            assertEquals(getExpectedProperties(), properties);
+            assertEquals(ReadBar.getOverridableProperties(barFileName), properties);
+        } finally
+        {
+            in.close();
+        }
+    }
+
+    @Test
+    public void streamedPropertiesIncludeNestedArchives() throws IOException {
+        File barFile = File.createTempFile("nested", ".bar");
+        try
+        {
+            ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(barFile));
+            try
+            {
+                addEntry(zip, "META-INF/manifest.mf", "Manifest-Version: 1.0\n".getBytes("UTF-8"));
+                // / read before the application, whose properties must not replace its own
+                addEntry(zip, "META-INF/broker.xml", getDeploymentDescriptor("startMode", "manual", "app#shared", "outer"));
+                addEntry(zip, "app.appzip", getArchive("META-INF/broker.xml", getDeploymentDescriptor("app#MQ Input.queueName", "IN.Q", "app#shared", "inner")));
+                addEntry(zip, "lib.libzip", getArchive("META-INF/broker.xml", getDeploymentDescriptor("lib#flow.dataSource", null)));
+            } finally
+            {
+                zip.close();
+            }
+
+            InputStream in = new FileInputStream(barFile);
+            ConfigurableProperties properties;
+            try
+            {
+                properties = ReadBar.getOverridableProperties(in);
+            } finally
+            {
+                in.close();
+            }
+
+            Properties expectedProperties = new Properties();
+            expectedProperties.put("startMode", "manual");
+            // / the deployment descriptor of the bar file wins over the one of the application
+            expectedProperties.put("app#shared", "outer");
+            expectedProperties.put("app#MQ Input.queueName", "IN.Q");
+            expectedProperties.put("lib#flow.dataSource", "");
+            assertEquals(expectedProperties, properties);
+            assertEquals(ReadBar.getOverridableProperties(barFile.getAbsolutePath()), properties);
+        } finally
+        {
+            barFile.delete();
+        }
+    }
+
+    /**
+     * @param properties the uri and override of every property; a null override is left out
+     */
+    private static byte[] getDeploymentDescriptor(String... properties) throws IOException {
+        StringBuilder descriptor = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?><Broker><CompiledMessageFlow>");
+        for (int i = 0; i < properties.length; i += 2)
+        {
+            descriptor.append("<ConfigurableProperty uri=\"").append(properties[i]).append('"');
+            if (properties[i + 1] != null)
+            {
+                descriptor.append(" override=\"").append(properties[i + 1]).append('"');
+            }
+            descriptor.append("/>");
+        }
+        return descriptor.append("</CompiledMessageFlow></Broker>").toString().getBytes("UTF-8");
+    }
+
+    private static byte[] getArchive(String name, byte[] content) throws IOException {
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        ZipOutputStream zip = new ZipOutputStream(archive);
+        addEntry(zip, name, content);
+        zip.close();
+        return archive.toByteArray();
+    }
+
+    private static void addEntry(ZipOutputStream zip, String name, byte[] content) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(content);
+        zip.closeEntry();
+    }
+
     /**
      * @return properties as tediously extracted from mqsireadbar command and reconstructed here
      */
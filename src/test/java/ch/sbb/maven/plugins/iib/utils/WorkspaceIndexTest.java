@@ -0,0 +1,107 @@
+package ch.sbb.maven.plugins.iib.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ *
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+public class WorkspaceIndexTest {
+
+    private File workspace;
+
+    @Before
+    public void createWorkspace() throws IOException
+    {
+        workspace = File.createTempFile("workspace", "");
+        workspace.delete();
+        FileUtils.writeStringToFile(new File(workspace, "App/.project"), "<projectDescription><name>App</name>"
+                + "<natures><nature>com.ibm.etools.msgbroker.tooling.applicationNature</nature></natures></projectDescription>");
+        FileUtils.writeStringToFile(new File(workspace, "App/Flow.msgflow"), "flow");
+        FileUtils.writeStringToFile(new File(workspace, "JavaProject/.project"), "<projectDescription><name>JavaProject</name></projectDescription>");
+        FileUtils.writeStringToFile(new File(workspace, "JavaProject/src/a/Compute.java"), "class Compute {}");
+        FileUtils.writeStringToFile(new File(workspace, "JavaProject/bin/a/Compute.class"), "class");
+        FileUtils.writeStringToFile(new File(workspace, "NoProject/readme.txt"), "text");
+        FileUtils.writeStringToFile(new File(workspace, ".metadata/.log"), "log");
+        WorkspaceIndex.invalidate(workspace);
+    }
+
+    @After
+    public void deleteWorkspace() throws IOException
+    {
+        WorkspaceIndex.invalidate(workspace);
+        FileUtils.deleteDirectory(workspace);
+    }
+
+    @Test
+    public void scan()
+    {
+        WorkspaceIndex index = WorkspaceIndex.get(workspace, null);
+        Assert.assertEquals(3, index.getProjects().size());
+        Assert.assertEquals(Arrays.asList("App", "JavaProject"), index.getEclipseProjectNames());
+
+        WorkspaceIndex.ProjectInfo app = index.getProject("App");
+        Assert.assertEquals(2, app.getFileCount());
+        Assert.assertEquals(Arrays.asList("com.ibm.etools.msgbroker.tooling.applicationNature"), app.getNatures());
+        Assert.assertFalse(app.isJavaProject());
+        Assert.assertEquals(new File(workspace, "App/Flow.msgflow").lastModified(), app.getLastModified().get("Flow.msgflow").longValue());
+
+        WorkspaceIndex.ProjectInfo javaProject = index.getProject("JavaProject");
+        Assert.assertEquals(3, javaProject.getFileCount());
+        Assert.assertEquals(2, javaProject.getJavaFileCount());
+        Assert.assertTrue(javaProject.isJavaProject());
+        Assert.assertTrue(javaProject.getLastModified().containsKey("src/a/Compute.java"));
+
+        Assert.assertFalse(index.getProject("NoProject").hasProjectFile());
+        Assert.assertNull(index.getProject(".metadata"));
+    }
+
+    @Test
+    public void invalidate() throws IOException
+    {
+        WorkspaceIndex index = WorkspaceIndex.get(workspace, null);
+        Assert.assertSame(index, WorkspaceIndex.get(workspace, null));
+
+        WorkspaceIndex.invalidate(workspace);
+        Assert.assertNotSame(index, WorkspaceIndex.get(workspace, null));
+    }
+
+    @Test
+    public void changedProjectsAreScannedAgain() throws IOException
+    {
+        WorkspaceIndex index = WorkspaceIndex.get(workspace, null);
+        WorkspaceIndex.ProjectInfo javaProject = index.getProject("JavaProject");
+
+        // / a file added to a project, which leaves the modification time of the workspace directory unchanged
+        File otherFlow = new File(workspace, "App/Other.msgflow");
+        FileUtils.writeStringToFile(otherFlow, "flow");
+        // / the index is not scanned again as a whole, only the project asked for
+        Assert.assertSame(index, WorkspaceIndex.get(workspace, null));
+        Assert.assertEquals(3, index.getProject("App").getFileCount());
+        // / the other projects are not scanned again
+        Assert.assertSame(javaProject, index.getProject("JavaProject"));
+
+        // / a file modified in a subdirectory
+        File compute = new File(workspace, "JavaProject/src/a/Compute.java");
+        FileUtils.writeStringToFile(compute, "class Compute { int i; }");
+        compute.setLastModified(compute.lastModified() - 10000);
+        Assert.assertNotSame(javaProject, index.getProject("JavaProject"));
+        Assert.assertEquals(WorkspaceIndex.getLastModified(compute), index.getProject("JavaProject").getLastModified().get("src/a/Compute.java").longValue());
+
+        // / a file removed
+        otherFlow.delete();
+        Assert.assertEquals(2, index.getProject("App").getFileCount());
+    }
+
+}
@@ -0,0 +1,109 @@
+package ch.sbb.maven.plugins.iib.utils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ *
+ *
+ * @version $Id: $
+ * @since pom_version, 2016
+ */
+public class ZipEditorTest {
+
+    private File zipFile;
+
+    @Before
+    public void createZip() throws IOException
+    {
+        zipFile = File.createTempFile("zip-editor", ".zip");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zipFile));
+        for (String name : new String[] { "App/flows/Main.msgflow", "App/flows/Main.esql", "App/esql/Common.esql", "App/META-INF/broker.xml", "App/readme.txt" })
+        {
+            out.putNextEntry(new ZipEntry(name));
+            out.write(("content of " + name).getBytes("UTF-8"));
+            out.closeEntry();
+        }
+        out.close();
+    }
+
+    @After
+    public void deleteZip()
+    {
+        zipFile.delete();
+    }
+
+    @Test
+    public void removeFiles() throws IOException
+    {
+        RawZipFile original = read();
+        ZipUtils.removeFiles(zipFile, "**/*.esql, App/META-INF/");
+
+        RawZipFile edited = read();
+        Assert.assertEquals(Arrays.asList("App/flows/Main.msgflow", "App/readme.txt"), getNames(edited));
+        // / the remaining entries are copied as they are
+        for (RawZipFile.Entry entry : edited.getEntries())
+        {
+            RawZipFile.Entry source = original.getEntry(entry.getName());
+            Assert.assertEquals(source.getCompressedSize(), entry.getCompressedSize());
+            Assert.assertArrayEquals(original.getBytes(source), edited.getBytes(entry));
+        }
+    }
+
+    @Test
+    public void removeRenameAndAdd() throws IOException
+    {
+        Assert.assertTrue(new ZipEditor(zipFile).remove("**/*.esql").rename("App/readme.txt", "App/README.txt")
+                .add("App/META-INF/broker.xml", "<Broker/>".getBytes("UTF-8")).add("App/added.txt", "added".getBytes("UTF-8")).apply());
+
+        RawZipFile edited = read();
+        Assert.assertEquals(Arrays.asList("App/flows/Main.msgflow", "App/README.txt", "App/META-INF/broker.xml", "App/added.txt"), getNames(edited));
+        Assert.assertEquals("content of App/readme.txt", new String(edited.getBytes(edited.getEntry("App/README.txt")), "UTF-8"));
+        Assert.assertEquals("<Broker/>", new String(edited.getBytes(edited.getEntry("App/META-INF/broker.xml")), "UTF-8"));
+
+        // / java.util.zip reads the result as well
+        ZipFile zip = new ZipFile(zipFile);
+        Assert.assertEquals(4, zip.size());
+        zip.close();
+    }
+
+    @Test
+    public void nothingToChange() throws IOException
+    {
+        long lastModified = zipFile.lastModified();
+        byte[] before = FileUtils.readFileToByteArray(zipFile);
+        Assert.assertFalse(new ZipEditor(zipFile).remove("**/*.class").apply());
+        Assert.assertArrayEquals(before, FileUtils.readFileToByteArray(zipFile));
+        Assert.assertEquals(lastModified, zipFile.lastModified());
+    }
+
+    private RawZipFile read() throws IOException
+    {
+        return new RawZipFile(FileUtils.readFileToByteArray(zipFile));
+    }
+
+    private static List<String> getNames(RawZipFile zip)
+    {
+        List<String> names = new ArrayList<String>();
+        for (RawZipFile.Entry entry : zip.getEntries())
+        {
+            names.add(entry.getName());
+        }
+        return names;
+    }
+
+}